@@ -1,25 +1,47 @@
 package com.example;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.binding.Bindings;
 import javafx.fxml.FXML;
+import javafx.geometry.Side;
 import javafx.fxml.Initializable;
 import javafx.scene.Node;
 import javafx.scene.control.*;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
 import javafx.application.Platform;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
+import javafx.util.Duration;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.example.logging.LogContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URL;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class AIController implements Initializable {
 
+    private static final Logger log = LoggerFactory.getLogger(AIController.class);
+
     // FXML 注入的组件
+    @FXML private VBox rootPane;
     @FXML private TextArea chatArea;
     @FXML private TextField commandInput;
     @FXML private Button executeButton;
@@ -36,27 +58,125 @@ public class AIController implements Initializable {
     @FXML private TextField sampleText;
     @FXML private ColorPicker colorPicker;
 
+    // 待处理指令队列
+    @FXML private VBox pendingBox;
+    @FXML private ListView<InstructionQueue.PendingInstruction> pendingList;
+
+    // 运行指标面板
+    @FXML private TitledPane metricsPane;
+    @FXML private Label metricsLabel;
+
     // AI 客户端和工具
-    private QwenClient qwenClient;
+    private ChatProvider chatProvider;
+    private final ClientMetrics metrics = new ClientMetrics();
+    private MetricsServer metricsServer;
+    private Timeline metricsRefresh;
+    private InstructionQueue instructionQueue;
+    private final UndoHistory undoHistory = UndoHistory.fromProperties(new UndoStateAccess());
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final Map<String, Node> registeredComponents = new HashMap<>();
+    private final CommandSchema commandSchema = new CommandSchema();
+    private final ComponentIndex componentIndex = new ComponentIndex();
+    private final BulkApplyPipeline bulkApplyPipeline = new BulkApplyPipeline(this::parseColorString);
+    private final AnimationEngine animationEngine = AnimationEngine.fromProperties(metrics);
+    private ThemeEngine themeEngine;
+    private IntentIndex intentIndex;
+    private HistoryIndex historyIndex;
+    // 界面快照（快照模式开启时创建，FX 线程）
+    private UiSnapshot uiSnapshot;
+    // 正在把补全项写入输入框，不触发新的补全（FX 线程）
+    private boolean applyingSuggestion;
+
+    // 按模板创建的组件（可移除）
+    private final ComponentFactory componentFactory = ComponentFactory.fromProperties();
+    private static final int MAX_CREATE_BATCH = Integer.getInteger("ai.components.maxBatch", 5000);
+    private int sampleComponentCount;
+
+    // 宏：录制中的宏名称和已执行的步骤（FX 线程）
+    private MacroLibrary macroLibrary;
+    private String recordingMacro;
+    private final List<JsonNode> recordedSteps = new ArrayList<>();
+    // 大于 0 时不输出逐条执行的系统消息（宏执行期间，FX 线程）
+    private int chatMuted;
+
+    // 默认组件的中文别名，用于提示词和相关组件检索
+    private static final Map<String, String[]> COMPONENT_ALIASES = Map.of(
+            "btn1", new String[]{"按钮1", "按钮一", "第一个按钮", "示例按钮1"},
+            "btn2", new String[]{"按钮2", "按钮二", "第二个按钮", "示例按钮2"},
+            "sampleText", new String[]{"文本框", "输入的文本", "示例文本"},
+            "colorPicker", new String[]{"颜色选择器", "取色器"},
+            "titleLabel", new String[]{"标题"},
+            "chatArea", new String[]{"聊天区域", "对话区", "聊天框"},
+            "controlPanel", new String[]{"控制面板", "面板"},
+            "statusLabel", new String[]{"状态标签", "状态栏"},
+            "commandInput", new String[]{"指令输入框", "输入框"},
+            "executeButton", new String[]{"执行按钮"}
+    );
+
+    // 样式中的背景色
+    private static final Pattern BACKGROUND_COLOR = Pattern.compile("-fx-background-color:\\s*(#[0-9a-fA-F]{6})");
+
+    // 撤销/重做本地命令
+    private static final Set<String> UNDO_COMMANDS = Set.of("撤销", "撤回", "撤销上一步", "undo");
+    private static final Set<String> REDO_COMMANDS = Set.of("重做", "恢复上一步", "redo");
+
+    // 动画模式开关
+    private static final Set<String> ANIMATION_ON = Set.of("开启动画", "打开动画", "动画模式");
+    private static final Set<String> ANIMATION_OFF = Set.of("关闭动画", "取消动画");
+
+    // 快照模式开关：开启后视觉模型的请求附带控制面板截图
+    private static final Set<String> SNAPSHOT_ON = Set.of("开启快照", "打开快照", "快照模式");
+    private static final Set<String> SNAPSHOT_OFF = Set.of("关闭快照", "取消快照");
+
+    // 宏本地命令
+    private static final Pattern MACRO_RECORD = Pattern.compile("^(?:录制宏|开始录制宏?)\\s*(\\S.*)$");
+    private static final Pattern MACRO_DELETE = Pattern.compile("^删除宏\\s*(\\S.*)$");
+    private static final Set<String> MACRO_STOP = Set.of("结束录制", "停止录制", "保存宏");
+    private static final Set<String> MACRO_LIST = Set.of("宏列表", "列出宏", "查看宏");
+
+    // 历史检索本地命令和自动补全
+    private static final Pattern HISTORY_SEARCH = Pattern.compile("^(?:搜索历史|查找历史|历史搜索)\\s*(\\S.*)$");
+    private static final int MAX_SEARCH_RESULTS = 10;
+    private static final int MAX_SUGGESTIONS = 8;
+    private static final DateTimeFormatter HISTORY_TIME = DateTimeFormatter.ofPattern("MM-dd HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    // 撤销/重做快捷键
+    private static final KeyCombination UNDO_KEY = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN);
+    private static final KeyCombination REDO_KEY = new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN);
+    private static final KeyCombination REDO_KEY_ALT = new KeyCodeCombination(KeyCode.Z,
+            KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN);
 
     // 颜色历史记录
     private final List<Color> colorHistory = new ArrayList<>();
     private static final int MAX_HISTORY_SIZE = 8; // 最多保存8个历史颜色
+    // 颜色历史色块和对应的工具提示，最多 MAX_HISTORY_SIZE 个，创建后复用（FX 线程）
+    private final List<Rectangle> colorHistoryRects = new ArrayList<>();
+    private final List<Tooltip> colorHistoryTips = new ArrayList<>();
+
+    // 聊天区域最多保留的字符数，超出时删除最早的消息
+    private static final int MAX_CHAT_CHARS = Integer.getInteger("ai.chat.maxChars", 100_000);
 
-    // 颜色预设映射
-    private final Map<String, Color> colorPresets = new HashMap<>();
+    // 相对颜色指令的本地解析
+    private final LocalColorCommands localColorCommands = new LocalColorCommands(new ComponentColorAccess());
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        System.out.println("初始化 AI 控制器...");
+        log.info("初始化 AI 控制器...");
 
         try {
             setupUIComponents();
-            initializeQwenConnection();
+            themeEngine = new ThemeEngine(rootPane);
+            bulkApplyPipeline.setAnimationEngine(animationEngine);
+            registerDefaultCommands(commandSchema);
+            initializeAIConnection();
             registerDefaultComponents();
             setupColorFeatures(); // 初始化颜色相关功能
+            openIntentIndex();
+            openMacroLibrary();
+            openHistoryIndex();
+            setupSnapshot();
+            setupMetrics();
 
             // 显示欢迎消息
             appendToChat("系统", "🤖 JavaFX AI 助手已启动");
@@ -67,8 +187,7 @@ public class AIController implements Initializable {
             appendToChat("系统", "  • '设置颜色选择器为蓝色'");
 
         } catch (Exception e) {
-            System.err.println("控制器初始化失败: " + e.getMessage());
-            e.printStackTrace();
+            log.error("控制器初始化失败", e);
         }
     }
 
@@ -90,15 +209,33 @@ public class AIController implements Initializable {
 
         // 状态标签
         updateStatus("初始化中...", "orange");
+
+        // 待处理指令队列
+        instructionQueue = InstructionQueue.fromProperties(this::sendQueuedInstruction);
+        pendingList.setItems(instructionQueue.getItems());
+        pendingBox.visibleProperty().bind(Bindings.isNotEmpty(instructionQueue.getItems()));
+        pendingBox.managedProperty().bind(pendingBox.visibleProperty());
+
+        // 撤销/重做快捷键：Ctrl+Z、Ctrl+Y（或 Ctrl+Shift+Z），输入框有内容时保留输入框自己的撤销
+        rootPane.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
+            if (event.getTarget() instanceof TextInputControl
+                    && !((TextInputControl) event.getTarget()).getText().isEmpty()) {
+                return;
+            }
+            if (UNDO_KEY.match(event)) {
+                undo();
+                event.consume();
+            } else if (REDO_KEY.match(event) || REDO_KEY_ALT.match(event)) {
+                redo();
+                event.consume();
+            }
+        });
     }
 
     /**
      * 初始化颜色相关功能
      */
     private void setupColorFeatures() {
-        // 初始化预设颜色
-        initializeColorPresets();
-
         // 设置颜色选择器事件监听器
         if (colorPicker != null) {
             colorPicker.setOnAction(event -> {
@@ -109,62 +246,51 @@ public class AIController implements Initializable {
     }
 
     /**
-     * 初始化颜色预设
-     */
-    private void initializeColorPresets() {
-        colorPresets.put("#FF0000", Color.RED);        // 红色
-        colorPresets.put("#00FF00", Color.GREEN);      // 绿色
-        colorPresets.put("#0000FF", Color.BLUE);       // 蓝色
-        colorPresets.put("#FFFF00", Color.YELLOW);     // 黄色
-        colorPresets.put("#FFA500", Color.ORANGE);     // 橙色
-        colorPresets.put("#800080", Color.PURPLE);     // 紫色
-        colorPresets.put("#FFC0CB", Color.PINK);       // 粉色
-        colorPresets.put("#000000", Color.BLACK);      // 黑色
-        colorPresets.put("#FFFFFF", Color.WHITE);      // 白色
-        colorPresets.put("#808080", Color.GRAY);       // 灰色
-    }
-
-    /**
-     * 初始化 Qwen 连接
+     * 初始化 AI 连接（提供方由 -Dai.provider 选择，默认 Qwen）
      */
-    private void initializeQwenConnection() {
+    private void initializeAIConnection() {
         // 从环境变量获取 API 密钥
         String apiKey = System.getProperty("qwen.api.key",
                 System.getenv("QWEN_API_KEY"));
 
-        if (apiKey == null || apiKey.trim().isEmpty()) {
+        // 只有 Qwen 提供方必须有密钥，本地模型、自动选择和回放录制可以离线工作
+        boolean requiresKey = "qwen".equalsIgnoreCase(System.getProperty("ai.provider", "qwen").trim())
+                && !"replay".equalsIgnoreCase(System.getProperty("qwen.transport", "direct").trim());
+        if (requiresKey && (apiKey == null || apiKey.trim().isEmpty())) {
             String errorMsg = "❌ 未找到 QWEN_API_KEY 环境变量";
-            System.err.println(errorMsg);
+            log.error(errorMsg);
             appendToChat("系统", errorMsg);
             appendToChat("系统", "请设置环境变量: export QWEN_API_KEY=your_key_here");
             updateStatus("需要 API 密钥", "red");
             return;
         }
 
-        appendToChat("系统", "正在连接 Qwen AI 服务...");
-
-        // 创建 Qwen 客户端
-        qwenClient = new QwenClient(apiKey);
+        // 创建模型提供方
+        chatProvider = ChatProvider.fromProperties(apiKey, metrics);
+        appendToChat("系统", "正在连接 AI 服务 (" + chatProvider.getName() + ")...");
 
-        // 设置响应处理器
-        qwenClient.setResponseHandler(this::handleQwenResponse);
+        // 设置响应处理器和命令模式
+        chatProvider.setResponseHandler(this::handleQwenResponse);
+        chatProvider.setCommandSchema(commandSchema);
+        chatProvider.setComponentIndex(componentIndex);
 
         // 异步连接
         CompletableFuture.runAsync(() -> {
-            qwenClient.connect().thenAccept(success -> {
+            chatProvider.connect().thenAccept(success -> {
                 Platform.runLater(() -> {
                     if (success) {
-                        appendToChat("系统", "✅ 成功连接到 Qwen AI 助手");
+                        appendToChat("系统", "✅ 成功连接到 AI 助手 (" + chatProvider.getName() + ")");
+                        appendToChat("系统", "🔗 " + chatProvider.connectionSummary());
                         updateStatus("已连接", "green");
                     } else {
-                        appendToChat("系统", "❌ 连接 Qwen 服务失败");
+                        appendToChat("系统", "❌ 连接 " + chatProvider.getName() + " 服务失败");
                         updateStatus("连接失败", "red");
                     }
                 });
             }).exceptionally(ex -> {
                 Platform.runLater(() -> {
                     String errorMsg = "连接错误: " + ex.getMessage();
-                    System.err.println(errorMsg);
+                    log.error(errorMsg);
                     appendToChat("系统", errorMsg);
                     updateStatus("连接错误", "red");
                 });
@@ -173,6 +299,39 @@ public class AIController implements Initializable {
         });
     }
 
+    /**
+     * 注册支持的命令（与 executeJsonCommand 中的分支保持一致，基准测试也使用同一份命令表）
+     */
+    public static void registerDefaultCommands(CommandSchema commandSchema) {
+        commandSchema.registerCommand("showComponent", "显示UI组件", true);
+        commandSchema.registerCommand("hideComponent", "隐藏UI组件", true);
+        commandSchema.registerCommand("changeText", "修改文本内容", true, "text");
+        commandSchema.registerCommand("changeColor", "修改颜色", true, "color");
+        commandSchema.registerCommand("setColorPicker", "设置颜色选择器的值", true, "color");
+        commandSchema.registerCommand("setStyle", "设置CSS样式", true, "style");
+        commandSchema.registerCommand("showColorHistory", "显示颜色历史记录", false);
+        commandSchema.registerCommand("clearColorHistory", "清空颜色历史记录", false);
+        commandSchema.registerCommand("applyHistoryColor", "应用历史颜色到指定组件", true, "index", "target");
+        commandSchema.registerCommand("applyTheme", "把主题色(按钮和标题)统一换成指定颜色", false, "color");
+        commandSchema.registerCommand("applyPalette",
+                "以最近使用的颜色为主色生成配色(scheme:complementary/analogous/triadic/split)并应用到主题", false, "scheme");
+        commandSchema.registerCommand("createComponent",
+                "按模板在控制面板创建组件,target为新组件ID;template:{type:button/label/textField/hbox/vbox,text,style,"
+                        + "prompt,children};可选count(批量创建,ID为target-1..count,子组件ID同样加-n后缀,text中{n}替换为序号)、parent(容器ID)",
+                false, "template");
+        commandSchema.registerCommand("removeComponent",
+                "移除动态创建的组件,target为组件ID,以*结尾时按前缀移除", false);
+        commandSchema.registerOptionalParams("createComponent", "target", "count", "parent", "alias");
+        commandSchema.registerOptionalParams("removeComponent", "target", "prefix");
+    }
+
+    /**
+     * 默认组件 id 及其中文别名
+     */
+    public static Map<String, String[]> defaultComponentAliases() {
+        return COMPONENT_ALIASES;
+    }
+
     /**
      * 注册默认的 UI 组件
      */
@@ -189,10 +348,167 @@ public class AIController implements Initializable {
         registerComponent("commandInput", commandInput);
         registerComponent("executeButton", executeButton);
 
-        System.out.println("已注册 " + registeredComponents.size() + " 个组件");
+        log.info("已注册 {} 个组件", registeredComponents.size());
         appendToChat("系统", "已注册 " + registeredComponents.size() + " 个可控制组件");
     }
 
+    /**
+     * 打开本地意图索引（失败时仅禁用该功能）
+     */
+    private void openIntentIndex() {
+        try {
+            intentIndex = IntentIndex.openDefault(componentIndex);
+            log.info("意图索引已加载: {} 条", intentIndex.size());
+        } catch (Exception e) {
+            log.warn("意图索引不可用: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 打开历史索引并启用输入框自动补全（失败时仅禁用该功能）
+     */
+    private void openHistoryIndex() {
+        try {
+            historyIndex = HistoryIndex.openDefault();
+            setupHistoryCompletion();
+            log.info("历史索引已加载: {} 条", historyIndex.size());
+        } catch (Exception e) {
+            log.warn("历史索引不可用: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 界面快照：命令造成的状态变化登记为快照的脏区域；-Dai.snapshot.enabled=true 时启动即开启快照模式
+     */
+    private void setupSnapshot() {
+        undoHistory.setChangeListener(this::markSnapshotDirty);
+        setSnapshotEnabled(Boolean.getBoolean("ai.snapshot.enabled"));
+    }
+
+    private void setSnapshotEnabled(boolean enabled) {
+        uiSnapshot = enabled ? UiSnapshot.fromProperties(controlPanel, metrics) : null;
+        if (chatProvider != null) {
+            UiSnapshot snapshot = uiSnapshot;
+            chatProvider.setImageSource(snapshot != null ? snapshot::latest : null);
+        }
+    }
+
+    /**
+     * 按变化的状态登记快照区域：可见性、文字和样式可能改变布局，登记父节点；调色板影响整个面板
+     */
+    private void markSnapshotDirty(byte kind, String target) {
+        if (uiSnapshot == null) {
+            return;
+        }
+        switch (kind) {
+            case UndoHistory.VISIBLE:
+            case UndoHistory.TEXT:
+            case UndoHistory.STYLE:
+                uiSnapshot.markDirty(registeredComponents.get(target), true);
+                break;
+            case UndoHistory.COLOR:
+                uiSnapshot.markDirty(registeredComponents.get(target), false);
+                break;
+            case UndoHistory.COLOR_HISTORY:
+                uiSnapshot.markDirty(colorHistoryBox, true);
+                break;
+            default:
+                uiSnapshot.markAll();
+        }
+    }
+
+    /**
+     * 发送指令前截取控制面板（FX 线程）；失败时不附带快照，不影响发送
+     */
+    private void captureSnapshot() {
+        if (uiSnapshot == null) {
+            return;
+        }
+        try {
+            uiSnapshot.capture(animationEngine.activeCount() > 0);
+        } catch (Exception e) {
+            log.warn("界面快照失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 指令输入框自动补全：输入时在下方列出匹配的历史指令
+     */
+    private void setupHistoryCompletion() {
+        ContextMenu suggestions = new ContextMenu();
+        commandInput.textProperty().addListener((obs, oldText, text) -> {
+            if (applyingSuggestion || text.isBlank() || !commandInput.isFocused()) {
+                suggestions.hide();
+                return;
+            }
+            List<String> matches = historyIndex.autocomplete(text, MAX_SUGGESTIONS);
+            if (matches.isEmpty()) {
+                suggestions.hide();
+                return;
+            }
+            List<MenuItem> items = new ArrayList<>(matches.size());
+            for (String match : matches) {
+                MenuItem item = new MenuItem(match);
+                item.setMnemonicParsing(false);
+                item.setOnAction(event -> {
+                    applyingSuggestion = true;
+                    commandInput.setText(match);
+                    commandInput.positionCaret(match.length());
+                    applyingSuggestion = false;
+                });
+                items.add(item);
+            }
+            suggestions.getItems().setAll(items);
+            if (!suggestions.isShowing()) {
+                suggestions.show(commandInput, Side.BOTTOM, 0, 0);
+            }
+        });
+        commandInput.focusedProperty().addListener((obs, wasFocused, focused) -> {
+            if (!focused) {
+                suggestions.hide();
+            }
+        });
+    }
+
+    /**
+     * 加载宏库并监视宏目录（失败时仅禁用该功能）
+     */
+    private void openMacroLibrary() {
+        try {
+            macroLibrary = MacroLibrary.openDefault();
+            macroLibrary.watch(message -> appendToChat("系统", "📼 " + message));
+            log.info("宏已加载: {} 个", macroLibrary.size());
+        } catch (Exception e) {
+            log.warn("宏库不可用: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 初始化运行指标：面板展开时每秒刷新，按需启动本地指标端点
+     */
+    private void setupMetrics() {
+        metricsRefresh = new Timeline(new KeyFrame(Duration.seconds(1),
+                event -> metricsLabel.setText(metrics.dashboardText())));
+        metricsRefresh.setCycleCount(Timeline.INDEFINITE);
+        metricsPane.expandedProperty().addListener((obs, wasExpanded, expanded) -> {
+            if (expanded) {
+                metricsLabel.setText(metrics.dashboardText());
+                metricsRefresh.play();
+            } else {
+                metricsRefresh.stop();
+            }
+        });
+
+        try {
+            metricsServer = MetricsServer.startFromProperties(metrics);
+            if (metricsServer != null) {
+                appendToChat("系统", "📊 指标端点: http://127.0.0.1:" + metricsServer.getPort() + "/metrics");
+            }
+        } catch (Exception e) {
+            log.warn("指标端点启动失败: {}", e.getMessage());
+        }
+    }
+
     /**
      * 执行自然语言指令
      */
@@ -203,8 +519,99 @@ public class AIController implements Initializable {
             return;
         }
 
+        // 撤销/重做是本地命令，不经过 AI
+        if (UNDO_COMMANDS.contains(command.toLowerCase())) {
+            appendToChat("您", command);
+            commandInput.clear();
+            undo();
+            return;
+        }
+        if (REDO_COMMANDS.contains(command.toLowerCase())) {
+            appendToChat("您", command);
+            commandInput.clear();
+            redo();
+            return;
+        }
+
+        if (SNAPSHOT_ON.contains(command) || SNAPSHOT_OFF.contains(command)) {
+            appendToChat("您", command);
+            commandInput.clear();
+            setSnapshotEnabled(SNAPSHOT_ON.contains(command));
+            appendToChat("系统", uiSnapshot != null
+                    ? "📷 已开启快照模式，依赖界面外观的指令会附带控制面板截图发给视觉模型" : "已关闭快照模式");
+            return;
+        }
+
+        if (ANIMATION_ON.contains(command) || ANIMATION_OFF.contains(command)) {
+            appendToChat("您", command);
+            commandInput.clear();
+            animationEngine.setEnabled(ANIMATION_ON.contains(command));
+            appendToChat("系统", animationEngine.isEnabled() ? "🎞 已开启过渡动画" : "已关闭过渡动画");
+            return;
+        }
+
+        // 宏的录制、管理和调用都在本地完成
+        if (macroLibrary != null && handleMacroCommand(command)) {
+            commandInput.clear();
+            return;
+        }
+
+        // 历史检索在本地完成
+        if (historyIndex != null && handleHistorySearch(command)) {
+            commandInput.clear();
+            return;
+        }
+
+        // 相对颜色指令（调亮、调暗、互补色、配色方案）依赖组件当前颜色，直接在本地计算
+        Set<String> targets = componentIndex.findRelevant(command);
+        long resolveStart = System.nanoTime();
+        JsonNode colorPlan = localColorCommands.resolve(command, targets);
+        if (colorPlan != null) {
+            appendToChat("您", command);
+            commandInput.clear();
+            if (instructionQueue.hasPending(targets)) {
+                // 前面还有改这些组件的指令在排队或在途，等它们结束后按那时的颜色重新计算
+                appendToChat("系统", "⏳ 等待前面涉及同一组件的指令完成后本地计算");
+                instructionQueue.submitLocal(command, targets, () -> {
+                    JsonNode plan = localColorCommands.resolve(command, targets);
+                    if (plan != null) {
+                        dispatchPlan(plan, null);
+                    }
+                    return CompletableFuture.completedFuture(null);
+                });
+                return;
+            }
+            appendToChat("系统", String.format("⚡ 本地颜色计算 (%d µs)", (System.nanoTime() - resolveStart) / 1000));
+            dispatchPlan(colorPlan, null);
+            return;
+        }
+
+        // 与历史指令完全相同时直接复用它执行成功的命令计划
+        JsonNode previousPlan = historyIndex != null ? historyIndex.planFor(command) : null;
+        if (previousPlan != null) {
+            appendToChat("您", command);
+            appendToChat("系统", "⚡ 复用历史命令计划");
+            commandInput.clear();
+            dispatchPlan(previousPlan, null);
+            return;
+        }
+
+        // 再查本地意图索引，命中时直接执行以前成功的相似指令的命令计划
+        IntentIndex.Match match = intentIndex != null ? intentIndex.lookup(command) : null;
+        if (intentIndex != null) {
+            metrics.recordIntentLookup(match != null);
+        }
+        if (match != null) {
+            appendToChat("您", command);
+            appendToChat("系统", String.format("⚡ 本地命中: \"%s\" (相似度 %.2f)",
+                    match.getInstruction(), match.getSimilarity()));
+            commandInput.clear();
+            dispatchPlan(match.getPlan(), null);
+            return;
+        }
+
         // 检查连接状态
-        if (qwenClient == null || !qwenClient.isConnected()) {
+        if (chatProvider == null || !chatProvider.isConnected()) {
             appendToChat("系统", "❌ AI 服务未连接，请检查连接状态");
             updateStatus("未连接", "red");
             return;
@@ -216,24 +623,87 @@ public class AIController implements Initializable {
         // 更新状态
         updateStatus("AI 思考中...", "orange");
 
-        // 异步发送指令
-        CompletableFuture.runAsync(() -> {
-            qwenClient.sendInstruction(command);
-        });
+        // 进入待处理队列，同一组件同一属性的旧指令会被折叠
+        String supersedeKey = InstructionQueue.supersedeKey(targets, command);
+        instructionQueue.submit(command, targets, supersedeKey);
 
         // 清空输入框
         commandInput.clear();
     }
 
+    /**
+     * 发送队列中的指令，并把请求阶段同步到队列项
+     */
+    private CompletableFuture<Void> sendQueuedInstruction(InstructionQueue.PendingInstruction item) {
+        String previousRequestId = LogContext.setRequestId(LogContext.newRequestId());
+        try {
+            log.info("发送指令 #{}: {}", item.getId(), item.getText());
+            captureSnapshot();
+            // 组件状态在 FX 线程上读取，请求线程只拼接文本
+            String state = componentIndex.describeState(componentIndex.findRelevant(item.getText()));
+            return chatProvider.sendInstruction(item.getText(), state, phase -> {
+                switch (phase) {
+                    case SENDING:
+                        item.advance(InstructionQueue.State.SENDING);
+                        break;
+                    case STREAMING:
+                        item.advance(InstructionQueue.State.STREAMING);
+                        break;
+                    case APPLYING:
+                        item.advance(InstructionQueue.State.APPLYING);
+                        break;
+                    default:
+                        break;
+                }
+            });
+        } finally {
+            LogContext.restoreRequestId(previousRequestId);
+        }
+    }
+
+    /**
+     * 取消选中的待处理指令
+     */
+    @FXML
+    private void cancelPending() {
+        InstructionQueue.PendingInstruction item = pendingList.getSelectionModel().getSelectedItem();
+        if (item != null) {
+            instructionQueue.cancel(item);
+            appendToChat("系统", "🚫 已取消: " + item.getText());
+        }
+    }
+
+    /**
+     * 选中的待处理指令前移
+     */
+    @FXML
+    private void movePendingUp() {
+        InstructionQueue.PendingInstruction item = pendingList.getSelectionModel().getSelectedItem();
+        if (instructionQueue.moveUp(item)) {
+            pendingList.getSelectionModel().select(item);
+        }
+    }
+
+    /**
+     * 选中的待处理指令后移
+     */
+    @FXML
+    private void movePendingDown() {
+        InstructionQueue.PendingInstruction item = pendingList.getSelectionModel().getSelectedItem();
+        if (instructionQueue.moveDown(item)) {
+            pendingList.getSelectionModel().select(item);
+        }
+    }
+
     /**
      * 处理 Qwen 的响应
      */
-    private void handleQwenResponse(String responseJson) {
+    private void handleQwenResponse(String instruction, String responseJson) {
         try {
-            System.out.println("处理 Qwen 响应...");
+            log.debug("处理 {} 响应...", chatProvider.getName());
 
-            // 使用 QwenClient 解析响应
-            JsonNode parsedResponse = qwenClient.parseAIResponse(responseJson);
+            // 使用模型提供方解析响应
+            JsonNode parsedResponse = chatProvider.parseAIResponse(responseJson);
 
             if (parsedResponse == null) {
                 appendToChat("AI", "❌ 无法解析响应");
@@ -241,8 +711,8 @@ public class AIController implements Initializable {
             }
 
             // 检查是否为有效的 JSON 命令
-            if (parsedResponse.has("command") && parsedResponse.has("description")) {
-                executeJsonCommand(parsedResponse);
+            if (isCommandPlan(parsedResponse)) {
+                dispatchPlan(parsedResponse, instruction);
             } else if (parsedResponse.has("text")) {
                 // 文本回复
                 String text = parsedResponse.get("text").asText();
@@ -258,7 +728,7 @@ public class AIController implements Initializable {
             }
 
         } catch (Exception e) {
-            System.err.println("处理响应失败: " + e.getMessage());
+            log.error("处理响应失败", e);
             appendToChat("系统", "处理 AI 响应时出错: " + e.getMessage());
             updateStatus("处理错误", "red");
         }
@@ -267,8 +737,8 @@ public class AIController implements Initializable {
     /**
      * 执行 JSON 格式的命令
      */
-    private void executeJsonCommand(JsonNode commandNode) {
-        Platform.runLater(() -> {
+    private void executeJsonCommand(JsonNode commandNode, String instruction) {
+        Platform.runLater(LogContext.wrap(() -> {
             try {
                 String commandType = commandNode.path("command").asText();
                 String target = commandNode.path("target").asText();
@@ -278,75 +748,448 @@ public class AIController implements Initializable {
                 // 显示 AI 的描述
                 appendToChat("AI", description);
 
-                // 根据命令类型执行操作
-                boolean success = false;
+                // 记录执行前状态，用于撤销
+                UndoHistory.Tracker tracker = watchCommand(undoHistory.track(), commandType, target, params);
+                tracker.begin();
 
-                switch (commandType.toLowerCase()) {
-                    case "showcomponent":
-                        success = showComponent(target);
-                        break;
-                    case "hidecomponent":
-                        success = hideComponent(target);
-                        break;
-                    case "changetext":
-                        if (params.has("text")) {
-                            success = changeText(target, params.path("text").asText());
-                        }
-                        break;
-                    case "changecolor":
-                        if (params.has("color")) {
-                            success = changeColor(target, params.path("color").asText());
-                        }
-                        break;
-                    case "setcolorpicker":  // 新增的命令类型
-                        if (params.has("color")) {
-                            success = setColorPickerValue(target, params.path("color").asText());
-                        }
-                        break;
-                    case "setstyle":
-                        if (params.has("style")) {
-                            success = setStyle(target, params.path("style").asText());
-                        }
-                        break;
-                    case "showcolorhistory":  // 显示颜色历史
-                        success = showColorHistory();
-                        break;
-                    case "clearcolorhistory":  // 清空颜色历史
-                        success = clearColorHistory();
-                        break;
-                    case "applyhistorycolor":
-                        if (params.has("index") && params.has("target")) {
-                            int index = params.path("index").asInt();
-                            String targetComponent = params.path("target").asText();
-                            success = applyHistoryColorByIndex(index, targetComponent);
-                        }
-                        break;
-                    default:
-                        appendToChat("系统", "❌ 未识别的命令类型: " + commandType);
-                }
+                // 根据命令类型执行操作
+                boolean success = applyCommand(commandType, target, params);
 
                 if (success) {
+                    tracker.commit();
                     updateStatus("命令执行成功", "green");
+                    rememberPlan(instruction, commandNode);
+                    recordMacroStep(commandNode);
                 } else {
                     updateStatus("执行失败", "orange");
                 }
 
             } catch (Exception e) {
-                System.err.println("执行命令失败: " + e.getMessage());
+                log.error("执行命令失败", e);
                 appendToChat("系统", "❌ 执行命令失败: " + e.getMessage());
                 updateStatus("执行错误", "red");
             }
+        }));
+    }
+
+    /**
+     * 执行单条命令（FX 线程），返回是否成功
+     */
+    private boolean applyCommand(String commandType, String target, JsonNode params) {
+        boolean success = false;
+        switch (commandType.toLowerCase()) {
+            case "showcomponent":
+                success = showComponent(target);
+                break;
+            case "hidecomponent":
+                success = hideComponent(target);
+                break;
+            case "changetext":
+                if (params.has("text")) {
+                    success = changeText(target, params.path("text").asText());
+                }
+                break;
+            case "changecolor":
+                if (params.has("color")) {
+                    success = changeColor(target, params.path("color").asText());
+                }
+                break;
+            case "setcolorpicker":  // 新增的命令类型
+                if (params.has("color")) {
+                    success = setColorPickerValue(target, params.path("color").asText());
+                }
+                break;
+            case "setstyle":
+                if (params.has("style")) {
+                    success = setStyle(target, params.path("style").asText());
+                }
+                break;
+            case "showcolorhistory":  // 显示颜色历史
+                success = showColorHistory();
+                break;
+            case "clearcolorhistory":  // 清空颜色历史
+                success = clearColorHistory();
+                break;
+            case "applytheme":
+                if (params.has("color")) {
+                    success = applyTheme(params.path("color").asText());
+                }
+                break;
+            case "applypalette":
+                success = applyPalette(params.path("scheme").asText());
+                break;
+            case "createcomponent":
+                success = createComponents(target, params);
+                if (success && uiSnapshot != null) {
+                    uiSnapshot.markAll();
+                }
+                break;
+            case "removecomponent":
+                success = removeComponents(params.path("prefix").isTextual()
+                        ? params.get("prefix").asText() + "*" : target);
+                if (success && uiSnapshot != null) {
+                    uiSnapshot.markAll();
+                }
+                break;
+            case "applyhistorycolor":
+                if (params.has("index") && params.has("target")) {
+                    int index = params.path("index").asInt();
+                    String targetComponent = params.path("target").asText();
+                    success = applyHistoryColorByIndex(index, targetComponent);
+                }
+                break;
+            default:
+                appendToChat("系统", "❌ 未识别的命令类型: " + commandType);
+        }
+        return success;
+    }
+
+    /**
+     * 处理宏命令：开始/结束录制、删除、列出宏，以及按名称调用宏；不是宏命令时返回 false
+     */
+    private boolean handleMacroCommand(String command) {
+        Matcher record = MACRO_RECORD.matcher(command);
+        if (record.matches()) {
+            appendToChat("您", command);
+            recordingMacro = record.group(1).trim();
+            recordedSteps.clear();
+            appendToChat("系统", "⏺ 开始录制宏: " + recordingMacro + "（执行成功的命令会被记录，输入\"结束录制\"保存）");
+            updateStatus("录制宏: " + recordingMacro, "orange");
+            return true;
+        }
+        if (MACRO_STOP.contains(command)) {
+            appendToChat("您", command);
+            stopMacroRecording();
+            return true;
+        }
+        Matcher delete = MACRO_DELETE.matcher(command);
+        if (delete.matches()) {
+            appendToChat("您", command);
+            try {
+                String name = delete.group(1).trim();
+                appendToChat("系统", macroLibrary.delete(name) ? "🗑 已删除宏: " + name : "❌ 宏不存在: " + name);
+            } catch (Exception e) {
+                appendToChat("系统", "❌ 删除宏失败: " + e.getMessage());
+            }
+            return true;
+        }
+        if (MACRO_LIST.contains(command)) {
+            appendToChat("您", command);
+            if (macroLibrary.size() == 0) {
+                appendToChat("系统", "还没有宏，输入\"录制宏 名称\"开始录制");
+            }
+            for (MacroLibrary.Macro macro : macroLibrary.list()) {
+                appendToChat("系统", String.format("📼 %s (%d 步)%s", macro.getName(), macro.size(),
+                        macro.getParams().isEmpty() ? "" : " 参数: " + String.join(" ", macro.getParams())));
+            }
+            return true;
+        }
+
+        MacroLibrary.Invocation invocation = macroLibrary.match(command);
+        if (invocation == null) {
+            return false;
+        }
+        appendToChat("您", command);
+        executeMacro(invocation);
+        return true;
+    }
+
+    /**
+     * 历史检索："搜索历史 关键词"，列出最近的匹配指令和回复
+     */
+    private boolean handleHistorySearch(String command) {
+        Matcher search = HISTORY_SEARCH.matcher(command);
+        if (!search.matches()) {
+            return false;
+        }
+        // 先检索再记录本条指令，结果中不包含它自己
+        long start = System.nanoTime();
+        List<HistoryIndex.Entry> results = historyIndex.search(search.group(1), MAX_SEARCH_RESULTS);
+        long micros = (System.nanoTime() - start) / 1000;
+        appendToChat("您", command);
+        appendToChat("系统", String.format("🔎 找到 %d 条%s (%d µs)", results.size(),
+                results.size() == MAX_SEARCH_RESULTS ? "（仅列出最近的）" : "", micros));
+        for (HistoryIndex.Entry entry : results) {
+            String text = entry.getText().replace('\n', ' ');
+            appendToChat("系统", String.format("  %s %s %s", entry.isInstruction() ? "👤" : "🤖",
+                    HISTORY_TIME.format(Instant.ofEpochMilli(entry.getLastUsed())),
+                    text.length() > 80 ? text.substring(0, 80) + "…" : text));
+        }
+        return true;
+    }
+
+    private void stopMacroRecording() {
+        if (recordingMacro == null) {
+            appendToChat("系统", "当前没有在录制宏");
+            return;
+        }
+        String name = recordingMacro;
+        recordingMacro = null;
+        if (recordedSteps.isEmpty()) {
+            appendToChat("系统", "宏 " + name + " 没有记录到命令，未保存");
+        } else {
+            try {
+                MacroLibrary.Macro macro = macroLibrary.save(name, new ArrayList<>(recordedSteps), "");
+                appendToChat("系统", String.format("💾 已保存宏: %s (%d 步)，输入\"%s\"执行",
+                        name, macro.size(), name));
+            } catch (Exception e) {
+                appendToChat("系统", "❌ 保存宏失败: " + e.getMessage());
+            }
+        }
+        recordedSteps.clear();
+        updateStatus("就绪", "green");
+    }
+
+    /**
+     * 录制中时记录一条执行成功的命令（FX 线程）
+     */
+    private void recordMacroStep(JsonNode command) {
+        if (recordingMacro != null) {
+            recordedSteps.add(command.deepCopy());
+        }
+    }
+
+    /**
+     * 在一次 FX 回调中执行宏的全部步骤，整体作为一条撤销记录
+     */
+    private void executeMacro(MacroLibrary.Invocation invocation) {
+        MacroLibrary.Macro macro = invocation.getMacro();
+        long start = System.nanoTime();
+        JsonNode plan;
+        try {
+            plan = invocation.expand();
+        } catch (IllegalArgumentException e) {
+            appendToChat("系统", "❌ " + e.getMessage());
+            return;
+        }
+        long expandMicros = (System.nanoTime() - start) / 1000;
+
+        runOnFxThread(() -> {
+            JsonNode steps = plan.path("commands");
+            UndoHistory.Tracker tracker = undoHistory.track();
+            for (JsonNode step : steps) {
+                watchCommand(tracker, step.path("command").asText(), step.path("target").asText(), step.path("params"));
+            }
+            tracker.begin();
+
+            int succeeded = 0;
+            List<String> failed = new ArrayList<>();
+            chatMuted++;
+            try {
+                for (JsonNode step : steps) {
+                    String commandType = step.path("command").asText();
+                    if (applyCommand(commandType, step.path("target").asText(), step.path("params"))) {
+                        succeeded++;
+                        recordMacroStep(step);
+                    } else if (failed.size() < 5) {
+                        failed.add(commandType + " " + step.path("target").asText());
+                    }
+                }
+            } finally {
+                chatMuted--;
+            }
+            tracker.commit();
+
+            appendToChat("系统", String.format("📼 宏 %s: %d/%d 步成功 (展开 %d µs, 执行 %d µs)", macro.getName(),
+                    succeeded, steps.size(), expandMicros, (System.nanoTime() - start) / 1000 - expandMicros));
+            if (!failed.isEmpty()) {
+                appendToChat("系统", "❌ 未成功的步骤: " + String.join(", ", failed));
+            }
+            updateStatus(succeeded == steps.size() ? "宏执行完成" : "部分执行失败",
+                    succeeded == steps.size() ? "green" : "orange");
         });
     }
 
+    /**
+     * 是否为可执行的命令计划（单条命令或批量命令）
+     */
+    private boolean isCommandPlan(JsonNode node) {
+        return (node.has("commands") && node.get("commands").isArray())
+                || (node.has("command") && node.has("description"));
+    }
+
+    /**
+     * 执行命令计划；instruction 不为空时，执行成功后记录到意图索引
+     */
+    private void dispatchPlan(JsonNode plan, String instruction) {
+        if (plan.has("commands")) {
+            executeBatchCommand(plan, instruction);
+        } else {
+            executeJsonCommand(plan, instruction);
+        }
+    }
+
+    /**
+     * 记录执行成功的计划
+     */
+    private void rememberPlan(String instruction, JsonNode plan) {
+        if (instruction != null && intentIndex != null) {
+            intentIndex.add(instruction, plan);
+        }
+        if (instruction != null && historyIndex != null) {
+            historyIndex.recordPlan(instruction, plan);
+        }
+    }
+
+    /**
+     * 执行批量命令：可批量处理的命令并行计算后一次性提交，其余命令逐条执行
+     * 响应处理器在 HTTP 线程上调用，组件表只在 FX 线程上读写，先切换到 FX 线程再展开命令。
+     */
+    private void executeBatchCommand(JsonNode batchNode, String instruction) {
+        runOnFxThread(LogContext.wrap(() -> expandBatchCommand(batchNode, instruction)));
+    }
+
+    private void expandBatchCommand(JsonNode batchNode, String instruction) {
+        JsonNode commands = batchNode.path("commands");
+        appendToChat("AI", batchNode.path("description").asText("批量执行 " + commands.size() + " 条命令"));
+
+        List<BulkApplyPipeline.Operation> operations = new ArrayList<>();
+        List<JsonNode> bulk = new ArrayList<>();
+        List<JsonNode> sequential = new ArrayList<>();
+        for (JsonNode command : commands) {
+            String commandType = command.path("command").asText();
+            if (!BulkApplyPipeline.supports(commandType)) {
+                sequential.add(command);
+                continue;
+            }
+            bulk.add(command);
+
+            String target = command.path("target").asText();
+            JsonNode params = command.path("params");
+            if ("*".equals(target)) {
+                for (Map.Entry<String, Node> entry : registeredComponents.entrySet()) {
+                    operations.add(new BulkApplyPipeline.Operation(entry.getKey(), entry.getValue(), commandType, params));
+                }
+            } else if (registeredComponents.containsKey(target)) {
+                operations.add(new BulkApplyPipeline.Operation(target, registeredComponents.get(target), commandType, params));
+            } else {
+                appendToChat("系统", "❌ 未找到组件: " + target);
+            }
+        }
+
+        if (!operations.isEmpty()) {
+            // 在管线读取快照之前记录执行前状态，整批作为一条撤销记录
+            UndoHistory.Tracker tracker = undoHistory.track();
+            for (BulkApplyPipeline.Operation operation : operations) {
+                watchCommand(tracker, operation.getCommand(), operation.getComponentId(), operation.getParams());
+            }
+            tracker.begin();
+
+            bulkApplyPipeline.apply(operations).thenAccept(results -> {
+                // 已在 FX 线程上
+                int succeeded = 0;
+                Set<String> appliedColors = new LinkedHashSet<>();
+                for (BulkApplyPipeline.Result result : results) {
+                    if (result.isSuccess()) {
+                        succeeded++;
+                        if (result.getColor() != null && appliedColors.add(colorToHex(result.getColor()))) {
+                            addToColorHistory(result.getColor());
+                        }
+                    } else {
+                        appendToChat("系统", "❌ " + result.getOperation().getComponentId() + ": " + result.getError());
+                    }
+                }
+                tracker.commit();
+                if (succeeded > 0) {
+                    bulk.forEach(this::recordMacroStep);
+                }
+                appendToChat("系统", String.format("✅ 批量应用完成: %d/%d 个组件", succeeded, results.size()));
+                if (succeeded == results.size() && sequential.isEmpty()) {
+                    rememberPlan(instruction, batchNode);
+                }
+                updateStatus(succeeded == results.size() ? "命令执行成功" : "部分执行失败",
+                        succeeded == results.size() ? "green" : "orange");
+            }).exceptionally(ex -> {
+                appendToChat("系统", "❌ 批量执行失败: " + ex.getMessage());
+                updateStatus("执行错误", "red");
+                return null;
+            });
+        }
+
+        for (JsonNode command : sequential) {
+            executeJsonCommand(command, null);
+        }
+    }
+
+    /**
+     * 登记命令会影响的状态
+     */
+    private UndoHistory.Tracker watchCommand(UndoHistory.Tracker tracker, String commandType, String target,
+                                             JsonNode params) {
+        switch (commandType.toLowerCase()) {
+            case "showcomponent":
+            case "hidecomponent":
+                return tracker.watch(UndoHistory.VISIBLE, target);
+            case "changetext":
+                return tracker.watch(UndoHistory.TEXT, target);
+            case "setstyle":
+                return tracker.watch(UndoHistory.STYLE, target);
+            case "changecolor":
+                return tracker.watch(UndoHistory.STYLE, target).watch(UndoHistory.COLOR_HISTORY, null);
+            case "applyhistorycolor":
+                return tracker.watch(UndoHistory.STYLE, params.path("target").asText(target));
+            case "setcolorpicker":
+                return tracker.watch(UndoHistory.COLOR, target)
+                        .watch(UndoHistory.COLOR_HISTORY, null)
+                        .watch(UndoHistory.PALETTE, null);
+            case "applytheme":
+                return tracker.watch(UndoHistory.PALETTE, null).watch(UndoHistory.COLOR_HISTORY, null);
+            case "applypalette":
+                return tracker.watch(UndoHistory.PALETTE, null);
+            case "clearcolorhistory":
+                return tracker.watch(UndoHistory.COLOR_HISTORY, null);
+            default:
+                return tracker;
+        }
+    }
+
+    /**
+     * 撤销上一条命令（本地操作，不访问网络）
+     */
+    private void undo() {
+        int changes = undoHistory.undo();
+        if (changes > 0) {
+            appendToChat("系统", "↩️ 已撤销 (" + changes + " 项变更)");
+            updateStatus("已撤销", "green");
+        } else {
+            appendToChat("系统", "没有可撤销的操作");
+        }
+    }
+
+    /**
+     * 重做上一条撤销的命令
+     */
+    private void redo() {
+        int changes = undoHistory.redo();
+        if (changes > 0) {
+            appendToChat("系统", "↪️ 已重做 (" + changes + " 项变更)");
+            updateStatus("已重做", "green");
+        } else {
+            appendToChat("系统", "没有可重做的操作");
+        }
+    }
+
+    private static void runOnFxThread(Runnable runnable) {
+        if (Platform.isFxApplicationThread()) {
+            runnable.run();
+        } else {
+            Platform.runLater(runnable);
+        }
+    }
+
     /**
      * UI 控制方法
      */
     private boolean showComponent(String componentId) {
         Node node = registeredComponents.get(componentId);
         if (node != null) {
-            node.setVisible(true);
-            node.setManaged(true);
+            if (animationEngine.isEnabled()) {
+                animationEngine.animateVisible(node, true);
+            } else {
+                animationEngine.cancel(node);
+                node.setVisible(true);
+                node.setManaged(true);
+            }
             appendToChat("系统", "✅ 已显示: " + componentId);
             return true;
         } else {
@@ -384,31 +1227,20 @@ public class AIController implements Initializable {
      */
     private boolean applyColorToComponent(Node component, Color color, String sourceDesc) {
         try {
-            String hexColor = colorToHex(color);
             String colorName = getColorName(color);
 
-            if (component instanceof Region) {
-                // 对于区域类组件（按钮、面板等），设置背景色
-                String style = String.format("-fx-background-color: %s;", hexColor);
-
-                // 保留原有样式（防止按钮变小）
-                String originalStyle = component.getStyle();
-                String cleanedStyle = originalStyle
-                        .replaceAll("-fx-background-color:[^;]*;?", "")
-                        .replaceAll(";;", ";")
-                        .trim();
-
-                component.setStyle(style + " " + cleanedStyle);
+            if (animationEngine.isEnabled()) {
+                animationEngine.animateColor(component, color);
+                appendToChat("系统", String.format("✅ 已将%s应用到%s (%s)",
+                        sourceDesc, getComponentName(component), colorName));
+                return true;
             }
+            animationEngine.cancel(component);
 
-            if (component instanceof Labeled) {
-                // 对于标签类组件，设置文字颜色
-                Labeled labeled = (Labeled) component;
-                if (color.getBrightness() > 0.5) {
-                    labeled.setStyle(labeled.getStyle() + " -fx-text-fill: black;");
-                } else {
-                    labeled.setStyle(labeled.getStyle() + " -fx-text-fill: white;");
-                }
+            if (component instanceof Region) {
+                // 区域类组件（按钮、标签、面板等）替换背景色和文字颜色，保留其他样式（防止按钮变小），
+                // 样式字符串不随重复应用增长
+                component.setStyle(BulkApplyPipeline.mergeColorStyle(component.getStyle(), color));
             }
 
             appendToChat("系统", String.format("✅ 已将%s应用到%s (%s)",
@@ -438,8 +1270,13 @@ public class AIController implements Initializable {
     private boolean hideComponent(String componentId) {
         Node node = registeredComponents.get(componentId);
         if (node != null) {
-            node.setVisible(false);
-            node.setManaged(false);
+            if (animationEngine.isEnabled()) {
+                animationEngine.animateVisible(node, false);
+            } else {
+                animationEngine.cancel(node);
+                node.setVisible(false);
+                node.setManaged(false);
+            }
             appendToChat("系统", "✅ 已隐藏: " + componentId);
             return true;
         } else {
@@ -488,17 +1325,13 @@ public class AIController implements Initializable {
         try {
             Color color = parseColorString(colorStr);
 
-            // 转换为十六进制
-            String hex = String.format("#%02X%02X%02X",
-                    (int)(color.getRed() * 255),
-                    (int)(color.getGreen() * 255),
-                    (int)(color.getBlue() * 255));
-
-            // 设置样式
-            String style = String.format("-fx-background-color: %s; -fx-text-fill: %s;",
-                    hex, color.getBrightness() > 0.5 ? "black" : "white");
-
-            node.setStyle(node.getStyle() + style);
+            if (animationEngine.isEnabled()) {
+                animationEngine.animateColor(node, color);
+            } else {
+                // 替换背景色和文字颜色，保留其他样式
+                animationEngine.cancel(node);
+                node.setStyle(BulkApplyPipeline.mergeColorStyle(node.getStyle(), color));
+            }
 
             appendToChat("系统", "✅ 已修改颜色: " + componentId + " → " + colorStr);
 
@@ -521,6 +1354,7 @@ public class AIController implements Initializable {
         }
 
         try {
+            animationEngine.cancel(node);
             node.setStyle(style);
             appendToChat("系统", "✅ 已设置样式: " + componentId);
             return true;
@@ -683,7 +1517,7 @@ public class AIController implements Initializable {
             return Color.web(colorStr);
 
         } catch (Exception e) {
-            System.err.println("解析颜色失败: " + colorStr + " - " + e.getMessage());
+            log.warn("解析颜色失败: {} - {}", colorStr, e.getMessage());
             return null;
         }
     }
@@ -730,7 +1564,7 @@ public class AIController implements Initializable {
             }
 
         } catch (Exception e) {
-            System.err.println("解析历史颜色索引失败: " + colorIndexStr);
+            log.warn("解析历史颜色索引失败: {}", colorIndexStr);
             return null;
         }
     }
@@ -761,29 +1595,36 @@ public class AIController implements Initializable {
             colorHistory.remove(colorHistory.size() - 1);
         }
 
-        // 更新历史记录显示
+        // 更新历史记录显示，并预先生成对应的主题样式表
         updateColorHistoryDisplay();
+        themeEngine.precompile(colorHistory);
     }
 
     /**
-     * 更新颜色历史记录显示
+     * 更新颜色历史记录显示：复用已创建的色块，只更新颜色和提示文字
      */
     private void updateColorHistoryDisplay() {
         Platform.runLater(() -> {
-            colorHistoryBox.getChildren().clear();
-
-            for (Color color : colorHistory) {
-                Rectangle colorRect = createColorRectangle(color);
-                colorHistoryBox.getChildren().add(colorRect);
+            while (colorHistoryRects.size() < colorHistory.size()) {
+                colorHistoryRects.add(createColorRectangle());
+            }
+            for (int i = 0; i < colorHistory.size(); i++) {
+                Color color = colorHistory.get(i);
+                Rectangle rect = colorHistoryRects.get(i);
+                rect.setFill(color);
+                colorHistoryTips.get(i).setText("颜色: " + getColorName(color) + "\n" +
+                        "十六进制: " + colorToHex(color) + "\n" +
+                        "点击应用此颜色");
             }
+            colorHistoryBox.getChildren().setAll(colorHistoryRects.subList(0, colorHistory.size()));
         });
     }
 
     /**
-     * 创建颜色矩形显示
+     * 创建颜色历史色块：事件处理器和工具提示只安装一次，点击时应用色块当前的颜色
      */
-    private Rectangle createColorRectangle(Color color) {
-        Rectangle rect = new Rectangle(25, 25, color);
+    private Rectangle createColorRectangle() {
+        Rectangle rect = new Rectangle(25, 25);
         rect.setStroke(Color.LIGHTGRAY);
         rect.setStrokeWidth(1);
         rect.setArcWidth(5);
@@ -791,6 +1632,7 @@ public class AIController implements Initializable {
 
         // 点击颜色矩形可以重新选择该颜色
         rect.setOnMouseClicked(event -> {
+            Color color = (Color) rect.getFill();
             colorPicker.setValue(color);
             handleColorSelection(color, "从历史记录选择");
         });
@@ -807,77 +1649,48 @@ public class AIController implements Initializable {
         });
 
         // 添加工具提示
-        Tooltip tooltip = new Tooltip(
-                "颜色: " + getColorName(color) + "\n" +
-                        "十六进制: " + colorToHex(color) + "\n" +
-                        "点击应用此颜色"
-        );
+        Tooltip tooltip = new Tooltip();
         Tooltip.install(rect, tooltip);
+        colorHistoryTips.add(tooltip);
 
         return rect;
     }
 
     /**
-     * 应用颜色到示例组件（联动效果）
+     * 应用颜色到示例组件（联动效果）：替换主题调色板中的强调色和标题色
      */
     private void applyColorToSampleComponents(Color color) {
-        String hexColor = colorToHex(color);
-        String textColor = color.getBrightness() > 0.5 ? "black" : "white";
-
-        // 应用到按钮1 - 使用追加模式
-        if (btn1 != null) {
-            // 获取原有样式
-            String originalStyle = btn1.getStyle();
-
-            // 移除可能存在的背景颜色和文字颜色设置
-            String cleanedStyle = removeColorProperties(originalStyle);
-
-            // 添加新的颜色设置
-            String newColorStyle = String.format(
-                    "-fx-background-color: %s; -fx-text-fill: %s;",
-                    hexColor, textColor
-            );
-
-            // 合并样式（新颜色 + 清理后的原有样式）
-            btn1.setStyle(newColorStyle + cleanedStyle);
+        themeEngine.applyAccent(color);
+    }
 
-            // 确保最小尺寸
-            btn1.setMinSize(Button.USE_PREF_SIZE, Button.USE_PREF_SIZE);
+    /**
+     * 把所有主题组件统一为指定颜色
+     */
+    private boolean applyTheme(String colorStr) {
+        Color color = parseColorString(colorStr);
+        if (color == null) {
+            appendToChat("系统", "❌ 颜色格式错误: " + colorStr);
+            return false;
         }
 
-        // 应用到标题标签
-        if (titleLabel != null) {
-            String labelStyle = String.format(
-                    "-fx-text-fill: %s;",
-                    hexColor
-            );
-            titleLabel.setStyle(titleLabel.getStyle() + labelStyle);
-        }
+        themeEngine.applyAll(color);
+        addToColorHistory(color);
+        appendToChat("系统", "✅ 已切换主题色: " + getColorName(color));
+        return true;
     }
 
     /**
-     * 从样式字符串中移除颜色相关属性
+     * 以最近使用的颜色（没有时为当前主色）为种子生成配色方案并应用
      */
-    private String removeColorProperties(String style) {
-        if (style == null || style.isEmpty()) {
-            return "";
-        }
-
-        // 移除背景颜色、文字颜色、边框颜色相关属性
-        String[] lines = style.split(";");
-        StringBuilder cleaned = new StringBuilder();
-
-        for (String line : lines) {
-            String trimmed = line.trim();
-            if (!trimmed.isEmpty() &&
-                    !trimmed.startsWith("-fx-background-color") &&
-                    !trimmed.startsWith("-fx-text-fill") &&
-                    !trimmed.startsWith("-fx-border-color")) {
-                cleaned.append(trimmed).append("; ");
-            }
-        }
-
-        return cleaned.toString();
+    private boolean applyPalette(String schemeName) {
+        ColorEngine.Scheme scheme = ColorEngine.Scheme.parse(schemeName);
+        Color seed = colorHistory.isEmpty() ? themeEngine.getActivePalette().getAccent() : colorHistory.get(0);
+        int[] colors = ColorEngine.palette(ColorEngine.pack(seed), scheme);
+        themeEngine.apply(new ThemeEngine.Palette(ColorEngine.toColor(colors[0]), ColorEngine.toColor(colors[1]),
+                ColorEngine.toColor(colors[2])));
+        appendToChat("系统", String.format("✅ 已应用%s配色: %s / %s / %s", scheme.name().toLowerCase(),
+                ColorEngine.toHex(colors[0]), ColorEngine.toHex(colors[1]), ColorEngine.toHex(colors[2])));
+        return true;
     }
 
     /**
@@ -903,39 +1716,13 @@ public class AIController implements Initializable {
     }
 
     /**
-     * 获取颜色名称
+     * 获取颜色名称：与命名颜色完全一致时返回名称（常用颜色用中文），否则返回十六进制值和最接近的命名颜色
      */
     private String getColorName(Color color) {
-        String hex = colorToHex(color);
-
-        // 检查预设颜色
-        for (Map.Entry<String, Color> entry : colorPresets.entrySet()) {
-            if (colorToHex(entry.getValue()).equals(hex)) {
-                return getChineseColorName(entry.getKey());
-            }
-        }
-
-        // 返回十六进制值
-        return hex;
-    }
-
-    /**
-     * 获取中文颜色名称
-     */
-    private String getChineseColorName(String hex) {
-        Map<String, String> colorNames = new HashMap<>();
-        colorNames.put("#FF0000", "红色");
-        colorNames.put("#00FF00", "绿色");
-        colorNames.put("#0000FF", "蓝色");
-        colorNames.put("#FFFF00", "黄色");
-        colorNames.put("#FFA500", "橙色");
-        colorNames.put("#800080", "紫色");
-        colorNames.put("#FFC0CB", "粉色");
-        colorNames.put("#000000", "黑色");
-        colorNames.put("#FFFFFF", "白色");
-        colorNames.put("#808080", "灰色");
-
-        return colorNames.getOrDefault(hex, hex);
+        ColorEngine.NamedColor named = ColorEngine.nearestName(ColorEngine.pack(color));
+        String chinese = ColorEngine.chineseName(named.getName());
+        String name = chinese != null ? chinese : named.getName();
+        return named.isExact() ? name : colorToHex(color) + " (接近" + name + ")";
     }
 
     /**
@@ -971,17 +1758,174 @@ public class AIController implements Initializable {
      * 注册新组件
      */
     public void registerComponent(String id, Node node) {
+        registerComponent(id, node, COMPONENT_ALIASES.getOrDefault(id, new String[0]));
+    }
+
+    private void registerComponent(String id, Node node, String... aliases) {
         registeredComponents.put(id, node);
-        System.out.println("注册组件: " + id);
+        commandSchema.registerComponent(id);
+        componentIndex.register(id, node, aliases);
+        log.debug("注册组件: {}", id);
+    }
+
+    private void unregisterComponent(String id) {
+        registeredComponents.remove(id);
+        commandSchema.unregisterComponent(id);
+        componentIndex.unregister(id);
+        log.debug("注销组件: {}", id);
     }
 
     /**
-     * 注册新组件按钮事件（FXML 调用）
+     * 注册新组件按钮事件（FXML 调用）：在控制面板创建一个示例按钮
      */
     @FXML
     private void registerNewComponent() {
-        appendToChat("系统", "📝 注册新组件功能开发中...");
-        appendToChat("系统", "当前已注册 " + registeredComponents.size() + " 个组件");
+        String id;
+        do {
+            id = "newButton" + (++sampleComponentCount);
+        } while (registeredComponents.containsKey(id));
+        ObjectNode params = objectMapper.createObjectNode();
+        params.putObject("template").put("type", "button").put("text", "新按钮" + sampleComponentCount);
+        if (createComponents(id, params)) {
+            appendToChat("系统", "当前已注册 " + registeredComponents.size() + " 个组件");
+        }
+    }
+
+    /**
+     * 按模板创建组件并注册（FX 线程）
+     * count > 1 时 ID 为 target-1..target-count，模板中带 ID 的子组件同样加上 -n 后缀；
+     * 任一 ID 已注册或在本批中重复时不创建。所有节点先创建好，再一次性加入父容器，只触发一次布局。
+     */
+    private boolean createComponents(String target, JsonNode params) {
+        if (target == null || target.isEmpty() || "*".equals(target)) {
+            appendToChat("系统", "❌ 创建组件需要指定组件ID");
+            return false;
+        }
+        ComponentTemplate template;
+        try {
+            template = componentFactory.template(params.path("template"));
+        } catch (IllegalArgumentException e) {
+            appendToChat("系统", "❌ 组件模板无效: " + e.getMessage());
+            return false;
+        }
+        int count = Math.max(1, params.path("count").asInt(1));
+        if (count > MAX_CREATE_BATCH) {
+            appendToChat("系统", "❌ 一次最多创建 " + MAX_CREATE_BATCH + " 个组件");
+            return false;
+        }
+        String parentId = params.path("parent").asText("controlPanel");
+        Node parentNode = registeredComponents.get(parentId);
+        if (!(parentNode instanceof Pane)) {
+            appendToChat("系统", "❌ 父容器不存在: " + parentId);
+            return false;
+        }
+
+        String[] ids = new String[count];
+        String[] suffixes = new String[count];
+        List<String> childIds = template.getChildIds();
+        Set<String> batch = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            suffixes[i] = count == 1 ? "" : "-" + (i + 1);
+            ids[i] = target + suffixes[i];
+            List<String> copyIds = new ArrayList<>(childIds.size() + 1);
+            copyIds.add(ids[i]);
+            for (String childId : childIds) {
+                copyIds.add(childId + suffixes[i]);
+            }
+            for (String id : copyIds) {
+                if (registeredComponents.containsKey(id)) {
+                    appendToChat("系统", "❌ 组件ID已存在: " + id);
+                    return false;
+                }
+                if (!batch.add(id)) {
+                    appendToChat("系统", "❌ 组件ID重复: " + id);
+                    return false;
+                }
+            }
+        }
+        String[] aliases = count == 1 && params.path("alias").isTextual()
+                ? new String[]{params.get("alias").asText()} : new String[0];
+        boolean numbered = count > 1 && template.getText().contains("{n}");
+
+        List<Node> created = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Node node = componentFactory.build(template, suffixes[i],
+                    (childId, child) -> registerComponent(childId, child));
+            node.setId(ids[i]);
+            if (numbered) {
+                String text = template.getText().replace("{n}", String.valueOf(i + 1));
+                if (node instanceof Labeled) {
+                    ((Labeled) node).setText(text);
+                } else if (node instanceof TextInputControl) {
+                    ((TextInputControl) node).setText(text);
+                }
+            }
+            registerComponent(ids[i], node, aliases);
+            created.add(node);
+        }
+        ((Pane) parentNode).getChildren().addAll(created);
+
+        appendToChat("系统", count == 1
+                ? "✅ 已创建组件: " + target
+                : String.format("✅ 已创建 %d 个组件: %s-1..%s-%d", count, target, target, count));
+        return true;
+    }
+
+    /**
+     * 移除动态创建的组件（FX 线程）：target 以 * 结尾时按前缀移除
+     * 按父容器分组一次性移除，注销后节点放回节点池；预定义组件不能移除。
+     */
+    private boolean removeComponents(String target) {
+        if (target == null || target.isEmpty()) {
+            appendToChat("系统", "❌ 移除组件需要指定组件ID");
+            return false;
+        }
+        Map<String, Node> removed = new LinkedHashMap<>();
+        if (target.endsWith("*")) {
+            String prefix = target.substring(0, target.length() - 1);
+            for (Map.Entry<String, Node> entry : registeredComponents.entrySet()) {
+                if (entry.getKey().startsWith(prefix) && componentFactory.isDynamic(entry.getValue())) {
+                    removed.put(entry.getKey(), entry.getValue());
+                }
+            }
+        } else {
+            Node node = registeredComponents.get(target);
+            if (node != null && !componentFactory.isDynamic(node)) {
+                appendToChat("系统", "❌ 只能移除动态创建的组件: " + target);
+                return false;
+            }
+            if (node != null) {
+                removed.put(target, node);
+            }
+        }
+        if (removed.isEmpty()) {
+            appendToChat("系统", "❌ 未找到可移除的组件: " + target);
+            return false;
+        }
+
+        Map<Pane, Set<Node>> byParent = new HashMap<>();
+        for (Node node : removed.values()) {
+            if (node.getParent() instanceof Pane) {
+                byParent.computeIfAbsent((Pane) node.getParent(), parent -> new HashSet<>()).add(node);
+            }
+        }
+        byParent.forEach((parent, nodes) -> parent.getChildren().removeAll(nodes));
+
+        for (Map.Entry<String, Node> entry : removed.entrySet()) {
+            // 容器已连同子组件回收时跳过
+            if (registeredComponents.get(entry.getKey()) != entry.getValue()) {
+                continue;
+            }
+            unregisterComponent(entry.getKey());
+            animationEngine.cancel(entry.getValue());
+            componentFactory.recycle(entry.getValue(), (childId, child) -> {
+                if (registeredComponents.get(childId) == child) {
+                    unregisterComponent(childId);
+                }
+            });
+        }
+        appendToChat("系统", "✅ 已移除 " + removed.size() + " 个组件");
+        return true;
     }
 
     /**
@@ -1010,6 +1954,17 @@ public class AIController implements Initializable {
      * 添加消息到聊天区域
      */
     private void appendToChat(String sender, String message) {
+        if (chatMuted > 0 && "系统".equals(sender)) {
+            return;
+        }
+        // 指令和 AI 回复进入历史索引
+        if (historyIndex != null) {
+            if ("您".equals(sender)) {
+                historyIndex.addInstruction(message);
+            } else if ("AI".equals(sender)) {
+                historyIndex.addReply(message);
+            }
+        }
         Platform.runLater(() -> {
             String formattedMessage;
 
@@ -1024,12 +1979,26 @@ public class AIController implements Initializable {
             }
 
             chatArea.appendText(formattedMessage);
+            trimChat();
 
             // 滚动到底部
             chatArea.setScrollTop(Double.MAX_VALUE);
         });
     }
 
+    /**
+     * 聊天内容超出上限时删除最早的整行消息，一次删到上限的四分之三，避免每条消息都触发删除
+     */
+    private void trimChat() {
+        int length = chatArea.getLength();
+        if (length <= MAX_CHAT_CHARS) {
+            return;
+        }
+        String text = chatArea.getText();
+        int cut = text.indexOf('\n', length - MAX_CHAT_CHARS * 3 / 4);
+        chatArea.deleteText(0, cut < 0 ? length - MAX_CHAT_CHARS * 3 / 4 : cut + 1);
+    }
+
 //    /**
 //     * 获取颜色历史记录
 //     */
@@ -1071,10 +2040,177 @@ public class AIController implements Initializable {
      * 清理资源
      */
     public void cleanup() {
-        System.out.println("清理 AI 控制器资源...");
-        if (qwenClient != null) {
-            qwenClient.close();
+        log.info("清理 AI 控制器资源...");
+        if (metricsRefresh != null) {
+            metricsRefresh.stop();
+        }
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        if (instructionQueue != null) {
+            instructionQueue.cancelAll();
+        }
+        if (chatProvider != null) {
+            chatProvider.close();
             appendToChat("系统", "已断开 AI 连接");
         }
+        if (intentIndex != null) {
+            try {
+                intentIndex.close();
+            } catch (Exception e) {
+                log.warn("关闭意图索引失败: {}", e.getMessage());
+            }
+        }
+        if (historyIndex != null) {
+            try {
+                historyIndex.close();
+            } catch (Exception e) {
+                log.warn("关闭历史索引失败: {}", e.getMessage());
+            }
+        }
+        if (macroLibrary != null) {
+            try {
+                macroLibrary.close();
+            } catch (Exception e) {
+                log.warn("关闭宏库失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 相对颜色指令读取组件当前颜色：样式中的背景色、颜色选择器的值，都没有时取主题主色
+     */
+    private class ComponentColorAccess implements LocalColorCommands.ComponentColors {
+
+        @Override
+        public int colorOf(String componentId) {
+            Node node = registeredComponents.get(componentId);
+            if (node instanceof ColorPicker) {
+                return ColorEngine.pack(((ColorPicker) node).getValue());
+            }
+            if (node != null && node.getStyle() != null) {
+                Matcher matcher = BACKGROUND_COLOR.matcher(node.getStyle());
+                String hex = null;
+                while (matcher.find()) {
+                    hex = matcher.group(1);
+                }
+                if (hex != null) {
+                    return ColorEngine.pack(Color.web(hex));
+                }
+            }
+            return ColorEngine.pack(themeEngine.getActivePalette().getAccent());
+        }
+
+        @Override
+        public boolean isColorPicker(String componentId) {
+            return registeredComponents.get(componentId) instanceof ColorPicker;
+        }
+    }
+
+    /**
+     * 撤销历史读取和写回组件状态的方式
+     */
+    private class UndoStateAccess implements UndoHistory.StateAccess {
+
+        @Override
+        public long readBits(byte kind, String target) {
+            Node node = target != null ? registeredComponents.get(target) : null;
+            if (kind == UndoHistory.VISIBLE && node != null) {
+                return animationEngine.visibleOf(node) ? 1 : 0;
+            }
+            if (kind == UndoHistory.COLOR && node instanceof ColorPicker) {
+                return packColor(((ColorPicker) node).getValue());
+            }
+            return 0;
+        }
+
+        @Override
+        public String readValue(byte kind, String target) {
+            Node node = target != null ? registeredComponents.get(target) : null;
+            switch (kind) {
+                case UndoHistory.TEXT:
+                    if (node instanceof Labeled) {
+                        return ((Labeled) node).getText();
+                    }
+                    return node instanceof TextInputControl ? ((TextInputControl) node).getText() : null;
+                case UndoHistory.STYLE:
+                    return node != null ? animationEngine.styleOf(node) : null;
+                case UndoHistory.COLOR_HISTORY:
+                    StringJoiner joiner = new StringJoiner(",");
+                    for (Color color : colorHistory) {
+                        // #RRGGBBAA，保留不透明度
+                        joiner.add(String.format("#%02X%02X%02X%02X", Math.round(color.getRed() * 255),
+                                Math.round(color.getGreen() * 255), Math.round(color.getBlue() * 255),
+                                Math.round(color.getOpacity() * 255)));
+                    }
+                    return joiner.toString();
+                case UndoHistory.PALETTE:
+                    return themeEngine.getActivePalette().key();
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public void apply(byte kind, String target, long bits, String value) {
+            Node node = target != null ? registeredComponents.get(target) : null;
+            switch (kind) {
+                case UndoHistory.VISIBLE:
+                    if (node != null) {
+                        animationEngine.cancel(node);
+                        node.setVisible(bits != 0);
+                        node.setManaged(bits != 0);
+                    }
+                    break;
+                case UndoHistory.TEXT:
+                    if (node instanceof Labeled) {
+                        ((Labeled) node).setText(value);
+                    } else if (node instanceof TextInputControl) {
+                        ((TextInputControl) node).setText(value);
+                    }
+                    break;
+                case UndoHistory.STYLE:
+                    if (node != null) {
+                        animationEngine.cancel(node);
+                        node.setStyle(value);
+                    }
+                    break;
+                case UndoHistory.COLOR:
+                    if (node instanceof ColorPicker) {
+                        ((ColorPicker) node).setValue(unpackColor(bits));
+                    }
+                    break;
+                case UndoHistory.COLOR_HISTORY:
+                    colorHistory.clear();
+                    if (!value.isEmpty()) {
+                        for (String hex : value.split(",")) {
+                            colorHistory.add(Color.web(hex));
+                        }
+                    }
+                    updateColorHistoryDisplay();
+                    break;
+                case UndoHistory.PALETTE:
+                    themeEngine.apply(ThemeEngine.Palette.fromKey(value));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private long packColor(Color color) {
+            if (color == null) {
+                return 0;
+            }
+            // Math.round(double) 返回 long
+            return Math.round(color.getOpacity() * 255) << 24
+                    | Math.round(color.getRed() * 255) << 16
+                    | Math.round(color.getGreen() * 255) << 8
+                    | Math.round(color.getBlue() * 255);
+        }
+
+        private Color unpackColor(long bits) {
+            return Color.rgb((int) (bits >> 16) & 0xFF, (int) (bits >> 8) & 0xFF, (int) bits & 0xFF,
+                    ((bits >> 24) & 0xFF) / 255.0);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,376 @@
+package com.example;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.Node;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundFill;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 过渡动画引擎
+ * 所有进行中的颜色和透明度过渡由同一个 AnimationTimer 驱动，状态存放在按槽位排列的并行基本类型数组中
+ * （颜色打包为 ARGB int，时间为纳秒 long），每帧只遍历活动槽位，不为每个节点创建 Timeline。
+ * 动画中的节点收到新命令时从当前插值继续过渡到新目标（重定向），不会跳回起点。
+ * 撤销历史通过 styleOf / visibleOf 读取动画的最终状态。所有方法都应在 FX 线程上调用。
+ */
+public class AnimationEngine {
+
+    private static final long INACTIVE = Long.MIN_VALUE;
+    private static final Pattern BACKGROUND_COLOR = Pattern.compile("-fx-background-color:\\s*(#[0-9a-fA-F]{6})");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final long durationNanos;
+    private final ClientMetrics metrics;
+    private boolean enabled;
+
+    // 节点 → 槽位
+    private final Map<Node, Integer> slots = new IdentityHashMap<>();
+    private Node[] nodes = new Node[16];
+    private int size;
+
+    // 颜色通道
+    private int[] colorFrom = new int[16];
+    private int[] colorTo = new int[16];
+    private long[] colorStart = new long[16];
+    private String[] finalStyle = new String[16];
+    // 最终样式去掉背景色和文字颜色后的部分，每帧拼接在插值颜色之后
+    private String[] styleRest = new String[16];
+    private String[] textFill = new String[16];
+
+    // 透明度通道
+    private float[] opacityFrom = new float[16];
+    private float[] opacityTo = new float[16];
+    private long[] opacityStart = new long[16];
+    private boolean[] hideAtEnd = new boolean[16];
+
+    private final StringBuilder styleBuilder = new StringBuilder(128);
+    private long lastFrame;
+    private boolean running;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            frame(now);
+        }
+    };
+
+    public AnimationEngine(long durationMillis, boolean enabled, ClientMetrics metrics) {
+        this.durationNanos = Math.max(1, durationMillis) * 1_000_000L;
+        this.enabled = enabled;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 按系统属性创建：ai.animation.enabled（默认 false）、ai.animation.durationMillis（默认 250）
+     */
+    public static AnimationEngine fromProperties(ClientMetrics metrics) {
+        return new AnimationEngine(Long.getLong("ai.animation.durationMillis", 250),
+                Boolean.getBoolean("ai.animation.enabled"), metrics);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 开关动画模式；关闭时进行中的动画直接跳到终点
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            finishAll();
+        }
+    }
+
+    /**
+     * 把节点背景色过渡到目标颜色，文字颜色随目标颜色取黑或白，其他样式保留
+     */
+    public void animateColor(Node node, Color target) {
+        long now = System.nanoTime();
+        int slot = slotOf(node);
+        int from = colorStart[slot] != INACTIVE ? colorAt(slot, now) : currentColor(node);
+        String base = colorStart[slot] != INACTIVE ? finalStyle[slot] : node.getStyle();
+        String style = BulkApplyPipeline.mergeColorStyle(base, target);
+        int to = ColorEngine.pack(target);
+
+        finalStyle[slot] = style;
+        textFill[slot] = ColorEngine.textFillFor(target);
+        int rest = style.indexOf(';', style.indexOf("-fx-text-fill"));
+        styleRest[slot] = style.substring(rest + 1);
+        colorFrom[slot] = from == 0 ? to : from;
+        colorTo[slot] = to;
+        colorStart[slot] = now;
+        start();
+    }
+
+    /**
+     * 淡入显示或淡出隐藏；隐藏在淡出结束后才真正设为不可见并取消布局占位
+     */
+    public void animateVisible(Node node, boolean visible) {
+        if (!slots.containsKey(node) && node.isVisible() == visible && (!visible || node.getOpacity() == 1)) {
+            node.setManaged(visible);
+            return;
+        }
+        long now = System.nanoTime();
+        int slot = slotOf(node);
+        float from;
+        if (opacityStart[slot] != INACTIVE) {
+            from = opacityAt(slot, now);
+        } else if (!node.isVisible()) {
+            from = 0f;
+        } else {
+            from = (float) node.getOpacity();
+        }
+        if (visible && !node.isVisible()) {
+            node.setOpacity(from);
+            node.setVisible(true);
+            node.setManaged(true);
+        }
+        opacityFrom[slot] = from;
+        opacityTo[slot] = visible ? 1f : 0f;
+        opacityStart[slot] = now;
+        hideAtEnd[slot] = !visible;
+        start();
+    }
+
+    /**
+     * 节点的样式：动画中时为动画结束后的样式
+     */
+    public String styleOf(Node node) {
+        Integer slot = slots.get(node);
+        return slot != null && colorStart[slot] != INACTIVE ? finalStyle[slot] : node.getStyle();
+    }
+
+    /**
+     * 节点的可见性：动画中时为动画结束后的可见性
+     */
+    public boolean visibleOf(Node node) {
+        Integer slot = slots.get(node);
+        return slot != null && opacityStart[slot] != INACTIVE ? !hideAtEnd[slot] : node.isVisible();
+    }
+
+    public boolean isAnimating(Node node) {
+        return slots.containsKey(node);
+    }
+
+    /**
+     * 取消节点上的动画（调用方随后直接设置状态），透明度恢复为 1
+     */
+    public void cancel(Node node) {
+        Integer slot = slots.get(node);
+        if (slot != null) {
+            if (opacityStart[slot] != INACTIVE) {
+                node.setOpacity(1);
+            }
+            remove(slot);
+        }
+    }
+
+    /**
+     * 所有动画直接跳到终点
+     */
+    public void finishAll() {
+        for (int i = size - 1; i >= 0; i--) {
+            finish(i);
+            remove(i);
+        }
+    }
+
+    public int activeCount() {
+        return size;
+    }
+
+    private void frame(long now) {
+        long workStart = System.nanoTime();
+        int active = size;
+        for (int i = size - 1; i >= 0; i--) {
+            Node node = nodes[i];
+            if (colorStart[i] != INACTIVE) {
+                if (now - colorStart[i] >= durationNanos) {
+                    node.setStyle(finalStyle[i]);
+                    colorStart[i] = INACTIVE;
+                } else {
+                    node.setStyle(interpolatedStyle(i, colorAt(i, now)));
+                }
+            }
+            if (opacityStart[i] != INACTIVE) {
+                if (now - opacityStart[i] >= durationNanos) {
+                    finishOpacity(i);
+                } else {
+                    node.setOpacity(opacityAt(i, now));
+                }
+            }
+            if (colorStart[i] == INACTIVE && opacityStart[i] == INACTIVE) {
+                remove(i);
+            }
+        }
+        if (metrics != null) {
+            metrics.recordAnimationFrame((System.nanoTime() - workStart) / 1000,
+                    lastFrame == 0 ? 0 : (now - lastFrame) / 1000, active);
+        }
+        lastFrame = now;
+        if (size == 0) {
+            timer.stop();
+            running = false;
+            lastFrame = 0;
+        }
+    }
+
+    private void finish(int slot) {
+        if (colorStart[slot] != INACTIVE) {
+            nodes[slot].setStyle(finalStyle[slot]);
+            colorStart[slot] = INACTIVE;
+        }
+        if (opacityStart[slot] != INACTIVE) {
+            finishOpacity(slot);
+        }
+    }
+
+    private void finishOpacity(int slot) {
+        Node node = nodes[slot];
+        if (hideAtEnd[slot]) {
+            node.setVisible(false);
+            node.setManaged(false);
+        }
+        // 隐藏后恢复不透明，之后无动画显示时不会停留在透明状态
+        node.setOpacity(1);
+        opacityStart[slot] = INACTIVE;
+    }
+
+    private String interpolatedStyle(int slot, int argb) {
+        StringBuilder builder = styleBuilder;
+        builder.setLength(0);
+        builder.append("-fx-background-color: #");
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            builder.append(HEX[(argb >> shift) & 0xF]);
+        }
+        builder.append("; -fx-text-fill: ").append(textFill[slot]).append(';').append(styleRest[slot]);
+        return builder.toString();
+    }
+
+    /**
+     * 缓入缓出（smoothstep）进度
+     */
+    private float progress(long start, long now) {
+        float t = Math.min(1f, Math.max(0f, (float) (now - start) / durationNanos));
+        return t * t * (3f - 2f * t);
+    }
+
+    private int colorAt(int slot, long now) {
+        float t = progress(colorStart[slot], now);
+        int from = colorFrom[slot];
+        int to = colorTo[slot];
+        int argb = 0;
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            int a = (from >>> shift) & 0xFF;
+            int b = (to >>> shift) & 0xFF;
+            argb |= (Math.round(a + (b - a) * t) & 0xFF) << shift;
+        }
+        return argb;
+    }
+
+    private float opacityAt(int slot, long now) {
+        float t = progress(opacityStart[slot], now);
+        return opacityFrom[slot] + (opacityTo[slot] - opacityFrom[slot]) * t;
+    }
+
+    /**
+     * 节点当前的背景色：内联样式中的背景色，其次是区域的第一个纯色背景，都没有时返回 0
+     */
+    private static int currentColor(Node node) {
+        String style = node.getStyle();
+        if (style != null) {
+            Matcher matcher = BACKGROUND_COLOR.matcher(style);
+            String hex = null;
+            while (matcher.find()) {
+                hex = matcher.group(1);
+            }
+            if (hex != null) {
+                return ColorEngine.pack(Color.web(hex));
+            }
+        }
+        if (node instanceof Region) {
+            Background background = ((Region) node).getBackground();
+            if (background != null) {
+                for (BackgroundFill fill : background.getFills()) {
+                    if (fill.getFill() instanceof Color) {
+                        return ColorEngine.pack((Color) fill.getFill());
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    private int slotOf(Node node) {
+        Integer existing = slots.get(node);
+        if (existing != null) {
+            return existing;
+        }
+        if (size == nodes.length) {
+            grow();
+        }
+        int slot = size++;
+        nodes[slot] = node;
+        colorStart[slot] = INACTIVE;
+        opacityStart[slot] = INACTIVE;
+        slots.put(node, slot);
+        return slot;
+    }
+
+    /**
+     * 移除槽位：用最后一个槽位填补空位
+     */
+    private void remove(int slot) {
+        slots.remove(nodes[slot]);
+        int last = --size;
+        if (slot != last) {
+            nodes[slot] = nodes[last];
+            colorFrom[slot] = colorFrom[last];
+            colorTo[slot] = colorTo[last];
+            colorStart[slot] = colorStart[last];
+            finalStyle[slot] = finalStyle[last];
+            styleRest[slot] = styleRest[last];
+            textFill[slot] = textFill[last];
+            opacityFrom[slot] = opacityFrom[last];
+            opacityTo[slot] = opacityTo[last];
+            opacityStart[slot] = opacityStart[last];
+            hideAtEnd[slot] = hideAtEnd[last];
+            slots.put(nodes[slot], slot);
+        }
+        nodes[last] = null;
+        finalStyle[last] = null;
+        styleRest[last] = null;
+        textFill[last] = null;
+    }
+
+    private void grow() {
+        int capacity = nodes.length * 2;
+        nodes = Arrays.copyOf(nodes, capacity);
+        colorFrom = Arrays.copyOf(colorFrom, capacity);
+        colorTo = Arrays.copyOf(colorTo, capacity);
+        colorStart = Arrays.copyOf(colorStart, capacity);
+        finalStyle = Arrays.copyOf(finalStyle, capacity);
+        styleRest = Arrays.copyOf(styleRest, capacity);
+        textFill = Arrays.copyOf(textFill, capacity);
+        opacityFrom = Arrays.copyOf(opacityFrom, capacity);
+        opacityTo = Arrays.copyOf(opacityTo, capacity);
+        opacityStart = Arrays.copyOf(opacityStart, capacity);
+        hideAtEnd = Arrays.copyOf(hideAtEnd, capacity);
+    }
+
+    private void start() {
+        if (!running) {
+            running = true;
+            lastFrame = 0;
+            timer.start();
+        }
+    }
+}
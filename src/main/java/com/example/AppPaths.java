@@ -0,0 +1,35 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 本地数据目录
+ * 默认为 ~/.javafx-ai-assistant，可通过 -Dai.data.dir 指定
+ */
+public final class AppPaths {
+
+    private AppPaths() {
+    }
+
+    /**
+     * 获取数据目录（不存在时自动创建）
+     */
+    public static Path dataDir() throws IOException {
+        String configured = System.getProperty("ai.data.dir");
+        Path dir = configured != null
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".javafx-ai-assistant");
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    /**
+     * 获取数据目录下的文件路径
+     */
+    public static Path resolve(String fileName) throws IOException {
+        return dataDir().resolve(fileName);
+    }
+}
@@ -0,0 +1,306 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.Labeled;
+import javafx.scene.control.TextInputControl;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 批量命令应用流水线
+ * 1. 在 FX 线程上一次性读取目标节点的当前样式，并解析颜色参数（解析器可能读取界面状态，如颜色历史）；
+ * 2. 在 ForkJoin 线程池中并行计算新的样式、文本和可见性，只使用第 1 步的快照；
+ * 3. 回到 FX 线程一次性提交，可见性/managed 的切换按父节点分组，
+ *    所有修改落在同一个脉冲里，只触发一次 CSS 和一次布局。
+ * 动画模式下颜色和可见性交给 AnimationEngine 过渡，由同一个动画脉冲驱动。
+ */
+public class BulkApplyPipeline {
+
+    private final Function<String, Color> colorResolver;
+    private final ForkJoinPool pool;
+    private AnimationEngine animations;
+
+    public BulkApplyPipeline(Function<String, Color> colorResolver) {
+        this(colorResolver, ForkJoinPool.commonPool());
+    }
+
+    public BulkApplyPipeline(Function<String, Color> colorResolver, ForkJoinPool pool) {
+        this.colorResolver = colorResolver;
+        this.pool = pool;
+    }
+
+    /**
+     * 设置动画引擎（动画模式开启时颜色和可见性以过渡方式提交）
+     */
+    public void setAnimationEngine(AnimationEngine animations) {
+        this.animations = animations;
+    }
+
+    /**
+     * 是否支持批量应用该命令
+     */
+    public static boolean supports(String command) {
+        switch (command.toLowerCase()) {
+            case "showcomponent":
+            case "hidecomponent":
+            case "changetext":
+            case "changecolor":
+            case "setstyle":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 批量应用操作，返回提交后的结果（在 FX 线程上完成）
+     */
+    public CompletableFuture<List<Result>> apply(List<Operation> operations) {
+        CompletableFuture<List<Task>> snapshot = new CompletableFuture<>();
+        runOnFxThread(() -> {
+            List<Task> tasks = new ArrayList<>(operations.size());
+            // 同一条命令展开到多个组件时参数相同，每种颜色只解析一次
+            Map<String, Color> colors = new HashMap<>();
+            for (Operation operation : operations) {
+                Color color = null;
+                if ("changecolor".equalsIgnoreCase(operation.command) && operation.params.has("color")) {
+                    color = colors.computeIfAbsent(operation.params.path("color").asText(), colorResolver);
+                }
+                tasks.add(new Task(operation, operation.node.getStyle(), color));
+            }
+            snapshot.complete(tasks);
+        });
+
+        return snapshot
+                // 在线程池的工作线程中发起并行流，并行流会使用同一个 ForkJoin 池
+                .thenApplyAsync(tasks -> tasks.parallelStream()
+                        .map(this::compute)
+                        .collect(Collectors.toList()), pool)
+                .thenCompose(results -> {
+                    CompletableFuture<List<Result>> committed = new CompletableFuture<>();
+                    runOnFxThread(() -> {
+                        commit(results);
+                        committed.complete(results);
+                    });
+                    return committed;
+                });
+    }
+
+    /**
+     * 计算单个节点的目标状态（不触碰场景图，可并行执行）
+     */
+    Result compute(Task task) {
+        Operation operation = task.operation;
+        Result result = new Result(operation);
+        JsonNode params = operation.params;
+
+        switch (operation.command.toLowerCase()) {
+            case "showcomponent":
+                result.visible = Boolean.TRUE;
+                break;
+            case "hidecomponent":
+                result.visible = Boolean.FALSE;
+                break;
+            case "changetext":
+                if (params.has("text")) {
+                    result.text = params.path("text").asText();
+                } else {
+                    result.error = "缺少参数: text";
+                }
+                break;
+            case "setstyle":
+                if (params.has("style")) {
+                    result.style = params.path("style").asText();
+                } else {
+                    result.error = "缺少参数: style";
+                }
+                break;
+            case "changecolor":
+                Color color = task.color;
+                if (color == null) {
+                    result.error = "颜色格式错误: " + params.path("color").asText();
+                } else {
+                    result.color = color;
+                    result.style = mergeColorStyle(task.currentStyle, color);
+                }
+                break;
+            default:
+                result.error = "不支持批量执行: " + operation.command;
+        }
+        return result;
+    }
+
+    /**
+     * 在 FX 线程上一次性提交所有计算结果
+     */
+    void commit(List<Result> results) {
+        Map<Parent, List<Result>> visibilityByParent = new LinkedHashMap<>();
+        boolean animated = animations != null && animations.isEnabled();
+
+        for (Result result : results) {
+            if (result.error != null) {
+                continue;
+            }
+            Node node = result.operation.node;
+            if (animated && (result.color != null || result.visible != null)) {
+                if (result.color != null) {
+                    animations.animateColor(node, result.color);
+                } else {
+                    animations.animateVisible(node, result.visible);
+                }
+                continue;
+            }
+            if (animations != null) {
+                animations.cancel(node);
+            }
+            if (result.style != null) {
+                node.setStyle(result.style);
+            }
+            if (result.text != null) {
+                if (node instanceof Labeled) {
+                    ((Labeled) node).setText(result.text);
+                } else if (node instanceof TextInputControl) {
+                    ((TextInputControl) node).setText(result.text);
+                } else {
+                    result.error = "组件不支持文本修改";
+                }
+            }
+            if (result.visible != null) {
+                visibilityByParent.computeIfAbsent(node.getParent(), p -> new ArrayList<>()).add(result);
+            }
+        }
+
+        // 同一父节点下的 managed 切换集中处理
+        for (List<Result> group : visibilityByParent.values()) {
+            for (Result result : group) {
+                result.operation.node.setVisible(result.visible);
+                result.operation.node.setManaged(result.visible);
+            }
+        }
+    }
+
+    /**
+     * 替换样式中的背景色和文字颜色，保留其他属性
+     */
+    static String mergeColorStyle(String currentStyle, Color color) {
+        String hex = String.format("#%02X%02X%02X",
+                (int) (color.getRed() * 255),
+                (int) (color.getGreen() * 255),
+                (int) (color.getBlue() * 255));
+        StringBuilder builder = new StringBuilder(64 + (currentStyle == null ? 0 : currentStyle.length()));
+        builder.append("-fx-background-color: ").append(hex)
+                .append("; -fx-text-fill: ").append(ColorEngine.textFillFor(color)).append(';');
+        if (currentStyle != null) {
+            for (String declaration : currentStyle.split(";")) {
+                String trimmed = declaration.trim();
+                if (!trimmed.isEmpty()
+                        && !trimmed.startsWith("-fx-background-color")
+                        && !trimmed.startsWith("-fx-text-fill")) {
+                    builder.append(' ').append(trimmed).append(';');
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void runOnFxThread(Runnable runnable) {
+        if (Platform.isFxApplicationThread()) {
+            runnable.run();
+        } else {
+            Platform.runLater(runnable);
+        }
+    }
+
+    /**
+     * 待应用的操作
+     */
+    public static class Operation {
+        private final String componentId;
+        private final Node node;
+        private final String command;
+        private final JsonNode params;
+
+        public Operation(String componentId, Node node, String command, JsonNode params) {
+            this.componentId = componentId;
+            this.node = node;
+            this.command = command;
+            this.params = params == null ? MissingNode.getInstance() : params;
+        }
+
+        public String getComponentId() {
+            return componentId;
+        }
+
+        public Node getNode() {
+            return node;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public JsonNode getParams() {
+            return params;
+        }
+    }
+
+    /**
+     * 操作及其节点的样式快照和已解析的颜色
+     */
+    static class Task {
+        private final Operation operation;
+        private final String currentStyle;
+        private final Color color;
+
+        Task(Operation operation, String currentStyle, Color color) {
+            this.operation = operation;
+            this.currentStyle = currentStyle;
+            this.color = color;
+        }
+    }
+
+    /**
+     * 计算结果
+     */
+    public static class Result {
+        private final Operation operation;
+        private String style;
+        private String text;
+        private Boolean visible;
+        private Color color;
+        private String error;
+
+        Result(Operation operation) {
+            this.operation = operation;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public Color getColor() {
+            return color;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 大模型服务提供方
+ * 控制器只依赖这个接口；DashScope（QwenClient）、本地模型（LocalModelProvider）
+ * 以及按延迟选择的组合（ProviderSelector）都实现它。
+ */
+public interface ChatProvider {
+
+    /**
+     * 提供方名称（用于日志和基准测试）
+     */
+    String getName();
+
+    /**
+     * 建立并验证连接
+     */
+    CompletableFuture<Boolean> connect();
+
+    boolean isConnected();
+
+    /**
+     * 设置响应处理器，处理器同时收到原始指令和响应内容
+     */
+    void setResponseHandler(BiConsumer<String, String> handler);
+
+    /**
+     * 设置命令模式，用于生成提示词和校验返回的命令
+     */
+    void setCommandSchema(CommandSchema commandSchema);
+
+    /**
+     * 设置组件索引，用于生成提示词中的组件表和相关组件状态
+     */
+    void setComponentIndex(ComponentIndex componentIndex);
+
+    /**
+     * 设置界面快照来源（返回 PNG 的 data URL，没有快照时返回 null），为 null 时不附带快照
+     * 支持图像输入的模型在用户消息中附带快照；不支持的提供方忽略。
+     */
+    default void setImageSource(Supplier<String> imageSource) {
+    }
+
+    /**
+     * 发送自然语言指令，progress 接收请求阶段变化
+     * componentState 为相关组件的当前状态描述（ComponentIndex.describeState），读取节点属性，
+     * 须由调用方在 FX 线程上生成后传入；为空时用户消息不附带状态。
+     * 返回的 Future 在响应交给处理器后完成，取消它会中止请求。
+     */
+    CompletableFuture<Void> sendInstruction(String naturalLanguageCommand, String componentState,
+                                            Consumer<Phase> progress);
+
+    default CompletableFuture<Void> sendInstruction(String naturalLanguageCommand, Consumer<Phase> progress) {
+        return sendInstruction(naturalLanguageCommand, "", progress);
+    }
+
+    default CompletableFuture<Void> sendInstruction(String naturalLanguageCommand) {
+        return sendInstruction(naturalLanguageCommand, phase -> { });
+    }
+
+    /**
+     * 解析响应为 JSON 命令
+     */
+    JsonNode parseAIResponse(String response);
+
+    ClientMetrics getMetrics();
+
+    /**
+     * 连接情况摘要
+     */
+    default String connectionSummary() {
+        return getMetrics().connectionSummary();
+    }
+
+    /**
+     * 热连接探测往返耗时（毫秒），未测量时返回 -1
+     */
+    long getWarmRttMillis();
+
+    void close();
+
+    /**
+     * 按系统属性 ai.provider 创建提供方：
+     * qwen（默认）只用 DashScope；local 只用本地模型；auto 同时连接两者，按实测延迟选择；
+     * mock 回放录制的响应，不访问网络
+     */
+    static ChatProvider fromProperties(String apiKey, ClientMetrics metrics) {
+        String mode = System.getProperty("ai.provider", "qwen").trim().toLowerCase();
+        switch (mode) {
+            case "mock":
+                return MockChatProvider.fromProperties(metrics);
+            case "local":
+                return LocalModelProvider.fromProperties(metrics);
+            case "auto":
+                if (apiKey == null || apiKey.isBlank()) {
+                    return LocalModelProvider.fromProperties(metrics);
+                }
+                // 每个提供方各自记录握手和热连接往返，其余指标汇总到 metrics
+                return new ProviderSelector(metrics, new QwenClient(apiKey, metrics.child()),
+                        LocalModelProvider.fromProperties(metrics.child()));
+            default:
+                return new QwenClient(apiKey, metrics);
+        }
+    }
+
+    /**
+     * 请求阶段
+     */
+    enum Phase {
+        // 请求已发出
+        SENDING,
+        // 已收到响应头，正在接收响应体
+        STREAMING,
+        // 响应已交给处理器执行
+        APPLYING
+    }
+}
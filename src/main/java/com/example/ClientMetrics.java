@@ -0,0 +1,655 @@
+package com.example;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Qwen 客户端运行指标
+ * 计数器使用 LongAdder（分段累加，多线程写入无竞争），延迟使用 LatencyRecorder 滚动窗口采样。
+ */
+public class ClientMetrics {
+
+    private static final int LATENCY_WINDOW = 1024;
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    // 连接相关
+    private final AtomicLong handshakeMillis = new AtomicLong(-1);
+    private final AtomicLong warmRttMillis = new AtomicLong(-1);
+    private final LongAdder totalRequests = new LongAdder();
+    private final LongAdder reusedRequests = new LongAdder();
+    private final LongAdder keepAlivePings = new LongAdder();
+    private final LongAdder keepAliveFailures = new LongAdder();
+
+    // 请求结果与延迟
+    private final LongAdder completedRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder requestMicrosTotal = new LongAdder();
+    private final LatencyRecorder requestLatency = new LatencyRecorder(LATENCY_WINDOW);
+
+    // 模型路由相关
+    private final LongAdder fastRoutes = new LongAdder();
+    private final LongAdder strongRoutes = new LongAdder();
+    private final LongAdder visionRoutes = new LongAdder();
+    private final LongAdder escalations = new LongAdder();
+
+    // 响应解析相关
+    private final LongAdder parsedClean = new LongAdder();
+    private final LongAdder parsedRepaired = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+
+    // token 与首字节时间
+    private final LongAdder usageResponses = new LongAdder();
+    private final LongAdder promptTokens = new LongAdder();
+    private final LongAdder completionTokens = new LongAdder();
+    private final LongAdder cachedPromptTokens = new LongAdder();
+    private final LongAdder firstByteSamples = new LongAdder();
+    private final LongAdder firstByteMillisTotal = new LongAdder();
+    private final LatencyRecorder firstByteLatency = new LatencyRecorder(LATENCY_WINDOW);
+
+    // 本地意图索引
+    private final LongAdder intentHits = new LongAdder();
+    private final LongAdder intentMisses = new LongAdder();
+
+    // 过渡动画帧（FX 线程写入）
+    private final LongAdder animationFrames = new LongAdder();
+    private final LongAdder animationWorkMicrosTotal = new LongAdder();
+    private final LatencyRecorder animationWork = new LatencyRecorder(LATENCY_WINDOW);
+    private final LatencyRecorder animationInterval = new LatencyRecorder(LATENCY_WINDOW);
+    private final AtomicLong activeAnimations = new AtomicLong();
+    private final AtomicLong peakAnimations = new AtomicLong();
+
+    // 并发限制
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    // 并发上限放大 100 倍存储，保留两位小数
+    private final AtomicLong concurrencyLimitCenti = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+
+    // 界面快照（FX 线程写入）
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder snapshotCacheHits = new LongAdder();
+    private final LongAdder snapshotTiles = new LongAdder();
+    private final LongAdder snapshotBands = new LongAdder();
+    private final LongAdder snapshotCaptureMicrosTotal = new LongAdder();
+    private final LongAdder snapshotEncodeMicrosTotal = new LongAdder();
+    private final LatencyRecorder snapshotCapture = new LatencyRecorder(LATENCY_WINDOW);
+    private final LatencyRecorder snapshotEncode = new LatencyRecorder(LATENCY_WINDOW);
+    private final AtomicLong snapshotBytes = new AtomicLong();
+    private final LongAdder imagesAttached = new LongAdder();
+
+    // 传输字节数：请求体压缩前/线上，响应体线上/解码后
+    private final LongAdder requestBodies = new LongAdder();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder requestWireBytes = new LongAdder();
+    private final LongAdder compressedRequests = new LongAdder();
+    private final LongAdder responseBodies = new LongAdder();
+    private final LongAdder responseWireBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder compressedResponses = new LongAdder();
+
+    // 汇总指标，握手和热连接往返以外的记录同时计入
+    private final ClientMetrics parent;
+
+    public ClientMetrics() {
+        this(null);
+    }
+
+    private ClientMetrics(ClientMetrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * 为单个提供方创建指标：握手和热连接往返只记在自己身上，其余记录同时汇总到当前对象
+     */
+    public ClientMetrics child() {
+        return new ClientMetrics(this);
+    }
+
+    /**
+     * 记录首次建连（DNS + TCP + TLS + 首个往返）耗时
+     */
+    public void recordHandshake(long millis) {
+        handshakeMillis.set(millis);
+    }
+
+    /**
+     * 记录连接已热时的探测往返耗时
+     */
+    public void recordWarmRtt(long millis) {
+        warmRttMillis.set(millis);
+    }
+
+    /**
+     * 记录一次业务请求，reused 表示是否落在已预热的连接上
+     */
+    public void recordRequest(boolean reused) {
+        if (parent != null) {
+            parent.recordRequest(reused);
+        }
+        totalRequests.increment();
+        if (reused) {
+            reusedRequests.increment();
+        }
+    }
+
+    /**
+     * 记录一次请求结束（成功或失败），latencyMicros 为发出请求到读完响应体的耗时
+     */
+    public void recordCompletion(long latencyMicros, boolean success) {
+        if (parent != null) {
+            parent.recordCompletion(latencyMicros, success);
+        }
+        completedRequests.increment();
+        if (!success) {
+            failedRequests.increment();
+        }
+        requestMicrosTotal.add(latencyMicros);
+        requestLatency.record(latencyMicros);
+    }
+
+    public void recordKeepAlivePing(boolean success) {
+        if (parent != null) {
+            parent.recordKeepAlivePing(success);
+        }
+        keepAlivePings.increment();
+        if (!success) {
+            keepAliveFailures.increment();
+        }
+    }
+
+    /**
+     * 记录一次路由决策
+     */
+    public void recordRoute(ModelRouter.Decision decision) {
+        if (parent != null) {
+            parent.recordRoute(decision);
+        }
+        if (decision.isFast()) {
+            fastRoutes.increment();
+        } else if (decision.isVision()) {
+            visionRoutes.increment();
+        } else {
+            strongRoutes.increment();
+        }
+    }
+
+    /**
+     * 记录一次从快速模型升级到强模型
+     */
+    public void recordEscalation() {
+        if (parent != null) {
+            parent.recordEscalation();
+        }
+        escalations.increment();
+    }
+
+    /**
+     * 记录一次命令解析结果
+     */
+    public void recordParse(boolean success, boolean repaired) {
+        if (parent != null) {
+            parent.recordParse(success, repaired);
+        }
+        if (!success) {
+            parseFailures.increment();
+        } else if (repaired) {
+            parsedRepaired.increment();
+        } else {
+            parsedClean.increment();
+        }
+    }
+
+    /**
+     * 记录一次响应的 token 用量
+     */
+    public void recordUsage(long prompt, long completion, long cachedPrompt) {
+        if (parent != null) {
+            parent.recordUsage(prompt, completion, cachedPrompt);
+        }
+        usageResponses.increment();
+        promptTokens.add(prompt);
+        completionTokens.add(completion);
+        cachedPromptTokens.add(cachedPrompt);
+    }
+
+    /**
+     * 记录从发出请求到收到响应头的耗时
+     */
+    public void recordTimeToFirstByte(long millis) {
+        if (parent != null) {
+            parent.recordTimeToFirstByte(millis);
+        }
+        firstByteSamples.increment();
+        firstByteMillisTotal.add(millis);
+        firstByteLatency.record(millis * 1000);
+    }
+
+    /**
+     * 记录一次本地意图索引查询
+     */
+    public void recordIntentLookup(boolean hit) {
+        if (parent != null) {
+            parent.recordIntentLookup(hit);
+        }
+        if (hit) {
+            intentHits.increment();
+        } else {
+            intentMisses.increment();
+        }
+    }
+
+    /**
+     * 记录一帧动画：本帧计算耗时、与上一帧的间隔（微秒，首帧为 0）和本帧开始时的活动动画数
+     */
+    public void recordAnimationFrame(long workMicros, long intervalMicros, int active) {
+        if (parent != null) {
+            parent.recordAnimationFrame(workMicros, intervalMicros, active);
+        }
+        animationFrames.increment();
+        animationWorkMicrosTotal.add(workMicros);
+        animationWork.record(workMicros);
+        if (intervalMicros > 0) {
+            animationInterval.record(intervalMicros);
+        }
+        activeAnimations.set(active);
+        peakAnimations.accumulateAndGet(active, Math::max);
+    }
+
+    /**
+     * 记录一次界面快照：截取（渲染 + 读取像素）和编码耗时（微秒）、变化的图块数、重新压缩的条带数和 PNG 大小
+     */
+    public void recordSnapshot(long captureMicros, long encodeMicros, int changedTiles, int encodedBands,
+                               int bytes) {
+        if (parent != null) {
+            parent.recordSnapshot(captureMicros, encodeMicros, changedTiles, encodedBands, bytes);
+        }
+        snapshots.increment();
+        snapshotCaptureMicrosTotal.add(captureMicros);
+        snapshotEncodeMicrosTotal.add(encodeMicros);
+        snapshotCapture.record(captureMicros);
+        snapshotEncode.record(encodeMicros);
+        snapshotTiles.add(changedTiles);
+        snapshotBands.add(encodedBands);
+        snapshotBytes.set(bytes);
+    }
+
+    /**
+     * 记录一次没有变化、直接使用缓存的快照
+     */
+    public void recordSnapshotCacheHit() {
+        if (parent != null) {
+            parent.recordSnapshotCacheHit();
+        }
+        snapshotCacheHits.increment();
+    }
+
+    /**
+     * 记录一次附带了界面快照的请求
+     */
+    public void recordImageAttached() {
+        if (parent != null) {
+            parent.recordImageAttached();
+        }
+        imagesAttached.increment();
+    }
+
+    /**
+     * 记录一次请求体：编码前和实际发送的字节数（相同表示未压缩）
+     */
+    public void recordRequestBytes(long raw, long wire) {
+        if (parent != null) {
+            parent.recordRequestBytes(raw, wire);
+        }
+        requestBodies.increment();
+        requestBytes.add(raw);
+        requestWireBytes.add(wire);
+        if (wire != raw) {
+            compressedRequests.increment();
+        }
+    }
+
+    /**
+     * 记录一次响应体：线上收到和解码后的字节数，compressed 表示响应带有压缩编码
+     */
+    public void recordResponseBytes(long wire, long decoded, boolean compressed) {
+        if (parent != null) {
+            parent.recordResponseBytes(wire, decoded, compressed);
+        }
+        responseBodies.increment();
+        responseWireBytes.add(wire);
+        responseBytes.add(decoded);
+        if (compressed) {
+            compressedResponses.increment();
+        }
+    }
+
+    /**
+     * 记录一次限流或超时（并发上限因此收缩）
+     */
+    public void recordThrottle() {
+        if (parent != null) {
+            parent.recordThrottle();
+        }
+        throttled.increment();
+    }
+
+    /**
+     * 记录一次被限流后的重试
+     */
+    public void recordRetry() {
+        if (parent != null) {
+            parent.recordRetry();
+        }
+        retries.increment();
+    }
+
+    /**
+     * 记录并发限制器的当前状态
+     */
+    public void recordConcurrency(double limit, int inFlight, int queued) {
+        if (parent != null) {
+            parent.recordConcurrency(limit, inFlight, queued);
+        }
+        concurrencyLimitCenti.set(Math.round(limit * 100));
+        this.inFlight.set(inFlight);
+        this.queued.set(queued);
+    }
+
+    /**
+     * 并发限制摘要
+     */
+    public String concurrencySummary() {
+        return String.format("并发上限 %.1f, 在途 %d, 排队 %d, 限流 %d 次, 重试 %d 次",
+                concurrencyLimitCenti.get() / 100.0, inFlight.get(), queued.get(), throttled.sum(), retries.sum());
+    }
+
+    /**
+     * 动画帧摘要，没有动画帧时返回空字符串
+     */
+    public String animationSummary() {
+        if (animationFrames.sum() == 0) {
+            return "";
+        }
+        long[] work = animationWork.percentiles(QUANTILES);
+        long[] interval = animationInterval.percentiles(QUANTILES);
+        return String.format("动画 %d 帧, 计算 p50/p99: %d / %d µs, 帧间隔 p50/p99: %.1f / %.1f ms, 并发 %d (峰值 %d)",
+                animationFrames.sum(), work[0], work[2], interval[0] / 1000.0, interval[2] / 1000.0,
+                activeAnimations.get(), peakAnimations.get());
+    }
+
+    /**
+     * 界面快照摘要，没有快照时返回空字符串
+     */
+    public String snapshotSummary() {
+        if (snapshots.sum() + snapshotCacheHits.sum() + imagesAttached.sum() == 0) {
+            return "";
+        }
+        long[] capture = snapshotCapture.percentiles(QUANTILES);
+        long[] encode = snapshotEncode.percentiles(QUANTILES);
+        return String.format("快照 %d 次 (缓存 %d), 截取 p50/p99: %d / %d µs, 编码 p50/p99: %d / %d µs, "
+                        + "变化图块 %d, 压缩条带 %d, %.1f KB, 附带 %d 次",
+                snapshots.sum(), snapshotCacheHits.sum(), capture[0], capture[2], encode[0], encode[2],
+                snapshotTiles.sum(), snapshotBands.sum(), snapshotBytes.get() / 1024.0, imagesAttached.sum());
+    }
+
+    /**
+     * 传输字节摘要，没有记录时返回空字符串
+     */
+    public String transferSummary() {
+        if (requestBodies.sum() + responseBodies.sum() == 0) {
+            return "";
+        }
+        return String.format("请求体 %.1f → %.1f KB (压缩 %d/%d 次), 响应体 %.1f → %.1f KB (压缩 %d/%d 次)",
+                requestBytes.sum() / 1024.0, requestWireBytes.sum() / 1024.0, compressedRequests.sum(),
+                requestBodies.sum(), responseWireBytes.sum() / 1024.0, responseBytes.sum() / 1024.0,
+                compressedResponses.sum(), responseBodies.sum());
+    }
+
+    /**
+     * 平均每次请求的输入 token 数
+     */
+    public double getAveragePromptTokens() {
+        long responses = usageResponses.sum();
+        return responses == 0 ? 0.0 : (double) promptTokens.sum() / responses;
+    }
+
+    /**
+     * 平均首字节时间（毫秒）
+     */
+    public double getAverageTimeToFirstByte() {
+        long samples = firstByteSamples.sum();
+        return samples == 0 ? 0.0 : (double) firstByteMillisTotal.sum() / samples;
+    }
+
+    public long getHandshakeMillis() {
+        return handshakeMillis.get();
+    }
+
+    public long getWarmRttMillis() {
+        return warmRttMillis.get();
+    }
+
+    public long getTotalRequests() {
+        return totalRequests.sum();
+    }
+
+    public long getKeepAlivePings() {
+        return keepAlivePings.sum();
+    }
+
+    /**
+     * 请求延迟分位数（微秒，滚动窗口）
+     */
+    public long[] getLatencyPercentiles(double... quantiles) {
+        return requestLatency.percentiles(quantiles);
+    }
+
+    /**
+     * 动画每帧处理耗时分位数（微秒，滚动窗口）
+     */
+    public long[] getAnimationWorkPercentiles(double... quantiles) {
+        return animationWork.percentiles(quantiles);
+    }
+
+    /**
+     * 动画帧间隔分位数（微秒，滚动窗口）
+     */
+    public long[] getAnimationIntervalPercentiles(double... quantiles) {
+        return animationInterval.percentiles(quantiles);
+    }
+
+    /**
+     * 连接复用率（0~1），没有请求时返回 0
+     */
+    public double getReuseRatio() {
+        long total = totalRequests.sum();
+        return total == 0 ? 0.0 : (double) reusedRequests.sum() / total;
+    }
+
+    /**
+     * 请求错误率（0~1）
+     */
+    public double getErrorRate() {
+        long completed = completedRequests.sum();
+        return completed == 0 ? 0.0 : (double) failedRequests.sum() / completed;
+    }
+
+    /**
+     * 输出速度：输出 token 总数 / 请求总耗时
+     */
+    public double getTokensPerSecond() {
+        long micros = requestMicrosTotal.sum();
+        return micros == 0 ? 0.0 : completionTokens.sum() / (micros / 1_000_000.0);
+    }
+
+    /**
+     * 服务端前缀缓存命中率（缓存命中的输入 token / 输入 token）
+     */
+    public double getPromptCacheHitRate() {
+        long prompt = promptTokens.sum();
+        return prompt == 0 ? 0.0 : (double) cachedPromptTokens.sum() / prompt;
+    }
+
+    /**
+     * 本地意图索引命中率（0~1）
+     */
+    public double getIntentHitRate() {
+        long hits = intentHits.sum();
+        long total = hits + intentMisses.sum();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * 连接情况摘要
+     */
+    public String connectionSummary() {
+        return String.format("握手耗时 %d ms, 热连接往返 %d ms, 复用率 %.0f%% (%d/%d), 保活探测 %d 次 (失败 %d)",
+                handshakeMillis.get(), warmRttMillis.get(),
+                getReuseRatio() * 100, reusedRequests.sum(), totalRequests.sum(),
+                keepAlivePings.sum(), keepAliveFailures.sum());
+    }
+
+    /**
+     * 路由情况摘要
+     */
+    public String routingSummary() {
+        return String.format("快速模型 %d 次, 强模型 %d 次, 视觉模型 %d 次, 升级 %d 次",
+                fastRoutes.sum(), strongRoutes.sum(), visionRoutes.sum(), escalations.sum());
+    }
+
+    /**
+     * 解析情况摘要
+     */
+    public String parseSummary() {
+        return String.format("直接解析 %d 次, 本地修复 %d 次, 解析失败 %d 次",
+                parsedClean.sum(), parsedRepaired.sum(), parseFailures.sum());
+    }
+
+    /**
+     * token 与首字节时间摘要
+     */
+    public String tokenSummary() {
+        return String.format("平均输入 %.0f token (缓存命中 %d), 输出 %d token, 平均首字节 %.0f ms",
+                getAveragePromptTokens(), cachedPromptTokens.sum(), completionTokens.sum(),
+                getAverageTimeToFirstByte());
+    }
+
+    /**
+     * 指标面板文本
+     */
+    public String dashboardText() {
+        long[] latency = requestLatency.percentiles(QUANTILES);
+        long[] firstByte = firstByteLatency.percentiles(QUANTILES);
+        return String.format("请求 %d 次, 失败 %d 次 (错误率 %.1f%%)%n"
+                        + "延迟 p50/p95/p99: %d / %d / %d ms%n"
+                        + "首字节 p50/p95/p99: %d / %d / %d ms%n"
+                        + "输入 %d token, 输出 %d token, %.1f token/s%n"
+                        + "前缀缓存命中 %.0f%%, 本地意图命中 %.0f%% (%d/%d)%n"
+                        + "%s%n%s%n%s",
+                completedRequests.sum(), failedRequests.sum(), getErrorRate() * 100,
+                latency[0] / 1000, latency[1] / 1000, latency[2] / 1000,
+                firstByte[0] / 1000, firstByte[1] / 1000, firstByte[2] / 1000,
+                promptTokens.sum(), completionTokens.sum(), getTokensPerSecond(),
+                getPromptCacheHitRate() * 100, getIntentHitRate() * 100,
+                intentHits.sum(), intentHits.sum() + intentMisses.sum(),
+                routingSummary(), parseSummary(), concurrencySummary())
+                + (animationFrames.sum() == 0 ? "" : System.lineSeparator() + animationSummary())
+                + (snapshots.sum() == 0 ? "" : System.lineSeparator() + snapshotSummary())
+                + (requestBodies.sum() + responseBodies.sum() == 0 ? "" : System.lineSeparator() + transferSummary());
+    }
+
+    /**
+     * 导出 Prometheus 文本格式
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        counter(out, "ai_requests_total", "Requests sent to the model", totalRequests.sum());
+        counter(out, "ai_requests_reused_total", "Requests sent on a warm connection", reusedRequests.sum());
+        counter(out, "ai_requests_completed_total", "Requests that finished", completedRequests.sum());
+        counter(out, "ai_requests_failed_total", "Requests that failed", failedRequests.sum());
+        counter(out, "ai_keepalive_pings_total", "Keep-alive probes", keepAlivePings.sum());
+        counter(out, "ai_keepalive_failures_total", "Failed keep-alive probes", keepAliveFailures.sum());
+        counter(out, "ai_route_fast_total", "Instructions routed to the fast model", fastRoutes.sum());
+        counter(out, "ai_route_strong_total", "Instructions routed to the strong model", strongRoutes.sum());
+        counter(out, "ai_route_vision_total", "Instructions routed to the vision model", visionRoutes.sum());
+        counter(out, "ai_route_escalations_total", "Fast model answers escalated", escalations.sum());
+        counter(out, "ai_parse_clean_total", "Responses parsed without repair", parsedClean.sum());
+        counter(out, "ai_parse_repaired_total", "Responses repaired locally", parsedRepaired.sum());
+        counter(out, "ai_parse_failures_total", "Responses that could not be parsed", parseFailures.sum());
+        counter(out, "ai_prompt_tokens_total", "Prompt tokens", promptTokens.sum());
+        counter(out, "ai_prompt_cached_tokens_total", "Prompt tokens served from the prefix cache",
+                cachedPromptTokens.sum());
+        counter(out, "ai_completion_tokens_total", "Completion tokens", completionTokens.sum());
+        counter(out, "ai_intent_hits_total", "Instructions answered by the local intent index", intentHits.sum());
+        counter(out, "ai_intent_misses_total", "Instructions not found in the local intent index",
+                intentMisses.sum());
+        counter(out, "ai_animation_frames_total", "Animation frames driven by the shared timer",
+                animationFrames.sum());
+        counter(out, "ai_snapshots_total", "UI snapshots captured and encoded", snapshots.sum());
+        counter(out, "ai_snapshot_cache_hits_total", "UI snapshots served from the cache", snapshotCacheHits.sum());
+        counter(out, "ai_snapshot_bands_encoded_total", "PNG bands recompressed for snapshots", snapshotBands.sum());
+        counter(out, "ai_images_attached_total", "Requests carrying a UI snapshot", imagesAttached.sum());
+        counter(out, "ai_request_body_bytes_total", "Request body bytes before compression", requestBytes.sum());
+        counter(out, "ai_request_wire_bytes_total", "Request body bytes sent", requestWireBytes.sum());
+        counter(out, "ai_requests_compressed_total", "Requests sent with a compressed body",
+                compressedRequests.sum());
+        counter(out, "ai_response_wire_bytes_total", "Response body bytes received", responseWireBytes.sum());
+        counter(out, "ai_response_body_bytes_total", "Response body bytes after decoding", responseBytes.sum());
+        counter(out, "ai_responses_compressed_total", "Responses received with a content encoding",
+                compressedResponses.sum());
+        counter(out, "ai_throttled_total", "Requests rejected with 429/503 or timed out", throttled.sum());
+        counter(out, "ai_retries_total", "Requests retried after throttling", retries.sum());
+        gauge(out, "ai_concurrency_limit", "Adaptive limit on in-flight requests",
+                Math.round(concurrencyLimitCenti.get() / 100.0));
+        gauge(out, "ai_inflight", "Requests in flight", inFlight.get());
+        gauge(out, "ai_queued", "Requests waiting for a concurrency permit", queued.get());
+        gauge(out, "ai_animation_active", "Animations active in the last frame", activeAnimations.get());
+        gauge(out, "ai_snapshot_bytes", "Size of the latest encoded UI snapshot", snapshotBytes.get());
+        gauge(out, "ai_handshake_milliseconds", "Cold connection setup time", handshakeMillis.get());
+        gauge(out, "ai_warm_rtt_milliseconds", "Warm connection round trip", warmRttMillis.get());
+        summary(out, "ai_request_latency_seconds", "Request latency over the rolling window",
+                requestLatency, requestMicrosTotal.sum(), completedRequests.sum());
+        summary(out, "ai_first_byte_latency_seconds", "Time to response headers over the rolling window",
+                firstByteLatency, firstByteMillisTotal.sum() * 1000, firstByteSamples.sum());
+        summary(out, "ai_animation_frame_work_seconds", "Time spent updating animations per frame",
+                animationWork, animationWorkMicrosTotal.sum(), animationFrames.sum());
+        summary(out, "ai_snapshot_capture_seconds", "Time spent rendering and reading UI snapshots",
+                snapshotCapture, snapshotCaptureMicrosTotal.sum(), snapshots.sum());
+        summary(out, "ai_snapshot_encode_seconds", "Time spent encoding UI snapshots",
+                snapshotEncode, snapshotEncodeMicrosTotal.sum(), snapshots.sum());
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String help,
+                                LatencyRecorder recorder, long sumMicros, long count) {
+        header(out, name, help, "summary");
+        long[] values = recorder.percentiles(QUANTILES);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            out.append(name).append("{quantile=\"").append(QUANTILES[i]).append("\"} ")
+                    .append(seconds(values[i])).append('\n');
+        }
+        out.append(name).append("_sum ").append(seconds(sumMicros)).append('\n');
+        out.append(name).append("_count ").append(count).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+    }
+}
@@ -0,0 +1,439 @@
+package com.example;
+
+import javafx.scene.paint.Color;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 本地颜色计算
+ * 颜色以打包的 int（0xAARRGGBB）表示，调亮/调暗/饱和度/色相在 OKLab（及其极坐标 OKLCh）中计算，
+ * 感知上均匀，调整后超出 sRGB 色域时保持明度和色相、降低彩度回到色域内。
+ * 文字颜色按 WCAG 对比度在黑白之间选择；最近命名颜色用预先构建的 OKLab k-d 树查找。
+ * 所有方法无状态、线程安全，单次计算为微秒级。
+ */
+public final class ColorEngine {
+
+    public static final int BLACK = 0xFF000000;
+    public static final int WHITE = 0xFFFFFFFF;
+
+    // sRGB 8 位分量到线性值的查表
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    // 常用颜色的中文名（键为 CSS 颜色名）
+    private static final Map<String, String> CHINESE_NAMES = new HashMap<>();
+
+    // 全部 CSS 颜色名（含别名），在 NAMED_COLORS 之前初始化
+    private static final Set<String> CSS_NAMES = new HashSet<>();
+
+    private static final NamedColorTree NAMED_COLORS;
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+        }
+        CHINESE_NAMES.put("red", "红色");
+        CHINESE_NAMES.put("green", "绿色");
+        CHINESE_NAMES.put("lime", "亮绿色");
+        CHINESE_NAMES.put("blue", "蓝色");
+        CHINESE_NAMES.put("yellow", "黄色");
+        CHINESE_NAMES.put("orange", "橙色");
+        CHINESE_NAMES.put("purple", "紫色");
+        CHINESE_NAMES.put("pink", "粉色");
+        CHINESE_NAMES.put("black", "黑色");
+        CHINESE_NAMES.put("white", "白色");
+        CHINESE_NAMES.put("gray", "灰色");
+        CHINESE_NAMES.put("darkblue", "深蓝");
+        CHINESE_NAMES.put("lightblue", "浅蓝");
+        CHINESE_NAMES.put("brown", "棕色");
+        CHINESE_NAMES.put("aqua", "青色");
+        CHINESE_NAMES.put("gold", "金色");
+        CHINESE_NAMES.put("silver", "银色");
+        NAMED_COLORS = new NamedColorTree(cssNamedColors());
+    }
+
+    /**
+     * 配色方案
+     */
+    public enum Scheme {
+        COMPLEMENTARY, ANALOGOUS, TRIADIC, SPLIT_COMPLEMENTARY;
+
+        /**
+         * 按名称解析（不区分大小写，split 为 SPLIT_COMPLEMENTARY 的简写），无法识别时返回 ANALOGOUS
+         */
+        public static Scheme parse(String name) {
+            if (name == null) {
+                return ANALOGOUS;
+            }
+            String key = name.trim().toUpperCase(Locale.ROOT);
+            if (key.equals("SPLIT")) {
+                return SPLIT_COMPLEMENTARY;
+            }
+            for (Scheme scheme : values()) {
+                if (scheme.name().equals(key)) {
+                    return scheme;
+                }
+            }
+            return ANALOGOUS;
+        }
+    }
+
+    private ColorEngine() {
+    }
+
+    // ---- 打包与转换 ----
+
+    public static int pack(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24
+                | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
+    }
+
+    public static Color toColor(int argb) {
+        return Color.rgb(argb >> 16 & 0xFF, argb >> 8 & 0xFF, argb & 0xFF, (argb >>> 24) / 255.0);
+    }
+
+    public static String toHex(int argb) {
+        return String.format("#%06X", argb & 0xFFFFFF);
+    }
+
+    /**
+     * 转换为 OKLab，返回 {L, a, b}
+     */
+    public static float[] toOklab(int argb) {
+        float[] lab = new float[3];
+        toOklab(argb, lab);
+        return lab;
+    }
+
+    private static void toOklab(int argb, float[] out) {
+        float r = SRGB_TO_LINEAR[argb >> 16 & 0xFF];
+        float g = SRGB_TO_LINEAR[argb >> 8 & 0xFF];
+        float b = SRGB_TO_LINEAR[argb & 0xFF];
+        double l = Math.cbrt(0.4122214708 * r + 0.5363325363 * g + 0.0514459929 * b);
+        double m = Math.cbrt(0.2119034982 * r + 0.6806995451 * g + 0.1073969566 * b);
+        double s = Math.cbrt(0.0883024619 * r + 0.2817188376 * g + 0.6299787005 * b);
+        out[0] = (float) (0.2104542553 * l + 0.7936177850 * m - 0.0040720468 * s);
+        out[1] = (float) (1.9779984951 * l - 2.4285922050 * m + 0.4505937099 * s);
+        out[2] = (float) (0.0259040371 * l + 0.7827717662 * m - 0.8086757660 * s);
+    }
+
+    /**
+     * 从 OKLab 转回打包颜色；超出 sRGB 色域时保持明度和色相，二分查找可表示的最大彩度
+     */
+    public static int fromOklab(float lightness, float a, float b, int alpha) {
+        float l = Math.max(0f, Math.min(1f, lightness));
+        double[] rgb = new double[3];
+        if (!oklabToLinear(l, a, b, rgb)) {
+            double low = 0;
+            double high = 1;
+            for (int i = 0; i < 16; i++) {
+                double mid = (low + high) / 2;
+                if (oklabToLinear(l, (float) (a * mid), (float) (b * mid), rgb)) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            oklabToLinear(l, (float) (a * low), (float) (b * low), rgb);
+        }
+        return (alpha & 0xFF) << 24 | encode(rgb[0]) << 16 | encode(rgb[1]) << 8 | encode(rgb[2]);
+    }
+
+    /**
+     * 计算线性 sRGB，返回是否在色域内
+     */
+    private static boolean oklabToLinear(float lightness, float a, float b, double[] out) {
+        double l = lightness + 0.3963377774 * a + 0.2158037573 * b;
+        double m = lightness - 0.1055613458 * a - 0.0638541728 * b;
+        double s = lightness - 0.0894841775 * a - 1.2914855480 * b;
+        l = l * l * l;
+        m = m * m * m;
+        s = s * s * s;
+        out[0] = 4.0767416621 * l - 3.3077115913 * m + 0.2309699292 * s;
+        out[1] = -1.2684380046 * l + 2.6097574011 * m - 0.3413193965 * s;
+        out[2] = -0.0041960863 * l - 0.7034186147 * m + 1.7076147010 * s;
+        final double epsilon = 1e-4;
+        for (double c : out) {
+            if (c < -epsilon || c > 1 + epsilon) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int encode(double linear) {
+        double c = Math.max(0, Math.min(1, linear));
+        double srgb = c <= 0.0031308 ? 12.92 * c : 1.055 * Math.pow(c, 1 / 2.4) - 0.055;
+        return (int) Math.round(srgb * 255);
+    }
+
+    // ---- 相对调整 ----
+
+    /**
+     * 调亮：OKLab 明度增加 amount（0~1）
+     */
+    public static int lighten(int argb, float amount) {
+        float[] lab = toOklab(argb);
+        return fromOklab(lab[0] + amount, lab[1], lab[2], argb >>> 24);
+    }
+
+    public static int darken(int argb, float amount) {
+        return lighten(argb, -amount);
+    }
+
+    /**
+     * 按比例调整彩度（factor > 1 更鲜艳，< 1 更柔和）
+     */
+    public static int saturate(int argb, float factor) {
+        float[] lab = toOklab(argb);
+        float f = Math.max(0f, factor);
+        return fromOklab(lab[0], lab[1] * f, lab[2] * f, argb >>> 24);
+    }
+
+    /**
+     * 在 OKLCh 中旋转色相（角度）
+     */
+    public static int rotateHue(int argb, double degrees) {
+        float[] lab = toOklab(argb);
+        double chroma = Math.hypot(lab[1], lab[2]);
+        double hue = Math.atan2(lab[2], lab[1]) + Math.toRadians(degrees);
+        return fromOklab(lab[0], (float) (chroma * Math.cos(hue)), (float) (chroma * Math.sin(hue)), argb >>> 24);
+    }
+
+    public static int complementary(int argb) {
+        return rotateHue(argb, 180);
+    }
+
+    /**
+     * 由种子颜色生成三色配色：{主色, 辅色, 标题色}
+     */
+    public static int[] palette(int seed, Scheme scheme) {
+        switch (scheme) {
+            case COMPLEMENTARY:
+                return new int[]{seed, complementary(seed), darken(seed, 0.15f)};
+            case TRIADIC:
+                return new int[]{seed, rotateHue(seed, 120), rotateHue(seed, 240)};
+            case SPLIT_COMPLEMENTARY:
+                return new int[]{seed, rotateHue(seed, 150), rotateHue(seed, 210)};
+            case ANALOGOUS:
+            default:
+                return new int[]{seed, rotateHue(seed, 30), rotateHue(seed, -30)};
+        }
+    }
+
+    // ---- 对比度 ----
+
+    /**
+     * WCAG 相对亮度
+     */
+    public static double relativeLuminance(int argb) {
+        return 0.2126 * SRGB_TO_LINEAR[argb >> 16 & 0xFF]
+                + 0.7152 * SRGB_TO_LINEAR[argb >> 8 & 0xFF]
+                + 0.0722 * SRGB_TO_LINEAR[argb & 0xFF];
+    }
+
+    /**
+     * WCAG 对比度（1~21）
+     */
+    public static double contrastRatio(int first, int second) {
+        double a = relativeLuminance(first);
+        double b = relativeLuminance(second);
+        return (Math.max(a, b) + 0.05) / (Math.min(a, b) + 0.05);
+    }
+
+    /**
+     * 在黑白之间选择与背景对比度更高的文字颜色
+     */
+    public static int textColorFor(int background) {
+        return contrastRatio(background, BLACK) >= contrastRatio(background, WHITE) ? BLACK : WHITE;
+    }
+
+    public static Color textColorFor(Color background) {
+        return textColorFor(pack(background)) == BLACK ? Color.BLACK : Color.WHITE;
+    }
+
+    /**
+     * 文字颜色的 CSS 名称（black / white）
+     */
+    public static String textFillFor(Color background) {
+        return textColorFor(pack(background)) == BLACK ? "black" : "white";
+    }
+
+    // ---- 命名颜色 ----
+
+    /**
+     * 查找感知上最接近的 CSS 命名颜色
+     */
+    public static NamedColor nearestName(int argb) {
+        return NAMED_COLORS.nearest(argb);
+    }
+
+    /**
+     * 常用颜色的中文名，没有时返回 null
+     */
+    public static String chineseName(String cssName) {
+        return CHINESE_NAMES.get(cssName);
+    }
+
+    /**
+     * 是否为 CSS 颜色名（不区分大小写）
+     */
+    public static boolean isColorName(String word) {
+        return word != null && CSS_NAMES.contains(word.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 读取 JavaFX Color 中的全部 CSS 命名颜色常量，同一颜色的别名只保留字母序第一个（aqua/cyan 取 aqua）
+     */
+    private static List<NamedColor> cssNamedColors() {
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> values = new HashMap<>();
+        for (Field field : Color.class.getFields()) {
+            if (field.getType() != Color.class || !Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            try {
+                Color color = (Color) field.get(null);
+                if (color.getOpacity() < 1) {
+                    continue;
+                }
+                String name = field.getName().toLowerCase(Locale.ROOT);
+                names.add(name);
+                CSS_NAMES.add(name);
+                values.put(name, pack(color));
+            } catch (IllegalAccessException e) {
+                // 公共常量不会出现
+            }
+        }
+        names.sort(null);
+        List<NamedColor> colors = new ArrayList<>();
+        Map<Integer, Boolean> seen = new HashMap<>();
+        for (String name : names) {
+            int argb = values.get(name);
+            if (seen.putIfAbsent(argb, Boolean.TRUE) == null) {
+                colors.add(new NamedColor(name, argb, 0));
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * 命名颜色及查询点到它的 OKLab 距离
+     */
+    public static final class NamedColor {
+
+        private final String name;
+        private final int argb;
+        private final double distance;
+
+        NamedColor(String name, int argb, double distance) {
+            this.name = name;
+            this.argb = argb;
+            this.distance = distance;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getArgb() {
+            return argb;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        public boolean isExact() {
+            return distance < 1e-6;
+        }
+    }
+
+    /**
+     * OKLab 三维 k-d 树：节点按中位数隐式存放在数组中（区间 [lo, hi) 的中点为子树根），无指针、无装箱
+     */
+    private static final class NamedColorTree {
+
+        private final String[] names;
+        private final int[] colors;
+        private final float[][] points;
+
+        NamedColorTree(List<NamedColor> source) {
+            int n = source.size();
+            Integer[] order = new Integer[n];
+            float[][] lab = new float[n][];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+                lab[i] = toOklab(source.get(i).getArgb());
+            }
+            build(order, lab, 0, n, 0);
+            names = new String[n];
+            colors = new int[n];
+            points = new float[n][];
+            for (int i = 0; i < n; i++) {
+                NamedColor color = source.get(order[i]);
+                names[i] = color.getName();
+                colors[i] = color.getArgb();
+                points[i] = lab[order[i]];
+            }
+        }
+
+        private static void build(Integer[] order, float[][] lab, int lo, int hi, int axis) {
+            if (hi - lo <= 1) {
+                return;
+            }
+            Arrays.sort(order, lo, hi, (x, y) -> Float.compare(lab[x][axis], lab[y][axis]));
+            int mid = (lo + hi) >>> 1;
+            build(order, lab, lo, mid, (axis + 1) % 3);
+            build(order, lab, mid + 1, hi, (axis + 1) % 3);
+        }
+
+        NamedColor nearest(int argb) {
+            float[] query = toOklab(argb);
+            int[] best = {-1};
+            double[] bestDistance = {Double.MAX_VALUE};
+            search(query, 0, names.length, 0, best, bestDistance);
+            return new NamedColor(names[best[0]], colors[best[0]], Math.sqrt(bestDistance[0]));
+        }
+
+        private void search(float[] query, int lo, int hi, int axis, int[] best, double[] bestDistance) {
+            if (lo >= hi) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            float[] point = points[mid];
+            double dl = query[0] - point[0];
+            double da = query[1] - point[1];
+            double db = query[2] - point[2];
+            double distance = dl * dl + da * da + db * db;
+            if (distance < bestDistance[0]) {
+                bestDistance[0] = distance;
+                best[0] = mid;
+            }
+            double delta = query[axis] - point[axis];
+            int next = (axis + 1) % 3;
+            if (delta < 0) {
+                search(query, lo, mid, next, best, bestDistance);
+                if (delta * delta < bestDistance[0]) {
+                    search(query, mid + 1, hi, next, best, bestDistance);
+                }
+            } else {
+                search(query, mid + 1, hi, next, best, bestDistance);
+                if (delta * delta < bestDistance[0]) {
+                    search(query, lo, mid, next, best, bestDistance);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 命令模式
+ * 由控制器注册的命令和组件生成，用于校验并规范化 AI 返回的命令。
+ */
+public class CommandSchema {
+
+    private final Map<String, CommandSpec> commands = new LinkedHashMap<>();
+    private final Map<String, CommandSpec> commandsByLowerName = new ConcurrentHashMap<>();
+    private final Set<String> components = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger version = new AtomicInteger();
+    // 只在命令定义变化时递增（组件增删不影响工具定义）
+    private final AtomicInteger commandVersion = new AtomicInteger();
+
+    /**
+     * 注册命令
+     *
+     * @param name           命令名称（如 changeColor）
+     * @param description    命令说明
+     * @param requiresTarget 是否需要 target 字段指向已注册组件
+     * @param params         必需参数
+     */
+    public synchronized void registerCommand(String name, String description, boolean requiresTarget, String... params) {
+        CommandSpec spec = new CommandSpec(name, description, requiresTarget, List.of(params));
+        commands.put(name, spec);
+        commandsByLowerName.put(name.toLowerCase(), spec);
+        version.incrementAndGet();
+        commandVersion.incrementAndGet();
+    }
+
+    /**
+     * 为已注册的命令声明可选参数（用于生成工具定义）
+     */
+    public synchronized void registerOptionalParams(String name, String... optionalParams) {
+        CommandSpec spec = commands.get(name);
+        if (spec == null) {
+            throw new IllegalArgumentException("未注册的命令: " + name);
+        }
+        CommandSpec updated = new CommandSpec(spec.name, spec.description, spec.requiresTarget, spec.params,
+                List.of(optionalParams));
+        commands.put(name, updated);
+        commandsByLowerName.put(name.toLowerCase(), updated);
+        version.incrementAndGet();
+        commandVersion.incrementAndGet();
+    }
+
+    /**
+     * 注册可控制组件
+     */
+    public void registerComponent(String id) {
+        if (components.add(id)) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 注销组件（动态创建的组件被移除时调用）
+     */
+    public void unregisterComponent(String id) {
+        if (components.remove(id)) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 注册内容的版本号，每次注册或注销后递增
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 命令定义的版本号，只在注册命令或可选参数后递增
+     */
+    public int getCommandVersion() {
+        return commandVersion.get();
+    }
+
+    public synchronized Map<String, CommandSpec> getCommands() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(commands));
+    }
+
+    public Set<String> getComponents() {
+        return Collections.unmodifiableSet(components);
+    }
+
+    public CommandSpec findCommand(String name) {
+        return name == null ? null : commandsByLowerName.get(name.trim().toLowerCase());
+    }
+
+    /**
+     * 校验并规范化命令节点（会原地修改传入的节点）
+     *
+     * @return 校验失败的原因，校验通过返回 null
+     */
+    public String validate(ObjectNode commandNode) {
+        CommandSpec spec = findCommand(commandNode.path("command").asText(null));
+        if (spec == null) {
+            return "未知命令: " + commandNode.path("command").asText();
+        }
+        commandNode.put("command", spec.getName());
+
+        JsonNode params = commandNode.path("params");
+        ObjectNode paramsNode = params.isObject() ? (ObjectNode) params : commandNode.putObject("params");
+
+        // target 缺失时尝试从 params.target 中补齐
+        String target = commandNode.path("target").asText("");
+        if (target.isEmpty() && paramsNode.hasNonNull("target")) {
+            target = paramsNode.get("target").asText();
+            commandNode.put("target", target);
+        }
+        if (!target.isEmpty() && spec.getParams().contains("target") && !paramsNode.hasNonNull("target")) {
+            paramsNode.put("target", target);
+        }
+        // "*" 表示所有已注册组件（批量命令）
+        if (spec.isRequiresTarget() && !"*".equals(target) && !components.contains(target)) {
+            return "未知组件: " + target;
+        }
+
+        for (String param : spec.getParams()) {
+            if (!paramsNode.hasNonNull(param)) {
+                return "命令 " + spec.getName() + " 缺少参数: " + param;
+            }
+        }
+
+        // 常见的类型偏差：索引以字符串形式返回
+        JsonNode index = paramsNode.get("index");
+        if (index != null && index.isTextual()) {
+            try {
+                paramsNode.put("index", Integer.parseInt(index.asText().trim()));
+            } catch (NumberFormatException e) {
+                return "参数 index 不是数字: " + index.asText();
+            }
+        }
+
+        if (!commandNode.hasNonNull("description")) {
+            commandNode.put("description", "执行 " + spec.getName());
+        }
+        return null;
+    }
+
+    /**
+     * 命令定义
+     */
+    public static class CommandSpec {
+        private final String name;
+        private final String description;
+        private final boolean requiresTarget;
+        private final List<String> params;
+        private final List<String> optionalParams;
+
+        public CommandSpec(String name, String description, boolean requiresTarget, List<String> params) {
+            this(name, description, requiresTarget, params, List.of());
+        }
+
+        public CommandSpec(String name, String description, boolean requiresTarget, List<String> params,
+                           List<String> optionalParams) {
+            this.name = name;
+            this.description = description;
+            this.requiresTarget = requiresTarget;
+            this.params = params;
+            this.optionalParams = optionalParams;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public boolean isRequiresTarget() {
+            return requiresTarget;
+        }
+
+        public List<String> getParams() {
+            return params;
+        }
+
+        public List<String> getOptionalParams() {
+            return optionalParams;
+        }
+    }
+}
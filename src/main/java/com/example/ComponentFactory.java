@@ -0,0 +1,157 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Labeled;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.VBox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 按模板创建组件
+ * 解析后的模板按 JSON 文本缓存（LRU），同一模板重复创建时不再解析；
+ * 节点从 NodePool 取出，销毁时回收，容器先回收子节点。
+ * 创建出的节点带有类型标记，回收时据此放回对应的池。build 和 recycle 只应在 FX 线程上调用。
+ */
+public class ComponentFactory {
+
+    private static final String TYPE_KEY = "ai.component.type";
+
+    private final NodePool pool;
+    private final Map<String, ComponentTemplate> templates;
+
+    public ComponentFactory(int templateCacheSize, int poolSizePerType) {
+        this.pool = new NodePool(poolSizePerType);
+        this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ComponentTemplate> eldest) {
+                return size() > templateCacheSize;
+            }
+        };
+    }
+
+    /**
+     * 按系统属性创建：ai.components.templateCache（默认 256）、ai.components.poolSize（每种类型，默认 4096）
+     */
+    public static ComponentFactory fromProperties() {
+        return new ComponentFactory(Integer.getInteger("ai.components.templateCache", 256),
+                Integer.getInteger("ai.components.poolSize", 4096));
+    }
+
+    /**
+     * 获取解析后的模板（命中缓存时不解析）
+     */
+    public ComponentTemplate template(JsonNode json) {
+        String key = json.toString();
+        synchronized (templates) {
+            ComponentTemplate cached = templates.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ComponentTemplate parsed = ComponentTemplate.parse(json);
+        synchronized (templates) {
+            templates.put(key, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * 按模板创建节点树；onNamedChild 收到子模板中指定了 ID 的子节点，用于注册
+     */
+    public Node build(ComponentTemplate template, BiConsumer<String, Node> onNamedChild) {
+        return build(template, "", onNamedChild);
+    }
+
+    /**
+     * 按模板创建节点树，子节点 ID 加上 idSuffix（同一模板创建多份时区分各份的子组件）
+     */
+    public Node build(ComponentTemplate template, String idSuffix, BiConsumer<String, Node> onNamedChild) {
+        Node node;
+        switch (template.getType()) {
+            case LABEL:
+                node = pool.acquire(ComponentTemplate.Type.LABEL, Label::new);
+                break;
+            case TEXT_FIELD:
+                TextField field = pool.acquire(ComponentTemplate.Type.TEXT_FIELD, TextField::new);
+                field.setText(template.getText());
+                field.setPromptText(template.getPrompt());
+                node = field;
+                break;
+            case HBOX:
+                HBox row = pool.acquire(ComponentTemplate.Type.HBOX, HBox::new);
+                row.setSpacing(template.getSpacing());
+                node = row;
+                break;
+            case VBOX:
+                VBox column = pool.acquire(ComponentTemplate.Type.VBOX, VBox::new);
+                column.setSpacing(template.getSpacing());
+                node = column;
+                break;
+            case BUTTON:
+            default:
+                node = pool.acquire(ComponentTemplate.Type.BUTTON, Button::new);
+                break;
+        }
+        if (node instanceof Labeled) {
+            ((Labeled) node).setText(template.getText());
+        }
+        node.setStyle(template.getStyle());
+        node.getProperties().put(TYPE_KEY, template.getType());
+
+        if (!template.getChildren().isEmpty()) {
+            // 子节点先全部创建好，再一次性加入容器
+            List<Node> children = new ArrayList<>(template.getChildren().size());
+            for (ComponentTemplate child : template.getChildren()) {
+                Node childNode = build(child, idSuffix, onNamedChild);
+                if (child.getId() != null) {
+                    String childId = child.getId() + idSuffix;
+                    childNode.setId(childId);
+                    onNamedChild.accept(childId, childNode);
+                }
+                children.add(childNode);
+            }
+            ((Pane) node).getChildren().setAll(children);
+        }
+        return node;
+    }
+
+    /**
+     * 回收节点树（节点应已从场景中移除）；onNamedChild 收到带 ID 的子节点，用于注销
+     */
+    public void recycle(Node node, BiConsumer<String, Node> onNamedChild) {
+        Object type = node.getProperties().get(TYPE_KEY);
+        if (!(type instanceof ComponentTemplate.Type)) {
+            return;
+        }
+        if (node instanceof Pane) {
+            for (Node child : new ArrayList<>(((Pane) node).getChildren())) {
+                if (child.getId() != null) {
+                    onNamedChild.accept(child.getId(), child);
+                }
+                recycle(child, onNamedChild);
+            }
+        }
+        pool.release((ComponentTemplate.Type) type, node);
+    }
+
+    /**
+     * 是否为本工厂创建的节点
+     */
+    public boolean isDynamic(Node node) {
+        return node.getProperties().get(TYPE_KEY) instanceof ComponentTemplate.Type;
+    }
+
+    public NodePool getPool() {
+        return pool;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example;
+
+import javafx.scene.Node;
+import javafx.scene.control.Labeled;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextInputControl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 组件关键词索引
+ * 记录每个已注册组件的类型和中文别名，按别名首字符建立索引，
+ * 用于从指令中快速找出相关组件，只把这些组件的状态随请求发送。
+ */
+public class ComponentIndex {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // 别名首字符 → 别名列表
+    private final Map<Character, List<Alias>> aliasIndex = new ConcurrentHashMap<>();
+    private final AtomicInteger version = new AtomicInteger();
+
+    /**
+     * 注册组件及其别名，组件 ID 本身也作为别名
+     */
+    public void register(String id, Node node, String... aliases) {
+        Entry entry = new Entry(id, node, List.of(aliases));
+        entries.put(id, entry);
+        addAlias(id.toLowerCase(), id);
+        for (String alias : aliases) {
+            addAlias(alias.toLowerCase(), id);
+        }
+        version.incrementAndGet();
+    }
+
+    private void addAlias(String alias, String id) {
+        if (alias.isEmpty()) {
+            return;
+        }
+        List<Alias> list = aliasIndex.computeIfAbsent(alias.charAt(0), c -> new ArrayList<>());
+        synchronized (list) {
+            // 按长度降序二分插入，长别名优先匹配（"执行按钮" 优先于 "按钮"）；
+            // 大量创建组件时避免每次注册都整表排序
+            int low = 0;
+            int high = list.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (list.get(mid).text.length() >= alias.length()) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            list.add(low, new Alias(alias, id));
+        }
+    }
+
+    /**
+     * 注销组件及其别名，组件不存在时返回 false
+     */
+    public boolean unregister(String id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        removeAlias(id.toLowerCase(), id);
+        for (String alias : entry.aliases) {
+            removeAlias(alias.toLowerCase(), id);
+        }
+        version.incrementAndGet();
+        return true;
+    }
+
+    private void removeAlias(String alias, String id) {
+        if (alias.isEmpty()) {
+            return;
+        }
+        List<Alias> list = aliasIndex.get(alias.charAt(0));
+        if (list != null) {
+            synchronized (list) {
+                list.removeIf(candidate -> candidate.id.equals(id) && candidate.text.equals(alias));
+            }
+        }
+    }
+
+    /**
+     * 注册内容的版本号，每次注册或注销后递增
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 按 ID 排序的组件列表，保证生成的提示词稳定
+     */
+    public List<Entry> getEntries() {
+        return new ArrayList<>(new TreeMap<>(entries).values());
+    }
+
+    /**
+     * 找出指令中提到的组件
+     */
+    public Set<String> findRelevant(String instruction) {
+        Set<String> result = new LinkedHashSet<>();
+        if (instruction == null) {
+            return result;
+        }
+        String text = instruction.toLowerCase();
+        for (int i = 0; i < text.length(); i++) {
+            List<Alias> candidates = aliasIndex.get(text.charAt(i));
+            if (candidates == null) {
+                continue;
+            }
+            synchronized (candidates) {
+                for (Alias alias : candidates) {
+                    if (text.startsWith(alias.text, i)) {
+                        result.add(alias.id);
+                        i += alias.text.length() - 1;
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把指令中的组件别名替换为组件 ID（"把第一个按钮藏起来" → "把btn1藏起来"）
+     */
+    public String replaceAliases(String instruction) {
+        if (instruction == null) {
+            return "";
+        }
+        String text = instruction.toLowerCase();
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            List<Alias> candidates = aliasIndex.get(text.charAt(i));
+            Alias matched = null;
+            if (candidates != null) {
+                synchronized (candidates) {
+                    for (Alias alias : candidates) {
+                        if (text.startsWith(alias.text, i)) {
+                            matched = alias;
+                            break;
+                        }
+                    }
+                }
+            }
+            if (matched != null) {
+                builder.append(matched.id.toLowerCase());
+                i += matched.text.length() - 1;
+            } else {
+                builder.append(text.charAt(i));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 生成相关组件的紧凑状态描述，没有相关组件时返回空字符串
+     * 读取节点的可见性和文本，只应在 FX 线程上调用。
+     */
+    public String describeState(Set<String> ids) {
+        StringBuilder builder = new StringBuilder();
+        for (String id : ids) {
+            Entry entry = entries.get(id);
+            if (entry == null || entry.node == null) {
+                continue;
+            }
+            Node node = entry.node;
+            if (builder.length() > 0) {
+                builder.append("; ");
+            }
+            builder.append(id).append(':').append(entry.getType())
+                    .append(node.isVisible() ? " 可见" : " 隐藏");
+            String text = null;
+            if (node instanceof Labeled) {
+                text = ((Labeled) node).getText();
+            } else if (node instanceof TextInputControl && !(node instanceof TextArea)) {
+                text = ((TextInputControl) node).getText();
+            }
+            if (text != null && !text.isEmpty()) {
+                builder.append(" 文本=").append(text.length() > 40 ? text.substring(0, 40) + "…" : text);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 组件条目
+     */
+    public static class Entry {
+        private final String id;
+        private final Node node;
+        private final List<String> aliases;
+
+        public Entry(String id, Node node, List<String> aliases) {
+            this.id = id;
+            this.node = node;
+            this.aliases = aliases;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Node getNode() {
+            return node;
+        }
+
+        public String getType() {
+            return node == null ? "Node" : node.getClass().getSimpleName();
+        }
+
+        public List<String> getAliases() {
+            return aliases;
+        }
+    }
+
+    private static class Alias {
+        private final String text;
+        private final String id;
+
+        private Alias(String text, String id) {
+            this.text = text;
+            this.id = id;
+        }
+    }
+}
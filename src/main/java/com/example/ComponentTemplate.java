@@ -0,0 +1,154 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 组件模板（解析后不可变，可在多次创建之间共享）
+ * JSON 形式：{"type":"button","text":"确定","style":"...","prompt":"...","spacing":8,"id":"可选","children":[模板...]}
+ * type 取值 button / label / textField / hbox / vbox，children 只对 hbox / vbox 有效。
+ */
+public final class ComponentTemplate {
+
+    private static final int MAX_DEPTH = 8;
+
+    /**
+     * 可创建的组件类型
+     */
+    public enum Type {
+        BUTTON, LABEL, TEXT_FIELD, HBOX, VBOX;
+
+        public boolean isContainer() {
+            return this == HBOX || this == VBOX;
+        }
+
+        static Type parse(String name) {
+            switch (name.trim().toLowerCase(Locale.ROOT).replace("_", "")) {
+                case "button":
+                case "按钮":
+                    return BUTTON;
+                case "label":
+                case "标签":
+                    return LABEL;
+                case "textfield":
+                case "input":
+                case "输入框":
+                    return TEXT_FIELD;
+                case "hbox":
+                case "row":
+                    return HBOX;
+                case "vbox":
+                case "column":
+                case "container":
+                    return VBOX;
+                default:
+                    throw new IllegalArgumentException("不支持的组件类型: " + name);
+            }
+        }
+    }
+
+    private final Type type;
+    private final String id;
+    private final String text;
+    private final String style;
+    private final String prompt;
+    private final double spacing;
+    private final List<ComponentTemplate> children;
+
+    private ComponentTemplate(Type type, String id, String text, String style, String prompt, double spacing,
+                              List<ComponentTemplate> children) {
+        this.type = type;
+        this.id = id;
+        this.text = text;
+        this.style = style;
+        this.prompt = prompt;
+        this.spacing = spacing;
+        this.children = children;
+    }
+
+    /**
+     * 解析模板，格式错误时抛出 IllegalArgumentException
+     */
+    public static ComponentTemplate parse(JsonNode node) {
+        return parse(node, 0);
+    }
+
+    private static ComponentTemplate parse(JsonNode node, int depth) {
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("模板必须是对象");
+        }
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("模板嵌套过深");
+        }
+        Type type = Type.parse(node.path("type").asText("button"));
+        List<ComponentTemplate> children = Collections.emptyList();
+        JsonNode childNodes = node.path("children");
+        if (type.isContainer() && childNodes.isArray() && childNodes.size() > 0) {
+            List<ComponentTemplate> parsed = new ArrayList<>(childNodes.size());
+            for (JsonNode child : childNodes) {
+                parsed.add(parse(child, depth + 1));
+            }
+            children = Collections.unmodifiableList(parsed);
+        }
+        return new ComponentTemplate(type,
+                node.hasNonNull("id") ? node.get("id").asText() : null,
+                node.path("text").asText(""),
+                node.path("style").asText(""),
+                node.path("prompt").asText(""),
+                node.path("spacing").asDouble(8),
+                children);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * 子模板中指定的组件 ID（会一并注册），没有时为 null
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getStyle() {
+        return style;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public double getSpacing() {
+        return spacing;
+    }
+
+    public List<ComponentTemplate> getChildren() {
+        return children;
+    }
+
+    /**
+     * 各层子模板中指定的组件 ID（按出现顺序，可能有重复），不含本模板自身
+     */
+    public List<String> getChildIds() {
+        List<String> ids = new ArrayList<>();
+        collectChildIds(ids);
+        return ids;
+    }
+
+    private void collectChildIds(List<String> ids) {
+        for (ComponentTemplate child : children) {
+            if (child.id != null) {
+                ids.add(child.id);
+            }
+            child.collectChildIds(ids);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 自适应并发限制与超时
+ * 并发上限按梯度算法调整（参考 Netflix concurrency-limits 的 Gradient2）：
+ * 长期 RTT（慢速滑动平均）与本次 RTT 之比作为梯度，RTT 上升时收缩上限，RTT 平稳时按 √limit 的余量缓慢增长；
+ * 收到 429/503 时乘性减半（AIMD 的 MD 部分），并按 Retry-After 暂停派发。
+ * 超出上限的请求排队等待许可。
+ * 不同模型（快速、强、视觉）的正常延迟相差数倍，长期 RTT 和延迟样本按模型分别记录：
+ * 梯度只和同一模型自己的长期 RTT 比较，每个请求的超时由该模型最近成功请求的延迟分位数推导，样本不足时使用上限值。
+ * 超时不视为限流：超时耗时作为该模型的一次 RTT 样本计入梯度，只按梯度收缩上限。
+ */
+public class ConcurrencyLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    // 本次 RTT 超过长期 RTT 的容忍倍数，在此范围内不收缩
+    private static final double RTT_TOLERANCE = 1.5;
+    private static final double LONG_RTT_ALPHA = 0.05;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final int MIN_TIMEOUT_SAMPLES = 20;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long minTimeoutMillis;
+    private final long maxTimeoutMillis;
+    private final double timeoutMultiplier;
+    private final ClientMetrics metrics;
+    // 模型 → 延迟统计
+    private final Map<String, ModelLatency> models = new HashMap<>();
+
+    private double limit;
+    private int inFlight;
+    private long pausedUntilNanos;
+    private boolean wakeScheduled;
+    private final ArrayDeque<Permit> waiters = new ArrayDeque<>();
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long minTimeoutMillis,
+                              long maxTimeoutMillis, double timeoutMultiplier, ClientMetrics metrics) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.minTimeoutMillis = minTimeoutMillis;
+        this.maxTimeoutMillis = Math.max(minTimeoutMillis, maxTimeoutMillis);
+        this.timeoutMultiplier = timeoutMultiplier;
+        this.metrics = metrics;
+        publish();
+    }
+
+    /**
+     * 按系统属性创建：
+     *   ai.limit.initial / ai.limit.min / ai.limit.max   并发上限的初值和范围（默认 4 / 1 / 32）
+     *   ai.timeout.minMillis / ai.timeout.maxMillis       请求超时范围（默认 5000 / 60000）
+     *   ai.timeout.multiplier                              超时为 p99 延迟的倍数（默认 2）
+     */
+    public static ConcurrencyLimiter fromProperties(ClientMetrics metrics) {
+        return new ConcurrencyLimiter(
+                Integer.getInteger("ai.limit.initial", 4),
+                Integer.getInteger("ai.limit.min", 1),
+                Integer.getInteger("ai.limit.max", 32),
+                Long.getLong("ai.timeout.minMillis", 5_000),
+                Long.getLong("ai.timeout.maxMillis", 60_000),
+                Double.parseDouble(System.getProperty("ai.timeout.multiplier", "2")),
+                metrics);
+    }
+
+    /**
+     * 为发往 model 的请求申请一个许可；达到上限或处于暂停期时排队。取消返回的 Future 会放弃排队
+     */
+    public synchronized CompletableFuture<Permit> acquire(String model) {
+        Permit permit = new Permit(models.computeIfAbsent(key(model), ModelLatency::new));
+        waiters.add(permit);
+        permit.granted.whenComplete((granted, ex) -> {
+            if (permit.granted.isCancelled()) {
+                synchronized (this) {
+                    waiters.remove(permit);
+                    publish();
+                }
+            }
+        });
+        drain();
+        return permit.granted;
+    }
+
+    /**
+     * 发往 model 的请求的超时：该模型最近成功请求 p99 延迟的若干倍，限制在范围内
+     */
+    public synchronized long timeoutMillis(String model) {
+        ModelLatency stats = models.get(key(model));
+        if (stats == null || stats.latency.size() < MIN_TIMEOUT_SAMPLES) {
+            return maxTimeoutMillis;
+        }
+        long p99Millis = stats.latency.percentiles(0.99)[0] / 1000;
+        return Math.max(minTimeoutMillis, Math.min(maxTimeoutMillis, (long) (p99Millis * timeoutMultiplier)));
+    }
+
+    /**
+     * 被限流后的重试等待：有 Retry-After 时以它为准，否则指数退避；都加入随机抖动，避免重试集中到达
+     */
+    public long backoffMillis(int attempt, long retryAfterMillis) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (retryAfterMillis > 0) {
+            return retryAfterMillis + random.nextLong(Math.max(1, retryAfterMillis / 4));
+        }
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+        return ceiling / 2 + random.nextLong(ceiling / 2 + 1);
+    }
+
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    /**
+     * 摘要：上限、在途、排队和各模型当前的超时
+     */
+    public synchronized String summary() {
+        StringBuilder timeouts = new StringBuilder();
+        for (String model : models.keySet()) {
+            timeouts.append(timeouts.length() == 0 ? "" : ", ").append(model).append(' ')
+                    .append(timeoutMillis(model)).append(" ms");
+        }
+        return String.format("并发上限 %.1f, 在途 %d, 排队 %d, 超时 %s",
+                limit, inFlight, waiters.size(), timeouts.length() == 0 ? maxTimeoutMillis + " ms" : timeouts);
+    }
+
+    /**
+     * 按上限和暂停期派发排队中的许可
+     */
+    private void drain() {
+        long now = System.nanoTime();
+        if (pausedUntilNanos - now > 0) {
+            scheduleWake(pausedUntilNanos - now);
+            publish();
+            return;
+        }
+        while (!waiters.isEmpty() && inFlight < Math.max(1, (int) limit)) {
+            Permit waiter = waiters.poll();
+            inFlight++;
+            if (!waiter.granted.complete(waiter)) {
+                // 已被取消
+                inFlight--;
+            }
+        }
+        publish();
+    }
+
+    private void scheduleWake(long delayNanos) {
+        if (wakeScheduled) {
+            return;
+        }
+        wakeScheduled = true;
+        CompletableFuture.runAsync(() -> {
+            synchronized (this) {
+                wakeScheduled = false;
+                drain();
+            }
+        }, CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS));
+    }
+
+    private synchronized void onSuccess(ModelLatency stats, long rttMicros) {
+        inFlight--;
+        stats.latency.record(rttMicros);
+        adjust(stats, rttMicros);
+        drain();
+    }
+
+    /**
+     * 超时：超时耗时只作为该模型的 RTT 样本参与梯度，不计入超时推导用的延迟分位数，也不减半上限
+     */
+    private synchronized void onTimeout(ModelLatency stats, long elapsedMicros) {
+        inFlight--;
+        adjust(stats, elapsedMicros);
+        log.info("⏱ {} 请求超时 ({} ms)，并发上限 {}", stats.model, elapsedMicros / 1000, String.format("%.1f", limit));
+        drain();
+    }
+
+    /**
+     * 按本次 RTT 与同一模型长期 RTT 的梯度调整上限
+     */
+    private void adjust(ModelLatency stats, long rttMicros) {
+        if (Double.isNaN(stats.longRttMicros)) {
+            stats.longRttMicros = rttMicros;
+        } else {
+            stats.longRttMicros = LONG_RTT_ALPHA * rttMicros + (1 - LONG_RTT_ALPHA) * stats.longRttMicros;
+        }
+        // 调用方没有用满上限时 RTT 不反映排队，不增长上限
+        if (inFlight + 1 >= limit / 2) {
+            double gradient = Math.max(0.5, Math.min(1.0,
+                    RTT_TOLERANCE * stats.longRttMicros / Math.max(1, rttMicros)));
+            double target = limit * gradient + Math.sqrt(limit);
+            limit = clamp(limit * (1 - SMOOTHING) + target * SMOOTHING);
+        }
+    }
+
+    private synchronized void onDropped(long retryAfterMillis) {
+        inFlight--;
+        double previous = limit;
+        limit = clamp(limit * BACKOFF_RATIO);
+        if (retryAfterMillis > 0) {
+            pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + retryAfterMillis * 1_000_000L);
+        }
+        if (metrics != null) {
+            metrics.recordThrottle();
+        }
+        log.info("⚠️ 服务端限流，并发上限 {} → {}{}", String.format("%.1f", previous), String.format("%.1f", limit),
+                retryAfterMillis > 0 ? "，暂停 " + retryAfterMillis + " ms" : "");
+        drain();
+    }
+
+    private synchronized void onIgnore() {
+        inFlight--;
+        drain();
+    }
+
+    private static String key(String model) {
+        return model != null ? model : "";
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+
+    private void publish() {
+        if (metrics != null) {
+            metrics.recordConcurrency(limit, inFlight, waiters.size());
+        }
+    }
+
+    /**
+     * 单个模型的延迟统计（由外层对象的锁保护）
+     */
+    private static final class ModelLatency {
+
+        private final String model;
+        private final LatencyRecorder latency = new LatencyRecorder(256);
+        private double longRttMicros = Double.NaN;
+
+        ModelLatency(String model) {
+            this.model = model;
+        }
+    }
+
+    /**
+     * 一个许可，必须且只能以 success / timedOut / dropped / ignore 之一释放
+     */
+    public final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final CompletableFuture<Permit> granted = new CompletableFuture<>();
+        private final ModelLatency stats;
+
+        private Permit(ModelLatency stats) {
+            this.stats = stats;
+        }
+
+        /**
+         * 请求正常完成，rttMicros 为发送到收到完整响应的耗时
+         */
+        public void success(long rttMicros) {
+            if (released.compareAndSet(false, true)) {
+                onSuccess(stats, rttMicros);
+            }
+        }
+
+        /**
+         * 请求超时，elapsedMicros 为发送到超时的耗时
+         */
+        public void timedOut(long elapsedMicros) {
+            if (released.compareAndSet(false, true)) {
+                onTimeout(stats, elapsedMicros);
+            }
+        }
+
+        /**
+         * 请求被限流（429/503），retryAfterMillis 为服务端要求的等待时间（没有时为 -1）
+         */
+        public void dropped(long retryAfterMillis) {
+            if (released.compareAndSet(false, true)) {
+                onDropped(retryAfterMillis);
+            }
+        }
+
+        /**
+         * 结果不反映服务端负载（取消、网络错误等），只释放许可
+         */
+        public void ignore() {
+            if (released.compareAndSet(false, true)) {
+                onIgnore();
+            }
+        }
+    }
+}
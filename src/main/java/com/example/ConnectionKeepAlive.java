@@ -0,0 +1,97 @@
+package com.example;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 连接保活管理器
+ * 空闲期间定期发送轻量探测请求，避免连接池中的 HTTP/2 连接被服务端或中间设备回收。
+ * HttpClient 不暴露连接池状态，这里以"距上次网络活动是否在保活窗口内"判断连接是否仍然是热的。
+ */
+public class ConnectionKeepAlive {
+
+    private final BooleanSupplier probe;
+    private final ClientMetrics metrics;
+    private final long intervalNanos;
+    private final long warmWindowNanos;
+    // start() 时才创建，不启动保活的客户端不占用线程
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> task;
+    private volatile long lastActivity = 0;
+
+    public ConnectionKeepAlive(BooleanSupplier probe, ClientMetrics metrics, Duration interval) {
+        this.probe = probe;
+        this.metrics = metrics;
+        this.intervalNanos = interval.toNanos();
+        // 连续错过两次探测前，仍认为连接是热的
+        this.warmWindowNanos = interval.toNanos() * 2;
+    }
+
+    /**
+     * 启动保活任务
+     */
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "qwen-keepalive");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long periodMillis = TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+        task = scheduler.scheduleWithFixedDelay(this::tick, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次网络活动（业务请求或探测）
+     */
+    public void markActivity() {
+        lastActivity = System.nanoTime();
+    }
+
+    /**
+     * 连接是否仍处于保活窗口内
+     */
+    public boolean isWarm() {
+        long last = lastActivity;
+        return last != 0 && System.nanoTime() - last < warmWindowNanos;
+    }
+
+    private void tick() {
+        // 最近有业务请求时不需要额外探测
+        if (lastActivity != 0 && System.nanoTime() - lastActivity < intervalNanos) {
+            return;
+        }
+        boolean success;
+        try {
+            success = probe.getAsBoolean();
+        } catch (Exception e) {
+            success = false;
+        }
+        metrics.recordKeepAlivePing(success);
+        if (success) {
+            markActivity();
+        }
+    }
+
+    /**
+     * 停止保活任务
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
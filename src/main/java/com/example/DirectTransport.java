@@ -0,0 +1,76 @@
+package com.example;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 直连网络的传输层
+ * 指定了 HttpCompression 时按 Content-Encoding 边收边解压响应体，否则按未压缩的文本接收。
+ */
+public class DirectTransport implements HttpTransport {
+
+    private final HttpClient httpClient;
+    private final HttpCompression compression;
+
+    public DirectTransport(HttpClient httpClient) {
+        this(httpClient, null);
+    }
+
+    public DirectTransport(HttpClient httpClient, HttpCompression compression) {
+        this.httpClient = httpClient;
+        this.compression = compression;
+    }
+
+    @Override
+    public CompletableFuture<Response> send(HttpRequest request, String requestBody, Runnable onHeaders) {
+        // 非流式请求以收到响应头的时间作为首字节时间
+        HttpResponse.BodyHandler<String> bodyHandler = responseInfo -> {
+            onHeaders.run();
+            return compression != null
+                    ? compression.subscriber(responseInfo)
+                    : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+        };
+        CompletableFuture<HttpResponse<String>> exchange = httpClient.sendAsync(request, bodyHandler);
+        CompletableFuture<Response> response =
+                exchange.thenApply(received -> new Response(received.statusCode(), received.body(),
+                        received.headers().firstValue("retry-after").map(DirectTransport::parseRetryAfter).orElse(-1L)));
+        // 结果被取消时中止 HTTP 交换（sendAsync 返回的 Future 自 JDK 16 起支持 cancel(true)）
+        response.whenComplete((ignored, ex) -> {
+            if (response.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return response;
+    }
+
+    @Override
+    public int probe(HttpRequest request) throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * 解析 Retry-After：秒数或 HTTP 日期，无法解析时返回 -1
+     */
+    static long parseRetryAfter(String value) {
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed)) * 1000;
+        } catch (NumberFormatException ignored) {
+            // 不是秒数，按日期解析
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
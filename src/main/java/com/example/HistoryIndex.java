@@ -0,0 +1,964 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 指令与回复的全文历史索引
+ * 每条提交的指令和 AI 回复是一个文档（相同的指令或回复合并为一个文档并累计使用次数，历史大小只随不同文本的数量增长）。
+ * 中文按单字和相邻二字（bigram）切分，英文和数字按整词切分，建立内存倒排表。
+ * 查询从最短的倒排表开始按文档 ID 从新到旧遍历，其余词项二分查找判断是否包含，扫描量有上限，
+ * 历史很大时响应时间也不随总量增长。自动补全只返回指令，按使用次数和最近使用时间（按周衰减）排序。
+ *
+ * 文件（数据目录/history）：
+ *   history.log          追加写的日志：新文档、再次使用、命令计划
+ *   seg-起始-结束.seg     不可变的倒排段（词项 + 差值变长编码的文档 ID），加载时直接读入，不再重新切分；
+ *                        段数达到 MAX_SEGMENTS 时合并为一个段
+ * 日志记录和索引段由后台线程按提交顺序写入（有界队列，攒批 flush），调用方只在内存中更新索引并入队；
+ * 写段时只在锁内取倒排表的快照（倒排表只追加，快照共享数组），编码和写文件都在锁外进行。
+ */
+public class HistoryIndex implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryIndex.class);
+
+    public static final byte INSTRUCTION = 0;
+    public static final byte REPLY = 1;
+    private static final byte ANY = -1;
+
+    private static final String JOURNAL = "history.log";
+    private static final byte DOC = 'D';
+    private static final byte USE = 'U';
+    private static final byte PLAN = 'P';
+    private static final int SEGMENT_MAGIC = 0x48495331;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("seg-(\\d+)-(\\d+)\\.seg");
+
+    private static final int SEGMENT_DOCS = 8192;
+    private static final int MAX_SEGMENTS = 8;
+    private static final int MAX_TEXT_CHARS = 4000;
+    // 单次查询最多检查的候选文档数
+    private static final int SCAN_BUDGET = 4096;
+    // 自动补全参与排序的候选指令数（从新到旧）
+    private static final int AUTOCOMPLETE_CANDIDATES = 128;
+    // 只输入了半个英文词时最多展开的词项数
+    private static final int MAX_PREFIX_EXPANSION = 32;
+    private static final double RECENCY_HALF_LIFE_MILLIS = 7 * 24 * 3600_000.0;
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int BATCH_SIZE = 64;
+    private static final long POLL_MILLIS = 200;
+
+    private final Path dir;
+    private final Path journalFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 文档，按 ID（首次出现的顺序）存放
+    private String[] texts = new String[1024];
+    private byte[] kinds = new byte[1024];
+    private long[] lastUsed = new long[1024];
+    private int[] uses = new int[1024];
+    private String[] plans = new String[1024];
+    private int count;
+
+    private final Map<String, Integer> instructionIds = new HashMap<>();
+    private final Map<String, Integer> replyIds = new HashMap<>();
+    private final Map<String, IntList> postings = new HashMap<>();
+    // 英文和数字词项，用于前缀展开
+    private final NavigableSet<String> words = new TreeSet<>();
+    // 最后一个段之后新增文档涉及的词项
+    private final Set<String> tailTerms = new HashSet<>();
+    private int segmentedCount;
+    private int segmentCount;
+
+    private final BlockingQueue<PendingWrite> writes = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // 以下字段在写线程启动后只由写线程访问
+    private DataOutputStream journal;
+    private final List<Path> segments = new ArrayList<>();
+
+    public HistoryIndex(Path dir) throws IOException {
+        this.dir = dir;
+        this.journalFile = dir.resolve(JOURNAL);
+        Files.createDirectories(dir);
+        load();
+        this.writer = new Thread(this::drain, "history-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 使用默认数据目录
+     */
+    public static HistoryIndex openDefault() throws IOException {
+        return new HistoryIndex(AppPaths.resolve("history"));
+    }
+
+    private void load() throws IOException {
+        if (Files.exists(journalFile)) {
+            replayJournal();
+        }
+        loadSegments();
+        for (int id = segmentedCount; id < count; id++) {
+            index(id);
+        }
+        journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+    }
+
+    /**
+     * 重放日志；末尾不完整的记录（写入中途退出）被截掉
+     */
+    private void replayJournal() throws IOException {
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读满
+            }
+            buffer.flip();
+            int valid = 0;
+            try {
+                while (buffer.hasRemaining()) {
+                    byte type = buffer.get();
+                    if (type == DOC) {
+                        byte kind = buffer.get();
+                        long time = buffer.getLong();
+                        addDocument(kind, time, readString(buffer));
+                    } else if (type == USE) {
+                        int id = buffer.getInt();
+                        long time = buffer.getLong();
+                        if (id >= 0 && id < count) {
+                            uses[id]++;
+                            lastUsed[id] = Math.max(lastUsed[id], time);
+                        }
+                    } else if (type == PLAN) {
+                        int id = buffer.getInt();
+                        String plan = readString(buffer);
+                        if (id >= 0 && id < count) {
+                            plans[id] = plan;
+                        }
+                    } else {
+                        break;
+                    }
+                    valid = buffer.position();
+                }
+            } catch (BufferUnderflowException e) {
+                // 最后一条记录不完整
+            }
+            if (valid < channel.size()) {
+                log.warn("历史日志末尾有 {} 字节不完整，已截断", channel.size() - valid);
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    /**
+     * 读入从 0 开始首尾相接的段；不连续或超出日志范围的段（例如合并中途退出留下的旧段）被删除
+     */
+    private void loadSegments() throws IOException {
+        List<long[]> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "seg-*.seg")) {
+            for (Path file : stream) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    found.add(new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))});
+                }
+            }
+        }
+        // 起点相同时优先覆盖范围更大的段
+        found.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[1], a[1]));
+        int expected = 0;
+        for (long[] range : found) {
+            Path file = dir.resolve(segmentName((int) range[0], (int) range[1]));
+            if (range[0] == expected && range[1] <= count && range[1] > range[0] && readSegment(file)) {
+                segments.add(file);
+                expected = (int) range[1];
+            } else {
+                Files.deleteIfExists(file);
+            }
+        }
+        segmentedCount = expected;
+        segmentCount = segments.size();
+    }
+
+    /**
+     * 读入一个段；段损坏时不修改内存中的倒排表
+     */
+    private boolean readSegment(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        List<String> terms = new ArrayList<>();
+        List<int[]> ids = new ArrayList<>();
+        try {
+            if (buffer.getInt() != SEGMENT_MAGIC) {
+                return false;
+            }
+            int base = buffer.getInt();
+            buffer.getInt();
+            int termCount = buffer.getInt();
+            for (int t = 0; t < termCount; t++) {
+                byte[] bytes = new byte[readVarint(buffer)];
+                buffer.get(bytes);
+                int[] values = new int[readVarint(buffer)];
+                int id = base - 1;
+                for (int k = 0; k < values.length; k++) {
+                    id += readVarint(buffer);
+                    values[k] = id;
+                }
+                terms.add(new String(bytes, StandardCharsets.UTF_8));
+                ids.add(values);
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            log.warn("历史索引段 {} 已损坏", file.getFileName());
+            return false;
+        }
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+            IntList list = postings.computeIfAbsent(term, key -> new IntList());
+            for (int id : ids.get(t)) {
+                list.add(id);
+            }
+            if (isWordChar(term.charAt(0))) {
+                words.add(term);
+            }
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * 记录一条提交的指令；已有相同指令时累计使用次数
+     */
+    public synchronized void addInstruction(String text) {
+        String key = key(text);
+        if (key.isEmpty()) {
+            return;
+        }
+        Integer existing = instructionIds.get(key);
+        long now = System.currentTimeMillis();
+        try {
+            if (existing != null) {
+                use(existing, now);
+                return;
+            }
+            append(INSTRUCTION, now, text.trim());
+        } catch (IOException e) {
+            log.warn("写入历史日志失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 记录一条 AI 回复；已有相同回复时累计使用次数
+     */
+    public synchronized void addReply(String text) {
+        if (text == null || text.isBlank()) {
+            return;
+        }
+        String trimmed = truncate(text.trim());
+        Integer existing = replyIds.get(key(trimmed));
+        long now = System.currentTimeMillis();
+        try {
+            if (existing != null) {
+                use(existing, now);
+                return;
+            }
+            append(REPLY, now, trimmed);
+        } catch (IOException e) {
+            log.warn("写入历史日志失败: {}", e.getMessage());
+        }
+    }
+
+    private void use(int id, long now) throws IOException {
+        uses[id]++;
+        lastUsed[id] = now;
+        ByteArrayOutputStream record = new ByteArrayOutputStream(13);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(USE);
+        out.writeInt(id);
+        out.writeLong(now);
+        enqueueRecord(record);
+    }
+
+    /**
+     * 记录指令执行成功的命令计划，再次提交同一条指令时直接复用
+     */
+    public synchronized void recordPlan(String instruction, JsonNode plan) {
+        if (plan == null || key(instruction).isEmpty()) {
+            return;
+        }
+        try {
+            Integer id = instructionIds.get(key(instruction));
+            if (id == null) {
+                append(INSTRUCTION, System.currentTimeMillis(), instruction.trim());
+                id = count - 1;
+            }
+            String json = objectMapper.writeValueAsString(plan);
+            if (json.equals(plans[id])) {
+                return;
+            }
+            plans[id] = json;
+            ByteArrayOutputStream record = new ByteArrayOutputStream(json.length() + 16);
+            DataOutputStream out = new DataOutputStream(record);
+            out.writeByte(PLAN);
+            out.writeInt(id);
+            writeString(out, json);
+            enqueueRecord(record);
+        } catch (IOException e) {
+            log.warn("写入历史日志失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 与指令完全相同（忽略大小写和多余空白）的历史指令的命令计划，没有时返回 null
+     */
+    public synchronized JsonNode planFor(String instruction) {
+        Integer id = instructionIds.get(key(instruction));
+        if (id == null || plans[id] == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(plans[id]);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 全文检索：包含查询中所有词项的指令和回复，从新到旧
+     */
+    public synchronized List<Entry> search(String query, int limit) {
+        List<Entry> results = new ArrayList<>();
+        for (int id : match(query, ANY, limit)) {
+            results.add(new Entry(texts[id], kinds[id] == INSTRUCTION, lastUsed[id], uses[id]));
+        }
+        return results;
+    }
+
+    /**
+     * 指令自动补全：包含已输入内容的历史指令，按使用次数 × 最近使用时间衰减排序，以输入内容开头的优先
+     */
+    public synchronized List<String> autocomplete(String input, int limit) {
+        String typed = key(input);
+        if (typed.isEmpty()) {
+            return List.of();
+        }
+        int[] candidates = match(input, INSTRUCTION, AUTOCOMPLETE_CANDIDATES);
+        long now = System.currentTimeMillis();
+        double[] scores = new double[candidates.length];
+        Integer[] order = new Integer[candidates.length];
+        int n = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            int id = candidates[i];
+            String candidate = key(texts[id]);
+            if (candidate.equals(typed)) {
+                continue;
+            }
+            double recency = Math.pow(0.5, Math.max(0, now - lastUsed[id]) / RECENCY_HALF_LIFE_MILLIS);
+            scores[i] = uses[id] * recency * (candidate.startsWith(typed) ? 2 : 1);
+            order[n++] = i;
+        }
+        Arrays.sort(order, 0, n, (a, b) -> Double.compare(scores[b], scores[a]));
+        List<String> results = new ArrayList<>(Math.min(limit, n));
+        for (int i = 0; i < n && results.size() < limit; i++) {
+            results.add(texts[candidates[order[i]]]);
+        }
+        return results;
+    }
+
+    /**
+     * 匹配所有词项的文档 ID，从新到旧，最多 limit 个；kind 为 ANY 时不限类型
+     * 最后一个英文词没有输完时按前缀匹配：有其他词项时在候选文本上校验，否则展开为词项的并集。
+     */
+    private int[] match(String query, byte kind, int limit) {
+        List<String> terms = new ArrayList<>();
+        String prefix = tokenize(query, true, terms);
+        List<IntList[]> sources = new ArrayList<>();
+        for (String term : terms) {
+            IntList list = postings.get(term);
+            if (list == null) {
+                return new int[0];
+            }
+            sources.add(new IntList[]{list});
+        }
+        if (prefix != null && sources.isEmpty()) {
+            List<IntList> expansion = new ArrayList<>();
+            for (String word : words.subSet(prefix, true, prefix + Character.MAX_VALUE, false)) {
+                expansion.add(postings.get(word));
+                if (expansion.size() == MAX_PREFIX_EXPANSION) {
+                    break;
+                }
+            }
+            if (expansion.isEmpty()) {
+                return new int[0];
+            }
+            sources.add(expansion.toArray(new IntList[0]));
+            prefix = null;
+        }
+        if (sources.isEmpty()) {
+            return new int[0];
+        }
+
+        // 从总长度最短的来源驱动遍历
+        int driver = 0;
+        for (int s = 1; s < sources.size(); s++) {
+            if (totalSize(sources.get(s)) < totalSize(sources.get(driver))) {
+                driver = s;
+            }
+        }
+        IntList[] lists = sources.get(driver);
+        int[] cursors = new int[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            cursors[i] = lists[i].size - 1;
+        }
+
+        // 其余来源的游标：候选 ID 递减，游标只向前倒退，用倍增步长定位
+        int[][] positions = new int[sources.size()][];
+        for (int s = 0; s < sources.size(); s++) {
+            IntList[] source = sources.get(s);
+            positions[s] = new int[source.length];
+            for (int i = 0; i < source.length; i++) {
+                positions[s][i] = source[i].size - 1;
+            }
+        }
+
+        int[] results = new int[Math.min(limit, count)];
+        int found = 0;
+        int scanned = 0;
+        while (found < results.length && scanned < SCAN_BUDGET) {
+            // 多个列表时取当前最大的 ID（并集按从新到旧合并）
+            int id = -1;
+            for (int i = 0; i < lists.length; i++) {
+                if (cursors[i] >= 0) {
+                    id = Math.max(id, lists[i].values[cursors[i]]);
+                }
+            }
+            if (id < 0) {
+                break;
+            }
+            for (int i = 0; i < lists.length; i++) {
+                if (cursors[i] >= 0 && lists[i].values[cursors[i]] == id) {
+                    cursors[i]--;
+                }
+            }
+            scanned++;
+            if (kind != ANY && kinds[id] != kind) {
+                continue;
+            }
+            if (containsAll(sources, positions, driver, id) && (prefix == null || containsWordPrefix(texts[id], prefix))) {
+                results[found++] = id;
+            }
+        }
+        return Arrays.copyOf(results, found);
+    }
+
+    private static boolean containsAll(List<IntList[]> sources, int[][] positions, int skip, int id) {
+        for (int s = 0; s < sources.size(); s++) {
+            if (s == skip) {
+                continue;
+            }
+            IntList[] source = sources.get(s);
+            boolean contained = false;
+            for (int i = 0; i < source.length; i++) {
+                int position = source[i].floor(id, positions[s][i]);
+                positions[s][i] = position;
+                if (position >= 0 && source[i].values[position] == id) {
+                    contained = true;
+                }
+            }
+            if (!contained) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long totalSize(IntList[] lists) {
+        long total = 0;
+        for (IntList list : lists) {
+            total += list.size;
+        }
+        return total;
+    }
+
+    /**
+     * 文本中是否有以 prefix 开头的英文或数字词（prefix 已是小写）
+     */
+    private static boolean containsWordPrefix(String text, String prefix) {
+        int limit = text.length() - prefix.length();
+        for (int i = 0; i <= limit; i++) {
+            if ((i == 0 || !isWordChar(text.charAt(i - 1))) && text.regionMatches(true, i, prefix, 0, prefix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String truncate(String text) {
+        return text.length() > MAX_TEXT_CHARS ? text.substring(0, MAX_TEXT_CHARS) : text;
+    }
+
+    private void append(byte kind, long time, String text) throws IOException {
+        text = truncate(text);
+        int id = addDocument(kind, time, text);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(text.length() * 3 + 16);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(DOC);
+        out.writeByte(kind);
+        out.writeLong(time);
+        writeString(out, text);
+        enqueueRecord(record);
+        index(id);
+        if (count - segmentedCount >= SEGMENT_DOCS) {
+            flushSegment();
+        }
+    }
+
+    private int addDocument(byte kind, long time, String text) {
+        if (count == texts.length) {
+            int capacity = count * 2;
+            texts = Arrays.copyOf(texts, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            lastUsed = Arrays.copyOf(lastUsed, capacity);
+            uses = Arrays.copyOf(uses, capacity);
+            plans = Arrays.copyOf(plans, capacity);
+        }
+        int id = count++;
+        texts[id] = text;
+        kinds[id] = kind;
+        lastUsed[id] = time;
+        uses[id] = 1;
+        (kind == INSTRUCTION ? instructionIds : replyIds).put(key(text), id);
+        return id;
+    }
+
+    private void index(int id) {
+        List<String> terms = new ArrayList<>();
+        tokenize(texts[id], false, terms);
+        for (String term : terms) {
+            IntList list = postings.computeIfAbsent(term, key -> new IntList());
+            if (list.size == 0 || list.values[list.size - 1] != id) {
+                list.add(id);
+            }
+            tailTerms.add(term);
+            if (isWordChar(term.charAt(0))) {
+                words.add(term);
+            }
+        }
+    }
+
+    /**
+     * 把最后一个段之后的文档写成新段；段数达到上限时把全部文档合并为一个段。
+     * 锁内只取涉及词项的倒排表快照，由写线程在日志记录之后写出
+     */
+    private void flushSegment() {
+        boolean merge = segmentCount + 1 >= MAX_SEGMENTS;
+        int base = merge ? 0 : segmentedCount;
+        Collection<String> terms = merge ? postings.keySet() : tailTerms;
+        Map<String, IntList> snapshot = new HashMap<>(terms.size() * 2);
+        for (String term : terms) {
+            IntList list = postings.get(term);
+            if (list != null) {
+                snapshot.put(term, list.snapshot());
+            }
+        }
+        int end = count;
+        enqueue(() -> writeSegment(base, end, snapshot, merge));
+        segmentCount = merge ? 1 : segmentCount + 1;
+        segmentedCount = count;
+        tailTerms.clear();
+    }
+
+    /**
+     * 写线程：写出段文件，合并时删除旧段
+     */
+    private void writeSegment(int base, int end, Map<String, IntList> snapshot, boolean merge) {
+        try {
+            // 段覆盖的文档必须先落到日志里，否则重启时段会被当作超出日志范围删掉
+            journal.flush();
+            Path file = writeSegment(base, end, snapshot);
+            if (merge) {
+                for (Path old : segments) {
+                    Files.deleteIfExists(old);
+                }
+                segments.clear();
+            }
+            segments.add(file);
+        } catch (IOException e) {
+            log.warn("写入历史索引段失败: {}", e.getMessage());
+        }
+    }
+
+    private Path writeSegment(int base, int end, Map<String, IntList> snapshot) throws IOException {
+        List<String> present = new ArrayList<>();
+        for (Map.Entry<String, IntList> entry : snapshot.entrySet()) {
+            IntList list = entry.getValue();
+            if (list.lowerBound(end) > list.lowerBound(base)) {
+                present.add(entry.getKey());
+            }
+        }
+        Path file = dir.resolve(segmentName(base, end));
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeInt(base);
+            out.writeInt(end);
+            out.writeInt(present.size());
+            for (String term : present) {
+                IntList list = snapshot.get(term);
+                int from = list.lowerBound(base);
+                int to = list.lowerBound(end);
+                byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, bytes.length);
+                out.write(bytes);
+                writeVarint(out, to - from);
+                int previous = base - 1;
+                for (int k = from; k < to; k++) {
+                    writeVarint(out, list.values[k] - previous);
+                    previous = list.values[k];
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    private static String segmentName(int base, int end) {
+        return String.format("seg-%010d-%010d.seg", base, end);
+    }
+
+    /**
+     * 切分：中文连续段产生单字和二字词项（查询时长度不小于 2 的段只用二字词项），英文和数字按整词小写。
+     * 查询模式下文本以未结束的英文词收尾时，该词不加入 terms，作为前缀返回。
+     */
+    static String tokenize(String text, boolean query, List<String> terms) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        int length = Math.min(lower.length(), MAX_TEXT_CHARS);
+        int i = 0;
+        while (i < length) {
+            char c = lower.charAt(i);
+            if (Character.isIdeographic(c)) {
+                int start = i;
+                while (i < length && Character.isIdeographic(lower.charAt(i))) {
+                    i++;
+                }
+                int run = i - start;
+                if (!query || run == 1) {
+                    for (int k = start; k < i; k++) {
+                        terms.add(String.valueOf(lower.charAt(k)));
+                    }
+                }
+                for (int k = start; k + 1 < i; k++) {
+                    terms.add(lower.substring(k, k + 2));
+                }
+            } else if (isWordChar(c)) {
+                int start = i;
+                while (i < length && isWordChar(lower.charAt(i))) {
+                    i++;
+                }
+                if (query && i == lower.length()) {
+                    return lower.substring(start, i);
+                }
+                terms.add(lower.substring(start, i));
+            } else {
+                i++;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c < 128 && Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * 指令去重用的键：去掉首尾空白、合并连续空白、小写
+     */
+    static String key(String text) {
+        if (text == null) {
+            return "";
+        }
+        if (isKey(text)) {
+            return text;
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = builder.length() > 0;
+                continue;
+            }
+            if (space) {
+                builder.append(' ');
+                space = false;
+            }
+            builder.append(Character.toLowerCase(c));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 文本是否已是去重键的形式（查询时大多数候选不需要复制）
+     */
+    private static boolean isKey(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (c != ' ' || i == 0 || i == length - 1 || text.charAt(i - 1) == ' ') {
+                    return false;
+                }
+            } else if (Character.toLowerCase(c) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new BufferUnderflowException();
+    }
+
+    private void enqueueRecord(ByteArrayOutputStream record) {
+        byte[] bytes = record.toByteArray();
+        enqueue(() -> {
+            try {
+                journal.write(bytes);
+            } catch (IOException e) {
+                log.warn("写入历史日志失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 入队；队列满说明磁盘跟不上，此时等待而不是丢弃，丢掉一条文档记录会让重放后的文档 ID 整体错位
+     */
+    private void enqueue(PendingWrite write) {
+        if (!running) {
+            return;
+        }
+        try {
+            writes.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("写入历史日志被中断，本条记录未保存");
+        }
+    }
+
+    /**
+     * 写线程：按提交顺序攒批写入，每批只 flush 一次
+     */
+    private void drain() {
+        List<PendingWrite> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (running || !writes.isEmpty()) {
+                PendingWrite first = writes.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                writes.drainTo(batch, BATCH_SIZE - 1);
+                for (PendingWrite write : batch) {
+                    write.run();
+                }
+                batch.clear();
+                try {
+                    journal.flush();
+                } catch (IOException e) {
+                    log.warn("写入历史日志失败: {}", e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("关闭历史日志失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 写出最后一个段之后的文档，下次启动时不必重新切分；等待写线程写完队列中的记录
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        if (count > segmentedCount) {
+            flushSegment();
+        }
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 排队等待写线程执行的写入
+     */
+    private interface PendingWrite {
+        void run();
+    }
+
+    /**
+     * 检索结果
+     */
+    public static class Entry {
+        private final String text;
+        private final boolean instruction;
+        private final long lastUsed;
+        private final int uses;
+
+        public Entry(String text, boolean instruction, long lastUsed, int uses) {
+            this.text = text;
+            this.instruction = instruction;
+            this.lastUsed = lastUsed;
+            this.uses = uses;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean isInstruction() {
+            return instruction;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+
+        public int getUses() {
+            return uses;
+        }
+    }
+
+    /**
+     * 倒排列表（升序 int 数组，避免装箱）
+     */
+    private static class IntList {
+        private int[] values;
+        private int size;
+
+        IntList() {
+            this(new int[4], 0);
+        }
+
+        private IntList(int[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        /**
+         * 当前内容的只读快照：共享数组，之后的追加只写 size 之后的位置或换新数组，不影响快照
+         */
+        IntList snapshot() {
+            return new IntList(values, size);
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * 不超过 hi 的位置中值不大于 value 的最后一个，没有时返回 -1；从 hi 向前倍增步长后二分
+         */
+        int floor(int value, int hi) {
+            if (hi < 0 || values[hi] <= value) {
+                return hi;
+            }
+            int step = 1;
+            int lo = hi - step;
+            while (lo >= 0 && values[lo] > value) {
+                hi = lo;
+                step <<= 1;
+                lo = hi - step;
+            }
+            int index = Arrays.binarySearch(values, Math.max(lo, 0), hi, value);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        /**
+         * 第一个不小于 value 的位置
+         */
+        int lowerBound(int value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package com.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 传输层压缩
+ * java.net.http.HttpClient 不会自行声明或解压压缩编码。请求时发送 Accept-Encoding，
+ * 响应按 Content-Encoding（gzip / deflate / identity）在自定义的 BodySubscriber 中边收边解压，
+ * 不先把整个压缩体收集成一个数组；可选地以 gzip 压缩较大的请求体（端点需支持 Content-Encoding，
+ * 返回 415 时由调用方关闭）。Inflater、Deflater 和输出缓冲区从池中借用，每次调用只分配结果本身。
+ * 线上字节数和解码后的字节数记录到 ClientMetrics。线程安全。
+ */
+public class HttpCompression {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpCompression.class);
+
+    private static final int GZIP_MAGIC = 0x8B1F;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final byte[] GZIP_HEADER = {0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, (byte) 0xFF};
+    private static final int INITIAL_BUFFER = 8 << 10;
+    // 超过此大小的缓冲区用完后不放回池中，避免个别大响应长期占用内存
+    private static final int MAX_POOLED_BUFFER = 256 << 10;
+    private static final int POOL_SIZE = 8;
+
+    private final String acceptEncoding;
+    private volatile boolean compressRequests;
+    private final int minRequestBytes;
+    private final int maxDecodedBytes;
+    private final ClientMetrics metrics;
+
+    private final Pool<Inflater> inflaters = new Pool<>(POOL_SIZE, () -> new Inflater(true));
+    private final Pool<Deflater> deflaters;
+    private final Pool<byte[]> buffers = new Pool<>(POOL_SIZE, () -> new byte[INITIAL_BUFFER]);
+
+    /**
+     * @param acceptEncoding  Accept-Encoding 请求头，为空时不发送（服务端按 identity 响应）
+     * @param compressRequests 是否以 gzip 压缩请求体
+     * @param minRequestBytes 请求体达到此大小才压缩
+     * @param level           请求体压缩级别（1~9）
+     * @param maxDecodedBytes 解压后响应体的大小上限，超过时中止（防止压缩炸弹）
+     */
+    public HttpCompression(String acceptEncoding, boolean compressRequests, int minRequestBytes, int level,
+                           int maxDecodedBytes, ClientMetrics metrics) {
+        this.acceptEncoding = acceptEncoding == null ? "" : acceptEncoding.trim();
+        this.compressRequests = compressRequests;
+        this.minRequestBytes = Math.max(0, minRequestBytes);
+        this.maxDecodedBytes = maxDecodedBytes;
+        this.metrics = metrics;
+        this.deflaters = new Pool<>(POOL_SIZE, () -> new Deflater(level, true));
+    }
+
+    /**
+     * 按系统属性创建：
+     *   qwen.compression.accept     Accept-Encoding（默认 gzip, deflate；identity 表示不压缩响应）
+     *   qwen.compression.request    是否压缩请求体（默认 false，DashScope 等端点不一定支持）
+     *   qwen.compression.minBytes   请求体压缩阈值（默认 1024 字节）
+     *   qwen.compression.level      请求体压缩级别（默认 5）
+     *   qwen.compression.maxBytes   解压后响应体上限（默认 16 MB）
+     */
+    public static HttpCompression fromProperties(ClientMetrics metrics) {
+        String accept = System.getProperty("qwen.compression.accept", "gzip, deflate");
+        return new HttpCompression("identity".equalsIgnoreCase(accept.trim()) ? "" : accept,
+                Boolean.getBoolean("qwen.compression.request"),
+                Integer.getInteger("qwen.compression.minBytes", 1024),
+                Integer.getInteger("qwen.compression.level", 5),
+                Integer.getInteger("qwen.compression.maxBytes", 16 << 20),
+                metrics);
+    }
+
+    public boolean isRequestCompression() {
+        return compressRequests;
+    }
+
+    /**
+     * 端点拒绝压缩的请求体（415）时关闭请求压缩，返回此前是否开启
+     */
+    public boolean rejectRequestCompression() {
+        boolean was = compressRequests;
+        compressRequests = false;
+        return was;
+    }
+
+    /**
+     * 设置 Accept-Encoding 并以请求体发起 POST；达到阈值且开启请求压缩时以 gzip 发送
+     */
+    public HttpRequest.Builder post(HttpRequest.Builder builder, String body) {
+        if (!acceptEncoding.isEmpty()) {
+            builder.header("Accept-Encoding", acceptEncoding);
+        }
+        byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        if (compressRequests && raw.length >= minRequestBytes) {
+            byte[] gzipped = gzip(raw);
+            if (gzipped.length < raw.length) {
+                metrics.recordRequestBytes(raw.length, gzipped.length);
+                return builder.header("Content-Encoding", "gzip")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(gzipped));
+            }
+        }
+        metrics.recordRequestBytes(raw.length, raw.length);
+        return builder.POST(HttpRequest.BodyPublishers.ofByteArray(raw));
+    }
+
+    /**
+     * 按响应的 Content-Encoding 创建边收边解码的 BodySubscriber（结果按 UTF-8 解码）
+     */
+    public HttpResponse.BodySubscriber<String> subscriber(HttpResponse.ResponseInfo info) {
+        String encoding = info.headers().firstValue("content-encoding").orElse("identity")
+                .trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                return new DecodingSubscriber(Format.GZIP);
+            case "deflate":
+                return new DecodingSubscriber(Format.ZLIB);
+            case "identity":
+            case "":
+                return new DecodingSubscriber(Format.IDENTITY);
+            default:
+                // 无法解码的编码不能按文本解析，作为失败的交换处理
+                return new FailedSubscriber(new IOException("不支持的 Content-Encoding: " + encoding));
+        }
+    }
+
+    /**
+     * 以 gzip 压缩一段数据（Deflater 和缓冲区从池中借用，只分配结果数组）
+     */
+    byte[] gzip(byte[] raw) {
+        Deflater deflater = deflaters.acquire();
+        byte[] buffer = buffers.acquire();
+        try {
+            System.arraycopy(GZIP_HEADER, 0, buffer, 0, GZIP_HEADER.length);
+            int length = GZIP_HEADER.length;
+            deflater.setInput(raw);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(raw);
+            byte[] out = Arrays.copyOf(buffer, length + 8);
+            putIntLE(out, length, (int) crc.getValue());
+            putIntLE(out, length + 4, raw.length);
+            return out;
+        } finally {
+            deflater.reset();
+            if (!deflaters.release(deflater)) {
+                deflater.end();
+            }
+            releaseBuffer(buffer);
+        }
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_BUFFER) {
+            buffers.release(buffer);
+        }
+    }
+
+    private static void putIntLE(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >>> 8);
+        out[offset + 2] = (byte) (value >>> 16);
+        out[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static int intLE(byte[] in, int offset) {
+        return (in[offset] & 0xFF) | (in[offset + 1] & 0xFF) << 8
+                | (in[offset + 2] & 0xFF) << 16 | (in[offset + 3] & 0xFF) << 24;
+    }
+
+    private enum Format {
+        IDENTITY, GZIP, ZLIB
+    }
+
+    /**
+     * 边收边解压的响应体订阅者
+     * 压缩数据依次经过：格式头（gzip 头或 zlib 头，先攒齐再解析）→ Inflater（原始 deflate）→
+     * 尾部校验（gzip 为 CRC32 和长度，zlib 的 Adler-32 由 TCP/TLS 保证，不再校验）。
+     * 解压结果直接写入池中借来的缓冲区，完成时一次解码成字符串。
+     */
+    private final class DecodingSubscriber implements HttpResponse.BodySubscriber<String> {
+
+        private final Format format;
+        private final CompletableFuture<String> body = new CompletableFuture<>();
+        private final CRC32 crc;
+        private Flow.Subscription subscription;
+        private Inflater inflater;
+        private byte[] out;
+        private int length;
+        private long wireBytes;
+        // 格式头和尾部在跨越多个数据块时先攒在这里
+        private byte[] pending = new byte[0];
+        private boolean headerDone;
+        private boolean inflated;
+
+        DecodingSubscriber(Format format) {
+            this.format = format;
+            this.crc = format == Format.GZIP ? new CRC32() : null;
+            this.headerDone = format == Format.IDENTITY;
+        }
+
+        @Override
+        public CompletionStage<String> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            out = buffers.acquire();
+            if (format != Format.IDENTITY) {
+                inflater = inflaters.acquire();
+            }
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (body.isDone()) {
+                return;
+            }
+            try {
+                for (ByteBuffer item : items) {
+                    wireBytes += item.remaining();
+                    accept(item);
+                }
+            } catch (IOException | DataFormatException e) {
+                subscription.cancel();
+                fail(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (body.isDone()) {
+                return;
+            }
+            try {
+                if (format != Format.IDENTITY) {
+                    if (!inflated) {
+                        throw new IOException("压缩的响应体不完整");
+                    }
+                    if (format == Format.GZIP) {
+                        checkGzipTrailer();
+                    }
+                }
+                String text = new String(out, 0, length, StandardCharsets.UTF_8);
+                metrics.recordResponseBytes(wireBytes, length, format != Format.IDENTITY);
+                release();
+                body.complete(text);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void accept(ByteBuffer item) throws IOException, DataFormatException {
+            if (format == Format.IDENTITY) {
+                int n = item.remaining();
+                ensureCapacity(n);
+                item.get(out, length, n);
+                length += n;
+                return;
+            }
+            if (!headerDone) {
+                item = parseHeader(item);
+                if (item == null) {
+                    return;
+                }
+            }
+            if (!inflated) {
+                inflate(item);
+            }
+            if (inflated && item.hasRemaining()) {
+                // 尾部（gzip 为 8 字节）
+                byte[] more = new byte[item.remaining()];
+                item.get(more);
+                pending = concat(pending, more);
+            }
+        }
+
+        /**
+         * 攒齐并解析格式头，返回头部之后的数据；头部还不完整时返回 null
+         */
+        private ByteBuffer parseHeader(ByteBuffer item) throws IOException {
+            byte[] chunk = new byte[item.remaining()];
+            item.get(chunk);
+            byte[] data = concat(pending, chunk);
+            int headerLength = format == Format.GZIP ? gzipHeaderLength(data) : zlibHeaderLength(data);
+            if (headerLength < 0) {
+                pending = data;
+                return null;
+            }
+            pending = new byte[0];
+            headerDone = true;
+            return ByteBuffer.wrap(data, headerLength, data.length - headerLength);
+        }
+
+        private void inflate(ByteBuffer input) throws IOException, DataFormatException {
+            inflater.setInput(input);
+            while (!inflater.finished()) {
+                ensureCapacity(1);
+                int n = inflater.inflate(out, length, out.length - length);
+                if (crc != null) {
+                    crc.update(out, length, n);
+                }
+                length += n;
+                if (n == 0) {
+                    if (inflater.needsInput()) {
+                        break;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new DataFormatException("deflate 数据需要预置字典");
+                    }
+                }
+            }
+            inflated = inflater.finished();
+        }
+
+        private void checkGzipTrailer() throws IOException {
+            if (pending.length < 8) {
+                throw new IOException("gzip 尾部不完整");
+            }
+            if (intLE(pending, 0) != (int) crc.getValue() || intLE(pending, 4) != length) {
+                throw new IOException("gzip 校验失败");
+            }
+        }
+
+        private void ensureCapacity(int more) throws IOException {
+            if (length + more <= out.length) {
+                return;
+            }
+            if ((long) length + more > maxDecodedBytes) {
+                throw new IOException("响应体超过上限 " + maxDecodedBytes + " 字节");
+            }
+            out = Arrays.copyOf(out, (int) Math.min(maxDecodedBytes, Math.max(length + more, out.length * 2L)));
+        }
+
+        private void fail(Throwable throwable) {
+            if (body.completeExceptionally(throwable)) {
+                log.debug("响应体解码失败: {}", throwable.getMessage());
+                release();
+            }
+        }
+
+        private void release() {
+            if (inflater != null) {
+                inflater.reset();
+                if (!inflaters.release(inflater)) {
+                    inflater.end();
+                }
+                inflater = null;
+            }
+            if (out != null) {
+                releaseBuffer(out);
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * gzip 头长度（RFC 1952），数据不足时返回 -1
+     */
+    static int gzipHeaderLength(byte[] data) throws IOException {
+        if (data.length < 10) {
+            return -1;
+        }
+        if (((data[0] & 0xFF) | (data[1] & 0xFF) << 8) != GZIP_MAGIC || data[2] != 8) {
+            throw new IOException("不是 gzip 数据");
+        }
+        int flags = data[3] & 0xFF;
+        int offset = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (data.length < offset + 2) {
+                return -1;
+            }
+            offset += 2 + ((data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8);
+        }
+        for (int flag : new int[]{FNAME, FCOMMENT}) {
+            if ((flags & flag) != 0) {
+                while (offset < data.length && data[offset] != 0) {
+                    offset++;
+                }
+                if (offset >= data.length) {
+                    return -1;
+                }
+                offset++;
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            offset += 2;
+        }
+        return offset <= data.length ? offset : -1;
+    }
+
+    /**
+     * zlib 头长度（RFC 1950）；部分服务端的 deflate 编码不带 zlib 头，此时返回 0
+     */
+    static int zlibHeaderLength(byte[] data) {
+        if (data.length < 2) {
+            return -1;
+        }
+        int cmf = data[0] & 0xFF;
+        int flg = data[1] & 0xFF;
+        boolean zlib = (cmf & 0x0F) == 8 && (cmf >> 4) <= 7 && (cmf << 8 | flg) % 31 == 0 && (flg & 0x20) == 0;
+        return zlib ? 2 : 0;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        byte[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    /**
+     * 无法解码的响应：丢弃响应体并以异常结束
+     */
+    private static final class FailedSubscriber implements HttpResponse.BodySubscriber<String> {
+
+        private final CompletableFuture<String> body = new CompletableFuture<>();
+        private final IOException error;
+
+        FailedSubscriber(IOException error) {
+            this.error = error;
+        }
+
+        @Override
+        public CompletionStage<String> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.cancel();
+            body.completeExceptionally(error);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            body.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * 有上限的无锁对象池，池空时新建，池满时不再收回归还的对象
+     */
+    private static final class Pool<T> {
+
+        private final ConcurrentLinkedQueue<T> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int capacity;
+        private final Supplier<T> factory;
+
+        Pool(int capacity, Supplier<T> factory) {
+            this.capacity = capacity;
+            this.factory = factory;
+        }
+
+        T acquire() {
+            T item = free.poll();
+            if (item == null) {
+                return factory.get();
+            }
+            size.decrementAndGet();
+            return item;
+        }
+
+        /**
+         * 归还对象，池已满时返回 false（调用方负责释放）
+         */
+        boolean release(T item) {
+            if (size.incrementAndGet() <= capacity) {
+                free.offer(item);
+                return true;
+            }
+            size.decrementAndGet();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HTTP 传输层
+ * QwenClient 通过它收发请求：默认直连网络；record 模式在直连的同时把每次交换写入录制文件；
+ * replay 模式从录制文件回放响应（按原始或缩放后的耗时），完全不访问网络。
+ * 系统属性：
+ *   qwen.transport            direct（默认）/ record / replay
+ *   qwen.transport.file       录制文件（默认 数据目录/transport/提供方名.rec）
+ *   qwen.transport.maxBytes   单个录制文件的大小上限，超过后轮转（默认 8 MB）
+ *   qwen.transport.maxFiles   保留的轮转文件数（默认 4）
+ *   qwen.transport.timeScale  回放耗时缩放系数，0 表示立即返回（默认 1）
+ */
+public interface HttpTransport {
+
+    /**
+     * 发送请求；onHeaders 在收到响应头时调用（用于首字节时间和阶段通知）
+     * 返回的 Future 被取消时应中止交换。
+     */
+    CompletableFuture<Response> send(HttpRequest request, String requestBody, Runnable onHeaders);
+
+    /**
+     * 轻量健康探测，返回 HTTP 状态码
+     */
+    int probe(HttpRequest request) throws IOException, InterruptedException;
+
+    /**
+     * 释放资源（录制模式下写完排队中的记录）
+     */
+    default void close() {
+    }
+
+    /**
+     * 按系统属性创建传输层，name 为提供方名称，用于区分默认录制文件
+     */
+    static HttpTransport fromProperties(String name, HttpClient httpClient) {
+        return fromProperties(name, httpClient, null);
+    }
+
+    /**
+     * 按系统属性创建传输层，直连部分按 compression 解码压缩的响应体（为 null 时不解码）
+     */
+    static HttpTransport fromProperties(String name, HttpClient httpClient, HttpCompression compression) {
+        String mode = System.getProperty("qwen.transport", "direct").trim().toLowerCase();
+        HttpTransport direct = new DirectTransport(httpClient, compression);
+        if ("direct".equals(mode)) {
+            return direct;
+        }
+        try {
+            String configured = System.getProperty("qwen.transport.file");
+            Path file = configured != null
+                    ? Paths.get(configured)
+                    : AppPaths.resolve("transport").resolve(name + ".rec");
+            switch (mode) {
+                case "record":
+                    return new RecordingTransport(direct, file,
+                            Long.getLong("qwen.transport.maxBytes", 8L << 20),
+                            Integer.getInteger("qwen.transport.maxFiles", 4),
+                            Integer.getInteger("qwen.transport.queue", 1024));
+                case "replay":
+                    return new ReplayTransport(TransportRecord.readAll(file),
+                            Double.parseDouble(System.getProperty("qwen.transport.timeScale", "1")));
+                default:
+                    LoggerFactory.getLogger(HttpTransport.class).warn("⚠️ 未知传输模式 {}，使用直连", mode);
+                    return direct;
+            }
+        } catch (IOException e) {
+            LoggerFactory.getLogger(HttpTransport.class).warn("⚠️ 无法打开录制文件，使用直连: {}", e.getMessage());
+            return direct;
+        }
+    }
+
+    /**
+     * 一次交换的响应
+     */
+    final class Response {
+
+        private final int statusCode;
+        private final String body;
+        private final long retryAfterMillis;
+
+        public Response(int statusCode, String body) {
+            this(statusCode, body, -1);
+        }
+
+        public Response(int statusCode, String body, long retryAfterMillis) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * 响应头 Retry-After 要求的等待时间（毫秒），没有时为 -1
+         */
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+}
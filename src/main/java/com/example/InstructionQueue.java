@@ -0,0 +1,408 @@
+package com.example;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.Observable;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 待处理指令队列
+ * 指令先进入队列，同时在途的请求数不超过 maxInFlight，其余排队等待，可取消和调整顺序。
+ * 新指令与较早的、仍在排队的指令作用于同一组件的同一属性时（如连续两次改按钮1的颜色），
+ * 较早的指令被折叠（直接移除），避免浪费网络和渲染。已经发出的请求不折叠，
+ * 相对或依赖前一状态的指令（"深一点"、"和刚才相反"）不参与折叠。
+ * 本地计算的指令（相对颜色调整）在前面涉及同一组件的指令全部结束后才执行，执行时再读取组件的当前状态。
+ * 所有公开方法都应在 FX 线程上调用。
+ */
+public class InstructionQueue {
+
+    private static final Duration FINISHED_LINGER = Duration.seconds(2);
+    // 相对或依赖之前状态的措辞：折叠较早的指令会改变这类指令的结果
+    private static final String[] RELATIVE_WORDS = {
+            "刚才", "之前", "上次", "上一", "原来", "相反", "反色", "反过来", "恢复", "还原", "撤销",
+            "一样", "相同", "同样", "跟", "再", "更深", "更浅", "更亮", "更暗", "更鲜",
+            "一点", "一些", "稍", "些许", "调亮", "调暗", "变亮", "变暗", "加深", "变深", "变浅",
+            "饱和", "互补", "对比", "lighter", "darker", "same", "previous", "again"};
+
+    private final ObservableList<PendingInstruction> items =
+            FXCollections.observableArrayList(item -> new Observable[]{item.stateProperty()});
+    private final Function<PendingInstruction, CompletableFuture<Void>> sender;
+    private final int maxInFlight;
+    private int nextId = 1;
+
+    /**
+     * @param sender      发送一条指令，返回可取消的 Future
+     * @param maxInFlight 同时在途的最大请求数
+     */
+    public InstructionQueue(Function<PendingInstruction, CompletableFuture<Void>> sender, int maxInFlight) {
+        this.sender = sender;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * 按系统属性 ai.queue.maxInFlight 创建（默认 2）
+     */
+    public static InstructionQueue fromProperties(Function<PendingInstruction, CompletableFuture<Void>> sender) {
+        return new InstructionQueue(sender, Integer.getInteger("ai.queue.maxInFlight", 2));
+    }
+
+    public ObservableList<PendingInstruction> getItems() {
+        return items;
+    }
+
+    /**
+     * 提交指令；targets 为指令涉及的组件（为空表示不确定，视为可能涉及所有组件），
+     * supersedeKey 为空时不参与折叠，只折叠仍在排队的指令
+     */
+    public PendingInstruction submit(String text, Set<String> targets, String supersedeKey) {
+        if (supersedeKey != null) {
+            for (PendingInstruction item : new ArrayList<>(items)) {
+                if (supersedeKey.equals(item.getSupersedeKey()) && item.getState() == State.QUEUED) {
+                    finish(item, State.SUPERSEDED);
+                }
+            }
+        }
+        PendingInstruction item = new PendingInstruction(nextId++, text, targets, supersedeKey, null);
+        items.add(item);
+        pump();
+        return item;
+    }
+
+    /**
+     * 提交本地计算的指令：在前面涉及同一组件的指令结束后，在 FX 线程上调用 action，不经过 sender
+     */
+    public PendingInstruction submitLocal(String text, Set<String> targets,
+                                          Supplier<CompletableFuture<Void>> action) {
+        PendingInstruction item = new PendingInstruction(nextId++, text, targets, null, action);
+        items.add(item);
+        pump();
+        return item;
+    }
+
+    /**
+     * 是否有未结束的指令可能涉及这些组件（任一方组件集合为空时视为涉及）
+     */
+    public boolean hasPending(Set<String> targets) {
+        for (PendingInstruction item : items) {
+            if (!item.getState().isFinished() && item.overlaps(targets)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 取消指令：排队中的直接移除，在途的中止请求
+     */
+    public void cancel(PendingInstruction item) {
+        if (item != null && !item.getState().isFinished()) {
+            finish(item, State.CANCELLED);
+            pump();
+        }
+    }
+
+    /**
+     * 取消所有未完成的指令
+     */
+    public void cancelAll() {
+        for (PendingInstruction item : new ArrayList<>(items)) {
+            if (!item.getState().isFinished()) {
+                finish(item, State.CANCELLED);
+            }
+        }
+    }
+
+    /**
+     * 将排队中的指令前移一位（只在排队中的指令之间移动）
+     */
+    public boolean moveUp(PendingInstruction item) {
+        return move(item, -1);
+    }
+
+    /**
+     * 将排队中的指令后移一位
+     */
+    public boolean moveDown(PendingInstruction item) {
+        return move(item, 1);
+    }
+
+    /**
+     * 当前在途的请求数
+     */
+    public int inFlight() {
+        int count = 0;
+        for (PendingInstruction item : items) {
+            if (item.getState().isInFlight()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean move(PendingInstruction item, int direction) {
+        if (item == null || item.getState() != State.QUEUED) {
+            return false;
+        }
+        int index = items.indexOf(item);
+        int swap = index + direction;
+        if (swap < 0 || swap >= items.size() || items.get(swap).getState() != State.QUEUED) {
+            return false;
+        }
+        items.set(index, items.get(swap));
+        items.set(swap, item);
+        return true;
+    }
+
+    /**
+     * 按队列顺序启动排队中的指令，直到在途数达到上限
+     */
+    private void pump() {
+        int available = maxInFlight - inFlight();
+        for (PendingInstruction item : new ArrayList<>(items)) {
+            if (available <= 0) {
+                break;
+            }
+            if (item.getState() == State.QUEUED && !waitsForEarlier(item)) {
+                start(item);
+                available--;
+            }
+        }
+    }
+
+    /**
+     * 本地指令与前面涉及同一组件、尚未结束的指令之间保持提交顺序：
+     * 本地指令等前面的指令结束，后面的指令也不越过还没执行的本地指令
+     */
+    private boolean waitsForEarlier(PendingInstruction item) {
+        for (PendingInstruction earlier : items) {
+            if (earlier == item) {
+                return false;
+            }
+            if ((item.isLocal() || earlier.isLocal()) && !earlier.getState().isFinished()
+                    && earlier.overlaps(item.targets)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void start(PendingInstruction item) {
+        item.setState(State.SENDING);
+        CompletableFuture<Void> future;
+        try {
+            future = item.isLocal() ? item.local.get() : sender.apply(item);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        item.future = future;
+        future.whenComplete((ignored, ex) -> Platform.runLater(() -> {
+            if (!item.getState().isFinished()) {
+                finish(item, ex == null ? State.DONE : failureState(ex));
+            }
+            pump();
+        }));
+    }
+
+    private static State failureState(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return cause instanceof CancellationException ? State.CANCELLED : State.FAILED;
+    }
+
+    /**
+     * 进入终态：取消在途请求，短暂保留后从列表移除
+     */
+    private void finish(PendingInstruction item, State state) {
+        item.setState(state);
+        if (item.future != null && !item.future.isDone()) {
+            item.future.cancel(true);
+        }
+        if (state == State.DONE) {
+            PauseTransition linger = new PauseTransition(FINISHED_LINGER);
+            linger.setOnFinished(event -> items.remove(item));
+            linger.play();
+        } else {
+            items.remove(item);
+        }
+    }
+
+    /**
+     * 计算折叠键：指令涉及的组件集合 + 修改的属性（可见性/颜色/文本/样式）
+     * 无法确定组件或属性、同时涉及多个属性、或指令相对于当前状态（依赖之前的指令）时返回 null，不折叠。
+     */
+    public static String supersedeKey(Set<String> targets, String instruction) {
+        if (targets == null || targets.isEmpty() || instruction == null) {
+            return null;
+        }
+        String text = instruction.toLowerCase(Locale.ROOT);
+        if (text.contains("所有") || text.contains("全部") || text.contains("然后") || text.contains("并且")) {
+            return null;
+        }
+        for (String word : RELATIVE_WORDS) {
+            if (text.contains(word)) {
+                return null;
+            }
+        }
+
+        String attribute = null;
+        int matched = 0;
+        if (text.contains("显示") || text.contains("隐藏") || text.contains("藏") || text.contains("show")
+                || text.contains("hide")) {
+            attribute = "visible";
+            matched++;
+        }
+        if (text.contains("色") || text.contains("color")) {
+            attribute = "color";
+            matched++;
+        }
+        if (text.contains("样式") || text.contains("style")) {
+            attribute = "style";
+            matched++;
+        }
+        if (matched == 0 && (text.contains("文本") || text.contains("文字") || text.contains("内容")
+                || text.contains("改为") || text.contains("改成") || text.contains("text"))) {
+            attribute = "text";
+            matched++;
+        }
+        if (matched != 1) {
+            return null;
+        }
+        return attribute + ":" + String.join(",", new TreeSet<>(targets));
+    }
+
+    /**
+     * 指令状态
+     */
+    public enum State {
+        QUEUED("排队中"),
+        SENDING("发送中"),
+        STREAMING("接收中"),
+        APPLYING("执行中"),
+        DONE("完成"),
+        FAILED("失败"),
+        CANCELLED("已取消"),
+        SUPERSEDED("已折叠");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public boolean isInFlight() {
+            return this == SENDING || this == STREAMING || this == APPLYING;
+        }
+
+        public boolean isFinished() {
+            return ordinal() >= DONE.ordinal();
+        }
+    }
+
+    /**
+     * 队列中的一条指令
+     */
+    public static class PendingInstruction {
+
+        private final int id;
+        private final String text;
+        private final Set<String> targets;
+        private final String supersedeKey;
+        private final Supplier<CompletableFuture<Void>> local;
+        private final ObjectProperty<State> state = new SimpleObjectProperty<>(State.QUEUED);
+        private volatile CompletableFuture<Void> future;
+
+        PendingInstruction(int id, String text, Set<String> targets, String supersedeKey,
+                           Supplier<CompletableFuture<Void>> local) {
+            this.id = id;
+            this.text = text;
+            this.targets = targets != null ? Set.copyOf(targets) : Set.of();
+            this.supersedeKey = supersedeKey;
+            this.local = local;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getSupersedeKey() {
+            return supersedeKey;
+        }
+
+        public Set<String> getTargets() {
+            return targets;
+        }
+
+        /**
+         * 是否在本地计算，不发给模型
+         */
+        public boolean isLocal() {
+            return local != null;
+        }
+
+        boolean overlaps(Set<String> others) {
+            if (targets.isEmpty() || others == null || others.isEmpty()) {
+                return true;
+            }
+            for (String target : others) {
+                if (targets.contains(target)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public State getState() {
+            return state.get();
+        }
+
+        /**
+         * 更新请求阶段（可在任意线程调用，终态不会被覆盖）
+         */
+        public void advance(State next) {
+            Runnable update = () -> {
+                if (!getState().isFinished()) {
+                    setState(next);
+                }
+            };
+            if (Platform.isFxApplicationThread()) {
+                update.run();
+            } else {
+                Platform.runLater(update);
+            }
+        }
+
+        void setState(State next) {
+            state.set(next);
+        }
+
+        public ObjectProperty<State> stateProperty() {
+            return state;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%d [%s] %s", id, getState().getLabel(), text);
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 离线意图索引
+ * 用字符 n-gram 哈希向量表示指令，向量存放在内存映射文件中（堆外），
+ * 用倒排文件（IVF）做近似最近邻检索，把新指令映射到以前执行成功的命令计划。
+ *
+ * 文件：
+ *   intent-vectors.bin  头部（魔数、维度、数量）+ float 向量
+ *   intent-plans.jsonl  每行一条 {"i": 指令, "p": 命令计划}，顺序与向量一致
+ */
+public class IntentIndex implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(IntentIndex.class);
+
+    private static final int MAGIC = 0x494E5431;
+    private static final int HEADER_BYTES = 16;
+    static final int DIM = 256;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // IVF 参数：最多 NLIST 个聚类中心，查询时探测最近的 NPROBE 个
+    private static final int NLIST = 32;
+    private static final int NPROBE = 4;
+    // 与所有中心的相似度都低于该值时新建中心
+    private static final float NEW_CENTROID_SIMILARITY = 0.5f;
+    // 修改文本/样式的计划包含自由文本，只在几乎完全相同时复用
+    private static final float FREE_TEXT_SIMILARITY = 0.98f;
+
+    // 同义动词归一化
+    private static final Map<String, String> SYNONYMS = Map.of(
+            "藏起来", "隐藏",
+            "藏起", "隐藏",
+            "隐去", "隐藏",
+            "展示", "显示",
+            "显现", "显示",
+            "改成", "改为",
+            "变成", "改为",
+            "变为", "改为",
+            "换成", "改为",
+            "设为", "改为");
+
+    // 不影响语义的虚词
+    private static final List<String> FILLERS = List.of("帮我", "给我", "一下", "请", "把", "将", "吧", "的");
+
+    private static final String COLOR_CHARS = "红蓝绿黄紫橙粉黑白灰深浅";
+
+    private static final List<String> OPPOSITE_ACTIONS = List.of("显示", "隐藏");
+
+    private final Path vectorFile;
+    private final Path planFile;
+    private final ComponentIndex componentIndex;
+    private final float threshold;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private FloatBuffer vectors;
+    private int capacity;
+    private int count;
+    private BufferedWriter planWriter;
+
+    private final List<String> instructions = new ArrayList<>();
+    private final List<JsonNode> plans = new ArrayList<>();
+    private final List<Set<String>> signatures = new ArrayList<>();
+    private final List<float[]> centroids = new ArrayList<>();
+    private final List<IntList> invertedLists = new ArrayList<>();
+
+    public IntentIndex(Path dir, ComponentIndex componentIndex, double threshold) throws IOException {
+        this.vectorFile = dir.resolve("intent-vectors.bin");
+        this.planFile = dir.resolve("intent-plans.jsonl");
+        this.componentIndex = componentIndex;
+        this.threshold = (float) threshold;
+        load();
+    }
+
+    /**
+     * 使用默认数据目录和阈值（-Dai.intent.threshold，默认 0.85）
+     */
+    public static IntentIndex openDefault(ComponentIndex componentIndex) throws IOException {
+        double threshold = Double.parseDouble(System.getProperty("ai.intent.threshold", "0.85"));
+        return new IntentIndex(AppPaths.dataDir(), componentIndex, threshold);
+    }
+
+    private void load() throws IOException {
+        List<String> lines = Files.exists(planFile)
+                ? Files.readAllLines(planFile, StandardCharsets.UTF_8)
+                : new ArrayList<>();
+
+        channel = FileChannel.open(vectorFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        int storedCount = 0;
+        if (channel.size() >= HEADER_BYTES) {
+            map(Math.max(INITIAL_CAPACITY, (int) ((channel.size() - HEADER_BYTES) / (DIM * 4L))));
+            if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == DIM) {
+                storedCount = buffer.getInt(8);
+            }
+        } else {
+            map(INITIAL_CAPACITY);
+        }
+
+        // 两个文件不一致时（例如写入中途退出）以较短的为准
+        count = Math.min(storedCount, lines.size());
+        for (int i = 0; i < count; i++) {
+            JsonNode entry = objectMapper.readTree(lines.get(i));
+            String instruction = entry.path("i").asText();
+            instructions.add(instruction);
+            plans.add(entry.path("p"));
+            signatures.add(signature(normalize(instruction)));
+            assign(i, read(i));
+        }
+        writeHeader();
+
+        if (lines.size() != count) {
+            // 重写计划文件，丢弃多余的行
+            Files.write(planFile, lines.subList(0, count), StandardCharsets.UTF_8);
+        }
+        planWriter = Files.newBufferedWriter(planFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void map(int newCapacity) throws IOException {
+        capacity = newCapacity;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * DIM * 4);
+        vectors = buffer.duplicate().position(HEADER_BYTES).slice()
+                .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, DIM);
+        buffer.putInt(8, count);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * 查找与指令足够相似的已知计划，没有时返回 null
+     */
+    public synchronized Match lookup(String instruction) {
+        if (count == 0 || instruction == null || instruction.isBlank()) {
+            return null;
+        }
+
+        String normalized = normalize(instruction);
+        float[] query = vectorize(normalized);
+        Set<String> querySignature = signature(normalized);
+
+        int best = -1;
+        float bestSimilarity = -1f;
+        for (int list : nearestCentroids(query, NPROBE)) {
+            IntList members = invertedLists.get(list);
+            for (int k = 0; k < members.size; k++) {
+                int id = members.values[k];
+                float similarity = dot(query, id);
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = id;
+                }
+            }
+        }
+
+        if (best < 0 || bestSimilarity < threshold || !querySignature.equals(signatures.get(best))) {
+            return null;
+        }
+        JsonNode plan = plans.get(best);
+        if (containsFreeText(plan) && bestSimilarity < FREE_TEXT_SIMILARITY) {
+            return null;
+        }
+        return new Match(instructions.get(best), plan.deepCopy(), bestSimilarity);
+    }
+
+    /**
+     * 记录一条执行成功的指令及其命令计划
+     */
+    public synchronized void add(String instruction, JsonNode plan) {
+        if (instruction == null || instruction.isBlank() || plan == null) {
+            return;
+        }
+        String normalized = normalize(instruction);
+        float[] vector = vectorize(normalized);
+
+        // 已有几乎相同的指令时不再重复记录
+        Match existing = lookup(instruction);
+        if (existing != null && existing.similarity > 0.999f) {
+            return;
+        }
+
+        try {
+            if (count == capacity) {
+                map(capacity * 2);
+            }
+            int id = count;
+            vectors.put(id * DIM, vector, 0, DIM);
+
+            ObjectNode entry = objectMapper.createObjectNode();
+            entry.put("i", instruction);
+            entry.set("p", plan);
+            planWriter.write(objectMapper.writeValueAsString(entry));
+            planWriter.newLine();
+            planWriter.flush();
+
+            instructions.add(instruction);
+            plans.add(plan);
+            signatures.add(signature(normalized));
+            assign(id, vector);
+            count++;
+            writeHeader();
+        } catch (IOException e) {
+            log.warn("写入意图索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 分配到最近的中心；与所有中心都不相似时新建中心
+     */
+    private void assign(int id, float[] vector) {
+        int nearest = -1;
+        float nearestSimilarity = -1f;
+        for (int c = 0; c < centroids.size(); c++) {
+            float similarity = dot(vector, centroids.get(c));
+            if (similarity > nearestSimilarity) {
+                nearestSimilarity = similarity;
+                nearest = c;
+            }
+        }
+        if (nearest < 0 || (nearestSimilarity < NEW_CENTROID_SIMILARITY && centroids.size() < NLIST)) {
+            centroids.add(vector.clone());
+            invertedLists.add(new IntList());
+            nearest = centroids.size() - 1;
+        }
+        invertedLists.get(nearest).add(id);
+    }
+
+    private int[] nearestCentroids(float[] query, int probes) {
+        int n = Math.min(probes, centroids.size());
+        int[] best = new int[n];
+        float[] bestSimilarity = new float[n];
+        Arrays.fill(bestSimilarity, -2f);
+        for (int c = 0; c < centroids.size(); c++) {
+            float similarity = dot(query, centroids.get(c));
+            // 插入排序维护前 n 个
+            for (int k = 0; k < n; k++) {
+                if (similarity > bestSimilarity[k]) {
+                    System.arraycopy(bestSimilarity, k, bestSimilarity, k + 1, n - k - 1);
+                    System.arraycopy(best, k, best, k + 1, n - k - 1);
+                    bestSimilarity[k] = similarity;
+                    best[k] = c;
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 归一化：别名 → 组件 ID，同义动词合并，去掉虚词、空白和标点
+     */
+    String normalize(String instruction) {
+        String text = componentIndex.replaceAliases(instruction);
+        for (Map.Entry<String, String> synonym : SYNONYMS.entrySet()) {
+            text = text.replace(synonym.getKey(), synonym.getValue());
+        }
+        for (String filler : FILLERS) {
+            text = text.replace(filler, "");
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '#') {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 1~3 字符 n-gram 哈希向量（带符号哈希），L2 归一化
+     */
+    static float[] vectorize(String text) {
+        float[] vector = new float[DIM];
+        for (int n = 1; n <= 3; n++) {
+            float weight = n == 1 ? 0.5f : 1f;
+            for (int i = 0; i + n <= text.length(); i++) {
+                int hash = 0;
+                int ascii = 0;
+                for (int k = i; k < i + n; k++) {
+                    char c = text.charAt(k);
+                    hash = 31 * hash + c;
+                    if (c < 128) {
+                        ascii++;
+                    }
+                }
+                // 跨越中英文边界的 n-gram 只反映词序，跳过以降低对语序的敏感度
+                if (ascii != 0 && ascii != n) {
+                    continue;
+                }
+                hash ^= hash >>> 16;
+                hash *= 0x45d9f3b;
+                hash ^= hash >>> 16;
+                int bucket = (hash & 0x7fffffff) % DIM;
+                vector[bucket] += (hash & 0x80000000) == 0 ? weight : -weight;
+            }
+        }
+        float norm = 0f;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float inverse = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < DIM; i++) {
+                vector[i] *= inverse;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * 关键槽位：组件 ID、英文/数字片段、颜色字和显示/隐藏动作，槽位不同的指令不能互相复用
+     */
+    static Set<String> signature(String normalized) {
+        Set<String> slots = new HashSet<>();
+        // 显示和隐藏字面相近但含义相反
+        for (String action : OPPOSITE_ACTIONS) {
+            if (normalized.contains(action)) {
+                slots.add(action);
+            }
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= normalized.length(); i++) {
+            char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+            if (c < 128 && (Character.isLetterOrDigit(c) || c == '#')) {
+                token.append(c);
+                continue;
+            }
+            if (token.length() > 0) {
+                slots.add(token.toString());
+                token.setLength(0);
+            }
+            if (COLOR_CHARS.indexOf(c) >= 0) {
+                slots.add(String.valueOf(c));
+            }
+        }
+        return slots;
+    }
+
+    private static boolean containsFreeText(JsonNode plan) {
+        if (plan.has("commands")) {
+            for (JsonNode command : plan.get("commands")) {
+                if (containsFreeText(command)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String command = plan.path("command").asText();
+        return "changeText".equalsIgnoreCase(command) || "setStyle".equalsIgnoreCase(command);
+    }
+
+    private float[] read(int id) {
+        float[] vector = new float[DIM];
+        vectors.get(id * DIM, vector, 0, DIM);
+        return vector;
+    }
+
+    private float dot(float[] query, int id) {
+        int offset = id * DIM;
+        float sum = 0f;
+        for (int i = 0; i < DIM; i++) {
+            sum += query[i] * vectors.get(offset + i);
+        }
+        return sum;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < DIM; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        planWriter.close();
+        channel.close();
+    }
+
+    /**
+     * 检索结果
+     */
+    public static class Match {
+        private final String instruction;
+        private final JsonNode plan;
+        private final float similarity;
+
+        public Match(String instruction, JsonNode plan, float similarity) {
+            this.instruction = instruction;
+            this.plan = plan;
+            this.similarity = similarity;
+        }
+
+        public String getInstruction() {
+            return instruction;
+        }
+
+        public JsonNode getPlan() {
+            return plan;
+        }
+
+        public float getSimilarity() {
+            return similarity;
+        }
+    }
+
+    /**
+     * 倒排列表（int 数组，避免装箱）
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
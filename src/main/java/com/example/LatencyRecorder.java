@@ -0,0 +1,55 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 滚动延迟采样
+ * 最近 N 个样本写入固定大小的环形数组，写入无锁；读取时复制一份排序计算分位数。
+ */
+public class LatencyRecorder {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong cursor = new AtomicLong();
+
+    public LatencyRecorder(int capacity) {
+        this.samples = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * 记录一个样本（微秒）
+     */
+    public void record(long micros) {
+        long index = cursor.getAndIncrement();
+        samples.set((int) (index % samples.length()), micros);
+    }
+
+    /**
+     * 当前窗口内的样本数
+     */
+    public int size() {
+        return (int) Math.min(cursor.get(), samples.length());
+    }
+
+    /**
+     * 计算多个分位数（0~1），没有样本时返回 0
+     */
+    public long[] percentiles(double... quantiles) {
+        int size = size();
+        long[] result = new long[quantiles.length];
+        if (size == 0) {
+            return result;
+        }
+        long[] copy = new long[size];
+        for (int i = 0; i < size; i++) {
+            copy[i] = samples.get(i);
+        }
+        Arrays.sort(copy);
+        for (int q = 0; q < quantiles.length; q++) {
+            int rank = (int) Math.ceil(quantiles[q] * size) - 1;
+            result[q] = copy[Math.max(0, Math.min(size - 1, rank))];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地解析相对颜色指令
+ * "把按钮1调亮一点"、"标题暗一些"、"按钮2用互补色"、"生成类似色配色" 这类指令只依赖组件当前颜色，
+ * 由 ColorEngine 在本地计算出具体颜色，生成普通的 changeColor / setColorPicker / applyPalette 命令计划，
+ * 走与 AI 计划相同的执行和撤销路径，不访问网络。
+ * 无法确定调整方式或目标组件、指令中出现具体颜色（颜色名、#RRGGBB、rgb()），
+ * 或配色方案指令同时提到了组件时返回 null，交给意图索引和模型处理。
+ */
+public class LocalColorCommands {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String[] LIGHTEN = {"调亮", "变亮", "亮一点", "亮一些", "亮点", "浅一点", "浅一些", "lighter", "brighter"};
+    private static final String[] DARKEN = {"调暗", "变暗", "暗一点", "暗一些", "暗点", "深一点", "深一些", "darker"};
+    private static final String[] SATURATE = {"鲜艳", "饱和", "艳一点", "vivid", "saturate"};
+    private static final String[] DESATURATE = {"柔和", "淡一点", "淡一些", "灰一点", "素一点", "muted", "desaturate"};
+    private static final String[] COMPLEMENT = {"互补色", "反色", "complementary"};
+    private static final String[] PALETTE = {"配色", "色板", "palette"};
+    private static final String[] SPLIT_SCHEME = {"分裂互补", "分离互补", "split"};
+    private static final String[] TRIADIC_SCHEME = {"三色", "三等分", "三角", "三分", "triadic", "triad"};
+    private static final String[] COMPLEMENTARY_SCHEME = {"互补", "complementary"};
+    private static final String[] SLIGHT = {"一点", "一些", "稍", "略", "slightly"};
+    private static final String[] STRONG = {"很多", "非常", "大幅", "much", "很"};
+
+    // 具体颜色：#RGB/#RRGGBB(AA)、rgb()/rgba()/hsl()，以及"红色"、"红的"、"深蓝"这类颜色名
+    private static final Pattern ABSOLUTE_COLOR = Pattern.compile(
+            "#[0-9a-f]{3,8}\\b|\\b(rgba?|hsla?)\\s*\\("
+                    + "|[红橙黄绿青蓝紫粉黑白灰棕褐金银][色的]"
+                    + "|[深浅亮暗淡天湖藏墨草][红橙黄绿青蓝紫粉灰棕]");
+    private static final Pattern WORD = Pattern.compile("[a-z]+");
+
+    /**
+     * 读取组件的当前颜色
+     */
+    public interface ComponentColors {
+
+        /**
+         * 组件当前的颜色（0xAARRGGBB）
+         */
+        int colorOf(String componentId);
+
+        /**
+         * 组件是否为颜色选择器（用 setColorPicker 而不是 changeColor）
+         */
+        boolean isColorPicker(String componentId);
+    }
+
+    private final ComponentColors colors;
+
+    public LocalColorCommands(ComponentColors colors) {
+        this.colors = colors;
+    }
+
+    /**
+     * 解析指令，返回命令计划；不是相对颜色指令时返回 null
+     *
+     * @param targets 指令中提到的组件（ComponentIndex.findRelevant 的结果）
+     */
+    public ObjectNode resolve(String instruction, Set<String> targets) {
+        if (instruction == null) {
+            return null;
+        }
+        String text = instruction.toLowerCase(Locale.ROOT);
+        if (text.contains("然后") || text.contains("并且") || text.contains("所有") || text.contains("全部")) {
+            return null;
+        }
+
+        // 指定了具体颜色的指令不是相对调整，由模型处理
+        if (namesAbsoluteColor(text)) {
+            return null;
+        }
+
+        if (containsAny(text, PALETTE)) {
+            // "把按钮1的配色改成……" 针对单个组件，本地的配色方案只作用于整个面板
+            if (targets != null && !targets.isEmpty()) {
+                return null;
+            }
+            // 分裂互补包含"互补"，先判断
+            ColorEngine.Scheme scheme = containsAny(text, SPLIT_SCHEME) ? ColorEngine.Scheme.SPLIT_COMPLEMENTARY
+                    : containsAny(text, TRIADIC_SCHEME) ? ColorEngine.Scheme.TRIADIC
+                    : containsAny(text, COMPLEMENTARY_SCHEME) ? ColorEngine.Scheme.COMPLEMENTARY
+                    : ColorEngine.Scheme.ANALOGOUS;
+            ObjectNode plan = MAPPER.createObjectNode();
+            plan.put("command", "applyPalette");
+            plan.putObject("params").put("scheme", scheme.name().toLowerCase(Locale.ROOT));
+            plan.put("description", "本地生成配色方案");
+            return plan;
+        }
+
+        if (targets == null || targets.isEmpty()) {
+            return null;
+        }
+        float degree = containsAny(text, STRONG) ? 1.8f : containsAny(text, SLIGHT) ? 0.6f : 1f;
+        String action;
+        IntUnaryOperator adjust;
+        if (containsAny(text, COMPLEMENT)) {
+            action = "互补色";
+            adjust = ColorEngine::complementary;
+        } else if (containsAny(text, LIGHTEN)) {
+            action = "调亮";
+            adjust = color -> ColorEngine.lighten(color, 0.1f * degree);
+        } else if (containsAny(text, DARKEN)) {
+            action = "调暗";
+            adjust = color -> ColorEngine.darken(color, 0.1f * degree);
+        } else if (containsAny(text, SATURATE)) {
+            action = "提高饱和度";
+            adjust = color -> ColorEngine.saturate(color, 1 + 0.5f * degree);
+        } else if (containsAny(text, DESATURATE)) {
+            action = "降低饱和度";
+            adjust = color -> ColorEngine.saturate(color, Math.max(0f, 1 - 0.35f * degree));
+        } else {
+            return null;
+        }
+
+        ArrayNode commands = MAPPER.createArrayNode();
+        for (String target : targets) {
+            int color = adjust.applyAsInt(colors.colorOf(target));
+            ObjectNode command = commands.addObject();
+            command.put("command", colors.isColorPicker(target) ? "setColorPicker" : "changeColor");
+            command.put("target", target);
+            command.putObject("params").put("color", ColorEngine.toHex(color));
+            command.put("description", target + " " + action + " → " + ColorEngine.toHex(color));
+        }
+        if (commands.size() == 1) {
+            return (ObjectNode) commands.get(0);
+        }
+        ObjectNode batch = MAPPER.createObjectNode();
+        batch.set("commands", commands);
+        batch.put("description", action + " " + commands.size() + " 个组件");
+        return batch;
+    }
+
+    private static boolean namesAbsoluteColor(String text) {
+        if (ABSOLUTE_COLOR.matcher(text).find()) {
+            return true;
+        }
+        Matcher words = WORD.matcher(text);
+        while (words.find()) {
+            if (ColorEngine.isColorName(words.group())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsAny(String text, String[] words) {
+        for (String word : words) {
+            if (text.contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
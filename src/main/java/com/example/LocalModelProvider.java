@@ -0,0 +1,29 @@
+package com.example;
+
+import java.net.http.HttpClient;
+
+/**
+ * 本地模型提供方
+ * 连接本机运行的 OpenAI 兼容推理服务（如 llama.cpp 的 llama-server 加载量化模型在 CPU 上推理），
+ * 无需网络和 API 密钥。请求格式、响应修复和校验与 DashScope 完全一致，只是端点和模型不同，且不做模型路由。
+ *
+ * 配置：-Dai.local.url（默认 http://127.0.0.1:8080/v1）、-Dai.local.model（默认 local）、
+ *      -Dai.local.tools=true 启用工具调用（llama-server 需以 --jinja 启动）
+ */
+public class LocalModelProvider extends QwenClient {
+
+    public static final String DEFAULT_URL = "http://127.0.0.1:8080/v1";
+
+    public LocalModelProvider(String baseUrl, String model, ClientMetrics metrics) {
+        // 本地服务一般只支持 HTTP/1.1，单模型不需要路由
+        super("local", baseUrl, null, new ModelRouter(false, model, model, 0, 1.0),
+                HttpClient.Version.HTTP_1_1, metrics);
+        // 本地服务是否支持 tools 字段取决于模型的对话模板，默认使用 JSON 文本协议
+        setToolCalling(Boolean.getBoolean("ai.local.tools"));
+    }
+
+    public static LocalModelProvider fromProperties(ClientMetrics metrics) {
+        return new LocalModelProvider(System.getProperty("ai.local.url", DEFAULT_URL),
+                System.getProperty("ai.local.model", "local"), metrics);
+    }
+}
@@ -0,0 +1,511 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 宏库
+ * 宏是一组按顺序执行的命令，以名称调用，在本地展开为批量命令计划，不访问网络。
+ * 每个宏保存为宏目录下的一个文件：
+ *   {"name":"演示模式","description":"...","params":["color"],"defaults":{"color":"red"},
+ *    "steps":[{"command":"changeColor","target":"titleLabel","params":{"color":"${color}"}}, ...]}
+ * 字符串值中的 ${参数} 在调用时替换，调用形式为 "演示模式 blue" 或 "演示模式 color=blue"。
+ *
+ * 宏在加载时编译：不含参数的步骤直接共享，含参数的步骤记录替换位置，展开时只复制这些步骤，
+ * 数百步的宏也只需微秒级。目录变化（新增、修改、删除文件）通过 WatchService 自动重新加载。
+ */
+public class MacroLibrary implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MacroLibrary.class);
+
+    static final String EXTENSION = ".macro.json";
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^}\\s]+)}");
+    private static final Pattern UNSAFE_FILE_CHARS = Pattern.compile("[\\\\/:*?\"<>|\\s]");
+
+    private final Path dir;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 宏名称 → 宏，整体替换，读取无锁
+    private volatile Map<String, Macro> macros = Collections.emptyMap();
+    // 文件 → 宏名称，用于文件删除或改名时移除旧宏
+    private final Map<Path, String> fileNames = new HashMap<>();
+    private WatchService watchService;
+    private Thread watcher;
+
+    public MacroLibrary(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        loadAll();
+    }
+
+    /**
+     * 使用默认数据目录下的 macros 目录
+     */
+    public static MacroLibrary openDefault() throws IOException {
+        return new MacroLibrary(AppPaths.resolve("macros"));
+    }
+
+    private synchronized void loadAll() throws IOException {
+        fileNames.clear();
+        Map<String, Macro> loaded = new LinkedHashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for (Path file : files) {
+                Macro macro = tryLoad(file);
+                if (macro != null) {
+                    loaded.put(macro.name, macro);
+                    fileNames.put(file.getFileName(), macro.name);
+                }
+            }
+        }
+        macros = Collections.unmodifiableMap(loaded);
+    }
+
+    private Macro tryLoad(Path file) {
+        try {
+            JsonNode definition = objectMapper.readTree(Files.readString(file, StandardCharsets.UTF_8));
+            String fallbackName = file.getFileName().toString();
+            fallbackName = fallbackName.substring(0, fallbackName.length() - EXTENSION.length());
+            return Macro.compile(definition, fallbackName);
+        } catch (Exception e) {
+            log.warn("宏文件无效 {}: {}", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 重新加载单个文件；文件已删除或无效时移除对应的宏，返回加载后的宏（没有时为 null）
+     */
+    synchronized Macro reload(Path fileName) {
+        Path file = dir.resolve(fileName);
+        Macro macro = Files.isRegularFile(file) ? tryLoad(file) : null;
+        Map<String, Macro> updated = new LinkedHashMap<>(macros);
+        String previous = fileNames.remove(fileName);
+        if (previous != null) {
+            updated.remove(previous);
+        }
+        if (macro != null) {
+            updated.put(macro.name, macro);
+            fileNames.put(fileName, macro.name);
+        }
+        macros = Collections.unmodifiableMap(updated);
+        return macro;
+    }
+
+    /**
+     * 监视宏目录，文件变化时重新加载；listener 收到变化说明（在监视线程上回调）
+     */
+    public synchronized void watch(Consumer<String> listener) throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        watcher = new Thread(() -> watchLoop(listener), "macro-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop(Consumer<String> listener) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // 同一文件在一批事件中只重新加载一次
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else if (event.context().toString().endsWith(EXTENSION)) {
+                        changed.add((Path) event.context());
+                    }
+                }
+                key.reset();
+                if (overflow) {
+                    loadAll();
+                    listener.accept("宏已重新加载: " + macros.size() + " 个");
+                    continue;
+                }
+                for (Path fileName : changed) {
+                    Macro macro = reload(fileName);
+                    listener.accept(macro != null
+                            ? "宏已更新: " + macro.name + " (" + macro.size() + " 步)"
+                            : "宏文件已移除或无效: " + fileName);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 关闭
+        } catch (IOException e) {
+            log.warn("宏目录监视中止: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 识别宏调用：输入为宏名称，或宏名称后跟空白和参数；多个宏名称都匹配时取最长的
+     */
+    public Invocation match(String input) {
+        if (input == null) {
+            return null;
+        }
+        String text = input.trim();
+        Macro best = null;
+        for (Macro macro : macros.values()) {
+            if (text.startsWith(macro.name)
+                    && (text.length() == macro.name.length() || Character.isWhitespace(text.charAt(macro.name.length())))
+                    && (best == null || macro.name.length() > best.name.length())) {
+                best = macro;
+            }
+        }
+        return best == null ? null : new Invocation(best, text.substring(best.name.length()).trim());
+    }
+
+    public Macro get(String name) {
+        return macros.get(name);
+    }
+
+    /**
+     * 按名称排序的宏列表
+     */
+    public Collection<Macro> list() {
+        return new TreeMap<>(macros).values();
+    }
+
+    /**
+     * 保存宏（同名宏被覆盖），写入临时文件后原子替换，返回编译后的宏
+     */
+    public Macro save(String name, List<JsonNode> steps, String description) throws IOException {
+        ObjectNode definition = objectMapper.createObjectNode();
+        definition.put("name", name);
+        definition.put("description", description);
+        ArrayNode array = definition.putArray("steps");
+        steps.forEach(array::add);
+        Macro macro = Macro.compile(definition, name);
+
+        Path fileName = Path.of(fileName(name));
+        Path temp = Files.createTempFile(dir, ".macro", ".tmp");
+        Files.writeString(temp, objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(definition),
+                StandardCharsets.UTF_8);
+        Files.move(temp, dir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        reload(fileName);
+        return macro;
+    }
+
+    /**
+     * 删除宏及其文件
+     */
+    public boolean delete(String name) throws IOException {
+        Path file = null;
+        synchronized (this) {
+            for (Map.Entry<Path, String> entry : fileNames.entrySet()) {
+                if (entry.getValue().equals(name)) {
+                    file = entry.getKey();
+                    break;
+                }
+            }
+        }
+        if (file == null) {
+            return false;
+        }
+        Files.deleteIfExists(dir.resolve(file));
+        reload(file);
+        return true;
+    }
+
+    static String fileName(String name) {
+        return UNSAFE_FILE_CHARS.matcher(name).replaceAll("_") + EXTENSION;
+    }
+
+    public int size() {
+        return macros.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+        }
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    /**
+     * 一次宏调用：宏和调用时给出的参数文本
+     */
+    public static final class Invocation {
+        private final Macro macro;
+        private final String arguments;
+
+        Invocation(Macro macro, String arguments) {
+            this.macro = macro;
+            this.arguments = arguments;
+        }
+
+        public Macro getMacro() {
+            return macro;
+        }
+
+        public String getArguments() {
+            return arguments;
+        }
+
+        /**
+         * 展开为批量命令计划，参数缺失时抛出 IllegalArgumentException
+         */
+        public ObjectNode expand() {
+            return macro.expand(macro.parseArguments(arguments));
+        }
+    }
+
+    /**
+     * 编译后的宏（不可变）
+     */
+    public static final class Macro {
+
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
+        private final String name;
+        private final String description;
+        private final List<String> params;
+        private final Map<String, String> defaults;
+        // 步骤模板；不含参数的步骤展开时直接共享
+        private final ObjectNode[] steps;
+        // 每个步骤中的参数位置，不含参数的步骤为 null
+        private final Slot[][] slots;
+
+        private Macro(String name, String description, List<String> params, Map<String, String> defaults,
+                      ObjectNode[] steps, Slot[][] slots) {
+            this.name = name;
+            this.description = description;
+            this.params = params;
+            this.defaults = defaults;
+            this.steps = steps;
+            this.slots = slots;
+        }
+
+        /**
+         * 编译宏定义；步骤可以是单条命令，也可以是批量命令（展平为多条）
+         */
+        static Macro compile(JsonNode definition, String fallbackName) {
+            String name = definition.path("name").asText(fallbackName).trim();
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("宏名称为空");
+            }
+            List<ObjectNode> flat = new ArrayList<>();
+            for (JsonNode step : definition.path("steps")) {
+                if (step.has("commands")) {
+                    step.get("commands").forEach(command -> addStep(flat, command));
+                } else {
+                    addStep(flat, step);
+                }
+            }
+            if (flat.isEmpty()) {
+                throw new IllegalArgumentException("宏没有步骤: " + name);
+            }
+
+            Set<String> params = new LinkedHashSet<>();
+            definition.path("params").forEach(param -> params.add(param.asText()));
+            ObjectNode[] steps = flat.toArray(new ObjectNode[0]);
+            Slot[][] slots = new Slot[steps.length][];
+            for (int i = 0; i < steps.length; i++) {
+                List<Slot> found = new ArrayList<>();
+                collectSlots(steps[i], new ArrayList<>(), found);
+                if (!found.isEmpty()) {
+                    slots[i] = found.toArray(new Slot[0]);
+                    for (Slot slot : found) {
+                        // 步骤中出现但未声明的参数按出现顺序追加
+                        for (int p = 1; p < slot.parts.length; p += 2) {
+                            params.add(slot.parts[p]);
+                        }
+                    }
+                }
+            }
+
+            Map<String, String> defaults = new HashMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = definition.path("defaults").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                defaults.put(field.getKey(), field.getValue().asText());
+            }
+            return new Macro(name, definition.path("description").asText(""), List.copyOf(params),
+                    Collections.unmodifiableMap(defaults), steps, slots);
+        }
+
+        private static void addStep(List<ObjectNode> steps, JsonNode step) {
+            if (!step.isObject() || !step.hasNonNull("command")) {
+                throw new IllegalArgumentException("步骤不是命令: " + step);
+            }
+            steps.add(((ObjectNode) step).deepCopy());
+        }
+
+        private static void collectSlots(JsonNode node, List<Object> path, List<Slot> slots) {
+            if (node.isObject()) {
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    path.add(field.getKey());
+                    collectSlots(field.getValue(), path, slots);
+                    path.remove(path.size() - 1);
+                }
+            } else if (node.isArray()) {
+                for (int i = 0; i < node.size(); i++) {
+                    path.add(i);
+                    collectSlots(node.get(i), path, slots);
+                    path.remove(path.size() - 1);
+                }
+            } else if (node.isTextual()) {
+                String[] parts = split(node.asText());
+                if (parts != null) {
+                    slots.add(new Slot(path.toArray(), parts));
+                }
+            }
+        }
+
+        /**
+         * 把含参数的字符串拆成 [文本, 参数名, 文本, 参数名, ..., 文本]，不含参数时返回 null
+         */
+        private static String[] split(String text) {
+            Matcher matcher = PLACEHOLDER.matcher(text);
+            List<String> parts = new ArrayList<>();
+            int last = 0;
+            while (matcher.find()) {
+                parts.add(text.substring(last, matcher.start()));
+                parts.add(matcher.group(1));
+                last = matcher.end();
+            }
+            if (parts.isEmpty()) {
+                return null;
+            }
+            parts.add(text.substring(last));
+            return parts.toArray(new String[0]);
+        }
+
+        /**
+         * 解析参数文本：name=value 为具名参数，其余按声明顺序对应位置参数
+         */
+        Map<String, String> parseArguments(String arguments) {
+            Map<String, String> values = new HashMap<>(defaults);
+            if (arguments == null || arguments.isBlank()) {
+                return values;
+            }
+            int position = 0;
+            for (String token : arguments.trim().split("\\s+")) {
+                int equals = token.indexOf('=');
+                if (equals > 0) {
+                    values.put(token.substring(0, equals), token.substring(equals + 1));
+                } else if (position < params.size()) {
+                    values.put(params.get(position++), token);
+                } else {
+                    throw new IllegalArgumentException("宏 " + name + " 的参数过多: " + token);
+                }
+            }
+            return values;
+        }
+
+        /**
+         * 展开为批量命令计划；返回的计划可能与宏共享不含参数的步骤，调用方不应修改
+         */
+        public ObjectNode expand(Map<String, String> values) {
+            for (String param : params) {
+                if (!values.containsKey(param)) {
+                    throw new IllegalArgumentException("宏 " + name + " 缺少参数: " + param);
+                }
+            }
+            ObjectNode plan = MAPPER.createObjectNode();
+            ArrayNode commands = plan.putArray("commands");
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < steps.length; i++) {
+                if (slots[i] == null) {
+                    commands.add(steps[i]);
+                    continue;
+                }
+                ObjectNode step = steps[i].deepCopy();
+                for (Slot slot : slots[i]) {
+                    builder.setLength(0);
+                    for (int p = 0; p < slot.parts.length; p++) {
+                        builder.append((p & 1) == 0 ? slot.parts[p] : values.get(slot.parts[p]));
+                    }
+                    slot.set(step, builder.toString());
+                }
+                commands.add(step);
+            }
+            plan.put("description", description.isEmpty() ? "执行宏 " + name : description);
+            return plan;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public List<String> getParams() {
+            return params;
+        }
+
+        public int size() {
+            return steps.length;
+        }
+    }
+
+    /**
+     * 步骤中一个含参数的字符串值：路径（字段名或数组下标）和拆分后的模板
+     */
+    private static final class Slot {
+        private final Object[] path;
+        private final String[] parts;
+
+        private Slot(Object[] path, String[] parts) {
+            this.path = path;
+            this.parts = parts;
+        }
+
+        void set(JsonNode root, String value) {
+            JsonNode parent = root;
+            for (int i = 0; i < path.length - 1; i++) {
+                parent = path[i] instanceof Integer ? parent.get((Integer) path[i]) : parent.get((String) path[i]);
+            }
+            Object last = path[path.length - 1];
+            if (last instanceof Integer) {
+                ((ArrayNode) parent).set((Integer) last, TextNode.valueOf(value));
+            } else {
+                ((ObjectNode) parent).put((String) last, value);
+            }
+        }
+    }
+}
@@ -6,9 +6,13 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.util.Objects;
 
 public class Main extends Application {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+
     @Override
     public void start(Stage primaryStage) {
         try {
@@ -38,31 +42,44 @@ public class Main extends Application {
                 ));
                 primaryStage.getIcons().add(icon);
             } catch (Exception e) {
-                System.out.println("图标加载失败，使用默认图标");
+                log.info("图标加载失败，使用默认图标");
             }
             // 7. 显示窗口
             primaryStage.show();
+            // 首帧布局完成后报告启动耗时和内存（只报告一次）
+            Runnable[] reporter = new Runnable[1];
+            reporter[0] = () -> {
+                scene.removePostLayoutPulseListener(reporter[0]);
+                StartupReport.report();
+                if (StartupReport.exitAfterReport()) {
+                    if (controller != null) {
+                        controller.cleanup();
+                    }
+                    System.exit(0);
+                }
+            };
+            scene.addPostLayoutPulseListener(reporter[0]);
             // 8. 窗口关闭时的清理操作
             primaryStage.setOnCloseRequest(event -> {
-                System.out.println("应用程序正在关闭...");
+                log.info("应用程序正在关闭...");
                 if (controller != null) {
                     controller.cleanup();
                 }
                 System.exit(0);
             });
         } catch (Exception e) {
-            System.err.println("应用程序启动失败:");
-            e.printStackTrace();
+            log.error("应用程序启动失败", e);
             System.exit(1);
         }
     }
 
     public static void main(String[] args) {
+        StartupReport.markMain();
         // 启动 JavaFX 应用
-        System.out.println("启动 JavaFX AI 助手...");
+        log.info("启动 JavaFX AI 助手...");
         if (System.getenv("QWEN_API_KEY") == null) {
             System.setProperty("qwen.api.key", "your_key");//输入你自己的apikey
-            System.out.println("⚠️ 使用应急系统属性设置");
+            log.warn("⚠️ 使用应急系统属性设置");
         }
         launch(args);
     }
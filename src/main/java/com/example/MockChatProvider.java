@@ -0,0 +1,224 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 模拟提供方
+ * 不访问网络，按指令返回预先准备的响应体（录制的真实响应或合成响应），并按记录的耗时延迟回调。
+ * 解析、修复和校验沿用 QwenClient 的实现，因此可以离线、确定性地跑完整条处理链路。
+ *
+ * 界面中通过 -Dai.provider=mock 启用，-Dai.mock.fixtures 指定录制文件（JSONL），
+ * -Dai.mock.latencyScale 缩放回放耗时（默认 1，0 表示不等待）。
+ */
+public class MockChatProvider extends QwenClient {
+
+    private static final Logger log = LoggerFactory.getLogger(MockChatProvider.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // 模拟提供方重写了连接和发送，传输层不会被调用，也不需要 HttpClient
+    private static final HttpTransport OFFLINE = new HttpTransport() {
+        @Override
+        public CompletableFuture<Response> send(HttpRequest request, String requestBody, Runnable onHeaders) {
+            return CompletableFuture.failedFuture(new IllegalStateException("模拟提供方不访问网络"));
+        }
+
+        @Override
+        public int probe(HttpRequest request) throws IOException {
+            throw new IOException("模拟提供方不访问网络");
+        }
+    };
+
+    private final Function<String, Reply> responder;
+    private final double latencyScale;
+    private volatile BiConsumer<String, String> handler;
+    private volatile boolean connected;
+
+    public MockChatProvider(String name, Function<String, Reply> responder, double latencyScale,
+                            ClientMetrics metrics) {
+        // 模拟提供方不经过网络，也不参与录制
+        super(name, "http://127.0.0.1:0/v1", null, new ModelRouter(false, name, name, 0, 1.0),
+                OFFLINE, metrics);
+        this.responder = responder;
+        this.latencyScale = Math.max(0.0, latencyScale);
+    }
+
+    /**
+     * 按系统属性创建：有录制文件时回放，否则对所有指令回复一段说明文字
+     */
+    public static MockChatProvider fromProperties(ClientMetrics metrics) {
+        double scale = Double.parseDouble(System.getProperty("ai.mock.latencyScale", "1"));
+        String fixtures = System.getProperty("ai.mock.fixtures");
+        Map<String, Reply> replies = new HashMap<>();
+        if (fixtures != null) {
+            try {
+                replies = loadFixtures(Paths.get(fixtures));
+            } catch (IOException e) {
+                log.warn("读取录制文件失败: {}", e.getMessage());
+            }
+        }
+        Map<String, Reply> loaded = replies;
+        return new MockChatProvider("mock", instruction -> loaded.getOrDefault(instruction,
+                Reply.ofContent("{\"text\":\"（模拟模式）没有录制这条指令的响应\"}", 0, 0, 50)), scale, metrics);
+    }
+
+    /**
+     * 读取录制文件：每行 {"instruction":..., "latency_ms":..., "body":...}
+     */
+    public static Map<String, Reply> loadFixtures(Path file) throws IOException {
+        Map<String, Reply> replies = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode fixture = MAPPER.readTree(line);
+                replies.put(fixture.path("instruction").asText(),
+                        new Reply(fixture.path("body").asText(), fixture.path("latency_ms").asLong()));
+            }
+        }
+        return replies;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> connect() {
+        connected = true;
+        return CompletableFuture.completedFuture(true);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public long getWarmRttMillis() {
+        return 0;
+    }
+
+    @Override
+    public void setResponseHandler(BiConsumer<String, String> handler) {
+        super.setResponseHandler(handler);
+        this.handler = handler;
+    }
+
+    @Override
+    public CompletableFuture<Void> sendInstruction(String naturalLanguageCommand, String componentState,
+                                                   Consumer<Phase> progress) {
+        Reply reply = responder.apply(naturalLanguageCommand);
+        if (reply == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("没有可回放的响应: " + naturalLanguageCommand));
+        }
+
+        ClientMetrics metrics = getMetrics();
+        metrics.recordRequest(true);
+        progress.accept(Phase.SENDING);
+        long sentAt = System.nanoTime();
+        long delayMillis = Math.round(reply.getLatencyMillis() * latencyScale);
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            metrics.recordTimeToFirstByte((System.nanoTime() - sentAt) / 1_000_000);
+            progress.accept(Phase.STREAMING);
+            recordUsage(reply.getBody());
+            metrics.recordCompletion((System.nanoTime() - sentAt) / 1000, true);
+            progress.accept(Phase.APPLYING);
+            BiConsumer<String, String> current = handler;
+            if (current != null) {
+                current.accept(naturalLanguageCommand, reply.getBody());
+            }
+            result.complete(null);
+        }, CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS));
+        return result;
+    }
+
+    @Override
+    public void close() {
+        connected = false;
+    }
+
+    /**
+     * 一条响应：完整的响应体和耗时
+     */
+    public static class Reply {
+        private final String body;
+        private final long latencyMillis;
+
+        public Reply(String body, long latencyMillis) {
+            this.body = body;
+            this.latencyMillis = latencyMillis;
+        }
+
+        /**
+         * 用消息内容和 token 用量合成一个 OpenAI 兼容的响应体
+         */
+        public static Reply ofContent(String content, long promptTokens, long cachedTokens, long latencyMillis) {
+            JSONObject message = new JSONObject().put("role", "assistant").put("content", content);
+            JSONObject body = new JSONObject()
+                    .put("choices", new JSONArray().put(new JSONObject().put("index", 0).put("message", message)))
+                    .put("usage", new JSONObject()
+                            .put("prompt_tokens", promptTokens)
+                            .put("completion_tokens", Math.max(1, content.length() / 2))
+                            .put("prompt_tokens_details", new JSONObject().put("cached_tokens", cachedTokens)));
+            return new Reply(body.toString(), latencyMillis);
+        }
+
+        /**
+         * 用工具调用合成一个 OpenAI 兼容的响应体，calls 中每项为 {"name":函数名,"arguments":参数对象}
+         */
+        public static Reply ofToolCalls(JSONArray calls, long promptTokens, long cachedTokens, long latencyMillis) {
+            JSONArray toolCalls = new JSONArray();
+            for (int i = 0; i < calls.length(); i++) {
+                JSONObject call = calls.getJSONObject(i);
+                toolCalls.put(new JSONObject()
+                        .put("id", "call_" + i)
+                        .put("type", "function")
+                        .put("function", new JSONObject()
+                                .put("name", call.getString("name"))
+                                .put("arguments", call.getJSONObject("arguments").toString())));
+            }
+            JSONObject message = new JSONObject().put("role", "assistant").put("content", "")
+                    .put("tool_calls", toolCalls);
+            JSONObject body = new JSONObject()
+                    .put("choices", new JSONArray().put(new JSONObject().put("index", 0).put("message", message)
+                            .put("finish_reason", "tool_calls")))
+                    .put("usage", new JSONObject()
+                            .put("prompt_tokens", promptTokens)
+                            .put("completion_tokens", Math.max(1, toolCalls.toString().length() / 4))
+                            .put("prompt_tokens_details", new JSONObject().put("cached_tokens", cachedTokens)));
+            return new Reply(body.toString(), latencyMillis);
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+    }
+}
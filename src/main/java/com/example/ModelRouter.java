@@ -0,0 +1,188 @@
+package com.example;
+
+import java.util.List;
+
+/**
+ * 模型路由器
+ * 在本地对指令做简单分类：简单指令交给更快更便宜的模型，
+ * 复杂指令（长句、多个动作、引用历史、多个目标）直接使用 qwen-max。
+ * 附带界面快照时，依赖外观判断的指令（最暗、看起来、左边……）交给支持图像输入的视觉模型。
+ *
+ * 可通过系统属性调整：
+ *   qwen.routing.enabled    是否启用路由（默认 true）
+ *   qwen.model.fast         快速模型（默认 qwen-turbo）
+ *   qwen.model.strong       强模型（默认 qwen-max）
+ *   qwen.model.vision       视觉模型（默认 qwen-vl-max，为空时不路由到视觉模型）
+ *   qwen.routing.maxLength  快速模型可处理的最大指令长度（默认 24）
+ *   qwen.routing.threshold  使用快速模型所需的最低置信度（默认 0.6）
+ */
+public class ModelRouter {
+
+    public static final String TIER_FAST = "fast";
+    public static final String TIER_STRONG = "strong";
+    public static final String TIER_VISION = "vision";
+
+    // 动作词
+    private static final List<String> VERBS = List.of(
+            "隐藏", "显示", "修改", "改为", "改成", "设置", "设为", "变成", "变为",
+            "应用", "清空", "换成", "调亮", "调暗", "恢复", "打开", "关闭");
+
+    // 引用历史或上下文的词
+    private static final List<String> HISTORY_WORDS = List.of(
+            "历史", "之前", "刚才", "上次", "上一个", "原来", "撤销", "还原");
+
+    // 指向多个目标的词
+    private static final List<String> MULTI_TARGET_WORDS = List.of(
+            "所有", "全部", "每个", "和", "以及", "、", "都");
+
+    // 需要看到界面才能回答的词
+    private static final List<String> VISUAL_WORDS = List.of(
+            "看起来", "看上去", "最暗", "最亮", "最深", "最浅", "最大", "最小", "最显眼", "最左", "最右",
+            "左边", "右边", "上面", "下面", "旁边", "截图", "画面", "界面上", "对比度");
+
+    private final boolean enabled;
+    private final String fastModel;
+    private final String strongModel;
+    private final int maxLength;
+    private final double threshold;
+    private final String visionModel;
+
+    public ModelRouter() {
+        this(Boolean.parseBoolean(System.getProperty("qwen.routing.enabled", "true")),
+                System.getProperty("qwen.model.fast", "qwen-turbo"),
+                System.getProperty("qwen.model.strong", "qwen-max"),
+                Integer.getInteger("qwen.routing.maxLength", 24),
+                Double.parseDouble(System.getProperty("qwen.routing.threshold", "0.6")),
+                System.getProperty("qwen.model.vision", "qwen-vl-max"));
+    }
+
+    public ModelRouter(boolean enabled, String fastModel, String strongModel, int maxLength, double threshold) {
+        this(enabled, fastModel, strongModel, maxLength, threshold, null);
+    }
+
+    public ModelRouter(boolean enabled, String fastModel, String strongModel, int maxLength, double threshold,
+                       String visionModel) {
+        this.enabled = enabled;
+        this.fastModel = fastModel;
+        this.strongModel = strongModel;
+        this.maxLength = maxLength;
+        this.threshold = threshold;
+        this.visionModel = visionModel == null || visionModel.isBlank() ? null : visionModel.trim();
+    }
+
+    /**
+     * 为指令选择模型
+     */
+    public Decision route(String instruction) {
+        return route(instruction, false);
+    }
+
+    /**
+     * 为指令选择模型，withSnapshot 表示请求可以附带界面快照
+     */
+    public Decision route(String instruction, boolean withSnapshot) {
+        if (!enabled) {
+            return new Decision(TIER_STRONG, strongModel, 0.0, "路由已关闭");
+        }
+
+        String text = instruction == null ? "" : instruction.trim();
+        if (withSnapshot && visionModel != null && countOccurrences(text, VISUAL_WORDS) > 0) {
+            return new Decision(TIER_VISION, visionModel, 1.0, "依赖界面外观");
+        }
+        double confidence = 1.0;
+        StringBuilder reason = new StringBuilder();
+
+        if (text.length() > maxLength) {
+            confidence -= 0.5;
+            reason.append("指令较长;");
+        }
+
+        int verbs = countOccurrences(text, VERBS);
+        if (verbs > 1) {
+            confidence -= 0.25 * (verbs - 1);
+            reason.append("多个动作;");
+        }
+
+        if (countOccurrences(text, HISTORY_WORDS) > 0) {
+            confidence -= 0.5;
+            reason.append("引用历史;");
+        }
+
+        if (countOccurrences(text, MULTI_TARGET_WORDS) > 0) {
+            confidence -= 0.3;
+            reason.append("多个目标;");
+        }
+
+        confidence = Math.max(0.0, confidence);
+        if (confidence >= threshold) {
+            return new Decision(TIER_FAST, fastModel, confidence, "简单指令");
+        }
+        return new Decision(TIER_STRONG, strongModel, confidence, reason.toString());
+    }
+
+    /**
+     * 低置信度或解析失败时升级使用的模型
+     */
+    public String getStrongModel() {
+        return strongModel;
+    }
+
+    private int countOccurrences(String text, List<String> words) {
+        int count = 0;
+        for (String word : words) {
+            int from = 0;
+            int index;
+            while ((index = text.indexOf(word, from)) >= 0) {
+                count++;
+                from = index + word.length();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 路由结果
+     */
+    public static class Decision {
+        private final String tier;
+        private final String model;
+        private final double confidence;
+        private final String reason;
+
+        public Decision(String tier, String model, double confidence, String reason) {
+            this.tier = tier;
+            this.model = model;
+            this.confidence = confidence;
+            this.reason = reason;
+        }
+
+        public String getTier() {
+            return tier;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public boolean isFast() {
+            return TIER_FAST.equals(tier);
+        }
+
+        public boolean isVision() {
+            return TIER_VISION.equals(tier);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(%s, 置信度 %.2f, %s)", tier, model, confidence, reason);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 提示词生成器
+ * 由命令模式和组件索引生成紧凑的系统提示词。系统提示词只在注册内容变化时重新生成，
+ * 在两次变化之间逐字节保持一致，便于服务端做前缀缓存；与指令相关的组件状态放在用户消息中。
+ * 工具调用模式下命令以工具定义发送（见 ToolCatalog），提示词中不再描述 JSON 格式和命令表。
+ */
+public class PromptBuilder {
+
+    // 批量创建的编号组件（前缀-序号）
+    private static final Pattern NUMBERED_ID = Pattern.compile("(.+)-(\\d{1,9})");
+    private static final int MIN_GROUP_SIZE = 3;
+
+    private final CommandSchema commandSchema;
+    private final ComponentIndex componentIndex;
+    private final boolean toolCalling;
+    private String cachedPrompt;
+    private int cachedSchemaVersion = -1;
+    private int cachedIndexVersion = -1;
+
+    public PromptBuilder(CommandSchema commandSchema, ComponentIndex componentIndex) {
+        this(commandSchema, componentIndex, false);
+    }
+
+    public PromptBuilder(CommandSchema commandSchema, ComponentIndex componentIndex, boolean toolCalling) {
+        this.commandSchema = commandSchema;
+        this.componentIndex = componentIndex;
+        this.toolCalling = toolCalling;
+    }
+
+    /**
+     * 获取系统提示词（稳定前缀）
+     */
+    public synchronized String systemPrompt() {
+        int schemaVersion = commandSchema.getVersion();
+        int indexVersion = componentIndex.getVersion();
+        if (cachedPrompt == null || schemaVersion != cachedSchemaVersion || indexVersion != cachedIndexVersion) {
+            cachedPrompt = generate();
+            cachedSchemaVersion = schemaVersion;
+            cachedIndexVersion = indexVersion;
+        }
+        return cachedPrompt;
+    }
+
+    /**
+     * 生成用户消息：指令本身 + 相关组件的当前状态（由调用方在 FX 线程上生成，为空时不附带）
+     */
+    public String userMessage(String instruction, String state) {
+        if (state == null || state.isEmpty()) {
+            return instruction;
+        }
+        return instruction + "\n[状态] " + state;
+    }
+
+    private String generate() {
+        return toolCalling ? generateForTools() : generateForJson();
+    }
+
+    private String generateForTools() {
+        StringBuilder builder = new StringBuilder(512);
+        builder.append("你是JavaFX界面控制助手。调用工具执行用户指令,多个操作同时调用多个工具;无法执行时直接用中文说明原因。\n");
+        builder.append("组件(ID|类型|别名):\n");
+        appendComponents(builder, componentIndex.getEntries());
+        builder.append("历史颜色:index未指定时用1\n");
+        builder.append("用户消息中的[状态]是相关组件的当前状态，仅供参考。");
+        return builder.toString();
+    }
+
+    private String generateForJson() {
+        StringBuilder builder = new StringBuilder(1024);
+        builder.append("你是JavaFX界面控制助手。把用户指令转换为一个JSON对象，只输出JSON。\n");
+        builder.append("格式:{\"command\":命令,\"target\":组件ID,\"params\":{参数},\"description\":中文描述}\n");
+        builder.append("多个操作:{\"commands\":[命令对象,...],\"description\":中文描述};target为*表示所有组件\n");
+        builder.append("无法转换时输出:{\"text\":中文解释}\n");
+
+        builder.append("命令(名称|说明|target|必需参数):\n");
+        for (Map.Entry<String, CommandSchema.CommandSpec> entry : commandSchema.getCommands().entrySet()) {
+            CommandSchema.CommandSpec spec = entry.getValue();
+            builder.append(spec.getName()).append('|')
+                    .append(spec.getDescription()).append('|')
+                    .append(spec.isRequiresTarget() ? "组件ID" : "-").append('|')
+                    .append(String.join(",", spec.getParams())).append('\n');
+        }
+
+        builder.append("组件(ID|类型|别名):\n");
+        appendComponents(builder, componentIndex.getEntries());
+
+        builder.append("颜色:颜色名(red,红色)|#RRGGBB|rgb(r,g,b)|rgba(r,g,b,a)\n");
+        builder.append("历史颜色:index从1开始,1为最新;未指定时用1\n");
+        builder.append("示例:将历史颜色1应用到按钮1 => {\"command\":\"applyHistoryColor\",\"target\":\"btn1\",")
+                .append("\"params\":{\"index\":1,\"target\":\"btn1\"},\"description\":\"已将最新使用的颜色应用到按钮1\"}\n");
+        builder.append("用户消息中的[状态]是相关组件的当前状态，仅供参考。");
+        return builder.toString();
+    }
+
+    /**
+     * 组件列表；批量创建的同类型编号组件（前缀-序号，无别名）合并为一行，
+     * 数千个动态组件时提示词长度不随组件数增长
+     */
+    private static void appendComponents(StringBuilder builder, List<ComponentIndex.Entry> entries) {
+        Map<String, int[]> groups = new TreeMap<>();
+        List<ComponentIndex.Entry> single = new ArrayList<>();
+        for (ComponentIndex.Entry entry : entries) {
+            String key = groupKey(entry);
+            if (key == null) {
+                single.add(entry);
+                continue;
+            }
+            int number = Integer.parseInt(entry.getId().substring(entry.getId().lastIndexOf('-') + 1));
+            // 数量、最小序号、最大序号
+            int[] range = groups.computeIfAbsent(key, k -> new int[]{0, Integer.MAX_VALUE, 0});
+            range[0]++;
+            range[1] = Math.min(range[1], number);
+            range[2] = Math.max(range[2], number);
+        }
+        for (ComponentIndex.Entry entry : entries) {
+            String key = groupKey(entry);
+            if (key != null && groups.get(key)[0] < MIN_GROUP_SIZE) {
+                single.add(entry);
+            }
+        }
+        single.sort(Comparator.comparing(ComponentIndex.Entry::getId));
+        for (ComponentIndex.Entry entry : single) {
+            builder.append(entry.getId()).append('|')
+                    .append(entry.getType()).append('|')
+                    .append(String.join(",", entry.getAliases())).append('\n');
+        }
+        for (Map.Entry<String, int[]> group : groups.entrySet()) {
+            int[] range = group.getValue();
+            if (range[0] < MIN_GROUP_SIZE) {
+                continue;
+            }
+            String[] parts = group.getKey().split("\\|", 2);
+            builder.append(parts[0]).append('-')
+                    .append(range[2] - range[1] + 1 == range[0] ? range[1] + ".." + range[2] : "*")
+                    .append('|').append(parts[1]).append("|共").append(range[0]).append("个\n");
+        }
+    }
+
+    /**
+     * 可合并组件的分组键（前缀|类型），不可合并时返回 null
+     */
+    private static String groupKey(ComponentIndex.Entry entry) {
+        if (!entry.getAliases().isEmpty()) {
+            return null;
+        }
+        Matcher matcher = NUMBERED_ID.matcher(entry.getId());
+        return matcher.matches() ? matcher.group(1) + "|" + entry.getType() : null;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 按实测延迟选择提供方
+ * 同时连接多个提供方，每条指令发给当前平均延迟（指数滑动平均）最低的可用提供方；
+ * 尚无样本的提供方优先试用一次，之后每隔 EXPLORE_INTERVAL 条指令把一条发给次优的提供方以刷新其延迟。
+ * 请求失败会给该提供方的延迟加上惩罚，网络断开时自然切到本地提供方。
+ */
+public class ProviderSelector implements ChatProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(ProviderSelector.class);
+
+    private static final double EWMA_ALPHA = 0.3;
+    private static final int EXPLORE_INTERVAL = 20;
+    private static final double FAILURE_PENALTY_MILLIS = 5000;
+
+    private final ClientMetrics metrics;
+    private final List<ChatProvider> providers;
+    // 各提供方的平均延迟（毫秒），NaN 表示还没有样本
+    private final double[] latencyMillis;
+    private final AtomicInteger sent = new AtomicInteger();
+
+    /**
+     * metrics 为汇总指标，各提供方应使用它的 child() 记录
+     */
+    public ProviderSelector(ClientMetrics metrics, ChatProvider... providers) {
+        this.metrics = metrics;
+        this.providers = List.of(providers);
+        this.latencyMillis = new double[providers.length];
+        Arrays.fill(latencyMillis, Double.NaN);
+    }
+
+    @Override
+    public String getName() {
+        StringBuilder name = new StringBuilder("auto[");
+        for (int i = 0; i < providers.size(); i++) {
+            name.append(i == 0 ? "" : ",").append(providers.get(i).getName());
+        }
+        return name.append(']').toString();
+    }
+
+    /**
+     * 连接全部提供方，任意一个可用即视为成功
+     */
+    @Override
+    public CompletableFuture<Boolean> connect() {
+        List<CompletableFuture<Boolean>> connects = new ArrayList<>();
+        for (ChatProvider provider : providers) {
+            connects.add(provider.connect().exceptionally(ex -> false));
+        }
+        return CompletableFuture.allOf(connects.toArray(CompletableFuture<?>[]::new))
+                .thenApply(ignored -> {
+                    for (int i = 0; i < providers.size(); i++) {
+                        log.info("🔌 {}: {}", providers.get(i).getName(),
+                                connects.get(i).join() ? "可用" : "不可用");
+                    }
+                    return isConnected();
+                });
+    }
+
+    @Override
+    public boolean isConnected() {
+        for (ChatProvider provider : providers) {
+            if (provider.isConnected()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void setResponseHandler(BiConsumer<String, String> handler) {
+        providers.forEach(provider -> provider.setResponseHandler(handler));
+    }
+
+    @Override
+    public void setCommandSchema(CommandSchema commandSchema) {
+        providers.forEach(provider -> provider.setCommandSchema(commandSchema));
+    }
+
+    @Override
+    public void setComponentIndex(ComponentIndex componentIndex) {
+        providers.forEach(provider -> provider.setComponentIndex(componentIndex));
+    }
+
+    @Override
+    public void setImageSource(Supplier<String> imageSource) {
+        providers.forEach(provider -> provider.setImageSource(imageSource));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendInstruction(String naturalLanguageCommand, String componentState,
+                                                   Consumer<Phase> progress) {
+        int index = select();
+        if (index < 0) {
+            return CompletableFuture.failedFuture(new IllegalStateException("没有可用的模型提供方"));
+        }
+        ChatProvider provider = providers.get(index);
+        log.info("🔀 选择提供方: {}", provider.getName());
+
+        long start = System.nanoTime();
+        CompletableFuture<Void> future = provider.sendInstruction(naturalLanguageCommand, componentState, progress);
+        future.whenComplete((ignored, ex) -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            double elapsed = (System.nanoTime() - start) / 1e6;
+            record(index, ex == null ? elapsed : elapsed + FAILURE_PENALTY_MILLIS);
+        });
+        return future;
+    }
+
+    /**
+     * 选择提供方下标，没有可用提供方时返回 -1
+     */
+    synchronized int select() {
+        int best = -1;
+        int second = -1;
+        for (int i = 0; i < providers.size(); i++) {
+            if (!providers.get(i).isConnected()) {
+                continue;
+            }
+            if (Double.isNaN(latencyMillis[i])) {
+                // 还没有样本，先试用
+                return i;
+            }
+            if (best < 0 || latencyMillis[i] < latencyMillis[best]) {
+                second = best;
+                best = i;
+            } else if (second < 0 || latencyMillis[i] < latencyMillis[second]) {
+                second = i;
+            }
+        }
+        if (second >= 0 && sent.incrementAndGet() % EXPLORE_INTERVAL == 0) {
+            return second;
+        }
+        return best;
+    }
+
+    private synchronized void record(int index, double millis) {
+        latencyMillis[index] = Double.isNaN(latencyMillis[index])
+                ? millis
+                : EWMA_ALPHA * millis + (1 - EWMA_ALPHA) * latencyMillis[index];
+    }
+
+    /**
+     * 各提供方当前的平均延迟摘要
+     */
+    public synchronized String latencySummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < providers.size(); i++) {
+            if (i > 0) {
+                summary.append(", ");
+            }
+            summary.append(providers.get(i).getName()).append(' ')
+                    .append(Double.isNaN(latencyMillis[i]) ? "-" : String.format("%.0f ms", latencyMillis[i]));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * 解析规则在各提供方之间一致，交给第一个可用的提供方
+     */
+    @Override
+    public JsonNode parseAIResponse(String response) {
+        for (ChatProvider provider : providers) {
+            if (provider.isConnected()) {
+                return provider.parseAIResponse(response);
+            }
+        }
+        return providers.get(0).parseAIResponse(response);
+    }
+
+    /**
+     * 汇总指标，握手和热连接往返见 connectionSummary()
+     */
+    @Override
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 各提供方的连接情况
+     */
+    @Override
+    public String connectionSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (ChatProvider provider : providers) {
+            if (summary.length() > 0) {
+                summary.append("; ");
+            }
+            summary.append(provider.getName()).append(": ").append(provider.connectionSummary());
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public long getWarmRttMillis() {
+        long best = -1;
+        for (ChatProvider provider : providers) {
+            long rtt = provider.getWarmRttMillis();
+            if (rtt >= 0 && (best < 0 || rtt < best)) {
+                best = rtt;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void close() {
+        log.info("提供方平均延迟: {}", latencySummary());
+        providers.forEach(ChatProvider::close);
+    }
+}
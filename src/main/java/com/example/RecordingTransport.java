@@ -0,0 +1,213 @@
+package com.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * 录制传输层
+ * 请求照常交给下层传输，完成后把请求体、响应体、状态码和耗时放入有界队列，由后台线程批量追加写入录制文件。
+ * 请求线程只做一次入队，队列满时丢弃记录并计数，不会阻塞请求；文件超过大小上限时轮转，
+ * 只保留最近 maxFiles 个轮转文件，磁盘占用有上限，可以在生产环境常开。
+ */
+public class RecordingTransport implements HttpTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(RecordingTransport.class);
+
+    private static final int BATCH_SIZE = 64;
+    private static final long POLL_MILLIS = 200;
+
+    private final HttpTransport delegate;
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final BlockingQueue<TransportRecord> queue;
+    private final Thread writer;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running = true;
+
+    // 以下字段只由写线程访问
+    private DataOutputStream out;
+    private long fileSize;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] buffer = new byte[8192];
+
+    public RecordingTransport(HttpTransport delegate, Path file, long maxBytes, int maxFiles, int queueCapacity)
+            throws IOException {
+        this.delegate = delegate;
+        this.file = file;
+        this.maxBytes = Math.max(64 * 1024, maxBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, queueCapacity));
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        open();
+        this.writer = new Thread(this::drain, "transport-recorder");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        log.info("⏺ 录制 HTTP 交换到 {}", file.toAbsolutePath());
+    }
+
+    @Override
+    public CompletableFuture<Response> send(HttpRequest request, String requestBody, Runnable onHeaders) {
+        long sentAt = System.nanoTime();
+        AtomicLong headersAt = new AtomicLong();
+        CompletableFuture<Response> exchange = delegate.send(request, requestBody, () -> {
+            headersAt.set(System.nanoTime());
+            onHeaders.run();
+        });
+        exchange.whenComplete((response, ex) -> {
+            if (exchange.isCancelled()) {
+                return;
+            }
+            long now = System.nanoTime();
+            long headers = headersAt.get() == 0 ? now : headersAt.get();
+            enqueue(new TransportRecord(System.currentTimeMillis(),
+                    (headers - sentAt) / 1000, (now - sentAt) / 1000,
+                    ex == null ? response.getStatusCode() : TransportRecord.FAILED,
+                    request.uri().toString(), requestBody,
+                    ex == null ? response.getBody() : String.valueOf(ex.getMessage())));
+        });
+        return exchange;
+    }
+
+    /**
+     * 健康探测不录制
+     */
+    @Override
+    public int probe(HttpRequest request) throws IOException, InterruptedException {
+        return delegate.probe(request);
+    }
+
+    private void enqueue(TransportRecord record) {
+        if (!running || !queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * 写线程：攒批写入，每批只 flush 一次
+     */
+    private void drain() {
+        List<TransportRecord> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (running || !queue.isEmpty()) {
+                TransportRecord first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                writeBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeFile();
+            deflater.end();
+        }
+    }
+
+    private void writeBatch(List<TransportRecord> batch) {
+        try {
+            if (out == null) {
+                open();
+            }
+            for (TransportRecord record : batch) {
+                int before = out.size();
+                record.write(out, deflater, buffer);
+                fileSize += out.size() - before;
+            }
+            out.flush();
+            recorded.addAndGet(batch.size());
+            if (fileSize >= maxBytes) {
+                rotate();
+            }
+        } catch (IOException e) {
+            dropped.addAndGet(batch.size());
+            log.warn("⚠️ 写入录制文件失败: {}", e.getMessage());
+        }
+    }
+
+    private void open() throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024));
+        fileSize = exists ? Files.size(file) : 0;
+        if (!exists) {
+            TransportRecord.writeHeader(out);
+            out.flush();
+            fileSize = out.size();
+        }
+    }
+
+    /**
+     * 轮转：file → file.1 → file.2 …，超过 maxFiles 的最旧文件被删除
+     */
+    private void rotate() throws IOException {
+        closeFile();
+        Files.deleteIfExists(rotated(file, maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path source = rotated(file, i);
+            if (Files.exists(source)) {
+                Files.move(source, rotated(file, i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rotated(file, 1), StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+
+    static Path rotated(Path file, int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("⚠️ 关闭录制文件失败: {}", e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    public long getRecorded() {
+        return recorded.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 停止接收新记录，等待写线程写完队列中的记录
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("⏹ 录制结束：写入 {} 条，丢弃 {} 条", recorded.get(), dropped.get());
+    }
+}
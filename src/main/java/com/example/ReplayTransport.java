@@ -0,0 +1,131 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回放传输层
+ * 从录制文件中按请求匹配响应，按录制时的响应头耗时和总耗时（乘以 timeScale）返回，不访问网络。
+ * 匹配键为 模型 + 用户指令（去掉随界面变化的 [状态] 部分）；同一键有多条记录时按录制顺序轮流返回，
+ * 例如快速模型失败后升级到强模型的两次请求会依次回放。找不到匹配时请求失败。
+ */
+public class ReplayTransport implements HttpTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayTransport.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String STATE_MARKER = "\n[状态]";
+
+    private final Map<String, List<TransportRecord>> recordings = new HashMap<>();
+    private final Map<String, Integer> cursors = new HashMap<>();
+    private final double timeScale;
+
+    public ReplayTransport(List<TransportRecord> records, double timeScale) {
+        this.timeScale = Math.max(0, timeScale);
+        for (TransportRecord record : records) {
+            recordings.computeIfAbsent(key(record.getRequestBody()), k -> new ArrayList<>()).add(record);
+        }
+        log.info("⏯ 回放 {} 条录制交换，耗时缩放 {}", records.size(), this.timeScale);
+    }
+
+    @Override
+    public CompletableFuture<Response> send(HttpRequest request, String requestBody, Runnable onHeaders) {
+        TransportRecord record = next(key(requestBody));
+        if (record == null) {
+            return CompletableFuture.failedFuture(new IOException("录制中没有匹配的请求"));
+        }
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        long headersMicros = scale(record.getHeadersMicros());
+        long totalMicros = Math.max(headersMicros, scale(record.getTotalMicros()));
+        delayed(headersMicros).execute(() -> {
+            if (response.isDone()) {
+                return;
+            }
+            onHeaders.run();
+            delayed(totalMicros - headersMicros).execute(() -> {
+                if (record.getStatusCode() == TransportRecord.FAILED) {
+                    response.completeExceptionally(new IOException(record.getResponseBody()));
+                } else {
+                    response.complete(new Response(record.getStatusCode(), record.getResponseBody()));
+                }
+            });
+        });
+        return response;
+    }
+
+    /**
+     * 回放模式下探测总是成功
+     */
+    @Override
+    public int probe(HttpRequest request) {
+        return 200;
+    }
+
+    private synchronized TransportRecord next(String key) {
+        List<TransportRecord> candidates = recordings.get(key);
+        if (candidates == null) {
+            return null;
+        }
+        int cursor = cursors.getOrDefault(key, 0);
+        cursors.put(key, cursor + 1);
+        return candidates.get(cursor % candidates.size());
+    }
+
+    private long scale(long micros) {
+        return (long) (micros * timeScale);
+    }
+
+    private static Executor delayed(long micros) {
+        return CompletableFuture.delayedExecutor(Math.max(0, micros), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * 匹配键：模型 + 最后一条消息中的用户指令；无法解析时使用整个请求体
+     */
+    static String key(String requestBody) {
+        if (requestBody == null) {
+            return "";
+        }
+        try {
+            JsonNode request = MAPPER.readTree(requestBody);
+            JsonNode messages = request.path("messages");
+            if (!messages.isArray() || messages.size() == 0) {
+                return requestBody;
+            }
+            String content = text(messages.get(messages.size() - 1).path("content"));
+            int marker = content.indexOf(STATE_MARKER);
+            return request.path("model").asText() + '\n' + (marker >= 0 ? content.substring(0, marker) : content);
+        } catch (IOException e) {
+            return requestBody;
+        }
+    }
+
+    /**
+     * 消息内容的文本：字符串直接返回；分段数组（视觉模型的 [{"type":"text",...},{"type":"image_url",...}]）
+     * 按顺序拼接其中的 text 段
+     */
+    private static String text(JsonNode content) {
+        if (!content.isArray()) {
+            return content.asText();
+        }
+        StringBuilder text = new StringBuilder();
+        for (JsonNode part : content) {
+            if ("text".equals(part.path("type").asText())) {
+                text.append(part.path("text").asText());
+            }
+        }
+        return text.toString();
+    }
+}
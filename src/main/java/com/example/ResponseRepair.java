@@ -0,0 +1,134 @@
+package com.example;
+
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+/**
+ * 宽松的 JSON 修复解析器
+ * 逐级尝试：截取第一个完整对象 → 严格解析 → 宽松解析（单引号、注释、尾随逗号、未加引号的键）
+ * → 替换中文引号后再次宽松解析。尽量在本地挽救格式有瑕疵的回复，避免重新请求。
+ */
+public class ResponseRepair {
+
+    private final ObjectMapper strictMapper = new ObjectMapper();
+    private final ObjectMapper lenientMapper = JsonMapper.builder()
+            .enable(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+            .enable(JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES)
+            .enable(JsonReadFeature.ALLOW_JAVA_COMMENTS)
+            .enable(JsonReadFeature.ALLOW_YAML_COMMENTS)
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+            .enable(JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+            .build();
+
+    /**
+     * 从任意文本中修复并解析出第一个 JSON 对象，失败时返回 null
+     */
+    public Result repair(String content) {
+        if (content == null) {
+            return null;
+        }
+
+        String candidate = extractFirstObject(content);
+        if (candidate == null) {
+            return null;
+        }
+
+        JsonNode node = tryParse(strictMapper, candidate);
+        if (node != null && node.isObject()) {
+            // 整段回复本身就是合法 JSON 才算未经修复
+            return new Result(node, !candidate.equals(content.trim()));
+        }
+
+        node = tryParse(lenientMapper, candidate);
+        if (node == null) {
+            String normalized = candidate
+                    .replace('“', '"')
+                    .replace('”', '"')
+                    .replace('‘', '\'')
+                    .replace('’', '\'');
+            node = tryParse(lenientMapper, normalized);
+        }
+        return node != null && node.isObject() ? new Result(node, true) : null;
+    }
+
+    /**
+     * 截取第一个括号平衡的对象，忽略字符串中的括号；对象未闭合时补齐右括号
+     */
+    String extractFirstObject(String content) {
+        int start = content.indexOf('{');
+        if (start < 0) {
+            return null;
+        }
+
+        int depth = 0;
+        char quote = 0;
+        boolean escaped = false;
+        for (int i = start; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (quote != 0) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return content.substring(start, i + 1);
+                }
+            }
+        }
+
+        // 回复被截断：补齐缺失的右括号
+        StringBuilder builder = new StringBuilder(content.substring(start).trim());
+        if (quote != 0) {
+            builder.append(quote);
+        }
+        for (int i = 0; i < depth; i++) {
+            builder.append('}');
+        }
+        return builder.toString();
+    }
+
+    private JsonNode tryParse(ObjectMapper mapper, String text) {
+        try {
+            return mapper.readTree(text);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 修复结果
+     */
+    public static class Result {
+        private final JsonNode node;
+        private final boolean repaired;
+
+        public Result(JsonNode node, boolean repaired) {
+            this.node = node;
+            this.repaired = repaired;
+        }
+
+        public JsonNode getNode() {
+            return node;
+        }
+
+        /**
+         * 是否经过了修复（截取、宽松解析等）
+         */
+        public boolean isRepaired() {
+            return repaired;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 增量 PNG 编码器
+ * 保存一帧 ARGB 像素，按图块比较新写入的区域，只记录真正变化的图块。图像按图块行切成水平条带，
+ * 每条带单独过滤（Sub，只依赖同一行）并以 SYNC_FLUSH 压缩成字节对齐的 deflate 片段；
+ * 编码时只重新压缩变化的条带，其余条带沿用缓存的片段，拼接后补上结束块、zlib 头和合并的 Adler-32
+ * 即为一个完整的 PNG（RGB，8 位）。没有变化时直接返回上一次的结果。不是线程安全的。
+ */
+public class SnapshotEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // zlib 头（deflate，32K 窗口）
+    private static final byte[] ZLIB_HEADER = {0x78, 0x01};
+    // 最后一个空的定长 Huffman 块（BFINAL=1），结束拼接的 deflate 流
+    private static final byte[] FINAL_BLOCK = {0x03, 0x00};
+    private static final int ADLER_BASE = 65521;
+    private static final byte FILTER_SUB = 1;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tileColumns;
+    private final int[] pixels;
+
+    private final int bands;
+    private final byte[][] bandData;
+    private final int[] bandAdler;
+    private final boolean[] bandDirty;
+    private int dirtyBands;
+
+    private final Deflater deflater;
+    private final byte[] filtered;
+    private byte[] scratch;
+    private final CRC32 crc = new CRC32();
+    private final Adler32 adler = new Adler32();
+
+    private byte[] png;
+    private int lastChangedTiles;
+    private int lastEncodedBands;
+
+    /**
+     * @param tileSize 图块边长（像素），也是条带高度
+     * @param level    deflate 压缩级别（1~9）
+     */
+    public SnapshotEncoder(int width, int height, int tileSize, int level) {
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        this.tileSize = Math.max(4, tileSize);
+        this.tileColumns = (this.width + this.tileSize - 1) / this.tileSize;
+        this.pixels = new int[this.width * this.height];
+        this.bands = (this.height + this.tileSize - 1) / this.tileSize;
+        this.bandData = new byte[bands][];
+        this.bandAdler = new int[bands];
+        this.bandDirty = new boolean[bands];
+        this.deflater = new Deflater(level, true);
+        this.filtered = new byte[this.tileSize * rowBytes()];
+        this.scratch = new byte[filtered.length / 4 + 64];
+        invalidate();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 所有条带标记为需要重新编码
+     */
+    public void invalidate() {
+        Arrays.fill(bandDirty, true);
+        dirtyBands = bands;
+    }
+
+    /**
+     * 写入一块区域的像素（ARGB，区域在帧中的位置为 x, y），返回变化的图块数
+     * 区域超出帧的部分被忽略。
+     */
+    public int update(int x, int y, int w, int h, int[] source, int offset, int scanline) {
+        int x0 = Math.max(0, x);
+        int y0 = Math.max(0, y);
+        int x1 = Math.min(width, x + w);
+        int y1 = Math.min(height, y + h);
+        int changed = 0;
+        for (int tileY = y0 / tileSize * tileSize; tileY < y1; tileY += tileSize) {
+            int rowFrom = Math.max(y0, tileY);
+            int rowTo = Math.min(y1, tileY + tileSize);
+            for (int tileX = x0 / tileSize * tileSize; tileX < x1; tileX += tileSize) {
+                int colFrom = Math.max(x0, tileX);
+                int colTo = Math.min(x1, tileX + tileSize);
+                if (copyTile(rowFrom, rowTo, colFrom, colTo, x, y, source, offset, scanline)) {
+                    changed++;
+                    int band = tileY / tileSize;
+                    if (!bandDirty[band]) {
+                        bandDirty[band] = true;
+                        dirtyBands++;
+                    }
+                }
+            }
+        }
+        lastChangedTiles = changed;
+        return changed;
+    }
+
+    /**
+     * 比较并复制一个图块中的像素，返回是否有变化
+     */
+    private boolean copyTile(int rowFrom, int rowTo, int colFrom, int colTo, int x, int y,
+                             int[] source, int offset, int scanline) {
+        int length = colTo - colFrom;
+        boolean changed = false;
+        for (int row = rowFrom; row < rowTo; row++) {
+            int src = offset + (row - y) * scanline + (colFrom - x);
+            int dst = row * width + colFrom;
+            if (Arrays.mismatch(source, src, src + length, pixels, dst, dst + length) >= 0) {
+                System.arraycopy(source, src, pixels, dst, length);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 编码当前帧：只重新压缩变化的条带；没有变化时返回上一次的数组（调用方不应修改）
+     */
+    public byte[] encode() {
+        lastEncodedBands = 0;
+        if (png != null && dirtyBands == 0) {
+            return png;
+        }
+        for (int band = 0; band < bands; band++) {
+            if (bandDirty[band]) {
+                encodeBand(band);
+                bandDirty[band] = false;
+                lastEncodedBands++;
+            }
+        }
+        dirtyBands = 0;
+        png = assemble();
+        return png;
+    }
+
+    /**
+     * 上一次 update 中变化的图块数
+     */
+    public int getLastChangedTiles() {
+        return lastChangedTiles;
+    }
+
+    /**
+     * 上一次 encode 重新压缩的条带数（0 表示直接返回了缓存）
+     */
+    public int getLastEncodedBands() {
+        return lastEncodedBands;
+    }
+
+    public int getBandCount() {
+        return bands;
+    }
+
+    public int getTileCount() {
+        return bands * tileColumns;
+    }
+
+    public void close() {
+        deflater.end();
+    }
+
+    private int rowBytes() {
+        return 1 + width * 3;
+    }
+
+    private int bandRows(int band) {
+        return Math.min(tileSize, height - band * tileSize);
+    }
+
+    private void encodeBand(int band) {
+        int rows = bandRows(band);
+        int stride = rowBytes();
+        int length = rows * stride;
+        for (int r = 0; r < rows; r++) {
+            int src = (band * tileSize + r) * width;
+            int dst = r * stride;
+            filtered[dst++] = FILTER_SUB;
+            int previous = 0;
+            for (int i = 0; i < width; i++) {
+                int argb = pixels[src + i];
+                filtered[dst++] = (byte) ((argb >> 16) - (previous >> 16));
+                filtered[dst++] = (byte) ((argb >> 8) - (previous >> 8));
+                filtered[dst++] = (byte) (argb - previous);
+                previous = argb;
+            }
+        }
+        adler.reset();
+        adler.update(filtered, 0, length);
+        bandAdler[band] = (int) adler.getValue();
+
+        deflater.reset();
+        deflater.setInput(filtered, 0, length);
+        int written = 0;
+        while (true) {
+            written += deflater.deflate(scratch, written, scratch.length - written, Deflater.SYNC_FLUSH);
+            if (written < scratch.length) {
+                break;
+            }
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        bandData[band] = Arrays.copyOf(scratch, written);
+    }
+
+    private byte[] assemble() {
+        int compressed = ZLIB_HEADER.length + FINAL_BLOCK.length + 4;
+        long checksum = 1;
+        for (int band = 0; band < bands; band++) {
+            compressed += bandData[band].length;
+            checksum = combineAdler(checksum, bandAdler[band] & 0xFFFFFFFFL, (long) bandRows(band) * rowBytes());
+        }
+        ByteBuffer out = ByteBuffer.allocate(SIGNATURE.length + 25 + 12 + compressed + 12);
+        out.put(SIGNATURE);
+
+        int start = beginChunk(out, "IHDR", 13);
+        out.putInt(width).putInt(height)
+                .put((byte) 8)   // 位深
+                .put((byte) 2)   // RGB
+                .put((byte) 0).put((byte) 0).put((byte) 0);
+        endChunk(out, start);
+
+        start = beginChunk(out, "IDAT", compressed);
+        out.put(ZLIB_HEADER);
+        for (byte[] data : bandData) {
+            out.put(data);
+        }
+        out.put(FINAL_BLOCK);
+        out.putInt((int) checksum);
+        endChunk(out, start);
+
+        start = beginChunk(out, "IEND", 0);
+        endChunk(out, start);
+        return out.array();
+    }
+
+    private static int beginChunk(ByteBuffer out, String type, int length) {
+        out.putInt(length);
+        int start = out.position();
+        for (int i = 0; i < 4; i++) {
+            out.put((byte) type.charAt(i));
+        }
+        return start;
+    }
+
+    private void endChunk(ByteBuffer out, int start) {
+        crc.reset();
+        crc.update(out.array(), start, out.position() - start);
+        out.putInt((int) crc.getValue());
+    }
+
+    /**
+     * 合并两段数据的 Adler-32（同 zlib 的 adler32_combine），length2 为第二段的长度
+     */
+    static long combineAdler(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= ((long) ADLER_BASE << 1)) {
+            sum2 -= ((long) ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 启动报告
+ * 在首帧布局完成后记录启动耗时（从进程创建和从进入 main 分别计算）和常驻内存，用于比较
+ * fat jar、jlink 镜像和 native image 三种打包方式。
+ *   ai.startup.report   追加一行 JSON 记录到该文件（可选）
+ *   ai.startup.exit     报告后清理并退出，便于脚本反复测量
+ *   ai.packaging        打包方式，由启动脚本设置；未设置时自动判断
+ */
+public final class StartupReport {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupReport.class);
+
+    private static volatile long mainStartNanos;
+
+    private StartupReport() {
+    }
+
+    /**
+     * 在 main 的第一行调用，记录进入 main 的时刻
+     */
+    public static void markMain() {
+        mainStartNanos = System.nanoTime();
+    }
+
+    /**
+     * 打包方式：启动脚本指定的值；否则按 native image 属性和代码来源判断为 native / jar / classes
+     */
+    public static String packaging() {
+        String configured = System.getProperty("ai.packaging");
+        if (configured != null) {
+            return configured;
+        }
+        if (System.getProperty("org.graalvm.nativeimage.imagecode") != null) {
+            return "native";
+        }
+        CodeSource source = StartupReport.class.getProtectionDomain().getCodeSource();
+        if (source != null && source.getLocation() != null && source.getLocation().getPath().endsWith(".jar")) {
+            return "jar";
+        }
+        return "classes";
+    }
+
+    /**
+     * 输出报告；返回日志中的摘要行
+     */
+    public static String report() {
+        long sinceMainMillis = mainStartNanos == 0 ? -1 : (System.nanoTime() - mainStartNanos) / 1_000_000;
+        long sinceProcessMillis = ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
+        long[] memory = residentMemoryKb();
+        String packaging = packaging();
+
+        String summary = String.format("🚀 启动完成 [%s]：进程启动后 %d ms，main 之后 %d ms，常驻内存 %s",
+                packaging, sinceProcessMillis, sinceMainMillis,
+                memory[0] >= 0 ? String.format("%.1f MB（峰值 %.1f MB）", memory[0] / 1024.0, memory[1] / 1024.0)
+                        : "未知");
+        log.info(summary);
+
+        String file = System.getProperty("ai.startup.report");
+        if (file != null && !file.isBlank()) {
+            String json = String.format("{\"time\":\"%s\",\"packaging\":\"%s\",\"processMillis\":%d,"
+                            + "\"mainMillis\":%d,\"rssKb\":%d,\"hwmKb\":%d,\"heapUsedKb\":%d}%n",
+                    Instant.now(), packaging, sinceProcessMillis, sinceMainMillis, memory[0], memory[1],
+                    ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1024);
+            try {
+                Files.writeString(Paths.get(file), json, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                log.warn("启动报告写入失败: {}", e.getMessage());
+            }
+        }
+        return summary;
+    }
+
+    public static boolean exitAfterReport() {
+        return Boolean.getBoolean("ai.startup.exit");
+    }
+
+    /**
+     * 常驻内存和峰值（KB）：Linux 读取 /proc/self/status，其他平台没有时返回 -1
+     */
+    private static long[] residentMemoryKb() {
+        long[] result = {-1, -1};
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return result;
+        }
+        try {
+            List<String> lines = Files.readAllLines(status, StandardCharsets.US_ASCII);
+            for (String line : lines) {
+                if (line.startsWith("VmRSS:")) {
+                    result[0] = parseKb(line);
+                } else if (line.startsWith("VmHWM:")) {
+                    result[1] = parseKb(line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("读取内存信息失败: {}", e.getMessage());
+        }
+        return result;
+    }
+
+    private static long parseKb(String line) {
+        String value = line.substring(line.indexOf(':') + 1).trim();
+        int space = value.indexOf(' ');
+        return Long.parseLong(space > 0 ? value.substring(0, space) : value);
+    }
+}
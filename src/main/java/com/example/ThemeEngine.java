@@ -0,0 +1,174 @@
+package com.example;
+
+import javafx.application.Platform;
+import javafx.scene.Parent;
+import javafx.scene.paint.Color;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 主题引擎
+ * style.css 在 .root 上定义了一组查找颜色（-ai-accent 等），主题组件通过样式类引用这些变量。
+ * 切换主题时只替换根节点上的一张调色板样式表（data URI），不再逐个节点改写内联样式，
+ * 可以利用 JavaFX 的样式表缓存。调色板样式表按颜色预先生成并缓存。
+ */
+public class ThemeEngine {
+
+    private static final int MAX_CACHED_PALETTES = 32;
+
+    private final Parent root;
+    private final Map<String, String> stylesheetCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_PALETTES;
+        }
+    };
+    private String activeStylesheet;
+    private Palette activePalette = Palette.DEFAULT;
+
+    public ThemeEngine(Parent root) {
+        this.root = root;
+    }
+
+    /**
+     * 应用调色板（一次样式表替换）
+     */
+    public void apply(Palette palette) {
+        String stylesheet = stylesheetFor(palette);
+        Runnable swap = () -> {
+            if (activeStylesheet != null) {
+                root.getStylesheets().remove(activeStylesheet);
+            }
+            root.getStylesheets().add(stylesheet);
+            activeStylesheet = stylesheet;
+            activePalette = palette;
+        };
+        if (Platform.isFxApplicationThread()) {
+            swap.run();
+        } else {
+            Platform.runLater(swap);
+        }
+    }
+
+    /**
+     * 只替换强调色和标题色，其他颜色保持不变
+     */
+    public void applyAccent(Color color) {
+        apply(activePalette.withAccent(color).withTitle(color));
+    }
+
+    /**
+     * 所有主题颜色统一为指定颜色
+     */
+    public void applyAll(Color color) {
+        apply(Palette.uniform(color));
+    }
+
+    /**
+     * 按颜色历史预先生成调色板样式表
+     */
+    public void precompile(List<Color> colors) {
+        for (Color color : colors) {
+            stylesheetFor(activePalette.withAccent(color).withTitle(color));
+            stylesheetFor(Palette.uniform(color));
+        }
+    }
+
+    public Palette getActivePalette() {
+        return activePalette;
+    }
+
+    private synchronized String stylesheetFor(Palette palette) {
+        return stylesheetCache.computeIfAbsent(palette.key(), key -> "data:text/css;base64,"
+                + Base64.getEncoder().encodeToString(palette.toCss().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String toHex(Color color) {
+        return String.format("#%02X%02X%02X",
+                (int) (color.getRed() * 255),
+                (int) (color.getGreen() * 255),
+                (int) (color.getBlue() * 255));
+    }
+
+    private static Color textColorFor(Color background) {
+        return ColorEngine.textColorFor(background);
+    }
+
+    /**
+     * 调色板：强调色（btn1）、次要色（btn2）和标题色
+     */
+    public static class Palette {
+
+        public static final Palette DEFAULT = new Palette(
+                Color.web("#3498db"), Color.web("#9b59b6"), Color.WHITE);
+
+        private final Color accent;
+        private final Color secondary;
+        private final Color title;
+
+        public Palette(Color accent, Color secondary, Color title) {
+            this.accent = accent;
+            this.secondary = secondary;
+            this.title = title;
+        }
+
+        public static Palette uniform(Color color) {
+            return new Palette(color, color, color);
+        }
+
+        public Palette withAccent(Color color) {
+            return new Palette(color, secondary, title);
+        }
+
+        public Palette withSecondary(Color color) {
+            return new Palette(accent, color, title);
+        }
+
+        public Palette withTitle(Color color) {
+            return new Palette(accent, secondary, color);
+        }
+
+        public Color getAccent() {
+            return accent;
+        }
+
+        public Color getSecondary() {
+            return secondary;
+        }
+
+        public Color getTitle() {
+            return title;
+        }
+
+        String key() {
+            return toHex(accent) + toHex(secondary) + toHex(title);
+        }
+
+        /**
+         * 从 key() 生成的字符串还原调色板
+         */
+        static Palette fromKey(String key) {
+            return new Palette(Color.web(key.substring(0, 7)), Color.web(key.substring(7, 14)),
+                    Color.web(key.substring(14, 21)));
+        }
+
+        /**
+         * 生成只包含查找颜色定义的样式表
+         */
+        String toCss() {
+            return ".root {"
+                    + " -ai-accent: " + toHex(accent) + ";"
+                    + " -ai-accent-dark: " + toHex(accent.deriveColor(0, 1, 0.85, 1)) + ";"
+                    + " -ai-accent-text: " + toHex(textColorFor(accent)) + ";"
+                    + " -ai-secondary: " + toHex(secondary) + ";"
+                    + " -ai-secondary-dark: " + toHex(secondary.deriveColor(0, 1, 0.85, 1)) + ";"
+                    + " -ai-secondary-text: " + toHex(textColorFor(secondary)) + ";"
+                    + " -ai-title-text: " + toHex(title) + ";"
+                    + " }";
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 工具定义与工具调用解码
+ * 每个已注册命令对应 OpenAI 兼容 tools 字段中的一个函数，参数带类型；
+ * 模型返回的 tool_calls 直接解码为命令计划，多个并行调用合并为批量命令。
+ * 工具定义只在命令定义变化时重新生成，两次变化之间保持一致，便于服务端做前缀缓存。
+ */
+public class ToolCatalog {
+
+    // 参数类型和说明，未列出的参数为字符串
+    private static final Map<String, String[]> PARAM_TYPES = Map.of(
+            "target", new String[]{"string", "组件ID,*表示所有组件"},
+            "color", new String[]{"string", "颜色名|#RRGGBB|rgb(r,g,b)|rgba(r,g,b,a)"},
+            "style", new String[]{"string", "JavaFX CSS"},
+            "index", new String[]{"integer", "从1开始,1为最新"},
+            "count", new String[]{"integer", "批量创建数量"},
+            "template", new String[]{"object", "组件模板{type,text,style,prompt,children}"},
+            "scheme", new String[]{"string", "complementary/analogous/triadic/split"},
+            "parent", new String[]{"string", "父容器ID,默认controlPanel"},
+            "prefix", new String[]{"string", "按前缀移除"}
+    );
+
+    private final CommandSchema commandSchema;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ResponseRepair responseRepair = new ResponseRepair();
+    private JSONArray cachedTools;
+    private int cachedVersion = -1;
+
+    public ToolCatalog(CommandSchema commandSchema) {
+        this.commandSchema = commandSchema;
+    }
+
+    /**
+     * 获取工具定义（命令定义不变时返回同一个对象，调用方不应修改）
+     */
+    public synchronized JSONArray tools() {
+        int version = commandSchema.getCommandVersion();
+        if (cachedTools == null || version != cachedVersion) {
+            cachedTools = generate();
+            cachedVersion = version;
+        }
+        return cachedTools;
+    }
+
+    private JSONArray generate() {
+        JSONArray tools = new JSONArray();
+        for (CommandSchema.CommandSpec spec : commandSchema.getCommands().values()) {
+            JSONObject properties = new JSONObject();
+            JSONArray required = new JSONArray();
+            if (spec.isRequiresTarget()) {
+                properties.put("target", property("target"));
+                required.put("target");
+            }
+            for (String param : spec.getParams()) {
+                properties.put(param, property(param));
+                if (!"target".equals(param) || !spec.isRequiresTarget()) {
+                    required.put(param);
+                }
+            }
+            for (String param : spec.getOptionalParams()) {
+                properties.put(param, property(param));
+            }
+            JSONObject parameters = new JSONObject()
+                    .put("type", "object")
+                    .put("properties", properties);
+            if (required.length() > 0) {
+                parameters.put("required", required);
+            }
+            tools.put(new JSONObject()
+                    .put("type", "function")
+                    .put("function", new JSONObject()
+                            .put("name", spec.getName())
+                            .put("description", spec.getDescription())
+                            .put("parameters", parameters)));
+        }
+        return tools;
+    }
+
+    private static JSONObject property(String param) {
+        String[] type = PARAM_TYPES.getOrDefault(param, new String[]{"string", null});
+        JSONObject property = new JSONObject().put("type", type[0]);
+        if (type[1] != null) {
+            property.put("description", type[1]);
+        }
+        return property;
+    }
+
+    /**
+     * 把 tool_calls 解码为命令计划：单个调用为单条命令，多个调用为批量命令
+     * content 为模型同时给出的说明文字（可为空），用作命令描述。没有可解码的调用时返回 null。
+     */
+    public ObjectNode decode(JsonNode toolCalls, String content) {
+        if (toolCalls == null || !toolCalls.isArray() || toolCalls.isEmpty()) {
+            return null;
+        }
+        List<ObjectNode> commands = new ArrayList<>(toolCalls.size());
+        for (JsonNode call : toolCalls) {
+            JsonNode function = call.path("function");
+            String name = function.path("name").asText("");
+            if (name.isEmpty()) {
+                continue;
+            }
+            ObjectNode command = objectMapper.createObjectNode();
+            command.put("command", name);
+            ObjectNode params = command.putObject("params");
+            JsonNode arguments = parseArguments(function.get("arguments"));
+            if (arguments != null) {
+                Iterator<Map.Entry<String, JsonNode>> fields = arguments.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    if ("target".equals(field.getKey())) {
+                        command.put("target", field.getValue().asText());
+                    } else {
+                        params.set(field.getKey(), field.getValue());
+                    }
+                }
+            }
+            commands.add(command);
+        }
+        if (commands.isEmpty()) {
+            return null;
+        }
+
+        String description = content == null ? "" : content.trim();
+        if (commands.size() == 1) {
+            ObjectNode command = commands.get(0);
+            if (!description.isEmpty()) {
+                command.put("description", description);
+            }
+            return command;
+        }
+        ObjectNode batch = objectMapper.createObjectNode();
+        ArrayNode array = batch.putArray("commands");
+        commands.forEach(array::add);
+        batch.put("description", description.isEmpty() ? "批量执行 " + commands.size() + " 条命令" : description);
+        return batch;
+    }
+
+    /**
+     * 参数按规范是 JSON 字符串，部分实现直接给出对象；字符串格式有瑕疵时本地修复
+     */
+    private JsonNode parseArguments(JsonNode arguments) {
+        if (arguments == null || arguments.isNull()) {
+            return null;
+        }
+        if (arguments.isObject()) {
+            return arguments;
+        }
+        ResponseRepair.Result repaired = responseRepair.repair(arguments.asText());
+        return repaired != null ? repaired.getNode() : null;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 一次 HTTP 交换的录制记录及其二进制格式
+ * 文件以魔数和版本号开头，之后是连续的记录：
+ *   时间戳(long) 响应头耗时微秒(long) 总耗时微秒(long) 状态码(short) URL 请求体 响应体
+ * 字符串写为 标志(byte) 原始长度(int) 数据长度(int) 数据，较长的字符串（系统提示词、响应体）用 deflate 压缩。
+ * 状态码为 -1 表示交换失败，响应体为异常信息。
+ */
+public final class TransportRecord {
+
+    static final int MAGIC = 0x51524543; // "QREC"
+    static final int VERSION = 1;
+    static final int FAILED = -1;
+
+    private static final int COMPRESS_THRESHOLD = 256;
+    private static final byte RAW = 0;
+    private static final byte DEFLATED = 1;
+
+    private final long timestamp;
+    private final long headersMicros;
+    private final long totalMicros;
+    private final int statusCode;
+    private final String url;
+    private final String requestBody;
+    private final String responseBody;
+
+    public TransportRecord(long timestamp, long headersMicros, long totalMicros, int statusCode,
+                           String url, String requestBody, String responseBody) {
+        this.timestamp = timestamp;
+        this.headersMicros = headersMicros;
+        this.totalMicros = totalMicros;
+        this.statusCode = statusCode;
+        this.url = url;
+        this.requestBody = requestBody;
+        this.responseBody = responseBody;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getHeadersMicros() {
+        return headersMicros;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getRequestBody() {
+        return requestBody;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * 写入一条记录；deflater 由调用方复用（写线程独占）
+     */
+    void write(DataOutputStream out, Deflater deflater, byte[] buffer) throws IOException {
+        out.writeLong(timestamp);
+        out.writeLong(headersMicros);
+        out.writeLong(totalMicros);
+        out.writeShort(statusCode);
+        writeString(out, url, deflater, buffer);
+        writeString(out, requestBody, deflater, buffer);
+        writeString(out, responseBody, deflater, buffer);
+    }
+
+    private static void writeString(DataOutputStream out, String value, Deflater deflater, byte[] buffer)
+            throws IOException {
+        byte[] raw = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (raw.length < COMPRESS_THRESHOLD) {
+            out.writeByte(RAW);
+            out.writeInt(raw.length);
+            out.writeInt(raw.length);
+            out.write(raw);
+            return;
+        }
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 3 + 16);
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            compressed.write(buffer, 0, length);
+        }
+        out.writeByte(DEFLATED);
+        out.writeInt(raw.length);
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+    }
+
+    private static TransportRecord read(DataInputStream in, Inflater inflater) throws IOException {
+        long timestamp = in.readLong();
+        long headersMicros = in.readLong();
+        long totalMicros = in.readLong();
+        int statusCode = in.readShort();
+        String url = readString(in, inflater);
+        String requestBody = readString(in, inflater);
+        String responseBody = readString(in, inflater);
+        return new TransportRecord(timestamp, headersMicros, totalMicros, statusCode, url, requestBody, responseBody);
+    }
+
+    private static String readString(DataInputStream in, Inflater inflater) throws IOException {
+        byte flag = in.readByte();
+        int rawLength = in.readInt();
+        int length = in.readInt();
+        byte[] data = new byte[length];
+        in.readFully(data);
+        if (flag == RAW) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(data);
+        try {
+            int offset = 0;
+            while (offset < rawLength && !inflater.finished()) {
+                offset += inflater.inflate(raw, offset, rawLength - offset);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("录制数据损坏", e);
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按时间顺序读取录制文件及其轮转文件（file.N … file.1, file）
+     * 文件末尾不完整的记录（进程在写入时退出）被忽略。
+     */
+    public static List<TransportRecord> readAll(Path file) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int i = 1; Files.exists(RecordingTransport.rotated(file, i)); i++) {
+            files.add(0, RecordingTransport.rotated(file, i));
+        }
+        if (Files.exists(file)) {
+            files.add(file);
+        }
+        if (files.isEmpty()) {
+            throw new IOException("录制文件不存在: " + file);
+        }
+
+        List<TransportRecord> records = new ArrayList<>();
+        Inflater inflater = new Inflater();
+        try {
+            for (Path path : files) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                        throw new IOException("不是录制文件或版本不兼容: " + path);
+                    }
+                    while (true) {
+                        records.add(read(in, inflater));
+                    }
+                } catch (EOFException e) {
+                    // 文件结束
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return records;
+    }
+}
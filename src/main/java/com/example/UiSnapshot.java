@@ -0,0 +1,207 @@
+package com.example;
+
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.transform.Scale;
+
+import java.util.Base64;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * 界面快照
+ * 把目标节点（控制面板）缩小截取为 PNG，作为 data URL 附带给支持图像输入的模型。
+ * 命令执行后登记受影响的节点，截取时只渲染这些节点所在的矩形（视口），由 SnapshotEncoder
+ * 逐图块比较并只重新压缩变化的条带；没有登记变化时直接复用上一次的结果。
+ * 不经命令发生的变化（手动输入等）由定期的整体刷新兜底。
+ * capture 和 markDirty 在 FX 线程上调用，latest 可在任意线程调用。
+ */
+public class UiSnapshot {
+
+    private static final String DATA_URL_PREFIX = "data:image/png;base64,";
+
+    private final Node target;
+    private final int maxWidth;
+    private final int tileSize;
+    private final int level;
+    private final int refreshEvery;
+    private final ClientMetrics metrics;
+
+    // 待刷新的节点；布局变化的节点登记其父节点
+    private final Set<Node> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean dirtyAll = true;
+    private int capturesSinceRefresh;
+
+    private SnapshotEncoder encoder;
+    private double scale;
+    private WritableImage image;
+    private int[] buffer = new int[0];
+    private final SnapshotParameters parameters = new SnapshotParameters();
+    private volatile String dataUrl;
+
+    public UiSnapshot(Node target, int maxWidth, int tileSize, int level, int refreshEvery, ClientMetrics metrics) {
+        this.target = target;
+        this.maxWidth = Math.max(64, maxWidth);
+        this.tileSize = tileSize;
+        this.level = level;
+        this.refreshEvery = Math.max(1, refreshEvery);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 按系统属性创建：
+     *   ai.snapshot.maxWidth      快照最大宽度（默认 640，超出时等比缩小）
+     *   ai.snapshot.tileSize      比较图块和压缩条带的边长（默认 32）
+     *   ai.snapshot.level         压缩级别（默认 3）
+     *   ai.snapshot.refreshEvery  每隔多少次截取整体刷新一次（默认 20）
+     */
+    public static UiSnapshot fromProperties(Node target, ClientMetrics metrics) {
+        return new UiSnapshot(target,
+                Integer.getInteger("ai.snapshot.maxWidth", 640),
+                Integer.getInteger("ai.snapshot.tileSize", 32),
+                Integer.getInteger("ai.snapshot.level", 3),
+                Integer.getInteger("ai.snapshot.refreshEvery", 20),
+                metrics);
+    }
+
+    /**
+     * 登记节点外观变化；layout 为 true 时变化可能影响兄弟节点的位置（可见性、文字、样式），登记父节点
+     */
+    public void markDirty(Node node, boolean layout) {
+        if (node == null) {
+            dirtyAll = true;
+            return;
+        }
+        Parent parent = node.getParent();
+        dirty.add(layout && parent != null ? parent : node);
+    }
+
+    /**
+     * 下一次截取整体刷新
+     */
+    public void markAll() {
+        dirtyAll = true;
+    }
+
+    /**
+     * 最近一次截取的 data URL，尚未截取时返回 null
+     */
+    public String latest() {
+        return dataUrl;
+    }
+
+    /**
+     * 截取并编码变化的区域，返回 data URL；settling 为 true 表示仍有过渡动画，本次登记的区域保留到下次
+     */
+    public String capture(boolean settling) {
+        Bounds frame = target.getBoundsInParent();
+        if (frame.getWidth() < 1 || frame.getHeight() < 1) {
+            return dataUrl;
+        }
+        double s = Math.min(1.0, maxWidth / frame.getWidth());
+        int width = (int) Math.ceil(frame.getWidth() * s);
+        int height = (int) Math.ceil(frame.getHeight() * s);
+        if (encoder == null || encoder.getWidth() != width || encoder.getHeight() != height || scale != s) {
+            if (encoder != null) {
+                encoder.close();
+            }
+            encoder = new SnapshotEncoder(width, height, tileSize, level);
+            image = new WritableImage(width, height);
+            scale = s;
+            dirtyAll = true;
+        }
+        if (++capturesSinceRefresh >= refreshEvery) {
+            dirtyAll = true;
+        }
+
+        int[] region = dirtyAll ? new int[]{0, 0, width, height} : dirtyRegion(frame, width, height);
+        if (region == null) {
+            if (dataUrl != null) {
+                metrics.recordSnapshotCacheHit();
+                return dataUrl;
+            }
+            region = new int[]{0, 0, width, height};
+        }
+        if (region[0] == 0 && region[1] == 0 && region[2] == width && region[3] == height) {
+            capturesSinceRefresh = 0;
+        }
+
+        long start = System.nanoTime();
+        int x = region[0];
+        int y = region[1];
+        int w = region[2];
+        int h = region[3];
+        // 视口位于缩放后的父节点坐标系
+        parameters.setTransform(new Scale(scale, scale));
+        parameters.setViewport(new Rectangle2D(frame.getMinX() * scale + x, frame.getMinY() * scale + y, w, h));
+        image = target.snapshot(parameters, image);
+        if (buffer.length < w * h) {
+            buffer = new int[width * height];
+        }
+        image.getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), buffer, 0, w);
+        long captured = System.nanoTime();
+
+        int changed = encoder.update(x, y, w, h, buffer, 0, w);
+        byte[] png = encoder.encode();
+        if (encoder.getLastEncodedBands() > 0 || dataUrl == null) {
+            dataUrl = DATA_URL_PREFIX + Base64.getEncoder().encodeToString(png);
+        }
+        long encoded = System.nanoTime();
+        metrics.recordSnapshot((captured - start) / 1000, (encoded - captured) / 1000, changed,
+                encoder.getLastEncodedBands(), png.length);
+
+        if (!settling) {
+            dirty.clear();
+            dirtyAll = false;
+        }
+        return dataUrl;
+    }
+
+    /**
+     * 登记节点在快照中的外接矩形（像素，按图块对齐）：{x, y, 宽, 高}，都不在目标内时返回 null
+     */
+    private int[] dirtyRegion(Bounds frame, int width, int height) {
+        if (dirty.isEmpty()) {
+            return null;
+        }
+        Parent parent = target.getParent();
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (Node node : dirty) {
+            if (node.getScene() == null) {
+                // 已从界面移除，位置未知
+                return new int[]{0, 0, width, height};
+            }
+            Bounds bounds = node.localToScene(node.getBoundsInLocal());
+            if (parent != null) {
+                bounds = parent.sceneToLocal(bounds);
+            }
+            minX = Math.min(minX, bounds.getMinX());
+            minY = Math.min(minY, bounds.getMinY());
+            maxX = Math.max(maxX, bounds.getMaxX());
+            maxY = Math.max(maxY, bounds.getMaxY());
+        }
+        int x0 = clamp((int) Math.floor((minX - frame.getMinX()) * scale) / tileSize * tileSize, width);
+        int y0 = clamp((int) Math.floor((minY - frame.getMinY()) * scale) / tileSize * tileSize, height);
+        int x1 = clamp(((int) Math.ceil((maxX - frame.getMinX()) * scale) + tileSize - 1) / tileSize * tileSize,
+                width);
+        int y1 = clamp(((int) Math.ceil((maxY - frame.getMinY()) * scale) + tileSize - 1) / tileSize * tileSize,
+                height);
+        if (x1 <= x0 || y1 <= y0) {
+            return null;
+        }
+        return new int[]{x0, y0, x1 - x0, y1 - y0};
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+}
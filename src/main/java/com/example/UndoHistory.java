@@ -0,0 +1,322 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 撤销/重做历史
+ * 每条命令执行前后对比受影响的属性，只记录发生变化的属性（逆向差异）。
+ * 差异保存在固定容量的环形并行数组中：种类用 byte，组件用 int 编号，可见性和颜色值打包为 long，
+ * 文本、样式等字符串值直接引用；容量满时整条淘汰最旧的命令，长会话内存占用有上限。
+ * 单条命令的差异数超过容量时不记录该命令并清空历史（见 Tracker.commit）。
+ * 所有方法都应在 FX 线程上调用。
+ */
+public class UndoHistory {
+
+    // 差异种类
+    public static final byte VISIBLE = 0;
+    public static final byte TEXT = 1;
+    public static final byte STYLE = 2;
+    public static final byte COLOR = 3;
+    public static final byte COLOR_HISTORY = 4;
+    public static final byte PALETTE = 5;
+
+    private static final int NO_TARGET = -1;
+
+    private final StateAccess access;
+    private final int capacity;
+
+    private final int[] txns;
+    private final byte[] kinds;
+    private final int[] targets;
+    private final long[] beforeBits;
+    private final long[] afterBits;
+    private final String[] beforeValues;
+    private final String[] afterValues;
+
+    // 组件编号表（组件数量有限，不随命令数增长）
+    private String[] targetNames = new String[16];
+    private int targetCount;
+
+    private int start;   // 最旧一条差异的位置
+    private int size;    // 环中的差异数（含可重做部分）
+    private int cursor;  // 已生效的差异数，[cursor, size) 为可重做部分
+    private int nextTxn;
+    private ChangeListener changeListener;
+
+    /**
+     * 读取和写回组件状态
+     */
+    public interface StateAccess {
+
+        /**
+         * 读取打包为 long 的状态（可见性、颜色），不适用时返回 0
+         */
+        long readBits(byte kind, String target);
+
+        /**
+         * 读取字符串状态（文本、样式、颜色历史、调色板），不适用时返回 null
+         */
+        String readValue(byte kind, String target);
+
+        /**
+         * 写回状态
+         */
+        void apply(byte kind, String target, long bits, String value);
+    }
+
+    /**
+     * 状态变化通知：提交、撤销和重做时对每项发生变化的属性回调一次
+     */
+    public interface ChangeListener {
+
+        void changed(byte kind, String target);
+    }
+
+    public UndoHistory(StateAccess access, int capacity) {
+        this.access = access;
+        this.capacity = Math.max(1, capacity);
+        this.txns = new int[this.capacity];
+        this.kinds = new byte[this.capacity];
+        this.targets = new int[this.capacity];
+        this.beforeBits = new long[this.capacity];
+        this.afterBits = new long[this.capacity];
+        this.beforeValues = new String[this.capacity];
+        this.afterValues = new String[this.capacity];
+    }
+
+    /**
+     * 按系统属性 ai.undo.capacity 创建（默认 1024 条差异）
+     */
+    public static UndoHistory fromProperties(StateAccess access) {
+        return new UndoHistory(access, Integer.getInteger("ai.undo.capacity", 1024));
+    }
+
+    /**
+     * 开始跟踪一条命令
+     */
+    public Tracker track() {
+        return new Tracker();
+    }
+
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    public boolean canUndo() {
+        return cursor > 0;
+    }
+
+    public boolean canRedo() {
+        return cursor < size;
+    }
+
+    /**
+     * 撤销最近一条命令，返回撤销的差异数（0 表示没有可撤销的命令）
+     */
+    public int undo() {
+        if (cursor == 0) {
+            return 0;
+        }
+        int txn = txns[slot(cursor - 1)];
+        int count = 0;
+        while (cursor > 0 && txns[slot(cursor - 1)] == txn) {
+            cursor--;
+            int slot = slot(cursor);
+            access.apply(kinds[slot], targetName(targets[slot]), beforeBits[slot], beforeValues[slot]);
+            notifyChanged(kinds[slot], targets[slot]);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 重做最近撤销的命令，返回重做的差异数
+     */
+    public int redo() {
+        if (cursor == size) {
+            return 0;
+        }
+        int txn = txns[slot(cursor)];
+        int count = 0;
+        while (cursor < size && txns[slot(cursor)] == txn) {
+            int slot = slot(cursor);
+            access.apply(kinds[slot], targetName(targets[slot]), afterBits[slot], afterValues[slot]);
+            notifyChanged(kinds[slot], targets[slot]);
+            cursor++;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 清空历史
+     */
+    public void clear() {
+        Arrays.fill(beforeValues, null);
+        Arrays.fill(afterValues, null);
+        start = 0;
+        size = 0;
+        cursor = 0;
+    }
+
+    private void append(int txn, byte kind, int target, long before, long after,
+                        String beforeValue, String afterValue) {
+        if (size == capacity) {
+            evictOldest();
+        }
+        int slot = slot(size);
+        txns[slot] = txn;
+        kinds[slot] = kind;
+        targets[slot] = target;
+        beforeBits[slot] = before;
+        afterBits[slot] = after;
+        beforeValues[slot] = beforeValue;
+        afterValues[slot] = afterValue;
+        size++;
+        cursor = size;
+    }
+
+    /**
+     * 丢弃可重做部分（新命令执行后不能再重做旧的撤销）
+     */
+    private void truncateRedo() {
+        for (int i = cursor; i < size; i++) {
+            int slot = slot(i);
+            beforeValues[slot] = null;
+            afterValues[slot] = null;
+        }
+        size = cursor;
+    }
+
+    /**
+     * 淘汰最旧的一整条命令，避免只撤销半条命令
+     */
+    private void evictOldest() {
+        int txn = txns[start];
+        while (size > 0 && txns[start] == txn) {
+            beforeValues[start] = null;
+            afterValues[start] = null;
+            start = (start + 1) % capacity;
+            size--;
+            cursor = Math.max(0, cursor - 1);
+        }
+    }
+
+    private void notifyChanged(byte kind, int target) {
+        if (changeListener != null) {
+            changeListener.changed(kind, targetName(target));
+        }
+    }
+
+    private int slot(int offset) {
+        return (start + offset) % capacity;
+    }
+
+    private int targetId(String target) {
+        if (target == null) {
+            return NO_TARGET;
+        }
+        for (int i = 0; i < targetCount; i++) {
+            if (targetNames[i].equals(target)) {
+                return i;
+            }
+        }
+        if (targetCount == targetNames.length) {
+            targetNames = Arrays.copyOf(targetNames, targetCount * 2);
+        }
+        targetNames[targetCount] = target;
+        return targetCount++;
+    }
+
+    private String targetName(int id) {
+        return id == NO_TARGET ? null : targetNames[id];
+    }
+
+    /**
+     * 单条命令的跟踪器：watch 登记受影响的属性，begin 记录执行前状态，commit 对比执行后状态写入历史
+     * watch 可在任意线程调用，begin 和 commit 必须在 FX 线程上调用。
+     */
+    public class Tracker {
+
+        private byte[] watchedKinds = new byte[4];
+        private String[] watchedTargets = new String[4];
+        private long[] before = new long[4];
+        private String[] beforeText = new String[4];
+        private int count;
+        private boolean begun;
+
+        public Tracker watch(byte kind, String target) {
+            for (int i = 0; i < count; i++) {
+                if (watchedKinds[i] == kind && Objects.equals(watchedTargets[i], target)) {
+                    return this;
+                }
+            }
+            if (count == watchedKinds.length) {
+                watchedKinds = Arrays.copyOf(watchedKinds, count * 2);
+                watchedTargets = Arrays.copyOf(watchedTargets, count * 2);
+                before = Arrays.copyOf(before, count * 2);
+                beforeText = Arrays.copyOf(beforeText, count * 2);
+            }
+            watchedKinds[count] = kind;
+            watchedTargets[count] = target;
+            count++;
+            return this;
+        }
+
+        public void begin() {
+            for (int i = 0; i < count; i++) {
+                before[i] = access.readBits(watchedKinds[i], watchedTargets[i]);
+                beforeText[i] = access.readValue(watchedKinds[i], watchedTargets[i]);
+            }
+            begun = true;
+        }
+
+        /**
+         * 写入历史，返回记录的差异数（没有变化时返回 0，不占用历史）
+         * 差异数超过容量的命令无法整条保存，也不能只保存一部分：此时不记录并清空历史，
+         * 避免之后的撤销越过这条命令恢复出不一致的状态。
+         */
+        public int commit() {
+            if (!begun) {
+                return 0;
+            }
+            begun = false;
+            long[] after = new long[count];
+            String[] afterText = new String[count];
+            boolean[] changed = new boolean[count];
+            int changes = 0;
+            for (int i = 0; i < count; i++) {
+                after[i] = access.readBits(watchedKinds[i], watchedTargets[i]);
+                afterText[i] = access.readValue(watchedKinds[i], watchedTargets[i]);
+                changed[i] = after[i] != before[i] || !Objects.equals(afterText[i], beforeText[i]);
+                if (changed[i]) {
+                    changes++;
+                }
+            }
+            if (changes > capacity) {
+                clear();
+            }
+            int txn = -1;
+            int recorded = 0;
+            for (int i = 0; i < count; i++) {
+                if (!changed[i]) {
+                    continue;
+                }
+                if (changes <= capacity) {
+                    if (txn < 0) {
+                        truncateRedo();
+                        txn = nextTxn++;
+                    }
+                    append(txn, watchedKinds[i], targetId(watchedTargets[i]), before[i], after[i], beforeText[i],
+                            afterText[i]);
+                    recorded++;
+                }
+                if (changeListener != null) {
+                    changeListener.changed(watchedKinds[i], watchedTargets[i]);
+                }
+            }
+            return recorded;
+        }
+    }
+}
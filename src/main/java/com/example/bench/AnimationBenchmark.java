@@ -0,0 +1,247 @@
+package com.example.bench;
+
+import com.example.AnimationEngine;
+import com.example.ClientMetrics;
+import com.example.LatencyRecorder;
+import javafx.animation.Interpolator;
+import javafx.animation.KeyFrame;
+import javafx.animation.KeyValue;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过渡动画基准测试
+ * 同时给 N 个色块（Region，不含文字，无需系统字体库）做颜色过渡，类路径上有 openjfx-monocle 时在 Monocle Headless 中运行，
+ * 对比共享 AnimationTimer 的 AnimationEngine 和"每个节点一个 Timeline"的做法，
+ * 统计帧间隔、每帧 CSS + 布局耗时和一轮过渡的总耗时；AnimationEngine 另外统计每帧自身的处理耗时。
+ * 每轮在上一轮进行到一半时发出，覆盖重定向路径。
+ *
+ * 运行：mvn compile exec:java -Dexec.mainClass=com.example.bench.AnimationBenchmark -Dexec.args="100,500,1000 20"
+ * 参数：节点数列表（默认 100,500,1000）、轮数（默认 20）
+ * 系统属性：ai.animation.durationMillis 过渡时长（默认 250）
+ */
+public class AnimationBenchmark {
+
+    private static final String[] COLORS = {"#E74C3C", "#3498DB", "#2ECC71", "#F1C40F", "#9B59B6"};
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private final List<Region> nodes = new ArrayList<>();
+    private volatile LatencyRecorder interval;
+    private volatile LatencyRecorder cssLayout;
+    private volatile boolean sampling;
+    private int frames;
+    private long lastPulse;
+    private long layoutStart;
+    private Stage stage;
+
+    public static void main(String[] args) throws Exception {
+        String[] sizes = (args.length > 0 ? args[0] : "100,500,1000").split(",");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long durationMillis = Long.getLong("ai.animation.durationMillis", 250);
+
+        if (AnimationBenchmark.class.getClassLoader()
+                .getResource("com/sun/glass/ui/monocle/MonoclePlatformFactory.class") != null) {
+            setDefault("glass.platform", "Monocle");
+            setDefault("monocle.platform", "Headless");
+            setDefault("prism.order", "sw");
+        }
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        Platform.startup(() -> started.complete(null));
+        started.get(30, TimeUnit.SECONDS);
+
+        System.out.printf("过渡时长 %d ms, 每种方式 %d 轮, 单位 ms%n", durationMillis, rounds);
+        for (String size : sizes) {
+            int nodeCount = Integer.parseInt(size.trim());
+            AnimationBenchmark benchmark = new AnimationBenchmark();
+            onFx(() -> benchmark.setUp(nodeCount));
+
+            // 各预热一轮，不计入结果
+            AnimationEngine warmup = new AnimationEngine(durationMillis, true, null);
+            benchmark.run(1, warmup::animateColor, () -> warmup.activeCount() == 0);
+            ClientMetrics metrics = new ClientMetrics();
+            AnimationEngine engine = new AnimationEngine(durationMillis, true, metrics);
+            long tail = benchmark.run(rounds, engine::animateColor, () -> engine.activeCount() == 0);
+            benchmark.print(nodeCount, "AnimationEngine", tail, metrics.getAnimationWorkPercentiles(QUANTILES));
+
+            TimelineAnimator timelines = new TimelineAnimator(durationMillis);
+            benchmark.run(1, timelines::animate, timelines::isIdle);
+            tail = benchmark.run(rounds, timelines::animate, timelines::isIdle);
+            benchmark.print(nodeCount, "每节点 Timeline", tail, null);
+
+            onFx(() -> {
+                benchmark.stage.close();
+                return null;
+            });
+        }
+        Platform.exit();
+    }
+
+    private Void setUp(int nodeCount) {
+        FlowPane root = new FlowPane();
+        for (int i = 0; i < nodeCount; i++) {
+            Region node = new Region();
+            node.setPrefSize(40, 24);
+            node.setStyle("-fx-background-color: #808080; -fx-text-fill: white;");
+            nodes.add(node);
+        }
+        root.getChildren().addAll(nodes);
+        Scene scene = new Scene(root, 1200, 800);
+        scene.getStylesheets().add(Objects.requireNonNull(
+                AnimationBenchmark.class.getResource("/com/example/css/style.css")).toExternalForm());
+        scene.addPreLayoutPulseListener(() -> layoutStart = System.nanoTime());
+        scene.addPostLayoutPulseListener(this::afterLayout);
+        stage = new Stage();
+        stage.setScene(scene);
+        stage.show();
+        return null;
+    }
+
+    private void afterLayout() {
+        long now = System.nanoTime();
+        if (sampling) {
+            frames++;
+            cssLayout.record((now - layoutStart) / 1000);
+            if (lastPulse != 0) {
+                interval.record((now - lastPulse) / 1000);
+            }
+        }
+        lastPulse = now;
+    }
+
+    /**
+     * 运行若干轮：每轮给所有节点设置新的目标颜色，过渡进行到一半时开始下一轮（重定向），
+     * 最后等待全部过渡结束。返回最后一轮从发出到全部结束的耗时（纳秒）
+     */
+    private long run(int rounds, Animator animator, Callable<Boolean> idle) throws Exception {
+        interval = new LatencyRecorder(4096);
+        cssLayout = new LatencyRecorder(4096);
+        onFx(() -> {
+            lastPulse = 0;
+            frames = 0;
+            sampling = true;
+            return null;
+        });
+        long durationMillis = Long.getLong("ai.animation.durationMillis", 250);
+        long tail = 0;
+        for (int round = 0; round < rounds; round++) {
+            Color target = Color.web(COLORS[round % COLORS.length]);
+            long start = System.nanoTime();
+            onFx(() -> {
+                for (Region node : nodes) {
+                    animator.animate(node, target);
+                }
+                return null;
+            });
+            if (round < rounds - 1) {
+                Thread.sleep(durationMillis / 2);
+            } else {
+                while (!onFx(idle)) {
+                    Thread.sleep(5);
+                }
+                tail = System.nanoTime() - start;
+            }
+        }
+        onFx(() -> {
+            sampling = false;
+            return null;
+        });
+        return tail;
+    }
+
+    /**
+     * 输出一行结果：帧数、帧间隔和每帧 CSS + 布局耗时的 p50/p95/p99，引擎处理耗时（有时），收尾耗时
+     */
+    private void print(int nodeCount, String name, long tail, long[] work) {
+        long[] frameInterval = interval.percentiles(QUANTILES);
+        long[] layout = cssLayout.percentiles(QUANTILES);
+        System.out.printf("%5d 节点 %-16s %4d 帧  帧间隔 %s  CSS+布局 %s  引擎处理 %s  收尾 %.0f%n",
+                nodeCount, name, frames, format(frameInterval), format(layout),
+                work == null ? "-" : format(work), tail / 1e6);
+    }
+
+    private static String format(long[] micros) {
+        return String.format("%.1f/%.1f/%.1f", micros[0] / 1000.0, micros[1] / 1000.0, micros[2] / 1000.0);
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private static <T> T onFx(Callable<T> task) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.get(60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 对单个节点发起颜色过渡
+     */
+    private interface Animator {
+        void animate(Node node, Color target);
+    }
+
+    /**
+     * 对照组：每个节点一个 Timeline，插值颜色属性并在监听器中改写内联样式，新目标到达时停止旧的 Timeline
+     */
+    private static final class TimelineAnimator {
+
+        private final Duration duration;
+        private final Map<Node, Timeline> running = new IdentityHashMap<>();
+        private final Map<Node, ObjectProperty<Color>> colors = new IdentityHashMap<>();
+
+        TimelineAnimator(long durationMillis) {
+            this.duration = Duration.millis(durationMillis);
+        }
+
+        void animate(Node node, Color target) {
+            Timeline previous = running.remove(node);
+            if (previous != null) {
+                previous.stop();
+            }
+            ObjectProperty<Color> color = colors.computeIfAbsent(node, key -> {
+                ObjectProperty<Color> property = new SimpleObjectProperty<>(Color.GRAY);
+                property.addListener((obs, old, value) -> key.setStyle(String.format(
+                        "-fx-background-color: #%02X%02X%02X; -fx-text-fill: white;",
+                        Math.round(value.getRed() * 255), Math.round(value.getGreen() * 255),
+                        Math.round(value.getBlue() * 255))));
+                return property;
+            });
+            Timeline timeline = new Timeline(
+                    new KeyFrame(Duration.ZERO, new KeyValue(color, color.get())),
+                    new KeyFrame(duration, new KeyValue(color, target, Interpolator.EASE_BOTH)));
+            timeline.setOnFinished(event -> running.remove(node));
+            running.put(node, timeline);
+            timeline.play();
+        }
+
+        boolean isIdle() {
+            return running.isEmpty();
+        }
+    }
+}
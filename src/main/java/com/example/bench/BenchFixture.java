@@ -0,0 +1,35 @@
+package com.example.bench;
+
+import com.example.AIController;
+import com.example.CommandSchema;
+import com.example.ComponentIndex;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 基准测试共用的命令表和组件索引
+ * 与界面使用同一份命令和组件别名，但不创建真实节点，不需要启动 JavaFX。
+ */
+final class BenchFixture {
+
+    private BenchFixture() {
+    }
+
+    static CommandSchema commandSchema() {
+        CommandSchema commandSchema = new CommandSchema();
+        AIController.registerDefaultCommands(commandSchema);
+        for (String id : new TreeMap<>(AIController.defaultComponentAliases()).keySet()) {
+            commandSchema.registerComponent(id);
+        }
+        return commandSchema;
+    }
+
+    static ComponentIndex componentIndex() {
+        ComponentIndex componentIndex = new ComponentIndex();
+        for (Map.Entry<String, String[]> entry : new TreeMap<>(AIController.defaultComponentAliases()).entrySet()) {
+            componentIndex.register(entry.getKey(), null, entry.getValue());
+        }
+        return componentIndex;
+    }
+}
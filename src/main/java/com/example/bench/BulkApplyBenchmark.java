@@ -0,0 +1,134 @@
+package com.example.bench;
+
+import com.example.BulkApplyPipeline;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量应用基准测试
+ * 对比逐个节点提交（每条命令一次 runLater，与原先的执行路径一致）和 BulkApplyPipeline 一次性提交，
+ * 统计从开始到最后一次布局完成的耗时以及期间经历的脉冲数。
+ *
+ * 运行：mvn compile exec:java -Dexec.mainClass=com.example.bench.BulkApplyBenchmark -Dexec.args="2000 5"
+ * 参数：节点数（默认 2000）、轮数（默认 5）
+ */
+public class BulkApplyBenchmark {
+
+    private static final String[] COLORS = {"#E74C3C", "#3498DB", "#2ECC71", "#F1C40F", "#9B59B6"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Button> buttons = new ArrayList<>();
+    private final AtomicInteger pulses = new AtomicInteger();
+    private volatile CountDownLatch layoutDone;
+    private Scene scene;
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        CountDownLatch started = new CountDownLatch(1);
+        Platform.startup(started::countDown);
+        started.await();
+
+        BulkApplyBenchmark benchmark = new BulkApplyBenchmark();
+        benchmark.setUp(nodeCount);
+
+        for (int round = 0; round < rounds; round++) {
+            String color = COLORS[round % COLORS.length];
+            long perNode = benchmark.runPerNode(color);
+            int perNodePulses = benchmark.pulses.get();
+            long bulk = benchmark.runBulk(COLORS[(round + 1) % COLORS.length]);
+            int bulkPulses = benchmark.pulses.get();
+            System.out.printf("第 %d 轮 (%d 个节点): 逐个提交 %.1f ms / %d 个脉冲, 批量提交 %.1f ms / %d 个脉冲%n",
+                    round + 1, nodeCount, perNode / 1e6, perNodePulses, bulk / 1e6, bulkPulses);
+        }
+
+        Platform.exit();
+    }
+
+    private void setUp(int nodeCount) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            FlowPane root = new FlowPane();
+            for (int i = 0; i < nodeCount; i++) {
+                Button button = new Button("按钮 " + i);
+                button.setStyle("-fx-font-weight: bold; -fx-background-radius: 8; -fx-padding: 4 8;");
+                buttons.add(button);
+            }
+            root.getChildren().addAll(buttons);
+            scene = new Scene(root, 1200, 800);
+            scene.addPostLayoutPulseListener(() -> {
+                pulses.incrementAndGet();
+                CountDownLatch latch = layoutDone;
+                if (latch != null) {
+                    latch.countDown();
+                }
+            });
+            Stage stage = new Stage();
+            stage.setScene(scene);
+            stage.show();
+            ready.countDown();
+        });
+        ready.await();
+    }
+
+    /**
+     * 逐个节点提交：每个节点一次 runLater，并在原样式后追加颜色
+     */
+    private long runPerNode(String hex) throws InterruptedException {
+        CountDownLatch submitted = new CountDownLatch(buttons.size());
+        pulses.set(0);
+        long start = System.nanoTime();
+        for (Button button : buttons) {
+            Platform.runLater(() -> {
+                String textFill = Color.web(hex).getBrightness() > 0.5 ? "black" : "white";
+                button.setStyle(button.getStyle()
+                        + String.format("-fx-background-color: %s; -fx-text-fill: %s;", hex, textFill));
+                submitted.countDown();
+            });
+        }
+        submitted.await();
+        awaitLayout();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 通过 BulkApplyPipeline 并行计算、一次提交
+     */
+    private long runBulk(String hex) throws Exception {
+        ObjectNode params = objectMapper.createObjectNode().put("color", hex);
+        List<BulkApplyPipeline.Operation> operations = new ArrayList<>(buttons.size());
+        for (int i = 0; i < buttons.size(); i++) {
+            operations.add(new BulkApplyPipeline.Operation("btn" + i, buttons.get(i), "changeColor", params));
+        }
+
+        BulkApplyPipeline pipeline = new BulkApplyPipeline(Color::web);
+        pulses.set(0);
+        long start = System.nanoTime();
+        pipeline.apply(operations).get(30, TimeUnit.SECONDS);
+        awaitLayout();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 请求一次布局并等待其完成
+     */
+    private void awaitLayout() throws InterruptedException {
+        layoutDone = new CountDownLatch(1);
+        Platform.runLater(() -> scene.getRoot().requestLayout());
+        layoutDone.await(10, TimeUnit.SECONDS);
+        layoutDone = null;
+    }
+}
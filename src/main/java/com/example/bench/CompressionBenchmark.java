@@ -0,0 +1,192 @@
+package com.example.bench;
+
+import com.example.ClientMetrics;
+import com.example.LatencyRecorder;
+import com.example.LocalModelProvider;
+import com.example.MockChatProvider;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 传输压缩基准测试
+ * 启动本地 OpenAI 兼容的模拟服务，按给定带宽限速收发（模拟慢速链路），
+ * 依次以不压缩、只压缩响应、请求和响应都压缩三种配置经 LocalModelProvider 发送相同的指令，
+ * 统计线上字节数、延迟和客户端每次调用的分配量（不含模拟服务线程）。
+ *
+ * 运行：mvn compile exec:java -Dexec.mainClass=com.example.bench.CompressionBenchmark -Dexec.args="200 1000"
+ * 参数：每种配置的调用次数（默认 200）、链路带宽 kbit/s（默认 1000）
+ */
+public class CompressionBenchmark {
+
+    private static final String STUB_THREAD = "stub-";
+    private static final int SEGMENT = 1460;
+    private static final String[][] MODES = {
+            // 名称, Accept-Encoding, 是否压缩请求体
+            {"不压缩", "identity", "false"},
+            {"压缩响应", "gzip, deflate", "false"},
+            {"压缩请求和响应", "gzip, deflate", "true"},
+    };
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int kbps = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        String reply = MockChatProvider.Reply.ofContent(replyContent(), 0, 0, 0).getBody();
+        AtomicInteger threadId = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2,
+                r -> new Thread(r, STUB_THREAD + threadId.incrementAndGet()));
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/v1/models", exchange -> respond(exchange, "{\"data\":[]}", kbps));
+        server.createContext("/v1/chat/completions", exchange -> {
+            byte[] request = exchange.getRequestBody().readAllBytes();
+            // 上行同样受带宽限制
+            throttle(request.length, kbps);
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(request))) {
+                    in.readAllBytes();
+                }
+            }
+            respond(exchange, reply, kbps);
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+        System.out.printf("链路 %d kbit/s, 响应体 %.1f KB, 每种配置 %d 次调用%n", kbps, reply.length() / 1024.0, calls);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        try {
+            for (String[] mode : MODES) {
+                System.setProperty("qwen.compression.accept", mode[1]);
+                System.setProperty("qwen.compression.request", mode[2]);
+                ClientMetrics metrics = new ClientMetrics();
+                LocalModelProvider provider = new LocalModelProvider(url, "mock", metrics);
+                provider.setCommandSchema(BenchFixture.commandSchema());
+                provider.setComponentIndex(BenchFixture.componentIndex());
+                provider.setResponseHandler((instruction, body) -> { });
+                try {
+                    if (!provider.connect().get(10, TimeUnit.SECONDS)) {
+                        System.out.println(mode[0] + ": 连接失败");
+                        continue;
+                    }
+                    // 预热：单核环境下避免把 JIT 编译计入延迟和分配
+                    for (int i = 0; i < Math.min(calls, 20); i++) {
+                        provider.sendInstruction("把所有按钮改成随机颜色 " + i).get(30, TimeUnit.SECONDS);
+                    }
+                    ClientMetrics measured = new ClientMetrics();
+                    LocalModelProvider timed = new LocalModelProvider(url, "mock", measured);
+                    timed.setCommandSchema(BenchFixture.commandSchema());
+                    timed.setComponentIndex(BenchFixture.componentIndex());
+                    timed.setResponseHandler((instruction, body) -> { });
+                    timed.connect().get(10, TimeUnit.SECONDS);
+
+                    LatencyRecorder latency = new LatencyRecorder(calls);
+                    long allocatedBefore = clientAllocatedBytes(threads);
+                    for (int i = 0; i < calls; i++) {
+                        long start = System.nanoTime();
+                        timed.sendInstruction("把所有按钮改成随机颜色 " + i).get(30, TimeUnit.SECONDS);
+                        latency.record((System.nanoTime() - start) / 1000);
+                    }
+                    long allocated = clientAllocatedBytes(threads) - allocatedBefore;
+                    timed.close();
+                    long[] p = latency.percentiles(0.5, 0.99);
+                    System.out.printf("%-8s 延迟 p50/p99: %.1f / %.1f ms, 分配 %.1f KB/次%n    %s%n",
+                            mode[0], p[0] / 1000.0, p[1] / 1000.0, allocated / 1024.0 / calls,
+                            measured.transferSummary());
+                } finally {
+                    provider.close();
+                }
+            }
+        } finally {
+            System.clearProperty("qwen.compression.accept");
+            System.clearProperty("qwen.compression.request");
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 一条较大的批量命令回复（二十多个组件改色），接近需要模型逐项列出的真实回复
+     */
+    private static String replyContent() {
+        JSONArray commands = new JSONArray();
+        String[] targets = {"btn1", "btn2", "titleLabel", "inputField", "statusLabel"};
+        for (int i = 0; i < 24; i++) {
+            String color = String.format("#%06X", (i * 0x2F4F7) & 0xFFFFFF);
+            commands.put(new JSONObject()
+                    .put("command", "changeColor")
+                    .put("target", targets[i % targets.length])
+                    .put("params", new JSONObject().put("color", color))
+                    .put("description", "把" + targets[i % targets.length] + "的颜色改为" + color
+                            + "，与相邻组件保持足够的对比度"));
+        }
+        return new JSONObject().put("commands", commands).toString();
+    }
+
+    /**
+     * 按带宽分段发送响应，客户端声明接受 gzip 时压缩
+     */
+    private static void respond(HttpExchange exchange, String body, int kbps) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (accept != null && accept.contains("gzip")) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+                gzip.write(bytes);
+            }
+            bytes = buffer.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int offset = 0; offset < bytes.length; offset += SEGMENT) {
+                int length = Math.min(SEGMENT, bytes.length - offset);
+                throttle(length, kbps);
+                out.write(bytes, offset, length);
+                out.flush();
+            }
+        }
+    }
+
+    private static void throttle(int bytes, int kbps) {
+        LockSupport.parkNanos(bytes * 8L * 1_000_000L / kbps);
+    }
+
+    /**
+     * 除模拟服务线程外所有线程的累计分配字节数
+     */
+    private static long clientAllocatedBytes(com.sun.management.ThreadMXBean threads) {
+        long total = 0;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info == null || info.getThreadName().startsWith(STUB_THREAD)) {
+                continue;
+            }
+            long bytes = threads.getThreadAllocatedBytes(info.getThreadId());
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.bench;
+
+import com.example.ChatProvider;
+import com.example.ClientMetrics;
+import com.example.IntentIndex;
+import com.example.LatencyRecorder;
+import com.example.MockChatProvider;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 语料回归基准
+ * 把黄金语料逐条送过完整链路（本地意图索引 → 模型提供方 → 本地修复与校验），
+ * 报告准确率（总体和分类）、端到端延迟分位数、token 用量、前缀缓存和意图索引命中率。
+ *
+ * 运行：mvn compile exec:java -Dexec.mainClass=com.example.bench.CorpusRunner -Dexec.args="replay fixtures.jsonl 2"
+ * 参数：
+ *   模式  mock（按期望结果合成响应，检验解析链路，默认）、replay（回放录制文件）、
+ *         record（请求真实提供方并写入录制文件）、live（请求真实提供方，不录制）
+ *   录制文件（默认 golden-v1.fixtures.jsonl）
+ *   轮数（默认 2，第二轮起可以观察意图索引命中）
+ * 系统属性：-Dbench.intentIndex=false 关闭意图索引，-Dai.mock.latencyScale 缩放回放耗时，
+ *          record/live 模式的提供方由 -Dai.provider 选择
+ */
+public class CorpusRunner {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int MAX_LISTED_FAILURES = 20;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "mock";
+        Path fixtures = Paths.get(args.length > 1 ? args[1] : GoldenCorpus.VERSION + ".fixtures.jsonl");
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        boolean useIntentIndex = Boolean.parseBoolean(System.getProperty("bench.intentIndex", "true"));
+        double latencyScale = Double.parseDouble(System.getProperty("ai.mock.latencyScale", "1"));
+
+        GoldenCorpus corpus = GoldenCorpus.load();
+        ClientMetrics metrics = new ClientMetrics();
+        ChatProvider provider;
+        switch (mode) {
+            case "mock":
+                provider = new MockChatProvider("mock", synthesize(corpus), latencyScale, metrics);
+                break;
+            case "replay":
+                Map<String, MockChatProvider.Reply> replies = MockChatProvider.loadFixtures(fixtures);
+                provider = new MockChatProvider("replay", replies::get, latencyScale, metrics);
+                break;
+            case "record":
+            case "live":
+                String apiKey = System.getProperty("qwen.api.key", System.getenv("QWEN_API_KEY"));
+                provider = ChatProvider.fromProperties(apiKey, metrics);
+                break;
+            default:
+                System.err.println("未知模式: " + mode + "（可选 mock / replay / record / live）");
+                return;
+        }
+
+        AtomicReference<String> lastBody = new AtomicReference<>();
+        provider.setCommandSchema(BenchFixture.commandSchema());
+        provider.setComponentIndex(BenchFixture.componentIndex());
+        provider.setResponseHandler((instruction, body) -> lastBody.set(body));
+        if (!provider.connect().get(30, TimeUnit.SECONDS)) {
+            System.err.println("提供方不可用: " + provider.getName());
+            return;
+        }
+
+        Path intentDir = Files.createTempDirectory("corpus-intent");
+        IntentIndex intentIndex = useIntentIndex
+                ? new IntentIndex(intentDir, BenchFixture.componentIndex(),
+                        Double.parseDouble(System.getProperty("ai.intent.threshold", "0.85")))
+                : null;
+        BufferedWriter recorder = "record".equals(mode)
+                ? Files.newBufferedWriter(fixtures, StandardCharsets.UTF_8)
+                : null;
+
+        LatencyRecorder latency = new LatencyRecorder(corpus.getCases().size() * rounds);
+        Map<String, int[]> categories = new TreeMap<>();
+        List<String> failures = new ArrayList<>();
+        AtomicInteger correct = new AtomicInteger();
+        int total = 0;
+
+        for (int round = 1; round <= rounds; round++) {
+            for (GoldenCorpus.Case testCase : corpus.getCases()) {
+                long start = System.nanoTime();
+                JsonNode plan = null;
+                String source;
+
+                IntentIndex.Match match = intentIndex != null ? intentIndex.lookup(testCase.getInstruction()) : null;
+                if (intentIndex != null) {
+                    metrics.recordIntentLookup(match != null);
+                }
+                if (match != null) {
+                    plan = match.getPlan();
+                    source = "意图索引";
+                } else {
+                    source = provider.getName();
+                    lastBody.set(null);
+                    try {
+                        provider.sendInstruction(testCase.getInstruction()).get(120, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        System.err.println("请求失败 " + testCase.getId() + ": " + e.getMessage());
+                    }
+                    String body = lastBody.get();
+                    if (body != null) {
+                        plan = provider.parseAIResponse(body);
+                        if (recorder != null && round == 1) {
+                            writeFixture(recorder, testCase, body, (System.nanoTime() - start) / 1_000_000);
+                        }
+                    }
+                    // 与界面一致：能执行的命令计划会被记入意图索引（不论是否正确）
+                    if (intentIndex != null && plan != null && (plan.has("command") || plan.has("commands"))) {
+                        intentIndex.add(testCase.getInstruction(), plan);
+                    }
+                }
+                latency.record((System.nanoTime() - start) / 1000);
+
+                boolean ok = GoldenCorpus.matches(testCase, plan);
+                total++;
+                int[] tally = categories.computeIfAbsent(testCase.getCategory(), key -> new int[2]);
+                tally[1]++;
+                if (ok) {
+                    correct.incrementAndGet();
+                    tally[0]++;
+                } else if (failures.size() < MAX_LISTED_FAILURES) {
+                    failures.add(String.format("  第%d轮 %s [%s] %s → %s", round, testCase.getId(), source,
+                            testCase.getInstruction(), plan == null ? "无响应" : compact(plan)));
+                }
+            }
+        }
+
+        if (recorder != null) {
+            recorder.close();
+            System.out.println("已写入录制文件: " + fixtures.toAbsolutePath());
+        }
+        if (intentIndex != null) {
+            intentIndex.close();
+        }
+        provider.close();
+
+        report(mode, provider.getName(), corpus, rounds, total, correct.get(), categories, failures, latency, metrics);
+    }
+
+    private static void report(String mode, String providerName, GoldenCorpus corpus, int rounds, int total,
+                               int correct, Map<String, int[]> categories, List<String> failures,
+                               LatencyRecorder latency, ClientMetrics metrics) {
+        long[] p = latency.percentiles(0.5, 0.95, 0.99, 1.0);
+        System.out.println();
+        System.out.printf("语料 %s (%d 条) × %d 轮, 模式 %s, 提供方 %s%n",
+                GoldenCorpus.VERSION, corpus.getCases().size(), rounds, mode, providerName);
+        System.out.printf("准确率 %.1f%% (%d/%d)%n", 100.0 * correct / Math.max(1, total), correct, total);
+        for (Map.Entry<String, int[]> entry : categories.entrySet()) {
+            int[] tally = entry.getValue();
+            System.out.printf("  %-10s %5.1f%% (%d/%d)%n", entry.getKey(),
+                    100.0 * tally[0] / tally[1], tally[0], tally[1]);
+        }
+        System.out.printf("端到端延迟 p50/p95/p99/max: %d / %d / %d / %d ms%n",
+                p[0] / 1000, p[1] / 1000, p[2] / 1000, p[3] / 1000);
+        System.out.println(metrics.tokenSummary());
+        System.out.printf("前缀缓存命中 %.0f%%, 意图索引命中 %.0f%%%n",
+                metrics.getPromptCacheHitRate() * 100, metrics.getIntentHitRate() * 100);
+        System.out.println(metrics.parseSummary());
+        if (!failures.isEmpty()) {
+            System.out.println("未通过:");
+            failures.forEach(System.out::println);
+        }
+
+        // 便于脚本收集和对比的一行摘要
+        ObjectNode summary = MAPPER.createObjectNode()
+                .put("corpus", GoldenCorpus.VERSION)
+                .put("mode", mode)
+                .put("provider", providerName)
+                .put("accuracy", (double) correct / Math.max(1, total))
+                .put("p50_ms", p[0] / 1000)
+                .put("p95_ms", p[1] / 1000)
+                .put("p99_ms", p[2] / 1000)
+                .put("avg_prompt_tokens", metrics.getAveragePromptTokens())
+                .put("prompt_cache_hit_rate", metrics.getPromptCacheHitRate())
+                .put("intent_hit_rate", metrics.getIntentHitRate());
+        System.out.println("SUMMARY " + summary);
+    }
+
+    /**
+     * 按期望结果合成响应，轮流使用工具调用和带代码块、前置说明、尾随逗号等常见格式问题的文本，
+     * 检验工具调用解码和本地修复链路
+     */
+    private static Function<String, MockChatProvider.Reply> synthesize(GoldenCorpus corpus) {
+        return synthesizeReplies(corpus)::get;
+    }
+
+    /**
+     * 按指令排列的合成响应（浸泡测试写入录制文件供界面中的模拟提供方回放）
+     */
+    static Map<String, MockChatProvider.Reply> synthesizeReplies(GoldenCorpus corpus) {
+        Map<String, MockChatProvider.Reply> replies = new TreeMap<>();
+        int index = 0;
+        for (GoldenCorpus.Case testCase : corpus.getCases()) {
+            ObjectNode plan = toPlan(testCase.getExpect());
+            String json = plan.toString();
+            String content;
+            switch (index % 4) {
+                case 1:
+                    content = "```json\n" + json + "\n```";
+                    break;
+                case 2:
+                    content = "好的，命令如下：" + json;
+                    break;
+                case 3:
+                    content = json.substring(0, json.length() - 1) + ",}";
+                    break;
+                default:
+                    content = json;
+            }
+            long promptTokens = 420 + testCase.getInstruction().length();
+            long cachedTokens = index == 0 ? 0 : 384;
+            long latencyMillis = 300 + Math.floorMod(testCase.getId().hashCode(), 700);
+            replies.put(testCase.getInstruction(), index % 5 == 4
+                    ? MockChatProvider.Reply.ofToolCalls(toToolCalls(testCase.getExpect()),
+                            promptTokens, cachedTokens, latencyMillis)
+                    : MockChatProvider.Reply.ofContent(content, promptTokens, cachedTokens, latencyMillis));
+            index++;
+        }
+        return replies;
+    }
+
+    /**
+     * 期望结果对应的工具调用：每条命令一个调用，target 并入参数
+     */
+    private static JSONArray toToolCalls(JsonNode expect) {
+        JSONArray calls = new JSONArray();
+        for (JsonNode expected : expect) {
+            ObjectNode command = toCommand(expected);
+            JSONObject arguments = command.path("params").isObject()
+                    ? new JSONObject(command.get("params").toString()) : new JSONObject();
+            if (command.hasNonNull("target")) {
+                arguments.put("target", command.get("target").asText());
+            }
+            calls.put(new JSONObject().put("name", command.path("command").asText()).put("arguments", arguments));
+        }
+        return calls;
+    }
+
+    private static ObjectNode toPlan(JsonNode expect) {
+        if (expect.size() == 1) {
+            return toCommand(expect.get(0));
+        }
+        ObjectNode batch = MAPPER.createObjectNode();
+        ArrayNode commands = batch.putArray("commands");
+        expect.forEach(command -> commands.add(toCommand(command)));
+        batch.put("description", "模拟批量命令");
+        return batch;
+    }
+
+    private static ObjectNode toCommand(JsonNode expected) {
+        ObjectNode command = ((ObjectNode) expected).deepCopy();
+        command.put("description", "模拟");
+        JsonNode params = command.path("params");
+        if (params.isObject()) {
+            // 期望值为任意时填一个合法的示例值
+            params.fields().forEachRemaining(field -> {
+                if (GoldenCorpus.ANY.equals(field.getValue().asText())) {
+                    ((ObjectNode) params).put(field.getKey(), "-fx-opacity: 1;");
+                }
+            });
+        }
+        return command;
+    }
+
+    private static void writeFixture(BufferedWriter writer, GoldenCorpus.Case testCase, String body,
+                                     long latencyMillis) throws Exception {
+        ObjectNode fixture = MAPPER.createObjectNode()
+                .put("corpus", GoldenCorpus.VERSION)
+                .put("id", testCase.getId())
+                .put("instruction", testCase.getInstruction())
+                .put("latency_ms", latencyMillis)
+                .put("body", body);
+        writer.write(fixture.toString());
+        writer.newLine();
+        writer.flush();
+    }
+
+    private static String compact(JsonNode plan) {
+        String text = plan.toString();
+        return text.length() > 160 ? text.substring(0, 160) + "…" : text;
+    }
+}
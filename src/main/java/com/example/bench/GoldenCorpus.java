@@ -0,0 +1,190 @@
+package com.example.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import javafx.scene.paint.Color;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 黄金指令语料
+ * 每行一条自然语言指令及其期望的命令（命令名、目标和关键参数，顺序无关）。
+ * 参数期望值为 * 时只要求参数存在且非空（如自由书写的 CSS）。
+ * 语料文件带版本号，修改期望结果时新增版本文件，保证历史结果可比。
+ */
+final class GoldenCorpus {
+
+    static final String VERSION = "golden-v1";
+
+    static final String ANY = "*";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // 模型偶尔直接返回中文颜色名
+    private static final Map<String, String> CHINESE_COLORS = Map.of(
+            "红色", "#FF0000", "绿色", "#00FF00", "蓝色", "#0000FF", "黄色", "#FFFF00",
+            "橙色", "#FFA500", "紫色", "#800080", "黑色", "#000000", "白色", "#FFFFFF",
+            "灰色", "#808080", "粉色", "#FFC0CB");
+
+    private final List<Case> cases;
+
+    private GoldenCorpus(List<Case> cases) {
+        this.cases = cases;
+    }
+
+    /**
+     * 加载打包在 classpath 中的语料
+     */
+    static GoldenCorpus load() throws IOException {
+        String resource = "/com/example/bench/" + VERSION + ".jsonl";
+        List<Case> cases = new ArrayList<>();
+        try (InputStream in = GoldenCorpus.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("找不到语料文件: " + resource);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    JsonNode node = MAPPER.readTree(line);
+                    cases.add(new Case(node.path("id").asText(), node.path("category").asText(),
+                            node.path("instruction").asText(), node.path("expect")));
+                }
+            }
+        }
+        return new GoldenCorpus(Collections.unmodifiableList(cases));
+    }
+
+    List<Case> getCases() {
+        return cases;
+    }
+
+    /**
+     * 命令计划是否与期望一致：命令数量相同，且每条期望命令都能匹配到一条不同的实际命令
+     */
+    static boolean matches(Case expected, JsonNode plan) {
+        if (plan == null) {
+            return false;
+        }
+        List<JsonNode> actual = new ArrayList<>();
+        if (plan.has("commands")) {
+            plan.get("commands").forEach(actual::add);
+        } else if (plan.has("command")) {
+            actual.add(plan);
+        }
+        if (actual.size() != expected.getExpect().size()) {
+            return false;
+        }
+        for (JsonNode want : expected.getExpect()) {
+            JsonNode found = null;
+            for (JsonNode candidate : actual) {
+                if (commandMatches(want, candidate)) {
+                    found = candidate;
+                    break;
+                }
+            }
+            if (found == null) {
+                return false;
+            }
+            actual.remove(found);
+        }
+        return true;
+    }
+
+    private static boolean commandMatches(JsonNode want, JsonNode actual) {
+        if (!want.path("command").asText().equalsIgnoreCase(actual.path("command").asText())) {
+            return false;
+        }
+        if (want.has("target") && !want.get("target").asText().equals(actual.path("target").asText())) {
+            return false;
+        }
+        JsonNode params = want.path("params");
+        for (Map.Entry<String, JsonNode> field : (Iterable<Map.Entry<String, JsonNode>>) params::fields) {
+            String name = field.getKey();
+            String expectedValue = field.getValue().asText();
+            String actualValue = actual.path("params").path(name).asText(null);
+            if (actualValue == null || actualValue.isBlank()) {
+                return false;
+            }
+            if (ANY.equals(expectedValue)) {
+                continue;
+            }
+            boolean same = "color".equals(name)
+                    ? colorsMatch(expectedValue, actualValue)
+                    : expectedValue.trim().equals(actualValue.trim());
+            if (!same) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 颜色按色相比较：同为彩色且色相相差 25° 以内，或同为无彩色且亮度接近
+     */
+    static boolean colorsMatch(String expected, String actual) {
+        Color a = parse(expected);
+        Color b = parse(actual);
+        if (a == null || b == null) {
+            return expected.equalsIgnoreCase(actual);
+        }
+        boolean achromaticA = a.getSaturation() < 0.2 || a.getBrightness() < 0.15;
+        boolean achromaticB = b.getSaturation() < 0.2 || b.getBrightness() < 0.15;
+        if (achromaticA || achromaticB) {
+            return achromaticA && achromaticB && Math.abs(a.getBrightness() - b.getBrightness()) < 0.3;
+        }
+        double hue = Math.abs(a.getHue() - b.getHue());
+        return Math.min(hue, 360 - hue) <= 25;
+    }
+
+    private static Color parse(String value) {
+        String text = value.trim();
+        String mapped = CHINESE_COLORS.get(text.endsWith("色") ? text : text + "色");
+        try {
+            return Color.web(mapped != null ? mapped : text);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 一条语料
+     */
+    static class Case {
+        private final String id;
+        private final String category;
+        private final String instruction;
+        private final JsonNode expect;
+
+        Case(String id, String category, String instruction, JsonNode expect) {
+            this.id = id;
+            this.category = category;
+            this.instruction = instruction;
+            this.expect = expect;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        String getCategory() {
+            return category;
+        }
+
+        String getInstruction() {
+            return instruction;
+        }
+
+        JsonNode getExpect() {
+            return expect;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.bench;
+
+import com.example.HistoryIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * 历史索引基准测试
+ * 在临时目录中写入指定数量的指令和回复（指令和回复中有不少重复，合并为同一文档），统计写入速度、
+ * 重新打开（读段 + 重放日志）的耗时，以及全文检索和自动补全的延迟分位数。
+ *
+ * 运行：mvn compile exec:java -Dexec.mainClass=com.example.bench.HistoryBenchmark -Dexec.args="1000000 2000"
+ * 参数：条目数（默认 1000000）、查询次数（默认 2000）
+ */
+public class HistoryBenchmark {
+
+    private static final String[] ACTIONS = {"隐藏", "显示", "把 %s 改为红色", "将 %s 改成蓝色", "调亮", "调暗",
+            "设置 %s 的文字为 你好", "删除", "复制", "移动"};
+    private static final String[] TARGETS = {"按钮", "标题", "输入框", "颜色选择器", "状态栏", "btn", "label", "item"};
+    private static final String[] REPLIES = {"已将%s隐藏", "已显示%s", "已把%s的颜色改为红色", "%s 已更新",
+            "没有找到组件 %s", "已调整%s的亮度"};
+    private static final String[] QUERIES = {"隐藏按钮", "改为红色", "btn", "标题", "颜色选择器", "item12",
+            "已更新", "调亮 label", "按", "设置"};
+
+    public static void main(String[] args) throws IOException {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Path dir = Files.createTempDirectory("history-bench");
+        Random random = new Random(42);
+
+        long start = System.nanoTime();
+        try (HistoryIndex index = new HistoryIndex(dir)) {
+            for (int i = 0; i < entries; i++) {
+                String target = TARGETS[random.nextInt(TARGETS.length)] + random.nextInt(i < 1000 ? 50 : 5000);
+                if (i % 2 == 0) {
+                    String action = ACTIONS[random.nextInt(ACTIONS.length)];
+                    index.addInstruction(action.contains("%s") ? String.format(action, target) : action + target);
+                } else {
+                    index.addReply(String.format(REPLIES[random.nextInt(REPLIES.length)], target));
+                }
+            }
+            System.out.printf("写入 %d 条: %.0f ms (%d 个文档)%n", entries, (System.nanoTime() - start) / 1e6,
+                    index.size());
+        }
+
+        start = System.nanoTime();
+        try (HistoryIndex index = new HistoryIndex(dir)) {
+            System.out.printf("重新打开: %.0f ms%n", (System.nanoTime() - start) / 1e6);
+
+            // 预热：与计时部分相同的查询分布，单核环境下避免把 JIT 编译计入延迟
+            for (int i = 0; i < Math.max(queries, 10_000); i++) {
+                String query = QUERIES[i % QUERIES.length];
+                index.search(query, 20);
+                index.autocomplete(query.substring(0, 1 + i % query.length()), 8);
+            }
+            long[] search = new long[queries];
+            long[] complete = new long[queries];
+            for (int i = 0; i < queries; i++) {
+                String query = QUERIES[i % QUERIES.length];
+                long t = System.nanoTime();
+                index.search(query, 20);
+                search[i] = System.nanoTime() - t;
+                // 自动补全按输入过程逐字查询
+                String typed = query.substring(0, 1 + i % query.length());
+                t = System.nanoTime();
+                index.autocomplete(typed, 8);
+                complete[i] = System.nanoTime() - t;
+            }
+            report("检索", search);
+            report("自动补全", complete);
+            System.out.println("示例: 隐藏按钮 → " + index.autocomplete("隐藏按钮", 5));
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void report(String name, long[] nanos) {
+        Arrays.sort(nanos);
+        System.out.printf("%s p50/p99/max: %d / %d / %d µs%n", name, nanos[nanos.length / 2] / 1000,
+                nanos[(int) (nanos.length * 0.99)] / 1000, nanos[nanos.length - 1] / 1000);
+    }
+}
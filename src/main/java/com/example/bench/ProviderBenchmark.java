@@ -0,0 +1,98 @@
+package com.example.bench;
+
+import com.example.ChatProvider;
+import com.example.ClientMetrics;
+import com.example.LatencyRecorder;
+import com.example.LocalModelProvider;
+import com.example.QwenClient;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 模型提供方对比基准测试
+ * 把同一组指令依次发给每个可用的提供方（DashScope 需要 QWEN_API_KEY，本地模型需要本机推理服务），
+ * 统计延迟分位数和能解析为命令的比例。
+ *
+ * 运行：mvn compile exec:java -Dexec.mainClass=com.example.bench.ProviderBenchmark -Dexec.args="instructions.txt 3"
+ * 参数：指令文件（每行一条，缺省使用内置指令）、轮数（默认 1）
+ */
+public class ProviderBenchmark {
+
+    private static final List<String> DEFAULT_INSTRUCTIONS = List.of(
+            "隐藏按钮1", "显示按钮1", "将标题改为红色", "把文本框内容改为Hello AI",
+            "将颜色选择器设置为紫色", "把两个按钮都改成绿色", "清空颜色历史", "把主题色换成橙色");
+
+    public static void main(String[] args) throws Exception {
+        List<String> instructions = args.length > 0
+                ? readInstructions(args[0])
+                : DEFAULT_INSTRUCTIONS;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        List<ChatProvider> providers = new ArrayList<>();
+        String apiKey = System.getProperty("qwen.api.key", System.getenv("QWEN_API_KEY"));
+        if (apiKey != null && !apiKey.isBlank()) {
+            providers.add(new QwenClient(apiKey, new ClientMetrics()));
+        }
+        providers.add(LocalModelProvider.fromProperties(new ClientMetrics()));
+
+        for (ChatProvider provider : providers) {
+            run(provider, instructions, rounds);
+        }
+    }
+
+    private static void run(ChatProvider provider, List<String> instructions, int rounds) throws Exception {
+        provider.setCommandSchema(BenchFixture.commandSchema());
+        provider.setComponentIndex(BenchFixture.componentIndex());
+        AtomicInteger commands = new AtomicInteger();
+        provider.setResponseHandler((instruction, body) -> {
+            JsonNode parsed = provider.parseAIResponse(body);
+            if (parsed != null && (parsed.has("command") || parsed.has("commands"))) {
+                commands.incrementAndGet();
+            }
+        });
+
+        if (!provider.connect().get(30, TimeUnit.SECONDS)) {
+            System.out.printf("%s: 不可用，跳过%n", provider.getName());
+            return;
+        }
+
+        LatencyRecorder latency = new LatencyRecorder(instructions.size() * rounds);
+        int failures = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (String instruction : instructions) {
+                long start = System.nanoTime();
+                try {
+                    provider.sendInstruction(instruction).get(120, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    failures++;
+                }
+                latency.record((System.nanoTime() - start) / 1000);
+            }
+        }
+
+        long[] p = latency.percentiles(0.5, 0.95, 0.99);
+        ClientMetrics metrics = provider.getMetrics();
+        System.out.printf("%s: %d 条指令, 命令 %d, 失败 %d, 延迟 p50/p95/p99 %d / %d / %d ms, 热连接往返 %d ms%n",
+                provider.getName(), latency.size(), commands.get(), failures,
+                p[0] / 1000, p[1] / 1000, p[2] / 1000, provider.getWarmRttMillis());
+        System.out.printf("%s: %s%n", provider.getName(), metrics.tokenSummary());
+        provider.close();
+    }
+
+    private static List<String> readInstructions(String file) throws Exception {
+        List<String> instructions = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            if (!line.isBlank() && !line.startsWith("#")) {
+                instructions.add(line.trim());
+            }
+        }
+        return instructions;
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.bench;
+
+import com.example.ClientMetrics;
+import com.example.LatencyRecorder;
+import com.example.LocalModelProvider;
+import com.example.MockChatProvider;
+import com.example.SnapshotEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 界面快照编码基准测试
+ * 合成一帧控制面板大小的画面（若干"组件"矩形），每条"指令"改变一个组件的颜色，
+ * 按组件所在行登记脏区域后增量编码，统计编码延迟和大小，并与每次整帧编码对比；
+ * 然后启动本地 OpenAI 兼容的模拟服务，经 LocalModelProvider 发送带快照的请求，
+ * 服务端解码收到的 PNG 并与发送时的画面逐像素比较。
+ *
+ * 运行：mvn compile exec:java -Dexec.mainClass=com.example.bench.SnapshotBenchmark -Dexec.args="2000 640 480"
+ * 参数：指令数（默认 2000）、画面宽高（默认 640 480）
+ */
+public class SnapshotBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int TILE = 32;
+    private static final int LEVEL = 3;
+
+    public static void main(String[] args) throws Exception {
+        int instructions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 640;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 480;
+
+        Panel panel = new Panel(width, height);
+        SnapshotEncoder incremental = new SnapshotEncoder(width, height, TILE, LEVEL);
+        SnapshotEncoder full = new SnapshotEncoder(width, height, TILE, LEVEL);
+        incremental.update(0, 0, width, height, panel.pixels, 0, width);
+        incremental.encode();
+
+        // 预热：单核环境下避免把 JIT 编译计入延迟
+        Random random = new Random(42);
+        for (int i = 0; i < Math.max(instructions, 2000); i++) {
+            int[] region = panel.recolor(random);
+            incremental.update(region[0], region[1], region[2], region[3], panel.pixels,
+                    region[1] * width + region[0], width);
+            incremental.encode();
+        }
+
+        LatencyRecorder incrementalLatency = new LatencyRecorder(instructions);
+        LatencyRecorder fullLatency = new LatencyRecorder(instructions);
+        long bands = 0;
+        long bytes = 0;
+        for (int i = 0; i < instructions; i++) {
+            int[] region = panel.recolor(random);
+            long start = System.nanoTime();
+            incremental.update(region[0], region[1], region[2], region[3], panel.pixels,
+                    region[1] * width + region[0], width);
+            byte[] png = incremental.encode();
+            incrementalLatency.record((System.nanoTime() - start) / 1000);
+            bands += incremental.getLastEncodedBands();
+            bytes += png.length;
+
+            if (i % 10 == 0) {
+                start = System.nanoTime();
+                full.update(0, 0, width, height, panel.pixels, 0, width);
+                full.invalidate();
+                full.encode();
+                fullLatency.record((System.nanoTime() - start) / 1000);
+            }
+        }
+        long[] inc = incrementalLatency.percentiles(0.5, 0.99);
+        long[] whole = fullLatency.percentiles(0.5, 0.99);
+        System.out.printf("画面 %dx%d, %d 个条带, %d 条指令%n", width, height, incremental.getBandCount(), instructions);
+        System.out.printf("增量编码 p50/p99: %d / %d µs, 平均重新压缩 %.1f 个条带, 平均 %.1f KB%n",
+                inc[0], inc[1], (double) bands / instructions, bytes / 1024.0 / instructions);
+        System.out.printf("整帧编码 p50/p99: %d / %d µs%n", whole[0], whole[1]);
+        int mismatched = compare(decode(incremental.encode()), panel.pixels);
+        System.out.printf("解码校验: %s%n", mismatched == 0 ? "一致" : mismatched + " 个像素不一致");
+
+        verifyWithMockServer(panel, incremental, random);
+    }
+
+    /**
+     * 经本地模拟服务发送带快照的请求，服务端解码图像并与画面比较
+     */
+    private static void verifyWithMockServer(Panel panel, SnapshotEncoder encoder, Random random) throws Exception {
+        AtomicInteger received = new AtomicInteger();
+        AtomicInteger matched = new AtomicInteger();
+        int[][] expected = new int[1][];
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/models", exchange -> respond(exchange, "{\"data\":[]}"));
+        server.createContext("/v1/chat/completions", exchange -> {
+            JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+            JsonNode content = request.path("messages").path(1).path("content");
+            String url = content.path(1).path("image_url").path("url").asText("");
+            received.incrementAndGet();
+            String reply = "没有收到快照";
+            if (url.startsWith("data:image/png;base64,")) {
+                try {
+                    int[] pixels = decode(Base64.getDecoder().decode(url.substring(url.indexOf(',') + 1)));
+                    int mismatched = compare(pixels, expected[0]);
+                    if (mismatched == 0) {
+                        matched.incrementAndGet();
+                    }
+                    reply = "快照 " + pixels.length + " 像素, 不一致 " + mismatched;
+                } catch (DataFormatException e) {
+                    reply = "快照无法解码: " + e.getMessage();
+                }
+            }
+            respond(exchange, MockChatProvider.Reply.ofContent("{\"text\":\"" + reply + "\"}", 0, 0, 0).getBody());
+        });
+        server.start();
+
+        LocalModelProvider provider = new LocalModelProvider(
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v1", "qwen-vl-mock", new ClientMetrics());
+        provider.setCommandSchema(BenchFixture.commandSchema());
+        provider.setComponentIndex(BenchFixture.componentIndex());
+        String[] dataUrl = new String[1];
+        provider.setImageSource(() -> dataUrl[0]);
+        provider.setResponseHandler((instruction, body) -> { });
+        try {
+            if (!provider.connect().get(10, TimeUnit.SECONDS)) {
+                System.out.println("模拟服务: 连接失败");
+                return;
+            }
+            int rounds = 20;
+            for (int i = 0; i < rounds; i++) {
+                int[] region = panel.recolor(random);
+                encoder.update(region[0], region[1], region[2], region[3], panel.pixels,
+                        region[1] * panel.width + region[0], panel.width);
+                dataUrl[0] = "data:image/png;base64," + Base64.getEncoder().encodeToString(encoder.encode());
+                expected[0] = panel.pixels.clone();
+                provider.sendInstruction("把看起来最暗的按钮变亮").get(10, TimeUnit.SECONDS);
+            }
+            System.out.printf("模拟服务: 收到 %d 个请求, %d 个快照与画面一致%n", received.get(), matched.get());
+            System.out.println("模拟服务: " + provider.getMetrics().snapshotSummary());
+        } finally {
+            provider.close();
+            server.stop(0);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * 解码本编码器生成的 PNG（RGB，8 位，单个 IDAT，Sub 过滤），返回 ARGB 像素
+     */
+    private static int[] decode(byte[] png) throws DataFormatException {
+        ByteBuffer in = ByteBuffer.wrap(png);
+        in.position(8 + 8);
+        int width = in.getInt();
+        int height = in.getInt();
+        in.position(8 + 25);
+        int length = in.getInt();
+        int stride = 1 + width * 3;
+        byte[] raw = new byte[height * stride];
+        Inflater inflater = new Inflater();
+        inflater.setInput(png, in.position() + 4, length);
+        int read = inflater.inflate(raw);
+        boolean finished = inflater.finished();
+        inflater.end();
+        if (read != raw.length || !finished) {
+            throw new DataFormatException("数据长度不符: " + read);
+        }
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            if (raw[row] != 1) {
+                throw new DataFormatException("不支持的过滤类型: " + raw[row]);
+            }
+            int r = 0;
+            int g = 0;
+            int b = 0;
+            for (int x = 0; x < width; x++) {
+                int offset = row + 1 + x * 3;
+                r = (r + raw[offset]) & 0xFF;
+                g = (g + raw[offset + 1]) & 0xFF;
+                b = (b + raw[offset + 2]) & 0xFF;
+                pixels[y * width + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return pixels;
+    }
+
+    private static int compare(int[] decoded, int[] expected) {
+        if (decoded.length != expected.length) {
+            return Math.max(decoded.length, expected.length);
+        }
+        int mismatched = 0;
+        for (int i = 0; i < decoded.length; i++) {
+            if ((decoded[i] & 0xFFFFFF) != (expected[i] & 0xFFFFFF)) {
+                mismatched++;
+            }
+        }
+        return mismatched;
+    }
+
+    /**
+     * 合成的控制面板：浅色背景上排列的按钮大小矩形，带渐变和边框，接近真实截图的压缩特性
+     */
+    private static class Panel {
+        private static final int COMPONENT_WIDTH = 120;
+        private static final int COMPONENT_HEIGHT = 36;
+        private static final int GAP = 16;
+
+        final int width;
+        final int height;
+        final int[] pixels;
+        private final int columns;
+        private final int rows;
+
+        Panel(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.pixels = new int[width * height];
+            this.columns = Math.max(1, (width - GAP) / (COMPONENT_WIDTH + GAP));
+            this.rows = Math.max(1, (height - GAP) / (COMPONENT_HEIGHT + GAP));
+            for (int y = 0; y < height; y++) {
+                int shade = 0xF0 - y * 0x20 / height;
+                for (int x = 0; x < width; x++) {
+                    pixels[y * width + x] = 0xFF000000 | (shade << 16) | (shade << 8) | 0xF8;
+                }
+            }
+            Random random = new Random(7);
+            for (int i = 0; i < columns * rows; i++) {
+                paint(i, 0xFF000000 | random.nextInt(0xFFFFFF));
+            }
+        }
+
+        /**
+         * 随机改变一个组件的颜色，返回受影响的矩形 {x, y, 宽, 高}
+         */
+        int[] recolor(Random random) {
+            return paint(random.nextInt(columns * rows), 0xFF000000 | random.nextInt(0xFFFFFF));
+        }
+
+        private int[] paint(int index, int color) {
+            int x0 = GAP + (index % columns) * (COMPONENT_WIDTH + GAP);
+            int y0 = GAP + (index / columns) * (COMPONENT_HEIGHT + GAP);
+            for (int y = 0; y < COMPONENT_HEIGHT; y++) {
+                for (int x = 0; x < COMPONENT_WIDTH; x++) {
+                    boolean border = x == 0 || y == 0 || x == COMPONENT_WIDTH - 1 || y == COMPONENT_HEIGHT - 1;
+                    int fade = y * 40 / COMPONENT_HEIGHT;
+                    int r = Math.max(0, ((color >> 16) & 0xFF) - fade);
+                    int g = Math.max(0, ((color >> 8) & 0xFF) - fade);
+                    int b = Math.max(0, (color & 0xFF) - fade);
+                    pixels[(y0 + y) * width + x0 + x] = border ? 0xFF404040 : 0xFF000000 | (r << 16) | (g << 8) | b;
+                }
+            }
+            return new int[]{x0, y0, COMPONENT_WIDTH, COMPONENT_HEIGHT};
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package com.example.bench;
+
+import com.example.AIController;
+import com.example.LatencyRecorder;
+import com.example.Main;
+import com.example.MockChatProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import javafx.application.Platform;
+import javafx.event.EventDispatcher;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.ButtonBase;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.stage.Stage;
+
+import java.io.BufferedWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 长时间浸泡测试
+ * 在无界面环境（Monocle Headless）中加载完整界面和 AIController，使用模拟提供方回放合成响应，
+ * 通过指令输入框和执行按钮连续驱动大量指令（语料指令、随机颜色、撤销/重做）。
+ * 每个窗口记录一次：GC 后的堆占用、每条指令的分配量、场景图节点数、事件处理器数和指令延迟。
+ * 预热窗口之后任一指标呈上升趋势（Theil-Sen 斜率折算的增长超过阈值）时以退出码 1 结束，
+ * 由 soak 构建配置运行（mvn -Psoak verify）。
+ *
+ * 运行：mvn -Psoak verify -Dsoak.commands=1000000
+ * 参数：指令数（默认 1000000）、每个窗口的指令数（默认 10000）
+ * 系统属性：soak.maxGrowth 堆、节点数和处理器数允许的增长比例（默认 0.10），
+ *          soak.maxAllocGrowth 每条指令分配量允许的增长比例（默认 0.20），
+ *          soak.maxLatencyGrowth 延迟允许的增长比例（默认 0.50），
+ *          soak.warmupWindows 不参与趋势判断的窗口数（默认为窗口总数的五分之一，至少 2）
+ */
+public class SoakHarness {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String[] COLOR_TARGETS = {"btn1", "btn2", "titleLabel"};
+    private static final String[] COLOR_TARGET_NAMES = {"按钮1", "按钮2", "标题"};
+    private static final int COLOR_COUNT = 48;
+    private static final List<String> LOCAL_COMMANDS = List.of("撤销", "重做");
+    // 指令结束后连续几次 FX 往返都空闲才算处理完（执行和消息输出各自经过一次 runLater）
+    private static final int IDLE_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        long commands = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        int window = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        double maxGrowth = Double.parseDouble(System.getProperty("soak.maxGrowth", "0.10"));
+        // 5 万条指令的实测（每 5000 条一个窗口）：无趋势时分配量的窗口间波动约 ±7%，延迟 p50 约 ±25%
+        double maxAllocGrowth = Double.parseDouble(System.getProperty("soak.maxAllocGrowth", "0.20"));
+        double maxLatencyGrowth = Double.parseDouble(System.getProperty("soak.maxLatencyGrowth", "0.50"));
+
+        Path dataDir = Files.createTempDirectory("soak-data");
+        List<String> instructions = prepare(dataDir);
+
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        Platform.startup(() -> started.complete(null));
+        started.get(30, TimeUnit.SECONDS);
+        Platform.setImplicitExit(false);
+
+        Ui ui = onFx(SoakHarness::loadUi);
+        waitFor(() -> onFx(() -> "已连接".equals(ui.status.getText())), 30_000);
+        System.out.printf("浸泡测试: %d 条指令, 每 %d 条一个窗口, %d 种指令%n", commands, window, instructions.size());
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        AllocationCounter allocation = new AllocationCounter(threads);
+        HandlerCensus census = new HandlerCensus();
+        List<double[]> samples = new ArrayList<>();
+        Random random = new Random(42);
+        LatencyRecorder latency = new LatencyRecorder(window);
+        allocation.delta();
+        long started0 = System.nanoTime();
+
+        for (long i = 1; i <= commands; i++) {
+            String instruction = instructions.get(random.nextInt(instructions.size()));
+            long start = System.nanoTime();
+            onFx(() -> {
+                ui.input.setText(instruction);
+                ui.execute.fire();
+                return null;
+            });
+            drain(ui);
+            latency.record((System.nanoTime() - start) / 1000);
+
+            if (i % window == 0) {
+                long allocated = allocation.delta();
+                long heap = heapAfterGc();
+                int[] counts = onFx(() -> census.count(ui.root));
+                long[] p = latency.percentiles(0.5, 0.99);
+                samples.add(new double[]{heap, (double) allocated / window, counts[0], counts[1], p[0]});
+                System.out.printf("窗口 %d: 堆 %.1f MB, 分配 %.1f KB/条, 节点 %d, 处理器 %d, 延迟 p50/p99 %d / %d µs"
+                                + " (已运行 %.0f s)%n",
+                        samples.size(), heap / 1048576.0, allocated / 1024.0 / window, counts[0], counts[1],
+                        p[0], p[1], (System.nanoTime() - started0) / 1e9);
+                latency = new LatencyRecorder(window);
+            }
+        }
+
+        onFx(() -> {
+            ui.controller.cleanup();
+            return null;
+        });
+        Platform.exit();
+        deleteRecursively(dataDir);
+
+        boolean passed = report(samples, maxGrowth, maxAllocGrowth, maxLatencyGrowth, census.isReflective());
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * 准备数据目录和模拟提供方的录制文件，设置无界面运行所需的系统属性，返回指令集
+     */
+    private static List<String> prepare(Path dataDir) throws Exception {
+        Map<String, MockChatProvider.Reply> replies = CorpusRunner.synthesizeReplies(GoldenCorpus.load());
+        Random random = new Random(7);
+        for (int t = 0; t < COLOR_TARGETS.length; t++) {
+            for (int c = 0; c < COLOR_COUNT; c++) {
+                String hex = String.format("#%06X", random.nextInt(0x1000000));
+                ObjectNode command = MAPPER.createObjectNode()
+                        .put("command", "changeColor")
+                        .put("target", COLOR_TARGETS[t])
+                        .put("description", "已把" + COLOR_TARGET_NAMES[t] + "改为" + hex);
+                command.putObject("params").put("color", hex);
+                replies.put("把" + COLOR_TARGET_NAMES[t] + "改为" + hex,
+                        MockChatProvider.Reply.ofContent(command.toString(), 0, 0, 0));
+            }
+        }
+        Path fixtures = dataDir.resolve("soak.fixtures.jsonl");
+        try (BufferedWriter writer = Files.newBufferedWriter(fixtures, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, MockChatProvider.Reply> entry : replies.entrySet()) {
+                writer.write(MAPPER.createObjectNode()
+                        .put("instruction", entry.getKey())
+                        .put("latency_ms", 0)
+                        .put("body", entry.getValue().getBody())
+                        .toString());
+                writer.newLine();
+            }
+        }
+
+        setDefault("glass.platform", "Monocle");
+        setDefault("monocle.platform", "Headless");
+        setDefault("prism.order", "sw");
+        setDefault("ai.provider", "mock");
+        setDefault("ai.mock.fixtures", fixtures.toString());
+        setDefault("ai.mock.latencyScale", "0");
+        setDefault("ai.data.dir", dataDir.toString());
+
+        List<String> instructions = new ArrayList<>(replies.keySet());
+        instructions.addAll(LOCAL_COMMANDS);
+        return instructions;
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private static Ui loadUi() throws Exception {
+        FXMLLoader loader = new FXMLLoader(
+                Objects.requireNonNull(Main.class.getResource("/com/example/view/AIAssistantView.fxml")));
+        Parent root = loader.load();
+        Scene scene = new Scene(root, 1000, 750);
+        scene.getStylesheets().add(Objects.requireNonNull(
+                Main.class.getResource("/com/example/css/style.css")).toExternalForm());
+        Stage stage = new Stage();
+        stage.setScene(scene);
+        stage.show();
+        return new Ui(loader.getController(), root);
+    }
+
+    /**
+     * 等待指令处理完：待处理列表中的指令都已结束，且连续几次 FX 往返期间保持如此
+     */
+    private static void drain(Ui ui) throws Exception {
+        int idle = 0;
+        while (idle < IDLE_ROUNDS) {
+            boolean finished = onFx(() -> ui.pending.getItems().stream()
+                    .allMatch(item -> ((com.example.InstructionQueue.PendingInstruction) item).getState().isFinished()));
+            idle = finished ? idle + 1 : 0;
+        }
+    }
+
+    private static void waitFor(Callable<Boolean> condition, long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("等待超时");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static <T> T onFx(Callable<T> task) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.get(60, TimeUnit.SECONDS);
+    }
+
+    private static long heapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * 输出各指标的趋势并判断是否通过
+     */
+    private static boolean report(List<double[]> samples, double maxGrowth, double maxAllocGrowth,
+                                  double maxLatencyGrowth, boolean reflectiveCensus) {
+        String[] names = {"堆（GC 后）", "分配/条", "节点数", "处理器数", "延迟 p50"};
+        String[] keys = {"heap", "alloc_per_command", "nodes", "handlers", "latency_p50"};
+        double[] limits = {maxGrowth, maxAllocGrowth, maxGrowth, maxGrowth, maxLatencyGrowth};
+        int warmup = Integer.getInteger("soak.warmupWindows", Math.max(2, samples.size() / 5));
+
+        System.out.println();
+        ObjectNode summary = MAPPER.createObjectNode().put("windows", samples.size());
+        if (samples.size() - warmup < 3) {
+            System.out.printf("窗口数不足（%d 个，预热 %d 个），无法判断趋势%n", samples.size(), warmup);
+            summary.put("passed", false);
+            System.out.println("SUMMARY " + summary);
+            return false;
+        }
+        boolean passed = true;
+        for (int m = 0; m < names.length; m++) {
+            double[] series = new double[samples.size() - warmup];
+            for (int i = warmup; i < samples.size(); i++) {
+                series[i - warmup] = samples.get(i)[m];
+            }
+            double growth = growth(series);
+            boolean ok = growth <= limits[m];
+            passed &= ok;
+            System.out.printf("%-10s 增长 %+6.1f%% (上限 %.0f%%) %s%n", names[m], growth * 100, limits[m] * 100,
+                    ok ? "通过" : "上升趋势");
+            summary.put(keys[m] + "_growth", growth);
+        }
+        if (!reflectiveCensus) {
+            System.out.println("注意：无法读取事件处理器表，处理器数只统计了 onXxx 属性和工具提示");
+        }
+        summary.put("passed", passed);
+        System.out.println("SUMMARY " + summary);
+        return passed;
+    }
+
+    /**
+     * 按 Theil-Sen 斜率（两两斜率的中位数，不受个别窗口的 GC 或调度抖动影响）折算的整段增长比例
+     */
+    static double growth(double[] series) {
+        int n = series.length;
+        double[] slopes = new double[n * (n - 1) / 2];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                slopes[k++] = (series[j] - series[i]) / (j - i);
+            }
+        }
+        double[] sorted = series.clone();
+        Arrays.sort(slopes);
+        Arrays.sort(sorted);
+        double slope = slopes[slopes.length / 2];
+        double level = Math.max(1e-9, Math.abs(sorted[n / 2]));
+        return slope * (n - 1) / level;
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (Exception e) {
+            System.err.println("清理临时目录失败: " + e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Callable<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * 测试驱动的界面元素
+     */
+    private static class Ui {
+        final AIController controller;
+        final Parent root;
+        final TextField input;
+        final ButtonBase execute;
+        final Label status;
+        final ListView<?> pending;
+
+        Ui(AIController controller, Parent root) {
+            this.controller = controller;
+            this.root = root;
+            this.input = (TextField) root.lookup("#commandInput");
+            this.execute = (ButtonBase) root.lookup("#executeButton");
+            this.status = (Label) root.lookup("#statusLabel");
+            this.pending = (ListView<?>) root.lookup("#pendingList");
+        }
+    }
+
+    /**
+     * 所有存活线程的累计分配量，按线程记录上次的读数，返回两次调用之间的增量
+     */
+    private static class AllocationCounter {
+        private final com.sun.management.ThreadMXBean threads;
+        private Map<Long, Long> last = new HashMap<>();
+
+        AllocationCounter(com.sun.management.ThreadMXBean threads) {
+            this.threads = threads;
+        }
+
+        long delta() {
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = threads.getThreadAllocatedBytes(ids);
+            Map<Long, Long> current = new HashMap<>(ids.length * 2);
+            long total = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] < 0) {
+                    continue;
+                }
+                current.put(ids[i], bytes[i]);
+                total += bytes[i] - last.getOrDefault(ids[i], 0L);
+            }
+            last = current;
+            return total;
+        }
+    }
+
+    /**
+     * 场景图节点数和事件处理器数
+     * 处理器数通过反射读取每个节点的事件处理器表（类路径运行时可访问）；
+     * 无法访问时退回到统计 onXxx 属性和工具提示。分发器不是默认实现的节点（例如 ScrollPaneSkin
+     * 给滚动条换上的分发器）没有处理器表，只对该节点使用退回的统计方式。
+     */
+    private static class HandlerCensus {
+        private static final String TOOLTIP_KEY = "javafx.scene.control.Tooltip";
+        private boolean reflective = true;
+        private final Map<String, Field> fields = new HashMap<>();
+
+        boolean isReflective() {
+            return reflective;
+        }
+
+        /**
+         * 返回 {节点数, 处理器数}
+         */
+        int[] count(Node root) {
+            int[] totals = new int[2];
+            walk(root, totals);
+            return totals;
+        }
+
+        private void walk(Node node, int[] totals) {
+            totals[0]++;
+            totals[1] += handlers(node);
+            if (node instanceof Parent) {
+                for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+                    walk(child, totals);
+                }
+            }
+        }
+
+        private int handlers(Node node) {
+            if (reflective) {
+                try {
+                    return reflectiveHandlers(node);
+                } catch (NoSuchMethodException e) {
+                    // 只有这个节点换了分发器，其余节点照常反射统计
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    reflective = false;
+                }
+            }
+            int count = node.getProperties().containsKey(TOOLTIP_KEY) ? 1 : 0;
+            for (Object handler : new Object[]{node.getOnMouseClicked(), node.getOnMouseEntered(),
+                    node.getOnMouseExited(), node.getOnKeyPressed()}) {
+                if (handler != null) {
+                    count++;
+                }
+            }
+            if (node instanceof ButtonBase && ((ButtonBase) node).getOnAction() != null) {
+                count++;
+            }
+            return count;
+        }
+
+        private int reflectiveHandlers(Node node) throws ReflectiveOperationException {
+            EventDispatcher dispatcher = node.getEventDispatcher();
+            Object manager = dispatcher.getClass().getMethod("getEventHandlerManager").invoke(dispatcher);
+            Map<?, ?> map = (Map<?, ?>) field(manager.getClass(), "eventHandlerMap").get(manager);
+            int count = 0;
+            for (Object composite : map.values()) {
+                if (field(composite.getClass(), "eventHandler").get(composite) != null) {
+                    count++;
+                }
+                Object record = field(composite.getClass(), "firstRecord").get(composite);
+                while (record != null) {
+                    count++;
+                    record = field(record.getClass(), "nextRecord").get(record);
+                }
+            }
+            return count;
+        }
+
+        private Field field(Class<?> type, String name) throws NoSuchFieldException {
+            String key = type.getName() + '#' + name;
+            Field cached = fields.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                try {
+                    Field field = c.getDeclaredField(name);
+                    field.setAccessible(true);
+                    fields.put(key, field);
+                    return field;
+                } catch (NoSuchFieldException e) {
+                    // 继续查找父类
+                }
+            }
+            throw new NoSuchFieldException(key);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.bench;
+
+import com.example.ThemeEngine;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主题切换基准测试
+ * 对比"逐个节点改写内联样式"和"替换根节点调色板样式表"两种换色方式，
+ * 统计从提交到下一次布局完成的耗时（包含 CSS 处理）。
+ *
+ * 运行：mvn compile exec:java -Dexec.mainClass=com.example.bench.ThemeBenchmark -Dexec.args="2000 10"
+ * 参数：节点数（默认 2000）、轮数（默认 10）
+ */
+public class ThemeBenchmark {
+
+    private static final String[] COLORS = {"#E74C3C", "#3498DB", "#2ECC71", "#F1C40F", "#9B59B6"};
+
+    private final List<Button> buttons = new ArrayList<>();
+    private volatile CountDownLatch layoutDone;
+    private FlowPane root;
+    private ThemeEngine themeEngine;
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        CountDownLatch started = new CountDownLatch(1);
+        Platform.startup(started::countDown);
+        started.await();
+
+        ThemeBenchmark benchmark = new ThemeBenchmark();
+        benchmark.setUp(nodeCount);
+
+        long inlineTotal = 0;
+        long themeTotal = 0;
+        for (int round = 0; round < rounds; round++) {
+            Color color = Color.web(COLORS[round % COLORS.length]);
+            long inline = benchmark.runInline(color);
+            benchmark.clearInline();
+            long theme = benchmark.runTheme(color);
+            inlineTotal += inline;
+            themeTotal += theme;
+            System.out.printf("第 %d 轮 (%d 个节点): 内联样式 %.1f ms, 调色板替换 %.1f ms%n",
+                    round + 1, nodeCount, inline / 1e6, theme / 1e6);
+        }
+        System.out.printf("平均: 内联样式 %.1f ms, 调色板替换 %.1f ms%n",
+                inlineTotal / 1e6 / rounds, themeTotal / 1e6 / rounds);
+
+        Platform.exit();
+    }
+
+    private void setUp(int nodeCount) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            root = new FlowPane();
+            for (int i = 0; i < nodeCount; i++) {
+                Button button = new Button("按钮 " + i);
+                button.getStyleClass().add("ai-accent-button");
+                buttons.add(button);
+            }
+            root.getChildren().addAll(buttons);
+            themeEngine = new ThemeEngine(root);
+
+            Scene scene = new Scene(root, 1200, 800);
+            scene.getStylesheets().add(Objects.requireNonNull(
+                    ThemeBenchmark.class.getResource("/com/example/css/style.css")).toExternalForm());
+            scene.addPostLayoutPulseListener(() -> {
+                CountDownLatch latch = layoutDone;
+                if (latch != null) {
+                    latch.countDown();
+                }
+            });
+            Stage stage = new Stage();
+            stage.setScene(scene);
+            stage.show();
+            ready.countDown();
+        });
+        ready.await();
+    }
+
+    private long runInline(Color color) throws InterruptedException {
+        String hex = String.format("#%02X%02X%02X",
+                (int) (color.getRed() * 255), (int) (color.getGreen() * 255), (int) (color.getBlue() * 255));
+        String style = String.format("-fx-background-color: %s; -fx-text-fill: %s;",
+                hex, color.getBrightness() > 0.5 ? "black" : "white");
+        return measure(() -> {
+            for (Button button : buttons) {
+                button.setStyle(style);
+            }
+        });
+    }
+
+    private long runTheme(Color color) throws InterruptedException {
+        return measure(() -> themeEngine.applyAll(color));
+    }
+
+    private void clearInline() throws InterruptedException {
+        measure(() -> {
+            for (Button button : buttons) {
+                button.setStyle("");
+            }
+        });
+    }
+
+    /**
+     * 在 FX 线程上执行修改并等待随后的布局完成
+     */
+    private long measure(Runnable change) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long[] start = new long[1];
+        Platform.runLater(() -> {
+            layoutDone = latch;
+            start[0] = System.nanoTime();
+            change.run();
+            root.requestLayout();
+        });
+        latch.await(10, TimeUnit.SECONDS);
+        layoutDone = null;
+        return System.nanoTime() - start[0];
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.logging;
+
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 日志上下文
+ * 每条指令有一个请求关联 ID（MDC 键 requestId），JSON 日志中的每条记录都带上它，
+ * 便于把同一条指令在队列、网络、解析、执行各阶段的日志串起来。
+ * MDC 是线程本地的，异步回调和 Platform.runLater 需要用 wrap 把上下文带过去。
+ */
+public final class LogContext {
+
+    public static final String REQUEST_ID = "requestId";
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    // 进程级前缀，区分多次运行产生的日志
+    private static final String PREFIX = Long.toString(System.currentTimeMillis() % 1_000_000, 36);
+
+    private LogContext() {
+    }
+
+    /**
+     * 生成新的请求关联 ID
+     */
+    public static String newRequestId() {
+        return PREFIX + "-" + SEQUENCE.incrementAndGet();
+    }
+
+    /**
+     * 当前线程的请求关联 ID，没有时生成一个新的
+     */
+    public static String currentOrNewRequestId() {
+        String id = MDC.get(REQUEST_ID);
+        return id != null ? id : newRequestId();
+    }
+
+    /**
+     * 在当前线程设置请求关联 ID，返回之前的值，在 finally 中交给 restoreRequestId 恢复
+     */
+    public static String setRequestId(String requestId) {
+        String previous = MDC.get(REQUEST_ID);
+        MDC.put(REQUEST_ID, requestId);
+        return previous;
+    }
+
+    /**
+     * 恢复 setRequestId 之前的请求关联 ID，之前没有时移除
+     */
+    public static void restoreRequestId(String previous) {
+        if (previous != null) {
+            MDC.put(REQUEST_ID, previous);
+        } else {
+            MDC.remove(REQUEST_ID);
+        }
+    }
+
+    /**
+     * 捕获当前线程的日志上下文，在执行任务的线程上恢复
+     */
+    public static Runnable wrap(Runnable task) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        if (context == null) {
+            return task;
+        }
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            MDC.setContextMap(context);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    MDC.setContextMap(previous);
+                } else {
+                    MDC.clear();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 最近事件环形缓冲
+ * 平时只把详细事件（含 DEBUG）放入固定大小的环形数组，不做任何 I/O；
+ * 收到 ERROR 事件时把缓冲中尚未输出过的事件按顺序转交给挂接的 appender，
+ * 这样出错时能看到之前的详细上下文，而正常运行时不用为详细日志付出写盘代价。
+ */
+public class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final AtomicLong cursor = new AtomicLong();
+    private int capacity = 256;
+    private AtomicReferenceArray<ILoggingEvent> events;
+    // 已输出到的位置，避免连续错误重复输出同一段上下文
+    private long dumpedUpTo;
+
+    @Override
+    public void start() {
+        events = new AtomicReferenceArray<>(Math.max(16, capacity));
+        super.start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        // 线程名和 MDC 在取用时才从当前线程读取，入缓冲前先固定下来；消息格式化留到输出时
+        event.getThreadName();
+        event.getMDCPropertyMap();
+        long index = cursor.getAndIncrement();
+        events.set((int) (index % events.length()), event);
+        if (event.getLevel().isGreaterOrEqual(Level.ERROR)) {
+            dump(index + 1);
+        }
+    }
+
+    private synchronized void dump(long end) {
+        long begin = Math.max(dumpedUpTo, end - events.length());
+        for (long i = begin; i < end; i++) {
+            ILoggingEvent event = events.get((int) (i % events.length()));
+            if (event != null) {
+                appenders.appendLoopOnAppenders(event);
+            }
+        }
+        dumpedUpTo = Math.max(dumpedUpTo, end);
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.addAppender(appender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按比例采样日志事件（用于请求/响应等大体积载荷）
+ * 有请求关联 ID 时按 ID 的哈希决定，同一请求的请求体和响应体要么都记录、要么都不记录；
+ * WARN 及以上级别总是放行。
+ */
+public class SamplingFilter extends Filter<ILoggingEvent> {
+
+    private static final int BUCKETS = 10_000;
+
+    private double rate = 0.01;
+    private String key = LogContext.REQUEST_ID;
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        if (!isStarted()) {
+            return FilterReply.NEUTRAL;
+        }
+        if (event.getLevel().isGreaterOrEqual(Level.WARN)) {
+            return FilterReply.NEUTRAL;
+        }
+        String id = event.getMDCPropertyMap().get(key);
+        int bucket = id != null
+                ? Math.floorMod(id.hashCode() * 0x9E3779B9, BUCKETS)
+                : ThreadLocalRandom.current().nextInt(BUCKETS);
+        return bucket < rate * BUCKETS ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    public void setRate(double rate) {
+        this.rate = Math.max(0, Math.min(1, rate));
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+}
@@ -0,0 +1,5 @@
+@echo off
+chcp 65001 >nul
+rem jlink 镜像启动脚本：JavaFX 已链接为镜像内的模块，应用和其余依赖在 app 目录
+set DIR=%~dp0..
+"%DIR%\bin\java.exe" -Xshare:auto -Dai.packaging=jlink %JAVA_OPTS% -cp "%DIR%\app\*" com.example.Main %*